@@ -0,0 +1,161 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * AdaptiveRateLimiter: a token bucket whose rate follows the EC2 throttling (additive increase, multiplicative
+ * decrease).
+ * <p>
+ * Every request takes a token, and the bucket refills at the current rate and holds up to
+ * {@link ThrottlingConfig#burst} tokens. Requests
+ * without throttling grow the rate by {@link ThrottlingConfig#additiveIncrease} per second; a throttled request
+ * multiplies it by {@link ThrottlingConfig#multiplicativeDecrease}. The throttled responses of requests sent
+ * before the last decrease are ignored, they were sent at the old rate.
+ */
+public final class AdaptiveRateLimiter {
+
+    /**
+     * The constant NANOS_PER_SECOND.
+     */
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The throttling configuration.
+     */
+    private final ThrottlingConfig config;
+    /**
+     * The clock of the limiter, in nanoseconds.
+     */
+    private final LongSupplier nanoTime;
+    /**
+     * The throttled requests.
+     */
+    private final LongAdder throttled = new LongAdder();
+    /**
+     * The current rate, in requests per second.
+     */
+    private double rate;
+    /**
+     * The tokens in the bucket, at most the burst.
+     */
+    private double tokens;
+    /**
+     * When the bucket was last refilled, in nanoseconds.
+     */
+    private long lastRefill;
+    /**
+     * When the rate was last decreased, in nanoseconds.
+     */
+    private long lastDecrease;
+
+    /**
+     * Creates a limiter, starting at the initial rate.
+     *
+     * @param config the throttling configuration.
+     */
+    public AdaptiveRateLimiter(final ThrottlingConfig config) {
+        this(config, System::nanoTime);
+    }
+
+    /**
+     * Creates a limiter with a clock, for the tests.
+     *
+     * @param config   the throttling configuration.
+     * @param nanoTime the clock of the limiter, in nanoseconds.
+     */
+    AdaptiveRateLimiter(final ThrottlingConfig config, final LongSupplier nanoTime) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.isTrue(config.getMinRate() > 0 && config.getMinRate() <= config.getMaxRate(),
+                "minRate must be positive and not greater than maxRate.");
+        Validate.isTrue(config.getBurst() > 0, "burst must be positive.");
+        Validate.isTrue(config.getMultiplicativeDecrease() > 0 && config.getMultiplicativeDecrease() < 1,
+                "multiplicativeDecrease must be between 0 and 1.");
+        this.config = config;
+        this.nanoTime = nanoTime;
+        this.rate = Math.clamp(config.getInitialRate(), config.getMinRate(), config.getMaxRate());
+        this.tokens = config.getBurst();
+        this.lastRefill = nanoTime.getAsLong();
+        this.lastDecrease = lastRefill;
+    }
+
+    /**
+     * Takes a token, waiting for it if the bucket is empty.
+     *
+     * @return the time the token was taken, to pass to {@link #onThrottle(long)}.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public long acquire() throws InterruptedException {
+        final long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return nanoTime.getAsLong();
+    }
+
+    /**
+     * Takes a token right away, going into debt if the bucket is empty.
+     *
+     * @return how long to wait before sending the request, in nanoseconds.
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Records a request that was not throttled.
+     */
+    public synchronized void onSuccess() {
+        //Every success adds increase/rate, so a second of requests at the current rate adds the whole increase.
+        rate = Math.min(config.getMaxRate(), rate + config.getAdditiveIncrease() / rate);
+    }
+
+    /**
+     * Records a throttled request.
+     *
+     * @param sentAt the time the request was sent, from {@link #acquire()}.
+     */
+    public synchronized void onThrottle(final long sentAt) {
+        throttled.increment();
+        if (sentAt - lastDecrease < 0) {
+            return;
+        }
+        refill();
+        rate = Math.max(config.getMinRate(), rate * config.getMultiplicativeDecrease());
+        //Throttled means the EC2 bucket is empty, so is ours.
+        tokens = Math.min(tokens, 0);
+        lastDecrease = nanoTime.getAsLong();
+    }
+
+    /**
+     * Gets the current permitted rate.
+     *
+     * @return the rate, in requests per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Gets the number of throttled requests.
+     *
+     * @return the throttled requests.
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * Adds the tokens earned at the current rate since the last refill.
+     */
+    private void refill() {
+        final long now = nanoTime.getAsLong();
+        tokens = Math.min(config.getBurst(), tokens + (now - lastRefill) / NANOS_PER_SECOND * rate);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,395 @@
+package me.adriandeleon;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.Ec2AsyncClient;
+import software.amazon.awssdk.services.ec2.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static me.adriandeleon.AwsEc2Utils.*;
+
+/**
+ * AwsEc2AsyncUtils: the non-blocking version of {@link AwsEc2Utils}.
+ * <p>
+ * Every method returns a {@link CompletableFuture} and runs on the shared {@link Ec2AsyncClient} (Netty NIO HTTP
+ * client) of the default {@link Ec2ClientProvider}, so no thread waits for EC2. The number of requests in flight and
+ * the number of requests waiting for a connection are limited by {@link Ec2ClientConfig#maxConcurrency} and
+ * {@link Ec2ClientConfig#maxPendingConnectionAcquires}.
+ */
+@Log4j2
+@UtilityClass
+public final class AwsEc2AsyncUtils {
+
+    /**
+     * The constant MESSAGE_NO_INSTANCE_WITH_TAG_NAME.
+     */
+    public static final String MESSAGE_NO_INSTANCE_WITH_TAG_NAME = "Could not find the AWS instance with that name/tag.";
+
+    /**
+     * The reachability probe is blocking, it runs on its own virtual threads and not on the Netty threads.
+     */
+    private static final ExecutorService PROBE_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Open an EC2 instance firewall (ip range, protocols) for our IP.
+     * <p>
+     * The public IP lookup and the instance lookup run at the same time. Once the instance is known, the reachability
+     * probe and the describe of its security group also run at the same time.
+     *
+     * @param tagName         the tag name for our EC2 instance resource.
+     * @param ruleDescription the rule description.
+     * @return a future completed when the firewall is open.
+     */
+    public static CompletableFuture<Void> openEC2Ports(final String tagName, final String ruleDescription) {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        final CompletableFuture<String> myIp = getIpFromAws();
+        final CompletableFuture<Instance> instance = getInstanceByName(tagName);
+
+        //If the instance has more than one security group, the first one is used (like AwsEc2Utils).
+        final CompletableFuture<String> securityGroupId = instance
+                .thenApply(found -> found.securityGroups().getFirst().groupId());
+        final CompletableFuture<List<SecurityGroupRule>> rules = securityGroupId
+                .thenCompose(AwsEc2AsyncUtils::getSecurityGroupRules);
+
+        //The probe waits on a selector for up to its timeout, off the SDK threads.
+        final CompletableFuture<Boolean> reachable = instance.thenCombineAsync(rules, (found, groupRules) -> {
+            final PortProber prober = AwsEc2Utils.getPortProber();
+            //When many rules match, the last one is used (like AwsEc2Utils).
+            final List<SecurityGroupRule> matching = groupRules.stream()
+                    .filter(rule -> hasDescription(rule, ruleDescription))
+                    .toList();
+            return (matching.isEmpty()
+                    ? prober.probe(found.publicIpAddress(), prober.getConfig().getDefaultPorts())
+                    : prober.probe(found.publicIpAddress(),
+                    SecurityGroupRule.toIpPermissions(List.of(matching.getLast())).getFirst()))
+                    .isReachable();
+        }, PROBE_EXECUTOR);
+
+        return reachable.thenCompose(canReach -> {
+            if (canReach) {
+                return myIp.thenAccept(ip ->
+                        System.out.println("Our IP: " + ip + " already has access to server: " + tagName));
+            }
+            return myIp.thenCompose(ip -> {
+                System.out.println("Opening server: " + tagName + " ports to our IP: " + ip);
+                return rules.thenCompose(groupRules -> rotateEC2SecurityGroupRules(securityGroupId.join(),
+                        groupRules, ruleDescription, null, ip));
+            }).thenRun(() -> {
+                AwsEc2Utils.getPortProber().invalidate(instance.join().publicIpAddress());
+                System.out.println("Ip configuration done.");
+            });
+        });
+    }
+
+    /**
+     * Gets list of EC2 instance names by tag name.
+     *
+     * @param tagName the tag name value.
+     * @return a future with the list of instance ids.
+     */
+    public static CompletableFuture<List<String>> getListOfInstanceNames(final String tagName) {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+
+        //The publisher signals the pages one at a time, so the list is never written concurrently.
+        final List<String> instanceIdList = new ArrayList<>();
+        return ec2AsyncClient().describeInstancesPaginator(describeInstancesByNameRequest(tagName))
+                .reservations()
+                .subscribe(reservation -> reservation.instances()
+                        .forEach(instance -> instanceIdList.add(instance.instanceId())))
+                .thenApply(ignored -> List.copyOf(instanceIdList));
+    }
+
+    /**
+     * Gets public ip from instance by tagName.
+     *
+     * @param tagName the tag name.
+     * @return a future with the public ip of the first instance with that name.
+     */
+    public static CompletableFuture<String> getPublicIpFromInstanceByName(final String tagName) {
+        return getInstanceByName(tagName).thenApply(Instance::publicIpAddress);
+    }
+
+    /**
+     * Gets public ip from instance.
+     *
+     * @param instanceId the instance id.
+     * @return a future with the public ip of the instance.
+     */
+    public static CompletableFuture<String> getPublicIpFromInstance(final String instanceId) {
+        return getInstance(instanceId)
+                .thenApply(instance -> instance.orElseThrow(IllegalArgumentException::new).publicIpAddress());
+    }
+
+    /**
+     * Get an EC2 instance by instanceId.
+     *
+     * @param instanceId the instance id.
+     * @return a future with an Optional with the instance.
+     */
+    public static CompletableFuture<Optional<Instance>> getInstance(final String instanceId) {
+        Validate.notBlank(instanceId, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+
+        final AtomicReference<Instance> found = new AtomicReference<>();
+        return ec2AsyncClient().describeInstancesPaginator(describeInstanceByIdRequest(instanceId))
+                .reservations()
+                .subscribe(reservation -> reservation.instances().stream()
+                        .filter(instance -> instance.instanceId().equals(instanceId))
+                        .findFirst()
+                        .ifPresent(found::set))
+                .thenApply(ignored -> Optional.ofNullable(found.get()));
+    }
+
+    /**
+     * Gets the security group list of an EC2 instance by id.
+     *
+     * @param instanceId the instance id.
+     * @return a future with the security group list.
+     */
+    public static CompletableFuture<List<String>> getSecurityGroupList(final String instanceId) {
+        Validate.notBlank(instanceId, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+
+        return getInstance(instanceId).thenApply(instance -> instance.orElseThrow().securityGroups().stream()
+                .map(GroupIdentifier::groupId)
+                .toList());
+    }
+
+    /**
+     * Add a new rule to an EC2 security group.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol.
+     * @param ip              the ip.
+     * @return a future completed when the rule is added.
+     */
+    public static CompletableFuture<Void> addEC2SecurityGroupRule(final String groupId, final String ruleDescription,
+                                                                  final String protocol, final String ip) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(protocol, MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+
+        final AuthorizeSecurityGroupIngressRequest request = AuthorizeSecurityGroupIngressRequest.builder()
+                .groupId(groupId)
+                .ipPermissions(newIpPermission(ruleDescription, protocol, ip))
+                .build();
+
+        return afterRuleChange(groupId, ec2AsyncClient().authorizeSecurityGroupIngress(request));
+    }
+
+    /**
+     * Remove a rule from an EC2 security group.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @return a future completed when the rule is removed.
+     */
+    public static CompletableFuture<Void> removeEC2SecurityGroupRule(final String groupId, final String ruleDescription) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        return getIpPermission(groupId, ruleDescription).thenCompose(ipPermission -> revokeEC2SecurityGroupRule(groupId,
+                ipPermission.orElseThrow(() -> new NoSuchElementException(MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION))));
+    }
+
+    /**
+     * Gets the ip permissions of a rule in a security group by its description.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @return a future with an Optional with the ip permission, empty if there is no rule with that description.
+     */
+    public static CompletableFuture<Optional<IpPermission>> getIpPermission(final String groupId,
+                                                                           final String ruleDescription) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        final DescribeSecurityGroupsRequest request = DescribeSecurityGroupsRequest.builder()
+                .groupIds(groupId)
+                .build();
+
+        return ec2AsyncClient().describeSecurityGroups(request)
+                .thenApply(response -> findIpPermission(response.securityGroups(), ruleDescription));
+    }
+
+    /**
+     * Update a rule in an EC2 security group.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param ip              the ip.
+     * @return a future completed when the rule is updated.
+     */
+    public static CompletableFuture<Void> updateEC2SecurityGroupRule(final String groupId, final String ruleDescription,
+                                                                     final String ip) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+
+        //The group is described once, its rules are used for both the new rules and the revoke.
+        return getSecurityGroupRules(groupId).thenCompose(existingRules ->
+                rotateEC2SecurityGroupRules(groupId, existingRules, ruleDescription, null, ip));
+    }
+
+    /**
+     * Update a rule in an EC2 security group.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol.
+     * @param ip              the ip.
+     * @return a future completed when the rule is updated.
+     */
+    public static CompletableFuture<Void> updateEC2SecurityGroupRule(final String groupId, final String ruleDescription,
+                                                                     final String protocol, final String ip) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(protocol, MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+
+        return getSecurityGroupRules(groupId).thenCompose(existingRules ->
+                rotateEC2SecurityGroupRules(groupId, existingRules, ruleDescription, protocol, ip));
+    }
+
+    /**
+     * Update a rule in a security group our ip.
+     *
+     * @param tagName         the tag name.
+     * @param ruleDescription the rule description.
+     * @return a future completed when the rule is updated.
+     */
+    public static CompletableFuture<Void> updateSecurityGroupRuleWithMyIp(final String tagName,
+                                                                          final String ruleDescription) {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        final CompletableFuture<String> myIp = getIpFromAws();
+        final CompletableFuture<String> securityGroupId = getInstanceByName(tagName)
+                .thenApply(instance -> instance.securityGroups().getFirst().groupId());
+
+        return securityGroupId.thenCombine(myIp, (groupId, ip) -> updateEC2SecurityGroupRule(groupId, ruleDescription, ip))
+                .thenCompose(update -> update);
+    }
+
+    /**
+     * Get the public IP for this computer (using the CheckIP AWS endpoint, or the endpoints configured in the
+     * {@link PublicIpResolver}).
+     *
+     * @return a future with the IP as a String.
+     */
+    public static CompletableFuture<String> getIpFromAws() {
+        return AwsEc2Utils.getPublicIpResolver().resolveAsync();
+    }
+
+    /**
+     * Gets the first instance whose "Name" tag contains the tag name.
+     *
+     * @param tagName the tag name value.
+     * @return a future with the instance, failed with a {@link NoSuchElementException} if there is none.
+     */
+    private static CompletableFuture<Instance> getInstanceByName(final String tagName) {
+        return getListOfInstanceNames(tagName).thenCompose(instanceIds -> {
+            if (instanceIds.isEmpty()) {
+                throw new NoSuchElementException(MESSAGE_NO_INSTANCE_WITH_TAG_NAME);
+            }
+            return getInstance(instanceIds.getFirst());
+        }).thenApply(instance -> instance.orElseThrow(() -> new NoSuchElementException(MESSAGE_NO_INSTANCE_WITH_TAG_NAME)));
+    }
+
+    /**
+     * Gets the ingress rules of a security group.
+     *
+     * @param groupId the groupId.
+     * @return a future with the rules, one rule per IP range.
+     */
+    private static CompletableFuture<List<SecurityGroupRule>> getSecurityGroupRules(final String groupId) {
+        final DescribeSecurityGroupsRequest request = DescribeSecurityGroupsRequest.builder()
+                .groupIds(groupId)
+                .build();
+
+        return ec2AsyncClient().describeSecurityGroups(request).thenApply(response -> response.securityGroups().stream()
+                .flatMap(securityGroup -> SecurityGroupRule.fromSecurityGroup(securityGroup).stream())
+                .toList());
+    }
+
+    /**
+     * Moves the rules of a security group with a description to a new ip, keeping their ports, like
+     * {@link AwsEc2Utils#replaceRuleIp}: the new rules are authorized, then the old ones revoked. The cached rules of
+     * the group are dropped once the change completes or fails.
+     *
+     * @param groupId         the groupId.
+     * @param existingRules   the existing rules of the group.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol of the new rules, or null to keep the protocol of every rule.
+     * @param ip              the new ip.
+     * @return a future completed when the rules are moved.
+     */
+    private static CompletableFuture<Void> rotateEC2SecurityGroupRules(final String groupId,
+                                                                       final List<SecurityGroupRule> existingRules,
+                                                                       final String ruleDescription,
+                                                                       final String protocol, final String ip) {
+        final List<SecurityGroupRule> desiredRules = rotatedRules(groupId, existingRules, ruleDescription, protocol, ip);
+        if (desiredRules.isEmpty()) {
+            return CompletableFuture.failedFuture(new NoSuchElementException(MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION));
+        }
+
+        return SecurityGroupReconciler.applyAsync(ec2AsyncClient(),
+                        SecurityGroupReconciler.diff(groupId, existingRules, desiredRules))
+                .whenComplete((changes, error) -> AwsEc2Utils.getSecurityGroupRuleCache().invalidate(groupId))
+                .thenAccept(changes -> {
+                    if (!changes.isSuccess()) {
+                        throw new IllegalStateException(changes.error());
+                    }
+                });
+    }
+
+    /**
+     * Revokes an ip permission of a security group.
+     *
+     * @param groupId      the groupId.
+     * @param ipPermission the ip permission.
+     * @return a future completed when the ip permission is revoked.
+     */
+    private static CompletableFuture<Void> revokeEC2SecurityGroupRule(final String groupId,
+                                                                      final IpPermission ipPermission) {
+        final RevokeSecurityGroupIngressRequest request = RevokeSecurityGroupIngressRequest.builder()
+                .groupId(groupId)
+                .ipPermissions(ipPermission)
+                .build();
+
+        return afterRuleChange(groupId, ec2AsyncClient().revokeSecurityGroupIngress(request));
+    }
+
+    /**
+     * Drops the cached rules of a security group once a change of its rules completes, like the synchronous helpers.
+     * The rules are dropped when the change fails too, EC2 may have applied it.
+     *
+     * @param groupId the groupId.
+     * @param change  the authorize or revoke request.
+     * @return a future completed when the change is done and the cached rules are dropped.
+     */
+    private static CompletableFuture<Void> afterRuleChange(final String groupId, final CompletableFuture<?> change) {
+        return change.whenComplete((response, error) -> AwsEc2Utils.getSecurityGroupRuleCache().invalidate(groupId))
+                .thenApply(ignored -> null);
+    }
+
+    /**
+     * Gets the asynchronous EC2 client of the default provider.
+     *
+     * @return the asynchronous EC2 client.
+     */
+    private static Ec2AsyncClient ec2AsyncClient() {
+        return Ec2ClientProvider.getDefault().getAsyncClient();
+    }
+}
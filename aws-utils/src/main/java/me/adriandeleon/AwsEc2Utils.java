@@ -0,0 +1,1277 @@
+package me.adriandeleon;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * AwsEc2Utils: A utility class for managing AWS resources.
+ */
+@Log4j2
+@UtilityClass
+public final class AwsEc2Utils {
+    /**
+     * The constant MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK.
+     */
+    public static final String MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK = "groupId cannot be null or blank.";
+    /**
+     * The constant MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK.
+     */
+    public static final String MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK = "ruleDescription cannot be null or blank.";
+    /**
+     * The constant MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK.
+     */
+    public static final String MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK = "instanceId cannot be null or blank.";
+    /**
+     * The constant MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK.
+     */
+    public static final String MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK = "tagName cannot be null or blank.";
+    /**
+     * The constant MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK.
+     */
+    public static final String MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK = "protocol cannot be null or blank.";
+    /**
+     * The constant MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK.
+     */
+    public static final String MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK = "ip cannot be null or blank.";
+
+    /**
+     * The constant MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION.
+     */
+    public static final String MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION = "There is no security rule with that description";
+
+    /**
+     * The constant OPERATION_OPEN_EC2_PORTS_PUBLIC_IP.
+     */
+    public static final String OPERATION_OPEN_EC2_PORTS_PUBLIC_IP = "openEC2Ports.publicIp";
+
+    /**
+     * The constant OPERATION_OPEN_EC2_PORTS_FIND_INSTANCE.
+     */
+    public static final String OPERATION_OPEN_EC2_PORTS_FIND_INSTANCE = "openEC2Ports.findInstance";
+
+    /**
+     * The constant OPERATION_OPEN_EC2_PORTS_PROBE.
+     */
+    public static final String OPERATION_OPEN_EC2_PORTS_PROBE = "openEC2Ports.probe";
+
+    /**
+     * The constant OPERATION_OPEN_EC2_PORTS_UPDATE_RULE.
+     */
+    public static final String OPERATION_OPEN_EC2_PORTS_UPDATE_RULE = "openEC2Ports.updateRule";
+
+    /**
+     * The constant CHECK_IP_URL.
+     */
+    static final String CHECK_IP_URL = "https://checkip.amazonaws.com/";
+    /**
+     * The constant FILTER_TAG_NAME.
+     */
+    private static final String FILTER_TAG_NAME = "tag:Name";
+    /**
+     * The constant FILTER_INSTANCE_ID.
+     */
+    private static final String FILTER_INSTANCE_ID = "instance-id";
+    /**
+     * The constant MAX_RESULTS_PER_PAGE.
+     */
+    private static final int MAX_RESULTS_PER_PAGE = 1000;
+
+    /**
+     * Loaded once, on first use: declared first, the other fields are built from it.
+     */
+    private static volatile AwsUtilsConfig config;
+    /**
+     * The instance catalog, replaced when its configuration changes.
+     */
+    private static volatile InstanceCatalog instanceCatalog = newInstanceCatalog(getConfig().getInstanceCatalog());
+    /**
+     * The client provider the cached instances were loaded from.
+     */
+    private static volatile Ec2ClientProvider instanceCatalogProvider;
+    /**
+     * The security group rule cache, replaced when its configuration changes.
+     */
+    private static volatile SecurityGroupRuleCache securityGroupRuleCache =
+            new SecurityGroupRuleCache(getConfig().getSecurityGroupRuleCache());
+    /**
+     * The client provider the cached security group rules were described with.
+     */
+    private static volatile Ec2ClientProvider securityGroupRuleCacheProvider;
+    /**
+     * The executor of the calls to many groups or regions.
+     */
+    private static volatile FanOutExecutor fanOutExecutor = new FanOutExecutor(getConfig().getFanOut());
+    /**
+     * The prober of the ports opened to our IP.
+     */
+    private static volatile PortProber portProber = new PortProber(getConfig().getPortProbe());
+    /**
+     * The resolver of our public IP, built on first use.
+     */
+    private static volatile PublicIpResolver publicIpResolver;
+    /**
+     * The lookups of instance ids by Name tag not served by the instance catalog, one request for the concurrent
+     * callers of the same key.
+     */
+    private static final SingleFlight<List<Object>, List<String>> instanceIdsByName =
+            new SingleFlight<>(Ec2Metrics.CACHE_IN_FLIGHT);
+    /**
+     * The lookups of instances by id not served by the instance catalog, see {@link #instanceIdsByName}.
+     */
+    private static final SingleFlight<List<Object>, Optional<Instance>> instancesById =
+            new SingleFlight<>(Ec2Metrics.CACHE_IN_FLIGHT);
+    /**
+     * The lean lookups of instances by id not served by the instance catalog, see {@link #instanceIdsByName}.
+     */
+    private static final SingleFlight<List<Object>, Optional<LeanInstance>> leanInstancesById =
+            new SingleFlight<>(Ec2Metrics.CACHE_IN_FLIGHT);
+
+    /**
+     * Open an EC2 instance firewall (ip range, protocols) for our IP.
+     *
+     * @param tagName         the tag name for our EC2 instance resource.
+     * @param ruleDescription the rule description.
+     */
+    public static void openEC2Ports(final String tagName, final String ruleDescription) throws URISyntaxException, IOException {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        //Every step is timed, see Ec2Metrics.
+        final String myIp = Ec2Metrics.time(OPERATION_OPEN_EC2_PORTS_PUBLIC_IP, AwsEc2Utils::getIpFromAws);
+        final Instance instance = Ec2Metrics.time(OPERATION_OPEN_EC2_PORTS_FIND_INSTANCE,
+                () -> getInstance(getListOfInstanceNames(tagName).getFirst())
+                        .orElseThrow(IllegalArgumentException::new));
+
+        //Check if your IP already has access to avoid opening the ports again.
+        final ProbeResult probe = Ec2Metrics.time(OPERATION_OPEN_EC2_PORTS_PROBE,
+                () -> probeInstance(instance, ruleDescription));
+        if (probe.isReachable()) {
+            System.out.println("Our IP: " + myIp + " already has access to server: " + tagName);
+            return;
+        }
+
+        System.out.println("Opening server: " + tagName + " ports to our IP: " + myIp);
+        try {
+            Ec2Metrics.time(OPERATION_OPEN_EC2_PORTS_UPDATE_RULE, () -> {
+                updateSecurityGroupRuleWithMyIp(tagName, ruleDescription);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new RuntimeException("Could not update AWS firewall");
+        }
+        portProber.invalidate(instance.publicIpAddress());
+        System.out.println("Ip configuration done.");
+    }
+
+    /**
+     * Gets list of EC2 instance names by tag name.
+     *
+     * @param tagName the tag name value.
+     * @return the list of instance names by tag name.
+     */
+    public static List<String> getListOfInstanceNames(final String tagName) {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+
+        final Optional<InstanceSnapshot> snapshot = instanceCatalog().getSnapshot();
+        if (snapshot.isPresent()) {
+            return snapshot.orElseThrow().findIdsByNameContaining(tagName);
+        }
+
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        if (provider.getConfig().isLeanReads()) {
+            //Only the instance ids are parsed.
+            final LeanEc2Reader reader = provider.getLeanReader();
+            return instanceIdsByName.execute(List.of(reader, tagName), () -> reader
+                    .describeInstancesByName(List.of(tagName), LeanInstance.Field.none()).stream()
+                    .map(LeanInstance::instanceId)
+                    .toList());
+        }
+
+        final Ec2Client client = provider.getClient();
+        return instanceIdsByName.execute(List.of(client, tagName), () -> {
+            final List<String> instanceIdList = new ArrayList<>();
+
+            //The paginator follows the nextToken, one page at a time.
+            final DescribeInstancesRequest request = describeInstancesByNameRequest(tagName);
+            for (Reservation reservation : client.describeInstancesPaginator(request).reservations()) {
+                for (Instance instance : reservation.instances()) {
+                    instanceIdList.add(instance.instanceId());
+                }
+            }
+            return List.copyOf(instanceIdList);
+        });
+    }
+
+    /**
+     * Gets public ip from instance by tagName.
+     *
+     * @param tagName the tag name.
+     * @return the public ip from the instance by name.
+     */
+    public static String getPublicIpFromInstanceByName(final String tagName) {
+        return getPublicIpFromInstance(getListOfInstanceNames(tagName).getFirst());
+    }
+
+    /**
+     * Gets public ip from instance.
+     *
+     * @param instanceId the instance id.
+     * @return the public ip from the instance.
+     */
+    public static String getPublicIpFromInstance(final String instanceId) {
+         final LeanInstance instance = getLeanInstance(instanceId, EnumSet.of(LeanInstance.Field.PUBLIC_IP))
+                 .orElseThrow(IllegalArgumentException::new);
+         return instance.publicIpAddress();
+    }
+
+    /**
+     * Gets some fields of an EC2 instance by instanceId. With lean reads ({@link Ec2ClientConfig#leanReads}), an
+     * instance that is not in the instance catalog is read by the {@link LeanEc2Reader}, which only parses these
+     * fields. Otherwise, it is the instance of {@link #getInstance(String)}, with all its fields.
+     *
+     * @param instanceId the instance id.
+     * @param fields     the fields needed, besides the instance id.
+     * @return An Optional with the instance.
+     */
+    public static Optional<LeanInstance> getLeanInstance(final String instanceId,
+                                                         final Set<LeanInstance.Field> fields) {
+        Validate.notBlank(instanceId, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notNull(fields, "fields cannot be null.");
+
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        if (!provider.getConfig().isLeanReads()) {
+            return getInstance(instanceId).map(LeanInstance::of);
+        }
+        final Optional<InstanceSnapshot> snapshot = instanceCatalog().getSnapshot();
+        if (snapshot.isPresent()) {
+            return snapshot.orElseThrow().findById(instanceId).map(LeanInstance::of);
+        }
+
+        final LeanEc2Reader reader = provider.getLeanReader();
+        try {
+            return leanInstancesById.execute(List.of(reader, instanceId, Set.copyOf(fields)), () -> reader
+                    .describeInstancesById(List.of(instanceId), fields).stream()
+                    .filter(instance -> instance.instanceId().equals(instanceId))
+                    .findFirst());
+        } catch (Ec2Exception e) {
+            log.error(e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Get an EC2 instance by instanceId.
+     * <p>
+     * When the instance catalog is enabled, the instance comes from its snapshot and is partial: only the instance id,
+     * type, state name, public and private IPv4 addresses, tags and security groups are set (see
+     * {@link CompactInventory#toInstance(int)}), the other fields are null or empty. Disable the catalog to get the
+     * full instance from EC2.
+     *
+     * @param instanceId the instance id.
+     * @return An Optional with the instance.
+     */
+    public static Optional<Instance> getInstance(final String instanceId) {
+        Validate.notBlank(instanceId, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+
+        final Optional<InstanceSnapshot> snapshot = instanceCatalog().getSnapshot();
+        if (snapshot.isPresent()) {
+            return snapshot.orElseThrow().findById(instanceId);
+        }
+
+        final Ec2Client client = ec2Client();
+        try {
+            return instancesById.execute(List.of(client, instanceId), () -> {
+                final DescribeInstancesRequest request = describeInstanceByIdRequest(instanceId);
+                for (Reservation reservation : client.describeInstancesPaginator(request).reservations()) {
+                    for (Instance instance : reservation.instances()) {
+                        if (instance.instanceId().equals(instanceId)) {
+                            return Optional.of(instance);
+                        }
+                    }
+                }
+                return Optional.empty();
+            });
+        } catch (Ec2Exception e) {
+            log.error(e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Gets many EC2 instances by instanceId. The instances come from the instance catalog when it is used, the others
+     * are described {@value Ec2InstanceSource#MAX_FILTER_VALUES} at a time, all the requests in parallel. The instances
+     * of the catalog are partial, like the ones of {@link #getInstance(String)}.
+     *
+     * @param instanceIds the instance ids.
+     * @return the instances by id, and the ids of the instances that do not exist.
+     */
+    public static InstanceLookup<Instance> getInstances(final Collection<String> instanceIds) {
+        Validate.notNull(instanceIds, "instanceIds cannot be null.");
+        Validate.noNullElements(instanceIds, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+        instanceIds.forEach(instanceId -> Validate.notBlank(instanceId, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK));
+
+        final Set<String> ids = new LinkedHashSet<>(instanceIds);
+        final Map<String, Instance> found = new HashMap<>();
+        final Optional<InstanceSnapshot> snapshot = instanceCatalog().getSnapshot();
+        if (snapshot.isPresent()) {
+            for (String instanceId : ids) {
+                snapshot.orElseThrow().findById(instanceId).ifPresent(instance -> found.put(instanceId, instance));
+            }
+        }
+
+        //The ones the snapshot does not have yet, like an instance launched since it was loaded.
+        final List<String> notCached = ids.stream().filter(instanceId -> !found.containsKey(instanceId)).toList();
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        final Region region = provider.getRegion();
+        final List<FanOutTask<Iterable<Instance>>> describes = new ArrayList<>();
+        for (int from = 0; from < notCached.size(); from += Ec2InstanceSource.MAX_FILTER_VALUES) {
+            final List<String> chunk = notCached.subList(from,
+                    Math.min(notCached.size(), from + Ec2InstanceSource.MAX_FILTER_VALUES));
+            describes.add(new FanOutTask<>(region, chunk.getFirst(),
+                    () -> new Ec2InstanceSource(() -> provider.getClient(region)).describe(chunk)));
+        }
+        for (TargetResult<Iterable<Instance>> describe : fanOutExecutor.invokeAll(describes)) {
+            if (!describe.isSuccess()) {
+                log.error(describe.error().getMessage());
+                throw describe.error() instanceof RuntimeException e ? e
+                        : new IllegalStateException(describe.error().getMessage(), describe.error());
+            }
+            describe.value().forEach(instance -> found.put(instance.instanceId(), instance));
+        }
+
+        final Map<String, Instance> values = new LinkedHashMap<>();
+        final Set<String> missingIds = new LinkedHashSet<>();
+        for (String instanceId : ids) {
+            final Instance instance = found.get(instanceId);
+            if (instance == null) {
+                missingIds.add(instanceId);
+            } else {
+                values.put(instanceId, instance);
+            }
+        }
+        return new InstanceLookup<>(values, missingIds);
+    }
+
+    /**
+     * Gets the public ips of many EC2 instances, see {@link #getInstances(Collection)}.
+     *
+     * @param instanceIds the instance ids.
+     * @return the public ips by instance id, and the ids of the instances that do not exist or have no public ip.
+     */
+    public static InstanceLookup<String> getPublicIps(final Collection<String> instanceIds) {
+        return getInstances(instanceIds).map(Instance::publicIpAddress);
+    }
+
+    /**
+     * Gets the security group ids of many EC2 instances, see {@link #getInstances(Collection)}.
+     *
+     * @param instanceIds the instance ids.
+     * @return the security group ids by instance id, and the ids of the instances that do not exist.
+     */
+    public static InstanceLookup<List<String>> getSecurityGroups(final Collection<String> instanceIds) {
+        return getInstances(instanceIds).map(instance -> instance.securityGroups().stream()
+                .map(GroupIdentifier::groupId)
+                .toList());
+    }
+
+    /**
+     * Gets the security group list of an EC2 instance by id.
+     *
+     * @param instanceId the instance id.
+     * @return the security group list.
+     */
+    public static List<String> getSecurityGroupList(final String instanceId) {
+        Validate.notBlank(instanceId, MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+
+        //Gets the security groups of the specific instanceId.
+        return getLeanInstance(instanceId, EnumSet.of(LeanInstance.Field.SECURITY_GROUPS))
+                .orElseThrow()
+                .securityGroupIds();
+    }
+
+    /**
+     * Add a new rule to an EC2 security group.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol.
+     * @param ip              the ip.
+     */
+    public static void addEC2SecurityGroupRule(final String groupId, final String ruleDescription,
+                                               final String protocol, final String ip) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(protocol, MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+
+        try {
+            final IpPermission ipPermission = newIpPermission(ruleDescription, protocol, ip);
+
+            //Create the AWS firewall in request.
+            final AuthorizeSecurityGroupIngressRequest request = AuthorizeSecurityGroupIngressRequest.builder()
+                    .groupId(groupId)
+                    .ipPermissions(ipPermission)
+                    .build();
+
+            //Does the actual modification.
+            ec2Client().authorizeSecurityGroupIngress(request);
+            securityGroupRuleCache().invalidate(groupId);
+        } catch (Ec2Exception e) {
+            log.error(e.awsErrorDetails().errorMessage());
+            securityGroupRuleCache().invalidate(groupId);
+            throw e;
+        }
+    }
+
+    /**
+     * Add a new temporary rule to an EC2 security group. The rule description gets its expiry, see
+     * {@link SecurityGroupRule#withExpiry(String, java.time.Instant)}, and the rule is revoked by
+     * {@link #sweepExpiredSecurityGroupRules(Region, boolean)} once it expires.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol.
+     * @param ip              the ip.
+     * @param ttl             how long the rule is kept.
+     */
+    public static void addEC2SecurityGroupRule(final String groupId, final String ruleDescription,
+                                               final String protocol, final String ip, final Duration ttl) {
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notNull(ttl, "ttl cannot be null.");
+        Validate.isTrue(ttl.isPositive(), "ttl must be positive.");
+
+        addEC2SecurityGroupRule(groupId, SecurityGroupRule.withExpiry(ruleDescription, Instant.now().plus(ttl)),
+                protocol, ip);
+    }
+
+    /**
+     * Revokes the expired temporary rules of all the security groups of a region, and the older duplicates of the
+     * ones still valid. See {@link SecurityGroupSweeper}.
+     *
+     * @param region the region.
+     * @param dryRun if true, the rules are found and reported but not revoked.
+     * @return the report of the sweep.
+     */
+    public static SweepReport sweepExpiredSecurityGroupRules(final Region region, final boolean dryRun) {
+        Validate.notNull(region, "region cannot be null.");
+
+        final SweepReport report = new SecurityGroupSweeper(Ec2ClientProvider.getDefault().getClient(region),
+                fanOutExecutor).sweep(dryRun);
+        if (!dryRun && !report.revoked().isEmpty()) {
+            securityGroupRuleCache().invalidateAll();
+        }
+        return report;
+    }
+
+    /**
+     * Remove the rules with a description from an EC2 security group.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     */
+    public static void removeEC2SecurityGroupRule(final String groupId, final String ruleDescription)  {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        try {
+            final List<SecurityGroupRule> rules = getSecurityGroupRules(groupId, ruleDescription);
+            if (rules.isEmpty()) {
+                throw new IllegalStateException(MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION);
+            }
+
+            //Create a revoke security group request. Includes the group id and the permissions of all the rules.
+            final RevokeSecurityGroupIngressRequest request = RevokeSecurityGroupIngressRequest.builder()
+                    .groupId(groupId)
+                    .ipPermissions(SecurityGroupRule.toIpPermissions(rules))
+                    .build();
+
+            //Does the actual modification.
+            ec2Client().revokeSecurityGroupIngress(request);
+            securityGroupRuleCache().invalidate(groupId);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            if (e instanceof Ec2Exception) {
+                securityGroupRuleCache().invalidate(groupId);
+            }
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Gets the ip permissions of a rule in a security group by its description. When many rules match, the last one
+     * is used, see {@link #getSecurityGroupRules(String, String)} for all of them.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @return the ip permission, only with the IP range of the rule.
+     * @throws Exception the exception if anything fails, an IllegalStateException if there is no such rule.
+     */
+    public static Optional<IpPermission> getIpPermission(final String groupId,
+                                                         final String ruleDescription) throws Exception {
+        final List<SecurityGroupRule> rules = getSecurityGroupRules(groupId, ruleDescription);
+        if (rules.isEmpty()) {
+            throw new IllegalStateException(MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION);
+        }
+        return Optional.of(SecurityGroupRule.toIpPermissions(List.of(rules.getLast())).getFirst());
+    }
+
+    /**
+     * Gets all the rules of a security group with a description. The rules come from the
+     * {@link SecurityGroupRuleCache}, the group is only described when it is not cached.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @return the rules, in the order of the ip permissions of the group.
+     */
+    public static List<SecurityGroupRule> getSecurityGroupRules(final String groupId, final String ruleDescription) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        try {
+            return securityGroupRuleCache().get(ec2Client(), List.of(groupId)).findByDescription(ruleDescription);
+        } catch (Ec2Exception e) {
+            log.error(e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Update the rules with a description in an EC2 security group to a new IP, keeping their protocol and ports. The
+     * new IP is authorized before the old one is revoked, so the access never drops, and if the authorization fails
+     * the old rules are kept.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param ip              the ip.
+     */
+    public static void updateEC2SecurityGroupRule(final String groupId, final String ruleDescription, final String ip) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK); //TODO: we should validate the IP format.
+
+        rotateEC2SecurityGroupRules(groupId, ruleDescription, null, ip);
+    }
+
+    /**
+     * Update the rules with a description in an EC2 security group to a new IP, keeping their ports. The new IP is
+     * authorized before the old one is revoked, so the access never drops, and if the authorization fails the old rules
+     * are kept.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol.
+     * @param ip              the ip.
+     */
+    public static void updateEC2SecurityGroupRule(final String groupId, final String ruleDescription,
+                                                  final String protocol, final String ip) {
+        Validate.notBlank(groupId, MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(protocol, MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK); //TODO: we should validate the IP format.
+
+        rotateEC2SecurityGroupRules(groupId, ruleDescription, protocol, ip);
+    }
+
+    /**
+     * Replaces the IP of the rules with that description in a security group, logging the failures.
+     *
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol, or null to keep the protocol of every rule.
+     * @param ip              the ip.
+     */
+    private static void rotateEC2SecurityGroupRules(final String groupId, final String ruleDescription,
+                                                    final String protocol, final String ip) {
+        try {
+            replaceRuleIp(ec2Client(), groupId, ruleDescription, protocol, ip);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Update a rule in a security group our ip.
+     *
+     * @param tagName         the tag name.
+     * @param ruleDescription the rule description.
+     * @throws Exception the exception if anything fails.
+     */
+    public static void updateSecurityGroupRuleWithMyIp(final String tagName, final String ruleDescription) throws Exception {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+
+        final String instanceId;
+
+        try {
+            instanceId = getListOfInstanceNames(tagName).getFirst();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new Exception("Could not find the AWS instance with that name/tag.");
+        }
+
+        //Only the first security group is updated, updateSecurityGroupRulesWithMyIp updates all of them.
+        final String securityGroupId = getSecurityGroupList(instanceId).getFirst();
+        final String myIp = getIpFromAws();
+
+        updateEC2SecurityGroupRule(securityGroupId, ruleDescription, myIp);
+    }
+
+    /**
+     * Update a rule with our ip in every security group of every instance by tag name, in all the regions at once.
+     *
+     * @param tagName         the tag name.
+     * @param ruleDescription the rule description.
+     * @param regions         the regions.
+     * @return one result per region that could not be searched and per security group found.
+     */
+    public static List<TargetResult<ReconciliationReport.GroupChanges>> updateSecurityGroupRulesWithMyIp(
+            final String tagName, final String ruleDescription, final Collection<Region> regions) {
+        return updateSecurityGroupRulesWithIp(tagName, ruleDescription, getIpFromAws(), regions);
+    }
+
+    /**
+     * Update a rule with an ip in every security group of every instance by tag name, in all the regions at once.
+     * <p>
+     * The regions are searched in parallel, then the security groups are updated in parallel, see
+     * {@link FanOutExecutor}. A security group shared by many instances is updated once. The rules with that
+     * description keep their protocol and ports, the new ip is authorized before the old one is revoked.
+     *
+     * @param tagName         the tag name.
+     * @param ruleDescription the rule description.
+     * @param ip              the ip.
+     * @param regions         the regions.
+     * @return one result per region that could not be searched and per security group found.
+     */
+    public static List<TargetResult<ReconciliationReport.GroupChanges>> updateSecurityGroupRulesWithIp(
+            final String tagName, final String ruleDescription, final String ip, final Collection<Region> regions) {
+        Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+
+        return updateSecurityGroupRulesWithIp(List.of(tagName), ruleDescription, ip, regions);
+    }
+
+    /**
+     * Update a rule with an ip in every security group of every instance by any of the tag names, in all the regions
+     * at once.
+     * <p>
+     * Every region is searched for all the tag names with one request. A security group of instances matching many
+     * tag names is updated once.
+     *
+     * @param tagNames        the tag names.
+     * @param ruleDescription the rule description.
+     * @param ip              the ip.
+     * @param regions         the regions.
+     * @return one result per region that could not be searched and per security group found.
+     */
+    public static List<TargetResult<ReconciliationReport.GroupChanges>> updateSecurityGroupRulesWithIp(
+            final Collection<String> tagNames, final String ruleDescription, final String ip,
+            final Collection<Region> regions) {
+        Validate.notEmpty(tagNames, "tagNames cannot be null or empty.");
+        Validate.noNullElements(tagNames, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK);
+        tagNames.forEach(tagName -> Validate.notBlank(tagName, MESSAGE_TAG_NAME_CANNOT_BE_NULL_OR_BLANK));
+        Validate.notBlank(ruleDescription, MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(ip, MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notEmpty(regions, "regions cannot be null or empty.");
+
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        final FanOutExecutor executor = fanOutExecutor;
+        final List<String> names = List.copyOf(new LinkedHashSet<>(tagNames));
+
+        final List<FanOutTask<Set<String>>> lookups = new ArrayList<>();
+        for (Region region : new LinkedHashSet<>(regions)) {
+            lookups.add(new FanOutTask<>(region, String.join(",", names),
+                    () -> findSecurityGroupIdsByName(provider.getClient(region), names)));
+        }
+
+        final List<TargetResult<ReconciliationReport.GroupChanges>> results = new ArrayList<>();
+        final List<FanOutTask<ReconciliationReport.GroupChanges>> updates = new ArrayList<>();
+        for (TargetResult<Set<String>> lookup : executor.invokeAll(lookups)) {
+            if (!lookup.isSuccess()) {
+                results.add(TargetResult.failure(lookup.region(), lookup.target(), lookup.error()));
+                continue;
+            }
+            for (String groupId : lookup.value()) {
+                updates.add(new FanOutTask<>(lookup.region(), groupId,
+                        () -> replaceRuleIp(provider.getClient(lookup.region()), groupId, ruleDescription, null, ip)));
+            }
+        }
+        results.addAll(executor.invokeAll(updates));
+        return List.copyOf(results);
+    }
+
+    /**
+     * Gets the configuration of the library. It is loaded once, on first use, with {@link AwsUtilsConfig#load()}, and
+     * replaced by {@link #configure(AwsUtilsConfig)}. When it cannot be loaded, the error is logged and the defaults
+     * are used.
+     *
+     * @return the configuration.
+     */
+    public static AwsUtilsConfig getConfig() {
+        AwsUtilsConfig current = config;
+        if (current == null) {
+            synchronized (AwsEc2Utils.class) {
+                current = config;
+                if (current == null) {
+                    try {
+                        current = AwsUtilsConfig.load();
+                    } catch (RuntimeException e) {
+                        log.error("Could not load the configuration, using the defaults: {}", e.getMessage());
+                        current = AwsUtilsConfig.defaults();
+                    }
+                    config = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Applies a configuration of the library. Only the parts that changed since the previous configuration are
+     * replaced, so the EC2 clients and their connection pools are kept when only a cache or a timeout changes.
+     *
+     * @param config the configuration.
+     */
+    public static void configure(final AwsUtilsConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+
+        final AwsUtilsConfig previous;
+        synchronized (AwsEc2Utils.class) {
+            previous = getConfig();
+            AwsEc2Utils.config = config;
+        }
+        if (!config.getClient().equals(previous.getClient())) {
+            Ec2ClientProvider.configure(config.getClient());
+        }
+        if (!config.getFanOut().equals(previous.getFanOut())) {
+            configureFanOut(config.getFanOut());
+        }
+        if (!config.getInstanceCatalog().equals(previous.getInstanceCatalog())) {
+            configureInstanceCatalog(config.getInstanceCatalog());
+        }
+        if (!config.getSecurityGroupRuleCache().equals(previous.getSecurityGroupRuleCache())) {
+            configureSecurityGroupRuleCache(config.getSecurityGroupRuleCache());
+        }
+        if (!config.getPortProbe().equals(previous.getPortProbe())) {
+            configurePortProbe(config.getPortProbe());
+        }
+        if (!config.getPublicIpResolver().equals(previous.getPublicIpResolver())) {
+            configurePublicIpResolver(config.getPublicIpResolver());
+        }
+    }
+
+    /**
+     * Gets the regions the multi-region helpers work on when no region is given: the regions of the configuration,
+     * or the default region of the client.
+     *
+     * @return the regions.
+     */
+    public static List<Region> getRegions() {
+        final List<Region> regions = getConfig().getRegions();
+        return regions.isEmpty() ? List.of(Ec2ClientProvider.getDefault().getRegion()) : regions;
+    }
+
+    /**
+     * Replaces the prober used by openEC2Ports with a new one using this configuration.
+     *
+     * @param config the probe configuration.
+     */
+    public static void configurePortProbe(final PortProbeConfig config) {
+        portProber = new PortProber(config);
+    }
+
+    /**
+     * Gets the prober used by openEC2Ports.
+     *
+     * @return the port prober.
+     */
+    static PortProber getPortProber() {
+        return portProber;
+    }
+
+    /**
+     * Replaces the executor used by the multi-region helpers with a new one using this configuration.
+     *
+     * @param config the fan-out configuration.
+     */
+    public static void configureFanOut(final FanOutConfig config) {
+        fanOutExecutor = new FanOutExecutor(config);
+    }
+
+    /**
+     * Brings the ingress rules of many security groups to a desired state, with at most one authorize and one revoke
+     * request per group. See {@link SecurityGroupReconciler}.
+     *
+     * @param desiredRules the desired rules, of one or many groups.
+     * @param dryRun       if true, the changes are computed and reported but not applied.
+     * @return the report of the changes.
+     */
+    public static ReconciliationReport reconcileSecurityGroupRules(final Collection<SecurityGroupRule> desiredRules,
+                                                                   final boolean dryRun) {
+        Validate.notNull(desiredRules, "desiredRules cannot be null.");
+
+        final ReconciliationReport report = new SecurityGroupReconciler(ec2Client()).reconcile(desiredRules, dryRun);
+        if (!dryRun && report.hasChanges()) {
+            securityGroupRuleCache().invalidateAll();
+        }
+        return report;
+    }
+
+    /**
+     * Get the public IP for this computer (using the CheckIP AWS endpoint, or the endpoints configured in the
+     * {@link PublicIpResolver}).
+     *
+     * @return the IP as a String.
+     */
+    static String getIpFromAws(){
+        return getPublicIpResolver().resolve();
+    }
+
+    /**
+     * Gets the resolver of our public IP. It is created with the default configuration on first use.
+     *
+     * @return the public IP resolver.
+     */
+    public static PublicIpResolver getPublicIpResolver() {
+        PublicIpResolver resolver = publicIpResolver;
+        if (resolver == null) {
+            synchronized (AwsEc2Utils.class) {
+                resolver = publicIpResolver;
+                if (resolver == null) {
+                    resolver = new PublicIpResolver(getConfig().getPublicIpResolver());
+                    publicIpResolver = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Replaces the resolver of our public IP with a new one using this configuration. The previous one is closed.
+     *
+     * @param config the resolver configuration.
+     */
+    public static void configurePublicIpResolver(final PublicIpResolverConfig config) {
+        configurePublicIpResolver(new PublicIpResolver(config));
+    }
+
+    /**
+     * Replaces the resolver of our public IP, for example with one using other sources. The previous one is closed.
+     *
+     * @param resolver the public IP resolver.
+     */
+    public static void configurePublicIpResolver(final PublicIpResolver resolver) {
+        Validate.notNull(resolver, "resolver cannot be null.");
+
+        final PublicIpResolver previous;
+        synchronized (AwsEc2Utils.class) {
+            previous = publicIpResolver;
+            publicIpResolver = resolver;
+        }
+        if (previous != null && previous != resolver) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Gets the instance catalog, the cache used by the instance lookups.
+     *
+     * @return the instance catalog.
+     */
+    public static InstanceCatalog getInstanceCatalog() {
+        return instanceCatalog();
+    }
+
+    /**
+     * Replaces the instance catalog with a new one using this configuration.
+     *
+     * @param config the catalog configuration.
+     */
+    public static void configureInstanceCatalog(final InstanceCatalogConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+        instanceCatalog = newInstanceCatalog(config);
+    }
+
+    /**
+     * Creates an instance catalog reading the instances with the default client provider.
+     *
+     * @param config the catalog configuration.
+     * @return the instance catalog.
+     */
+    private static InstanceCatalog newInstanceCatalog(final InstanceCatalogConfig config) {
+        //All the instances of the account, then only the ones that changed.
+        return new InstanceCatalog(config, new Ec2InstanceSource(AwsEc2Utils::ec2Client,
+                () -> Ec2ClientProvider.getDefault().getIdentity()));
+    }
+
+    /**
+     * Gets the instance catalog, invalidated if the default client provider changed since it was last used.
+     *
+     * @return the instance catalog.
+     */
+    private static InstanceCatalog instanceCatalog() {
+        //Cached instances from a previous client configuration (another account or endpoint) are dropped.
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        if (instanceCatalogProvider != provider) {
+            instanceCatalog.invalidate();
+            instanceCatalogProvider = provider;
+        }
+        return instanceCatalog;
+    }
+
+    /**
+     * Gets the security group rule cache, the cache used by the rule lookups.
+     *
+     * @return the security group rule cache.
+     */
+    public static SecurityGroupRuleCache getSecurityGroupRuleCache() {
+        return securityGroupRuleCache();
+    }
+
+    /**
+     * Replaces the security group rule cache with a new one using this configuration.
+     *
+     * @param config the cache configuration.
+     */
+    public static void configureSecurityGroupRuleCache(final SecurityGroupRuleCacheConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+        securityGroupRuleCache = new SecurityGroupRuleCache(config);
+    }
+
+    /**
+     * Gets the security group rule cache, invalidated if the default client provider changed since it was last used.
+     *
+     * @return the security group rule cache.
+     */
+    private static SecurityGroupRuleCache securityGroupRuleCache() {
+        //Cached rules from a previous client configuration (another account or endpoint) are dropped.
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        if (securityGroupRuleCacheProvider != provider) {
+            securityGroupRuleCache.invalidateAll();
+            securityGroupRuleCacheProvider = provider;
+        }
+        return securityGroupRuleCache;
+    }
+
+    /**
+     * Checks if our IP can connect to an instance, on the ports opened by the rule with that description in its
+     * security groups (or on the default ports of the prober if there is no such rule).
+     *
+     * @param instance        the instance.
+     * @param ruleDescription the rule description.
+     * @return the probe result.
+     */
+    static ProbeResult probeInstance(final Instance instance, final String ruleDescription) {
+        final List<SecurityGroupRule> rules = securityGroupRuleCache()
+                .get(ec2Client(), instance.securityGroups().stream().map(GroupIdentifier::groupId).toList())
+                .findByDescription(ruleDescription);
+        //When many rules match, the last one is used.
+        final Optional<IpPermission> ipPermission = rules.isEmpty()
+                ? Optional.empty()
+                : Optional.of(SecurityGroupRule.toIpPermissions(List.of(rules.getLast())).getFirst());
+
+        final PortProber prober = portProber;
+        return ipPermission
+                .map(found -> prober.probe(instance.publicIpAddress(), found))
+                .orElseGet(() -> prober.probe(instance.publicIpAddress(), prober.getConfig().getDefaultPorts()));
+    }
+
+    /**
+     * Gets the security groups of all the instances whose "Name" tag contains one of the tag names.
+     *
+     * @param client   the EC2 client of the region.
+     * @param tagNames the tag names.
+     * @return the security group ids, without duplicates.
+     */
+    static Set<String> findSecurityGroupIdsByName(final Ec2Client client, final Collection<String> tagNames) {
+        final Set<String> securityGroupIds = new LinkedHashSet<>();
+        for (Reservation reservation : client.describeInstancesPaginator(describeInstancesByNameRequest(tagNames)).reservations()) {
+            for (Instance instance : reservation.instances()) {
+                instance.securityGroups().forEach(groupIdentifier -> securityGroupIds.add(groupIdentifier.groupId()));
+            }
+        }
+        return securityGroupIds;
+    }
+
+    /**
+     * Moves the rules of a security group with a description to a new ip, keeping their ports: the new rules are
+     * authorized, then the old ones revoked (see {@link SecurityGroupReconciler}). A temporary rule is found by its
+     * description without the expiry, and keeps its expiry (see {@link SecurityGroupRule#withExpiry(String, Instant)}).
+     * The rules come from the rule cache, the group is described at most once, and its cached rules are dropped after
+     * a change or a failure.
+     *
+     * @param client          the EC2 client of the region.
+     * @param groupId         the groupId.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol of the new rules, or null to keep the protocol of every rule.
+     * @param ip              the new ip.
+     * @return the changes made.
+     */
+    static ReconciliationReport.GroupChanges replaceRuleIp(final Ec2Client client, final String groupId,
+                                                           final String ruleDescription, final String protocol,
+                                                           final String ip) {
+        final List<SecurityGroupRule> existingRules = securityGroupRuleCache().get(client, List.of(groupId)).getRules();
+        final List<SecurityGroupRule> desiredRules = rotatedRules(groupId, existingRules, ruleDescription, protocol, ip);
+        if (desiredRules.isEmpty()) {
+            throw new IllegalStateException(MESSAGE_NO_SECURITY_RULE_WITH_DESCRIPTION);
+        }
+
+        final ReconciliationReport.GroupChanges changes = new SecurityGroupReconciler(client)
+                .apply(SecurityGroupReconciler.diff(groupId, existingRules, desiredRules));
+        if (changes.hasChanges() || !changes.isSuccess()) {
+            securityGroupRuleCache().invalidate(groupId);
+        }
+        if (!changes.isSuccess()) {
+            throw new IllegalStateException(changes.error());
+        }
+        return changes;
+    }
+
+    /**
+     * Gets the rules of a security group with a description moved to a new ip, keeping their ports and descriptions. A
+     * temporary rule is found by its description without the expiry.
+     *
+     * @param groupId         the groupId.
+     * @param existingRules   the existing rules of the group.
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol of the new rules, or null to keep the protocol of every rule.
+     * @param ip              the new ip.
+     * @return the new rules, empty if no rule has that description.
+     */
+    static List<SecurityGroupRule> rotatedRules(final String groupId, final List<SecurityGroupRule> existingRules,
+                                                final String ruleDescription, final String protocol, final String ip) {
+        return existingRules.stream()
+                .filter(rule -> hasDescription(rule, ruleDescription))
+                .map(rule -> SecurityGroupRule.forIp(groupId, protocol == null ? rule.protocol() : protocol,
+                        rule.fromPort(), rule.toPort(), ip, rule.description()))
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Checks if a rule has a description, or has it before its expiry.
+     *
+     * @param rule            the rule.
+     * @param ruleDescription the rule description.
+     * @return true if the rule has that description.
+     */
+    static boolean hasDescription(final SecurityGroupRule rule, final String ruleDescription) {
+        return hasDescription(rule.description(), ruleDescription);
+    }
+
+    /**
+     * Checks if the description of an IP range is a rule description, or is it before its expiry.
+     *
+     * @param description     the description of the IP range, can be null.
+     * @param ruleDescription the rule description.
+     * @return true if the description is that rule description.
+     */
+    static boolean hasDescription(final String description, final String ruleDescription) {
+        return ruleDescription.equals(description)
+                || ruleDescription.equals(SecurityGroupRule.baseDescription(description));
+    }
+
+    /**
+     * Creates the request of the instances whose "Name" tag contains a tag name.
+     *
+     * @param tagName the tag name.
+     * @return the describe instances request.
+     */
+    static DescribeInstancesRequest describeInstancesByNameRequest(final String tagName) {
+        return describeInstancesByNameRequest(List.of(tagName));
+    }
+
+    /**
+     * Creates the request of the instances whose "Name" tag contains one of the tag names.
+     *
+     * @param tagNames the tag names.
+     * @return the describe instances request.
+     */
+    static DescribeInstancesRequest describeInstancesByNameRequest(final Collection<String> tagNames) {
+        //Let EC2 match the "Name" tag, the wildcards keep the "contains" semantics of the tag names.
+        return DescribeInstancesRequest.builder()
+                .filters(Filter.builder()
+                        .name(FILTER_TAG_NAME)
+                        .values(tagNames.stream().map(tagName -> "*" + escapeFilterValue(tagName) + "*").toList())
+                        .build())
+                .maxResults(MAX_RESULTS_PER_PAGE)
+                .build();
+    }
+
+    /**
+     * Creates the request of an instance by instance id.
+     *
+     * @param instanceId the instance id.
+     * @return the describe instances request.
+     */
+    static DescribeInstancesRequest describeInstanceByIdRequest(final String instanceId) {
+        //Filter by "instance-id" instead of using instanceIds, an unknown id is an empty result and not an error.
+        return DescribeInstancesRequest.builder()
+                .filters(Filter.builder()
+                        .name(FILTER_INSTANCE_ID)
+                        .values(instanceId)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Creates the ip permission that allows a single IP. An IPv6 address goes in the IPv6 ranges, with a /128 netmask.
+     *
+     * @param ruleDescription the rule description.
+     * @param protocol        the protocol.
+     * @param ip              the ip, IPv4 or IPv6.
+     * @return the ip permission.
+     */
+    static IpPermission newIpPermission(final String ruleDescription, final String protocol, final String ip) {
+        if (SecurityGroupRule.isIpv6(ip)) {
+            //The IPv6 range, a /128 netmask means a single IPv6 address.
+            return IpPermission.builder()
+                    .ipProtocol(protocol)
+                    .ipv6Ranges(Ipv6Range.builder()
+                            .description(ruleDescription)
+                            .cidrIpv6(ip + "/128")
+                            .build())
+                    .build();
+        }
+
+        // AWS uses a netmask instead of a direct IP, a /32 netmask means a singe IP
+        // check: https://superuser.com/questions/1473252/what-does-it-mean-to-have-a-subnet-mask-32
+        final String authorizedIp = ip + "/32";
+
+        //The IP range.
+        final IpRange ipRange = IpRange.builder()
+                .description(ruleDescription)
+                .cidrIp(authorizedIp)
+                .build();
+
+        //The IP permissions, includes protocols and IP range.
+        return IpPermission.builder()
+                .ipProtocol(protocol)
+                .ipRanges(ipRange)
+                .build();
+    }
+
+    /**
+     * Finds the ip permission of a rule by its description, a temporary rule by its description without the expiry.
+     * When many rules match, the last one is used.
+     *
+     * @param securityGroups  the security groups.
+     * @param ruleDescription the rule description.
+     * @return an Optional with the ip permission, only with the matching IPv4 or IPv6 range.
+     */
+    static Optional<IpPermission> findIpPermission(final Collection<SecurityGroup> securityGroups,
+                                                   final String ruleDescription) {
+        String cidrIp = null;
+        String description = null;
+        String protocol = null;
+        Integer fromPort = null;
+        Integer toPort = null;
+
+        ///AWS security groups have the following structure:
+        // Groups have permissions, permissions consist of IP ranges.
+        // Ranges have descriptions, protocol and an IP mask.
+        for (SecurityGroup group : securityGroups) {
+            for (IpPermission ipPermission : group.ipPermissions()) {
+                for (IpRange ipRange : ipPermission.ipRanges()) {
+                    if (hasDescription(ipRange.description(), ruleDescription)) {
+                        log.info(ipRange.description());
+
+                        cidrIp = ipRange.cidrIp();
+                        description = ipRange.description();
+                        protocol = ipPermission.ipProtocol();
+                        fromPort = ipPermission.fromPort();
+                        toPort = ipPermission.toPort();
+                    }
+                }
+                for (Ipv6Range ipv6Range : ipPermission.ipv6Ranges()) {
+                    if (hasDescription(ipv6Range.description(), ruleDescription)) {
+                        log.info(ipv6Range.description());
+
+                        cidrIp = ipv6Range.cidrIpv6();
+                        description = ipv6Range.description();
+                        protocol = ipPermission.ipProtocol();
+                        fromPort = ipPermission.fromPort();
+                        toPort = ipPermission.toPort();
+                    }
+                }
+            }
+        }
+
+        if (StringUtils.isEmpty(cidrIp)) {
+            return Optional.empty();
+        }
+
+        final IpPermission.Builder ipPermission = IpPermission.builder();
+        if (SecurityGroupRule.isIpv6(cidrIp)) {
+            ipPermission.ipv6Ranges(Ipv6Range.builder()
+                    .cidrIpv6(cidrIp)
+                    .description(description)
+                    .build());
+        } else {
+            ipPermission.ipRanges(IpRange.builder()
+                    .cidrIp(cidrIp)
+                    .description(description)
+                    .build());
+        }
+
+        return Optional.of(ipPermission
+                .ipProtocol(protocol)
+                .fromPort(fromPort)
+                .toPort(toPort)
+                .build());
+    }
+
+    /**
+     * Escapes the EC2 filter wildcards (`*` and `?`) so they are matched literally.
+     *
+     * @param value the filter value.
+     * @return the escaped value.
+     */
+    static String escapeFilterValue(final String value) {
+        return value.replace("\\", "\\\\")
+                .replace("*", "\\*")
+                .replace("?", "\\?");
+    }
+
+    /**
+     * Gets the shared EC2 client for the default region.
+     *
+     * @return the EC2 client.
+     */
+    private static Ec2Client ec2Client() {
+        return Ec2ClientProvider.getDefault().getClient();
+    }
+
+    /**
+     * Gets an exception to rethrow from a helper: runtime exceptions (like an {@link Ec2Exception}) as they are,
+     * checked exceptions wrapped in an {@link IllegalStateException}.
+     *
+     * @param e the exception.
+     * @return the exception to throw.
+     */
+    private static RuntimeException propagate(final Exception e) {
+        return e instanceof RuntimeException runtimeException
+                ? runtimeException
+                : new IllegalStateException(e.getMessage(), e);
+    }
+}
@@ -0,0 +1,274 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+import software.amazon.awssdk.regions.Region;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * AwsUtilsConfig: all the settings of the library in one immutable object, applied with
+ * {@link AwsEc2Utils#configure(AwsUtilsConfig)}.
+ * <p>
+ * {@link #load()} reads it once from an optional properties file, the environment variables and the system
+ * properties, each layer overriding the previous one. The keys are the names of the settings under `awsutils.`, like
+ * `awsutils.client.max-connections`, `awsutils.fan-out.timeout` or `awsutils.instance-catalog.ttl`, and the
+ * environment variables are the same keys in upper case with underscores, like `AWSUTILS_CLIENT_MAX_CONNECTIONS`. The
+ * `AWS_REGION` environment variable is the default of `awsutils.client.region`.
+ */
+@Value
+@Builder(toBuilder = true)
+public class AwsUtilsConfig {
+
+    /**
+     * The constant PROPERTY_KEY_CONFIG_FILE, the key of the path to the properties file read by {@link #load()}.
+     */
+    public static final String PROPERTY_KEY_CONFIG_FILE = "awsutils.config-file";
+
+    /**
+     * The regions the multi-region helpers work on when no region is given. When empty, only the default region of
+     * the client is used.
+     */
+    @Builder.Default
+    List<Region> regions = List.of();
+
+    /**
+     * The settings of the EC2 clients, their connection pools and their rate limits.
+     */
+    @Builder.Default
+    Ec2ClientConfig client = Ec2ClientConfig.defaults();
+
+    /**
+     * The settings of the multi-region helpers.
+     */
+    @Builder.Default
+    FanOutConfig fanOut = FanOutConfig.defaults();
+
+    /**
+     * The settings of the instance catalog.
+     */
+    @Builder.Default
+    InstanceCatalogConfig instanceCatalog = InstanceCatalogConfig.defaults();
+
+    /**
+     * The settings of the security group rule cache.
+     */
+    @Builder.Default
+    SecurityGroupRuleCacheConfig securityGroupRuleCache = SecurityGroupRuleCacheConfig.defaults();
+
+    /**
+     * The settings of the port prober used by openEC2Ports.
+     */
+    @Builder.Default
+    PortProbeConfig portProbe = PortProbeConfig.defaults();
+
+    /**
+     * The settings of the public IP resolver.
+     */
+    @Builder.Default
+    PublicIpResolverConfig publicIpResolver = PublicIpResolverConfig.defaults();
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static AwsUtilsConfig defaults() {
+        return AwsUtilsConfig.builder().build();
+    }
+
+    /**
+     * Loads the configuration from the environment variables and the system properties, and from the properties file
+     * of the `awsutils.config-file` key if it is set.
+     *
+     * @return the configuration.
+     */
+    public static AwsUtilsConfig load() {
+        final Map<String, String> environment = System.getenv();
+        final Properties systemProperties = System.getProperties();
+        final Path file = ConfigProperties.load(null, environment, systemProperties)
+                .path(PROPERTY_KEY_CONFIG_FILE, null);
+        return load(file, environment, systemProperties);
+    }
+
+    /**
+     * Loads the configuration from a properties file, overridden by the environment variables and the system
+     * properties.
+     *
+     * @param file the properties file.
+     * @return the configuration.
+     */
+    public static AwsUtilsConfig load(final Path file) {
+        return load(file, System.getenv(), System.getProperties());
+    }
+
+    /**
+     * Loads the configuration from these layers.
+     *
+     * @param file             an optional properties file, null for none.
+     * @param environment      the environment variables.
+     * @param systemProperties the system properties.
+     * @return the configuration.
+     */
+    static AwsUtilsConfig load(final Path file, final Map<String, String> environment,
+                               final Properties systemProperties) {
+        final ConfigProperties properties = ConfigProperties.load(file, environment, systemProperties);
+        final AwsUtilsConfig defaults = defaults();
+        return AwsUtilsConfig.builder()
+                .regions(properties.list("awsutils.regions", defaults.getRegions(), Region::of))
+                .client(client(properties, defaults.getClient()))
+                .fanOut(fanOut(properties, defaults.getFanOut()))
+                .instanceCatalog(instanceCatalog(properties, defaults.getInstanceCatalog()))
+                .securityGroupRuleCache(securityGroupRuleCache(properties, defaults.getSecurityGroupRuleCache()))
+                .portProbe(portProbe(properties, defaults.getPortProbe()))
+                .publicIpResolver(publicIpResolver(properties, defaults.getPublicIpResolver()))
+                .build();
+    }
+
+    /**
+     * Reads the client settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the client configuration.
+     */
+    private static Ec2ClientConfig client(final ConfigProperties properties, final Ec2ClientConfig defaults) {
+        final String region = properties.string("awsutils.client.region",
+                properties.string(PropertiesUtils.PROPERTY_KEY_AWS_REGION, null));
+        return defaults.toBuilder()
+                .region(region == null ? defaults.getRegion() : Region.of(region))
+                .httpClientType(properties.enumValue("awsutils.client.http-client-type", HttpClientType.class,
+                        defaults.getHttpClientType()))
+                .maxConnections(properties.integer("awsutils.client.max-connections", defaults.getMaxConnections()))
+                .maxConcurrency(properties.integer("awsutils.client.max-concurrency", defaults.getMaxConcurrency()))
+                .maxPendingConnectionAcquires(properties.integer("awsutils.client.max-pending-connection-acquires",
+                        defaults.getMaxPendingConnectionAcquires()))
+                .connectionTimeout(properties.duration("awsutils.client.connection-timeout",
+                        defaults.getConnectionTimeout()))
+                .socketTimeout(properties.duration("awsutils.client.socket-timeout", defaults.getSocketTimeout()))
+                .connectionMaxIdleTime(properties.duration("awsutils.client.connection-max-idle-time",
+                        defaults.getConnectionMaxIdleTime()))
+                .endpointOverride(properties.uri("awsutils.client.endpoint-override", defaults.getEndpointOverride()))
+                .leanReads(properties.bool("awsutils.client.lean-reads", defaults.isLeanReads()))
+                .throttling(throttling(properties, defaults.getThrottling()))
+                .build();
+    }
+
+    /**
+     * Reads the throttling settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the throttling configuration.
+     */
+    private static ThrottlingConfig throttling(final ConfigProperties properties, final ThrottlingConfig defaults) {
+        return defaults.toBuilder()
+                .enabled(properties.bool("awsutils.throttling.enabled", defaults.isEnabled()))
+                .initialRate(properties.decimal("awsutils.throttling.initial-rate", defaults.getInitialRate()))
+                .burst(properties.integer("awsutils.throttling.burst", defaults.getBurst()))
+                .minRate(properties.decimal("awsutils.throttling.min-rate", defaults.getMinRate()))
+                .maxRate(properties.decimal("awsutils.throttling.max-rate", defaults.getMaxRate()))
+                .additiveIncrease(properties.decimal("awsutils.throttling.additive-increase",
+                        defaults.getAdditiveIncrease()))
+                .multiplicativeDecrease(properties.decimal("awsutils.throttling.multiplicative-decrease",
+                        defaults.getMultiplicativeDecrease()))
+                .maxRetries(properties.integer("awsutils.throttling.max-retries", defaults.getMaxRetries()))
+                .baseDelay(properties.duration("awsutils.throttling.base-delay", defaults.getBaseDelay()))
+                .maxBackoff(properties.duration("awsutils.throttling.max-backoff", defaults.getMaxBackoff()))
+                .retryBudget(properties.integer("awsutils.throttling.retry-budget", defaults.getRetryBudget()))
+                .retryCost(properties.integer("awsutils.throttling.retry-cost", defaults.getRetryCost()))
+                .build();
+    }
+
+    /**
+     * Reads the fan-out settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the fan-out configuration.
+     */
+    private static FanOutConfig fanOut(final ConfigProperties properties, final FanOutConfig defaults) {
+        return defaults.toBuilder()
+                .maxConcurrencyPerRegion(properties.integer("awsutils.fan-out.max-concurrency-per-region",
+                        defaults.getMaxConcurrencyPerRegion()))
+                .timeout(properties.duration("awsutils.fan-out.timeout", defaults.getTimeout()))
+                .build();
+    }
+
+    /**
+     * Reads the instance catalog settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the instance catalog configuration.
+     */
+    private static InstanceCatalogConfig instanceCatalog(final ConfigProperties properties,
+                                                         final InstanceCatalogConfig defaults) {
+        return defaults.toBuilder()
+                .enabled(properties.bool("awsutils.instance-catalog.enabled", defaults.isEnabled()))
+                .ttl(properties.duration("awsutils.instance-catalog.ttl", defaults.getTtl()))
+                .maxInstances(properties.integer("awsutils.instance-catalog.max-instances", defaults.getMaxInstances()))
+                .fullSyncInterval(properties.duration("awsutils.instance-catalog.full-sync-interval",
+                        defaults.getFullSyncInterval()))
+                .snapshotFile(properties.path("awsutils.instance-catalog.snapshot-file", defaults.getSnapshotFile()))
+                .snapshotFileMaxAge(properties.duration("awsutils.instance-catalog.snapshot-file-max-age",
+                        defaults.getSnapshotFileMaxAge()))
+                .build();
+    }
+
+    /**
+     * Reads the security group rule cache settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the security group rule cache configuration.
+     */
+    private static SecurityGroupRuleCacheConfig securityGroupRuleCache(final ConfigProperties properties,
+                                                                       final SecurityGroupRuleCacheConfig defaults) {
+        return defaults.toBuilder()
+                .enabled(properties.bool("awsutils.security-group-rule-cache.enabled", defaults.isEnabled()))
+                .ttl(properties.duration("awsutils.security-group-rule-cache.ttl", defaults.getTtl()))
+                .build();
+    }
+
+    /**
+     * Reads the port probe settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the port probe configuration.
+     */
+    private static PortProbeConfig portProbe(final ConfigProperties properties, final PortProbeConfig defaults) {
+        return defaults.toBuilder()
+                .timeout(properties.duration("awsutils.port-probe.timeout", defaults.getTimeout()))
+                .cacheTtl(properties.duration("awsutils.port-probe.cache-ttl", defaults.getCacheTtl()))
+                .maxPorts(properties.integer("awsutils.port-probe.max-ports", defaults.getMaxPorts()))
+                .defaultPorts(properties.list("awsutils.port-probe.default-ports", defaults.getDefaultPorts(),
+                        Integer::valueOf))
+                .build();
+    }
+
+    /**
+     * Reads the public IP resolver settings.
+     *
+     * @param properties the settings.
+     * @param defaults   the values of the settings that are not set.
+     * @return the public IP resolver configuration.
+     */
+    private static PublicIpResolverConfig publicIpResolver(final ConfigProperties properties,
+                                                           final PublicIpResolverConfig defaults) {
+        return defaults.toBuilder()
+                .endpoints(properties.list("awsutils.public-ip-resolver.endpoints", defaults.getEndpoints(),
+                        URI::create))
+                .imdsEndpoint(properties.uri("awsutils.public-ip-resolver.imds-endpoint", defaults.getImdsEndpoint()))
+                .connectTimeout(properties.duration("awsutils.public-ip-resolver.connect-timeout",
+                        defaults.getConnectTimeout()))
+                .readTimeout(properties.duration("awsutils.public-ip-resolver.read-timeout", defaults.getReadTimeout()))
+                .cacheTtl(properties.duration("awsutils.public-ip-resolver.cache-ttl", defaults.getCacheTtl()))
+                .build();
+    }
+}
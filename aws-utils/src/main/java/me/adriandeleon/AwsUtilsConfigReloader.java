@@ -0,0 +1,150 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * AwsUtilsConfigReloader: applies a properties file again every time it changes, for as long as it runs.
+ * <p>
+ * The last modified time of the file is checked every interval, so a check is one file system call. When it changed,
+ * the file is loaded again with {@link AwsUtilsConfig#load(Path)} and applied with
+ * {@link AwsEc2Utils#configure(AwsUtilsConfig)}, which only replaces the parts that changed. A file that cannot be
+ * read or has an invalid value is logged, and the configuration in use is kept.
+ */
+@Log4j2
+public final class AwsUtilsConfigReloader implements AutoCloseable {
+
+    /**
+     * The properties file.
+     */
+    @Getter
+    private final Path file;
+    /**
+     * How often the file is checked.
+     */
+    private final Duration interval;
+    /**
+     * Loads the configuration of the file.
+     */
+    private final Function<Path, AwsUtilsConfig> loader;
+    /**
+     * Applies a loaded configuration.
+     */
+    private final Consumer<AwsUtilsConfig> apply;
+
+    /**
+     * The modification time of the file last loaded. Only the thread of the reloader checks, or the callers of reload,
+     * which is synchronized.
+     */
+    private FileTime lastModified;
+    /**
+     * The thread of the reloader, null until started.
+     */
+    private Thread thread;
+
+    /**
+     * Creates a reloader of a properties file.
+     *
+     * @param file     the properties file.
+     * @param interval how often the file is checked.
+     */
+    public AwsUtilsConfigReloader(final Path file, final Duration interval) {
+        this(file, interval, AwsUtilsConfig::load, AwsEc2Utils::configure);
+    }
+
+    /**
+     * Creates a reloader, for the tests.
+     *
+     * @param file     the properties file.
+     * @param interval how often the file is checked.
+     * @param loader   loads the configuration of the file.
+     * @param apply    applies a loaded configuration.
+     */
+    AwsUtilsConfigReloader(final Path file, final Duration interval, final Function<Path, AwsUtilsConfig> loader,
+                           final Consumer<AwsUtilsConfig> apply) {
+        Validate.notNull(file, "file cannot be null.");
+        Validate.notNull(interval, "interval cannot be null.");
+        Validate.isTrue(interval.isPositive(), "interval must be positive.");
+        Validate.notNull(loader, "loader cannot be null.");
+        Validate.notNull(apply, "apply cannot be null.");
+
+        this.file = file;
+        this.interval = interval;
+        this.loader = loader;
+        this.apply = apply;
+    }
+
+    /**
+     * Applies the file, then checks it in the background.
+     */
+    public synchronized void start() {
+        Validate.validState(thread == null, "The reloader is already started.");
+        reload();
+        thread = Thread.ofVirtual().name("aws-utils-config-reloader").start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                check();
+            }
+        });
+    }
+
+    /**
+     * Loads and applies the file now, changed or not.
+     *
+     * @return true if the file was applied, false if it could not be loaded.
+     */
+    public synchronized boolean reload() {
+        try {
+            final FileTime modified = Files.getLastModifiedTime(file);
+            final AwsUtilsConfig config = loader.apply(file);
+            apply.accept(config);
+            lastModified = modified;
+            log.info("Configuration applied from {}", file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not apply the configuration from {}, keeping the current one: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stops checking the file.
+     */
+    @Override
+    public synchronized void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Checks the file once, and applies it if it changed.
+     *
+     * @return true if the file changed and was applied.
+     */
+    synchronized boolean check() {
+        try {
+            if (Files.getLastModifiedTime(file).equals(lastModified)) {
+                return false;
+            }
+        } catch (IOException e) {
+            log.warn("Could not check the configuration file {}: {}", file, e.getMessage());
+            return false;
+        }
+        return reload();
+    }
+}
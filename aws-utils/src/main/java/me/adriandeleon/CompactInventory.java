@@ -0,0 +1,1042 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * CompactInventory: the EC2 instances of an account in columnar arrays, a few bytes per instance instead of the SDK
+ * object graph.
+ * <p>
+ * Every instance is a position (0 to size - 1) in the columns. The instance ids ("i-" and up to 17 hex digits) are
+ * packed in a long plus a short, the IPv4 addresses in an int, and every other string (tag keys and values, security
+ * groups, states, types) is a code of a shared dictionary, so each distinct string is stored once. The tags and the
+ * security groups of the instances, and the reverse indexes by Name tag and by security group, are flat arrays with
+ * offsets (the CSR layout).
+ * <p>
+ * The lookups by instance id, Name tag and security group do not allocate: {@link #indexOf(String)},
+ * {@link #forEachByName(String, IntConsumer)} and {@link #forEachBySecurityGroup(String, IntConsumer)} give
+ * positions. Only a subset of the instance is kept, see {@link #toInstance(int)}.
+ */
+public final class CompactInventory {
+
+    /**
+     * The constant NOT_FOUND.
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * The constant INSTANCE_ID_PREFIX.
+     */
+    private static final String INSTANCE_ID_PREFIX = "i-";
+    /**
+     * The constant MAX_PACKED_DIGITS.
+     */
+    private static final int MAX_PACKED_DIGITS = 17;
+    /**
+     * The constant NO_IP.
+     */
+    private static final int NO_IP = 0;
+    /**
+     * The constant HEX_DIGITS.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The number of instances.
+     */
+    private final int size;
+
+    /**
+     * The hex digits of the instance ids, or the index in unpackedIds of the ids that are not packed.
+     */
+    private final long[] idBits;
+    /**
+     * The shapes of the instance ids: the number of digits {@code << 4 |} the 17th (leading) digit. A shape of 0 is an
+     * id that is not {@code i-<lowercase hex>}, see idBits.
+     */
+    private final short[] idShapes;
+    /**
+     * The instance ids that are not packed.
+     */
+    private final String[] unpackedIds;
+    /**
+     * The positions of the instance ids that are not packed.
+     */
+    private final Map<String, Integer> unpackedIdIndex;
+    /**
+     * Open addressing table of position + 1 by packed id, 0 is an empty slot.
+     */
+    private final int[] idTable;
+
+    /**
+     * The distinct strings, by code.
+     */
+    private final String[] dictionary;
+    /**
+     * The codes of the dictionary, built by the first lookup by name or security group: a short-lived snapshot may
+     * never need it.
+     */
+    private volatile Map<String, Integer> codes;
+
+    /**
+     * The codes of the Name tags.
+     */
+    private final int[] nameCodes;
+    /**
+     * The codes of the instance types.
+     */
+    private final int[] typeCodes;
+    /**
+     * The codes of the state names.
+     */
+    private final int[] stateCodes;
+    /**
+     * The public IPv4 addresses, {@link #NO_IP} for none.
+     */
+    private final int[] publicIps;
+    /**
+     * The private IPv4 addresses, {@link #NO_IP} for none.
+     */
+    private final int[] privateIps;
+    /**
+     * The offsets of the tags of every instance in tagKeys and tagValues.
+     */
+    private final int[] tagOffsets;
+    /**
+     * The codes of the tag keys.
+     */
+    private final int[] tagKeys;
+    /**
+     * The codes of the tag values.
+     */
+    private final int[] tagValues;
+    /**
+     * The offsets of the security groups of every instance in groupIds and groupNames.
+     */
+    private final int[] groupOffsets;
+    /**
+     * The codes of the security group ids.
+     */
+    private final int[] groupIds;
+    /**
+     * The codes of the security group names.
+     */
+    private final int[] groupNames;
+
+    /**
+     * The offsets in byNamePositions of every Name tag code.
+     */
+    private final int[] byNameOffsets;
+    /**
+     * The positions of the instances, by Name tag code.
+     */
+    private final int[] byNamePositions;
+    /**
+     * The offsets in byGroupPositions of every security group id code.
+     */
+    private final int[] byGroupOffsets;
+    /**
+     * The positions of the instances, by security group id code.
+     */
+    private final int[] byGroupPositions;
+
+    /**
+     * Creates a new inventory from its columns, and builds its indexes.
+     *
+     * @param size         the number of instances.
+     * @param idBits       the hex digits of the instance ids.
+     * @param idShapes     the shapes of the instance ids.
+     * @param unpackedIds  the instance ids that are not packed.
+     * @param dictionary   the distinct strings, by code.
+     * @param nameCodes    the codes of the Name tags.
+     * @param typeCodes    the codes of the instance types.
+     * @param stateCodes   the codes of the state names.
+     * @param publicIps    the public IPv4 addresses.
+     * @param privateIps   the private IPv4 addresses.
+     * @param tagOffsets   the offsets of the tags of every instance.
+     * @param tagKeys      the codes of the tag keys.
+     * @param tagValues    the codes of the tag values.
+     * @param groupOffsets the offsets of the security groups of every instance.
+     * @param groupIds     the codes of the security group ids.
+     * @param groupNames   the codes of the security group names.
+     */
+    private CompactInventory(final int size, final long[] idBits, final short[] idShapes, final String[] unpackedIds,
+                             final String[] dictionary, final int[] nameCodes, final int[] typeCodes,
+                             final int[] stateCodes, final int[] publicIps, final int[] privateIps,
+                             final int[] tagOffsets, final int[] tagKeys, final int[] tagValues,
+                             final int[] groupOffsets, final int[] groupIds, final int[] groupNames) {
+        this.size = size;
+        this.idBits = idBits;
+        this.idShapes = idShapes;
+        this.unpackedIds = unpackedIds;
+        this.dictionary = dictionary;
+        this.nameCodes = nameCodes;
+        this.typeCodes = typeCodes;
+        this.stateCodes = stateCodes;
+        this.publicIps = publicIps;
+        this.privateIps = privateIps;
+        this.tagOffsets = tagOffsets;
+        this.tagKeys = tagKeys;
+        this.tagValues = tagValues;
+        this.groupOffsets = groupOffsets;
+        this.groupIds = groupIds;
+        this.groupNames = groupNames;
+
+        final Map<String, Integer> unpackedPositions = new HashMap<>();
+        for (int position = 0; position < size; position++) {
+            if (idShapes[position] == 0) {
+                unpackedPositions.put(unpackedIds[(int) idBits[position]], position);
+            }
+        }
+        this.unpackedIdIndex = unpackedPositions;
+
+        this.idTable = new int[tableCapacity(size)];
+        for (int position = 0; position < size; position++) {
+            if (idShapes[position] != 0) {
+                int slot = slot(idBits[position], idShapes[position]);
+                while (idTable[slot] != 0) {
+                    slot = (slot + 1) & (idTable.length - 1);
+                }
+                idTable[slot] = position + 1;
+            }
+        }
+
+        this.byNameOffsets = new int[dictionary.length + 1];
+        this.byNamePositions = invert(nameCodes, null, byNameOffsets);
+        this.byGroupOffsets = new int[dictionary.length + 1];
+        this.byGroupPositions = invert(groupIds, groupOffsets, byGroupOffsets);
+    }
+
+    /**
+     * Creates a builder, instances are added one by one.
+     *
+     * @return the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates an inventory of some instances.
+     *
+     * @param instances the instances.
+     * @return the inventory.
+     */
+    public static CompactInventory of(final Iterable<Instance> instances) {
+        Validate.notNull(instances, "instances cannot be null.");
+        final Builder builder = builder();
+        instances.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Gets the number of instances.
+     *
+     * @return the number of instances.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the position of an instance.
+     *
+     * @param instanceId the instance id.
+     * @return the position, or {@link #NOT_FOUND}.
+     */
+    public int indexOf(final String instanceId) {
+        if (instanceId == null) {
+            return NOT_FOUND;
+        }
+        final short shape = shapeOf(instanceId);
+        if (shape == 0) {
+            final Integer position = unpackedIdIndex.get(instanceId);
+            return position == null ? NOT_FOUND : position;
+        }
+
+        final long bits = bitsOf(instanceId);
+        for (int slot = slot(bits, shape); idTable[slot] != 0; slot = (slot + 1) & (idTable.length - 1)) {
+            final int position = idTable[slot] - 1;
+            if (idBits[position] == bits && idShapes[position] == shape) {
+                return position;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Calls an action with the position of every instance with this exact "Name" tag, in the order they were added.
+     *
+     * @param name   the name.
+     * @param action the action.
+     */
+    public void forEachByName(final String name, final IntConsumer action) {
+        forEach(codeOf(name), byNameOffsets, byNamePositions, action);
+    }
+
+    /**
+     * Calls an action with the position of every instance attached to a security group, in the order they were added.
+     *
+     * @param groupId the security group id.
+     * @param action  the action.
+     */
+    public void forEachBySecurityGroup(final String groupId, final IntConsumer action) {
+        forEach(codeOf(groupId), byGroupOffsets, byGroupPositions, action);
+    }
+
+    /**
+     * Gets the instance id of an instance.
+     *
+     * @param position the position of the instance.
+     * @return the instance id.
+     */
+    public String instanceId(final int position) {
+        final short shape = idShapes[position];
+        if (shape == 0) {
+            return unpackedIds[(int) idBits[position]];
+        }
+
+        final int digits = shape >>> 4;
+        final char[] chars = new char[INSTANCE_ID_PREFIX.length() + digits];
+        INSTANCE_ID_PREFIX.getChars(0, INSTANCE_ID_PREFIX.length(), chars, 0);
+        long bits = idBits[position];
+        for (int index = chars.length - 1, written = 0; written < Math.min(digits, 16); index--, written++) {
+            chars[index] = HEX_DIGITS[(int) (bits & 0xF)];
+            bits >>>= 4;
+        }
+        if (digits == MAX_PACKED_DIGITS) {
+            chars[INSTANCE_ID_PREFIX.length()] = HEX_DIGITS[shape & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Gets the "Name" tag of an instance.
+     *
+     * @param position the position of the instance.
+     * @return the name, or null if the instance has no "Name" tag.
+     */
+    public String name(final int position) {
+        return decode(nameCodes[position]);
+    }
+
+    /**
+     * Gets the state name of an instance.
+     *
+     * @param position the position of the instance.
+     * @return the state name, like "running", or null if the instance has no state.
+     */
+    public String state(final int position) {
+        return decode(stateCodes[position]);
+    }
+
+    /**
+     * Gets the public IPv4 address of an instance.
+     *
+     * @param position the position of the instance.
+     * @return the IP, or null if the instance has no public IP.
+     */
+    public String publicIpAddress(final int position) {
+        return formatIp(publicIps[position]);
+    }
+
+    /**
+     * Gets the security group ids of an instance.
+     *
+     * @param position the position of the instance.
+     * @return the security group ids.
+     */
+    public List<String> securityGroupIds(final int position) {
+        final List<String> securityGroupIds = new ArrayList<>(groupOffsets[position + 1] - groupOffsets[position]);
+        for (int group = groupOffsets[position]; group < groupOffsets[position + 1]; group++) {
+            securityGroupIds.add(decode(groupIds[group]));
+        }
+        return securityGroupIds;
+    }
+
+    /**
+     * Gets the distinct "Name" tags, sorted.
+     *
+     * @return the names.
+     */
+    String[] sortedNames() {
+        final List<String> names = new ArrayList<>();
+        for (int code = 0; code < dictionary.length; code++) {
+            if (byNameOffsets[code + 1] > byNameOffsets[code]) {
+                names.add(dictionary[code]);
+            }
+        }
+        final String[] sorted = names.toArray(String[]::new);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Gets the number of distinct strings (tag keys and values, security groups, states and types) of the inventory.
+     *
+     * @return the dictionary size.
+     */
+    public int dictionarySize() {
+        return dictionary.length;
+    }
+
+    /**
+     * Rebuilds an SDK instance with the fields kept by the inventory: instance id, type, state name, public and
+     * private IPv4 addresses, tags and security groups.
+     *
+     * @param position the position of the instance.
+     * @return the instance.
+     */
+    public Instance toInstance(final int position) {
+        final List<Tag> tags = new ArrayList<>(tagOffsets[position + 1] - tagOffsets[position]);
+        for (int tag = tagOffsets[position]; tag < tagOffsets[position + 1]; tag++) {
+            tags.add(Tag.builder().key(decode(tagKeys[tag])).value(decode(tagValues[tag])).build());
+        }
+        final List<GroupIdentifier> securityGroups = new ArrayList<>(groupOffsets[position + 1] - groupOffsets[position]);
+        for (int group = groupOffsets[position]; group < groupOffsets[position + 1]; group++) {
+            securityGroups.add(GroupIdentifier.builder()
+                    .groupId(decode(groupIds[group]))
+                    .groupName(decode(groupNames[group]))
+                    .build());
+        }
+
+        final Instance.Builder builder = Instance.builder()
+                .instanceId(instanceId(position))
+                .instanceType(decode(typeCodes[position]))
+                .publicIpAddress(formatIp(publicIps[position]))
+                .privateIpAddress(formatIp(privateIps[position]))
+                .tags(tags)
+                .securityGroups(securityGroups);
+        if (stateCodes[position] != NOT_FOUND) {
+            builder.state(InstanceState.builder().name(decode(stateCodes[position])).build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes the columns of the inventory, the indexes are not written, {@link #readFrom(ByteBuffer)} builds them
+     * again.
+     *
+     * @param out the output.
+     * @throws IOException if the output cannot be written.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (long bits : idBits) {
+            out.writeLong(bits);
+        }
+        for (short shape : idShapes) {
+            out.writeShort(shape);
+        }
+        writeStrings(out, unpackedIds);
+        writeStrings(out, dictionary);
+        for (int[] column : new int[][]{nameCodes, typeCodes, stateCodes, publicIps, privateIps, tagOffsets, tagKeys,
+                tagValues, groupOffsets, groupIds, groupNames}) {
+            out.writeInt(column.length);
+            for (int value : column) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    /**
+     * Reads an inventory written by {@link #writeTo(DataOutput)}. The columns are copied in bulk out of the buffer,
+     * which may be a memory-mapped file.
+     *
+     * @param buffer the buffer, positioned at the start of the inventory.
+     * @return the inventory.
+     */
+    static CompactInventory readFrom(final ByteBuffer buffer) {
+        final int size = buffer.getInt();
+        final long[] idBits = new long[size];
+        buffer.asLongBuffer().get(idBits);
+        buffer.position(buffer.position() + size * Long.BYTES);
+        final short[] idShapes = new short[size];
+        buffer.asShortBuffer().get(idShapes);
+        buffer.position(buffer.position() + size * Short.BYTES);
+        final String[] unpackedIds = readStrings(buffer);
+        final String[] dictionary = readStrings(buffer);
+        return new CompactInventory(size, idBits, idShapes, unpackedIds, dictionary, readInts(buffer),
+                readInts(buffer), readInts(buffer), readInts(buffer), readInts(buffer), readInts(buffer),
+                readInts(buffer), readInts(buffer), readInts(buffer), readInts(buffer), readInts(buffer));
+    }
+
+    /**
+     * Packs a dotted IPv4 address in an int.
+     *
+     * @param ip the IP.
+     * @return the packed IP, 0 if it is null or not an IPv4 address.
+     */
+    static int packIp(final String ip) {
+        if (ip == null) {
+            return NO_IP;
+        }
+        int packed = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int index = 0; index < ip.length(); index++) {
+            final char c = ip.charAt(index);
+            if (c == '.') {
+                if (digits == 0 || ++dots > 3) {
+                    return NO_IP;
+                }
+                packed = packed << 8 | octet;
+                octet = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                octet = octet * 10 + (c - '0');
+                digits++;
+                if (octet > 255) {
+                    return NO_IP;
+                }
+            } else {
+                return NO_IP;
+            }
+        }
+        return dots == 3 && digits > 0 ? packed << 8 | octet : NO_IP;
+    }
+
+    /**
+     * Formats a packed IPv4 address.
+     *
+     * @param ip the packed IP.
+     * @return the dotted IP, or null for 0.
+     */
+    static String formatIp(final int ip) {
+        if (ip == NO_IP) {
+            return null;
+        }
+        return (ip >>> 24) + "." + (ip >>> 16 & 0xFF) + "." + (ip >>> 8 & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    /**
+     * Gets the dictionary code of a string.
+     *
+     * @param value the string, can be null.
+     * @return the code, or {@link #NOT_FOUND} if the string is not in the dictionary.
+     */
+    private int codeOf(final String value) {
+        final Integer code = value == null ? null : codes().get(value);
+        return code == null ? NOT_FOUND : code;
+    }
+
+    /**
+     * Gets the codes of the dictionary, building them on first use.
+     *
+     * @return the codes, by string.
+     */
+    private Map<String, Integer> codes() {
+        //Two threads may both build it, either copy is the same.
+        Map<String, Integer> dictionaryCodes = codes;
+        if (dictionaryCodes == null) {
+            dictionaryCodes = HashMap.newHashMap(dictionary.length);
+            for (int code = 0; code < dictionary.length; code++) {
+                dictionaryCodes.put(dictionary[code], code);
+            }
+            codes = dictionaryCodes;
+        }
+        return dictionaryCodes;
+    }
+
+    /**
+     * Gets the string of a dictionary code.
+     *
+     * @param code the code, or {@link #NOT_FOUND}.
+     * @return the string, or null for {@link #NOT_FOUND}.
+     */
+    private String decode(final int code) {
+        return code == NOT_FOUND ? null : dictionary[code];
+    }
+
+    /**
+     * Gets the first slot of a packed instance id in the id table.
+     *
+     * @param bits  the hex digits of the id.
+     * @param shape the shape of the id.
+     * @return the slot.
+     */
+    private int slot(final long bits, final short shape) {
+        long hash = bits ^ (shape * 0x9E3779B97F4A7C15L);
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash & (idTable.length - 1);
+    }
+
+    /**
+     * Calls the action with every position of a code in a reverse index.
+     *
+     * @param code      the code, nothing is called for {@link #NOT_FOUND}.
+     * @param offsets   the offsets of the positions of every code.
+     * @param positions the positions, grouped by code.
+     * @param action    the action.
+     */
+    private static void forEach(final int code, final int[] offsets, final int[] positions, final IntConsumer action) {
+        if (code == NOT_FOUND) {
+            return;
+        }
+        for (int index = offsets[code]; index < offsets[code + 1]; index++) {
+            action.accept(positions[index]);
+        }
+    }
+
+    /**
+     * Builds a reverse index (code to positions) of a column, in CSR layout.
+     *
+     * @param values        the codes, one per instance, or many per instance with valueOffsets.
+     * @param valueOffsets  the offsets of the codes of every instance, or null for one code per instance.
+     * @param offsets       filled with the offsets of the positions of every code.
+     * @return the positions, grouped by code.
+     */
+    private int[] invert(final int[] values, final int[] valueOffsets, final int[] offsets) {
+        for (int value : values) {
+            if (value != NOT_FOUND) {
+                offsets[value + 1]++;
+            }
+        }
+        for (int code = 0; code < dictionary.length; code++) {
+            offsets[code + 1] += offsets[code];
+        }
+
+        final int[] next = Arrays.copyOf(offsets, dictionary.length);
+        final int[] positions = new int[offsets[dictionary.length]];
+        for (int position = 0; position < size; position++) {
+            final int from = valueOffsets == null ? position : valueOffsets[position];
+            final int to = valueOffsets == null ? position + 1 : valueOffsets[position + 1];
+            for (int index = from; index < to; index++) {
+                if (values[index] != NOT_FOUND) {
+                    positions[next[values[index]]++] = position;
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Gets the shape of an instance id: the number of hex digits {@code << 4 |} the 17th (leading) digit.
+     *
+     * @param instanceId the instance id.
+     * @return the shape, or 0 if the id cannot be packed.
+     */
+    private static short shapeOf(final String instanceId) {
+        final int digits = instanceId.length() - INSTANCE_ID_PREFIX.length();
+        if (!instanceId.startsWith(INSTANCE_ID_PREFIX) || digits < 1 || digits > MAX_PACKED_DIGITS) {
+            return 0;
+        }
+        for (int index = INSTANCE_ID_PREFIX.length(); index < instanceId.length(); index++) {
+            if (hexValue(instanceId.charAt(index)) < 0) {
+                return 0;
+            }
+        }
+        final int leading = digits == MAX_PACKED_DIGITS ? hexValue(instanceId.charAt(INSTANCE_ID_PREFIX.length())) : 0;
+        return (short) (digits << 4 | leading);
+    }
+
+    /**
+     * Packs the last 16 hex digits of an instance id.
+     *
+     * @param instanceId the instance id, of a shape other than 0.
+     * @return the hex digits.
+     */
+    private static long bitsOf(final String instanceId) {
+        //The last 16 digits, the 17th one is in the shape.
+        long bits = 0;
+        for (int index = Math.max(INSTANCE_ID_PREFIX.length(), instanceId.length() - 16); index < instanceId.length();
+             index++) {
+            bits = bits << 4 | hexValue(instanceId.charAt(index));
+        }
+        return bits;
+    }
+
+    /**
+     * Gets the value of a lowercase hex digit.
+     *
+     * @param c the character.
+     * @return the value, or -1 if it is not a lowercase hex digit.
+     */
+    private static int hexValue(final char c) {
+        //Only lowercase, like EC2 ids, so an id is printed back exactly as it was.
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+    }
+
+    /**
+     * Gets the capacity of the id table: a power of two, at most half full.
+     *
+     * @param size the number of instances.
+     * @return the capacity.
+     */
+    private static int tableCapacity(final int size) {
+        return Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    }
+
+    /**
+     * Writes strings: their number, then the length and the UTF-8 bytes of each one.
+     *
+     * @param out     the output.
+     * @param strings the strings.
+     * @throws IOException if the output cannot be written.
+     */
+    private static void writeStrings(final DataOutput out, final String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads strings written by {@link #writeStrings(DataOutput, String[])}.
+     *
+     * @param buffer the buffer.
+     * @return the strings.
+     */
+    private static String[] readStrings(final ByteBuffer buffer) {
+        final String[] strings = new String[buffer.getInt()];
+        byte[] bytes = new byte[64];
+        for (int index = 0; index < strings.length; index++) {
+            final int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            strings[index] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Reads an int array: its length, then the values.
+     *
+     * @param buffer the buffer.
+     * @return the values.
+     */
+    private static int[] readInts(final ByteBuffer buffer) {
+        final int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Narrows ints to shorts.
+     *
+     * @param values the values.
+     * @return the values as shorts.
+     */
+    private static short[] toShorts(final int[] values) {
+        final short[] shorts = new short[values.length];
+        for (int index = 0; index < values.length; index++) {
+            shorts[index] = (short) values[index];
+        }
+        return shorts;
+    }
+
+    /**
+     * Builder of a {@link CompactInventory}. Each added instance is copied into the columns right away, so the SDK
+     * objects can be collected while the next page of instances is read.
+     */
+    public static final class Builder {
+
+        /**
+         * The number of instances added.
+         */
+        private int size;
+        /**
+         * The hex digits of the instance ids, or their index in unpackedIds.
+         */
+        private final LongColumn idBits = new LongColumn();
+        /**
+         * The shapes of the instance ids.
+         */
+        private final IntColumn idShapes = new IntColumn();
+        /**
+         * The instance ids that are not packed.
+         */
+        private final List<String> unpackedIds = new ArrayList<>();
+        /**
+         * The distinct strings, by code.
+         */
+        private final List<String> dictionary = new ArrayList<>();
+        /**
+         * The codes of the dictionary, by string.
+         */
+        private final Map<String, Integer> codes = new HashMap<>();
+        /**
+         * The codes of the Name tags.
+         */
+        private final IntColumn nameCodes = new IntColumn();
+        /**
+         * The codes of the instance types.
+         */
+        private final IntColumn typeCodes = new IntColumn();
+        /**
+         * The codes of the state names.
+         */
+        private final IntColumn stateCodes = new IntColumn();
+        /**
+         * The public IPv4 addresses.
+         */
+        private final IntColumn publicIps = new IntColumn();
+        /**
+         * The private IPv4 addresses.
+         */
+        private final IntColumn privateIps = new IntColumn();
+        /**
+         * The offsets of the tags of every instance.
+         */
+        private final IntColumn tagOffsets = new IntColumn();
+        /**
+         * The codes of the tag keys.
+         */
+        private final IntColumn tagKeys = new IntColumn();
+        /**
+         * The codes of the tag values.
+         */
+        private final IntColumn tagValues = new IntColumn();
+        /**
+         * The offsets of the security groups of every instance.
+         */
+        private final IntColumn groupOffsets = new IntColumn();
+        /**
+         * The codes of the security group ids.
+         */
+        private final IntColumn groupIds = new IntColumn();
+        /**
+         * The codes of the security group names.
+         */
+        private final IntColumn groupNames = new IntColumn();
+
+        /**
+         * Creates a new builder, see {@link CompactInventory#builder()}.
+         */
+        private Builder() {
+            tagOffsets.add(0);
+            groupOffsets.add(0);
+        }
+
+        /**
+         * Gets the number of instances added.
+         *
+         * @return the number of instances.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Adds an instance.
+         *
+         * @param instance the instance.
+         * @return this builder.
+         */
+        public Builder add(final Instance instance) {
+            Validate.notNull(instance, "instance cannot be null.");
+
+            final String instanceId = instance.instanceId();
+            Validate.notNull(instanceId, "instanceId cannot be null.");
+            final short shape = shapeOf(instanceId);
+            if (shape == 0) {
+                idBits.add(unpackedIds.size());
+                unpackedIds.add(instanceId);
+            } else {
+                idBits.add(bitsOf(instanceId));
+            }
+            idShapes.add(shape);
+
+            int nameCode = NOT_FOUND;
+            for (Tag tag : instance.tags()) {
+                final int valueCode = encode(tag.value());
+                if (InstanceSnapshot.TAG_KEY_NAME.equals(tag.key()) && nameCode == NOT_FOUND) {
+                    nameCode = valueCode;
+                }
+                tagKeys.add(encode(tag.key()));
+                tagValues.add(valueCode);
+            }
+            tagOffsets.add(tagKeys.size());
+            nameCodes.add(nameCode);
+
+            for (GroupIdentifier group : instance.securityGroups()) {
+                groupIds.add(encode(group.groupId()));
+                groupNames.add(encode(group.groupName()));
+            }
+            groupOffsets.add(groupIds.size());
+
+            typeCodes.add(encode(instance.instanceTypeAsString()));
+            stateCodes.add(instance.state() == null ? NOT_FOUND : encode(instance.state().nameAsString()));
+            publicIps.add(packIp(instance.publicIpAddress()));
+            privateIps.add(packIp(instance.privateIpAddress()));
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds an instance of another inventory, copying its columns instead of rebuilding the SDK instance.
+         *
+         * @param inventory the other inventory.
+         * @param position  the position of the instance in the other inventory.
+         * @return this builder.
+         */
+        public Builder add(final CompactInventory inventory, final int position) {
+            Validate.notNull(inventory, "inventory cannot be null.");
+
+            final short shape = inventory.idShapes[position];
+            if (shape == 0) {
+                idBits.add(unpackedIds.size());
+                unpackedIds.add(inventory.instanceId(position));
+            } else {
+                idBits.add(inventory.idBits[position]);
+            }
+            idShapes.add(shape);
+
+            for (int tag = inventory.tagOffsets[position]; tag < inventory.tagOffsets[position + 1]; tag++) {
+                tagKeys.add(encode(inventory.decode(inventory.tagKeys[tag])));
+                tagValues.add(encode(inventory.decode(inventory.tagValues[tag])));
+            }
+            tagOffsets.add(tagKeys.size());
+            nameCodes.add(encode(inventory.name(position)));
+
+            for (int group = inventory.groupOffsets[position]; group < inventory.groupOffsets[position + 1]; group++) {
+                groupIds.add(encode(inventory.decode(inventory.groupIds[group])));
+                groupNames.add(encode(inventory.decode(inventory.groupNames[group])));
+            }
+            groupOffsets.add(groupIds.size());
+
+            typeCodes.add(encode(inventory.decode(inventory.typeCodes[position])));
+            stateCodes.add(encode(inventory.state(position)));
+            publicIps.add(inventory.publicIps[position]);
+            privateIps.add(inventory.privateIps[position]);
+            size++;
+            return this;
+        }
+
+        /**
+         * Builds the inventory and its indexes.
+         *
+         * @return the inventory.
+         */
+        public CompactInventory build() {
+            return new CompactInventory(size, idBits.toArray(), toShorts(idShapes.toArray()),
+                    unpackedIds.toArray(String[]::new), dictionary.toArray(String[]::new), nameCodes.toArray(),
+                    typeCodes.toArray(), stateCodes.toArray(), publicIps.toArray(), privateIps.toArray(),
+                    tagOffsets.toArray(), tagKeys.toArray(), tagValues.toArray(), groupOffsets.toArray(),
+                    groupIds.toArray(), groupNames.toArray());
+        }
+
+        /**
+         * Gets the dictionary code of a string, adding it to the dictionary the first time.
+         *
+         * @param value the string, can be null.
+         * @return the code, or {@link #NOT_FOUND} for null.
+         */
+        private int encode(final String value) {
+            if (value == null) {
+                return NOT_FOUND;
+            }
+            final Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            dictionary.add(value);
+            codes.put(value, dictionary.size() - 1);
+            return dictionary.size() - 1;
+        }
+    }
+
+    /**
+     * A growable column of ints.
+     */
+    private static final class IntColumn {
+        /**
+         * The values, the first size ones are used.
+         */
+        private int[] values = new int[16];
+        /**
+         * The number of values.
+         */
+        private int size;
+
+        /**
+         * Adds a value.
+         *
+         * @param value the value.
+         */
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Gets the number of values.
+         *
+         * @return the number of values.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Copies the values.
+         *
+         * @return the values.
+         */
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A growable column of longs.
+     */
+    private static final class LongColumn {
+        /**
+         * The values, the first size ones are used.
+         */
+        private long[] values = new long[16];
+        /**
+         * The number of values.
+         */
+        private int size;
+
+        /**
+         * Adds a value.
+         *
+         * @param value the value.
+         */
+        void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Copies the values.
+         *
+         * @return the values.
+         */
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * ConfigProperties: the settings of {@link AwsUtilsConfig}, layered from a properties file, the environment variables
+ * and the system properties, each layer overriding the previous one.
+ * <p>
+ * A key like `awsutils.client.max-connections` is the system property `awsutils.client.max-connections`, the
+ * environment variable `AWSUTILS_CLIENT_MAX_CONNECTIONS` and the same key (or its environment variable name) in the
+ * file. The durations are ISO-8601 (`PT30S`) or a number with a unit (`500ms`, `30s`, `5m`, `1h`).
+ */
+final class ConfigProperties {
+
+    /**
+     * The constant PREFIX, of every key.
+     */
+    static final String PREFIX = "awsutils.";
+
+    /**
+     * The constant ENV_PREFIX, of the environment variables.
+     */
+    private static final String ENV_PREFIX = "AWSUTILS_";
+
+    /**
+     * The values, by normalized key.
+     */
+    private final Map<String, String> values;
+
+    /**
+     * Creates the settings, use {@link #load(Path, Map, Properties)}.
+     *
+     * @param values the values, by normalized key.
+     */
+    private ConfigProperties(final Map<String, String> values) {
+        this.values = values;
+    }
+
+    /**
+     * Layers the sources of the settings.
+     *
+     * @param file             an optional properties file, null for none.
+     * @param environment      the environment variables.
+     * @param systemProperties the system properties.
+     * @return the settings.
+     */
+    static ConfigProperties load(final Path file, final Map<String, String> environment,
+                                 final Properties systemProperties) {
+        final Map<String, String> values = new HashMap<>();
+        if (file != null) {
+            final Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the configuration file " + file, e);
+            }
+            properties.stringPropertyNames().forEach(key -> values.put(normalize(key), properties.getProperty(key)));
+        }
+        environment.forEach((key, value) -> {
+            if (key.startsWith(ENV_PREFIX) || key.equals(PropertiesUtils.PROPERTY_KEY_AWS_REGION)) {
+                values.put(normalize(key), value);
+            }
+        });
+        systemProperties.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(PREFIX))
+                .forEach(key -> values.put(normalize(key), systemProperties.getProperty(key)));
+        //Blank values are the same as missing ones, so a layer cannot clear a value by mistake.
+        values.values().removeIf(StringUtils::isBlank);
+        return new ConfigProperties(values);
+    }
+
+    /**
+     * Gets a text.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    String string(final String key, final String defaultValue) {
+        return parse(key, defaultValue, Function.identity());
+    }
+
+    /**
+     * Gets a boolean, true or false.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    boolean bool(final String key, final boolean defaultValue) {
+        return parse(key, defaultValue, value -> switch (value.toLowerCase(Locale.ROOT)) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("not true or false");
+        });
+    }
+
+    /**
+     * Gets an integer, with optional underscores.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    int integer(final String key, final int defaultValue) {
+        return parse(key, defaultValue, value -> Integer.parseInt(value.replace("_", "")));
+    }
+
+    /**
+     * Gets a decimal number.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    double decimal(final String key, final double defaultValue) {
+        return parse(key, defaultValue, Double::parseDouble);
+    }
+
+    /**
+     * Gets a duration, like 500ms, 30s, 5m, 1h or PT1M30S.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    Duration duration(final String key, final Duration defaultValue) {
+        return parse(key, defaultValue, ConfigProperties::parseDuration);
+    }
+
+    /**
+     * Gets a URI.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    URI uri(final String key, final URI defaultValue) {
+        return parse(key, defaultValue, URI::create);
+    }
+
+    /**
+     * Gets a path.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @return the value.
+     */
+    Path path(final String key, final Path defaultValue) {
+        return parse(key, defaultValue, Path::of);
+    }
+
+    /**
+     * Gets an enum constant, by name in any case and with dashes for underscores.
+     *
+     * @param key          the key.
+     * @param type         the enum type.
+     * @param defaultValue the value when the key is not set.
+     * @param <E>          the enum type.
+     * @return the value.
+     */
+    <E extends Enum<E>> E enumValue(final String key, final Class<E> type, final E defaultValue) {
+        return parse(key, defaultValue, value -> Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_')));
+    }
+
+    /**
+     * Gets a comma-separated list.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @param parser       the parser of an element.
+     * @param <T>          the type of the elements.
+     * @return the value.
+     */
+    <T> List<T> list(final String key, final List<T> defaultValue, final Function<String, T> parser) {
+        return parse(key, defaultValue, value -> Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .map(parser)
+                .toList());
+    }
+
+    /**
+     * Parses a value.
+     *
+     * @param key          the key.
+     * @param defaultValue the value when the key is not set.
+     * @param parser       the parser of the value.
+     * @param <T>          the type of the value.
+     * @return the value.
+     * @throws IllegalArgumentException if the value cannot be parsed.
+     */
+    private <T> T parse(final String key, final T defaultValue, final Function<String, T> parser) {
+        final String value = values.get(normalize(key));
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(value.trim());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid configuration value of " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Parses a duration, with a unit suffix (ms, s, m, h) or in ISO-8601.
+     *
+     * @param value the value.
+     * @return the duration.
+     */
+    private static Duration parseDuration(final String value) {
+        final String lowerCase = value.toLowerCase(Locale.ROOT);
+        try {
+            if (lowerCase.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(lowerCase.substring(0, lowerCase.length() - 2)));
+            }
+            return switch (lowerCase.charAt(lowerCase.length() - 1)) {
+                case 's' -> Duration.ofSeconds(Long.parseLong(lowerCase.substring(0, lowerCase.length() - 1)));
+                case 'm' -> Duration.ofMinutes(Long.parseLong(lowerCase.substring(0, lowerCase.length() - 1)));
+                case 'h' -> Duration.ofHours(Long.parseLong(lowerCase.substring(0, lowerCase.length() - 1)));
+                default -> Duration.parse(value);
+            };
+        } catch (NumberFormatException e) {
+            //Like PT1M30S, which ends with a unit too.
+            return Duration.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("not a duration", e);
+        }
+    }
+
+    /**
+     * Normalizes a key, so a property and an environment variable have the same key.
+     *
+     * @param key the key, like awsutils.client.max-connections or AWSUTILS_CLIENT_MAX_CONNECTIONS.
+     * @return the normalized key.
+     */
+    private static String normalize(final String key) {
+        return key.toUpperCase(Locale.ROOT).replace('.', '_').replace('-', '_');
+    }
+}
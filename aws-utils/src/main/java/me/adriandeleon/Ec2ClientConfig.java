@@ -0,0 +1,99 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Ec2ClientConfig: the settings used by the {@link Ec2ClientProvider} to build the shared HTTP client and EC2 clients.
+ */
+@Value
+@Builder(toBuilder = true)
+public class Ec2ClientConfig {
+
+    /**
+     * The default region. When null, the `AWS_REGION` environment variable is used.
+     */
+    Region region;
+
+    /**
+     * The HTTP client implementation.
+     */
+    @Builder.Default
+    HttpClientType httpClientType = HttpClientType.APACHE;
+
+    /**
+     * The maximum number of connections in the pool (only used by the Apache HTTP client).
+     */
+    @Builder.Default
+    int maxConnections = 50;
+
+    /**
+     * The maximum number of concurrent requests of the asynchronous clients.
+     */
+    @Builder.Default
+    int maxConcurrency = 50;
+
+    /**
+     * The maximum number of asynchronous requests waiting for a connection. Requests over this limit fail right away
+     * instead of queueing without bounds.
+     */
+    @Builder.Default
+    int maxPendingConnectionAcquires = 10_000;
+
+    /**
+     * The amount of time to wait when establishing a connection.
+     */
+    @Builder.Default
+    Duration connectionTimeout = Duration.ofSeconds(2);
+
+    /**
+     * The amount of time to wait for data to be transferred over an open connection.
+     */
+    @Builder.Default
+    Duration socketTimeout = Duration.ofSeconds(30);
+
+    /**
+     * The maximum amount of time a connection can stay idle in the pool (only used by the Apache HTTP client).
+     */
+    @Builder.Default
+    Duration connectionMaxIdleTime = Duration.ofSeconds(60);
+
+    /**
+     * The client-side rate limits and the retries of the requests. The rate limiters are only used by the
+     * synchronous clients, the asynchronous ones are bounded by {@link #maxConcurrency}.
+     */
+    @Builder.Default
+    ThrottlingConfig throttling = ThrottlingConfig.defaults();
+
+    /**
+     * Reads the instances with the {@link LeanEc2Reader} instead of the EC2 clients, when they are not in the instance
+     * catalog. Only the instance ids, public IPs and security groups the helpers need are parsed, instead of the whole
+     * SDK model of every instance.
+     */
+    @Builder.Default
+    boolean leanReads = false;
+
+    /**
+     * An optional endpoint override, for example a local EC2 stub. When null, the regional AWS endpoint is used.
+     */
+    URI endpointOverride;
+
+    /**
+     * An optional credentials provider. When null, the SDK default credentials chain is used.
+     */
+    AwsCredentialsProvider credentialsProvider;
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static Ec2ClientConfig defaults() {
+        return Ec2ClientConfig.builder().build();
+    }
+}
@@ -0,0 +1,508 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.backoff.BackoffStrategy;
+import software.amazon.awssdk.core.retry.backoff.FullJitterBackoffStrategy;
+import software.amazon.awssdk.core.retry.conditions.TokenBucketExceptionCostFunction;
+import software.amazon.awssdk.core.retry.conditions.TokenBucketRetryCondition;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2AsyncClient;
+import software.amazon.awssdk.services.ec2.Ec2AsyncClientBuilder;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.Ec2ClientBuilder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Ec2ClientProvider: a thread-safe holder of EC2 clients.
+ * <p>
+ * Building an {@link Ec2Client} creates a connection pool, a credentials chain and a TLS session, so the clients are
+ * built once per region and reused. All the clients share one HTTP client (and its connection pool), the asynchronous
+ * clients share one Netty HTTP client, and all of them are released with {@link #close()}.
+ * <p>
+ * A provider replaced by {@link #configure(Ec2ClientConfig)} is retired rather than closed: it keeps serving the
+ * callers that already hold its clients for {@link #RETIRE_GRACE_PERIOD}, and is closed once its calls in flight are
+ * done.
+ * <p>
+ * The requests of the synchronous clients go through the {@link Ec2RateLimiters} of the provider, and all the clients
+ * retry with jittered backoff and a retry budget, see {@link ThrottlingConfig}.
+ */
+@Log4j2
+public final class Ec2ClientProvider implements AutoCloseable {
+
+    /**
+     * The constant MESSAGE_PROVIDER_IS_CLOSED.
+     */
+    public static final String MESSAGE_PROVIDER_IS_CLOSED = "The EC2 client provider is closed.";
+    /**
+     * The constant RETIRE_GRACE_PERIOD.
+     */
+    public static final Duration RETIRE_GRACE_PERIOD = Duration.ofSeconds(30);
+
+    /**
+     * The lock of the default provider replacements.
+     */
+    private static final Object DEFAULT_LOCK = new Object();
+    /**
+     * The default provider, created on first use.
+     */
+    private static volatile Ec2ClientProvider defaultProvider;
+
+    /**
+     * The client configuration.
+     */
+    @Getter
+    private final Ec2ClientConfig config;
+    /**
+     * The EC2 clients, by region.
+     */
+    private final Map<Region, Ec2Client> clients = new ConcurrentHashMap<>();
+    /**
+     * The asynchronous EC2 clients, by region.
+     */
+    private final Map<Region, Ec2AsyncClient> asyncClients = new ConcurrentHashMap<>();
+    /**
+     * The lean readers, by region.
+     */
+    private final Map<Region, LeanEc2Reader> leanReaders = new ConcurrentHashMap<>();
+    /**
+     * The rate limiters of the requests of the synchronous clients and the lean readers.
+     */
+    @Getter
+    private final Ec2RateLimiters rateLimiters;
+    /**
+     * The AWS_REGION environment variable, read once when the configuration has no region.
+     */
+    private volatile Region environmentRegion;
+    /**
+     * The HTTP client shared by the clients and the lean readers, built on first use.
+     */
+    private volatile SdkHttpClient httpClient;
+    /**
+     * The HTTP client shared by the asynchronous clients, built on first use.
+     */
+    private volatile SdkAsyncHttpClient asyncHttpClient;
+    /**
+     * The calls of the clients and the lean readers that have not ended yet.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * Set once the grace period of a retired provider is over: its last call closes it.
+     */
+    private volatile boolean retired;
+    /**
+     * Set by {@link #close()}.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new provider. The HTTP client and the EC2 clients are built lazily, on first use.
+     *
+     * @param config the client configuration.
+     */
+    public Ec2ClientProvider(final Ec2ClientConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+        this.config = config;
+        this.rateLimiters = new Ec2RateLimiters(config.getThrottling());
+    }
+
+    /**
+     * Gets the default provider, used by {@link AwsEc2Utils}. It is created on first use, with the client configuration
+     * of {@link AwsEc2Utils#getConfig()}.
+     *
+     * @return the default provider.
+     */
+    public static Ec2ClientProvider getDefault() {
+        Ec2ClientProvider provider = defaultProvider;
+        if (provider == null) {
+            synchronized (DEFAULT_LOCK) {
+                provider = defaultProvider;
+                if (provider == null) {
+                    provider = new Ec2ClientProvider(AwsEc2Utils.getConfig().getClient());
+                    defaultProvider = provider;
+                }
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Replaces the default provider with a new one using this configuration. The previous provider is retired: it is
+     * closed after {@link #RETIRE_GRACE_PERIOD}, once its calls in flight are done.
+     *
+     * @param config the client configuration.
+     */
+    public static void configure(final Ec2ClientConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+
+        final Ec2ClientProvider previous;
+        synchronized (DEFAULT_LOCK) {
+            previous = defaultProvider;
+            defaultProvider = new Ec2ClientProvider(config);
+        }
+        if (previous != null) {
+            previous.retire(RETIRE_GRACE_PERIOD);
+        }
+    }
+
+    /**
+     * Registers the rate limiters of the default provider in a recorder, if the default provider was created.
+     *
+     * @param recorder the recorder.
+     */
+    static void registerRateLimiters(final MetricsRecorder recorder) {
+        final Ec2ClientProvider provider = defaultProvider;
+        if (provider != null) {
+            provider.rateLimiters.registerAll(recorder);
+        }
+    }
+
+    /**
+     * Closes the default provider, releasing its connections. A new default provider is created on next use.
+     */
+    public static void shutdown() {
+        final Ec2ClientProvider previous;
+        synchronized (DEFAULT_LOCK) {
+            previous = defaultProvider;
+            defaultProvider = null;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Gets the EC2 client for the default region.
+     *
+     * @return the EC2 client.
+     */
+    public Ec2Client getClient() {
+        return getClient(getRegion());
+    }
+
+    /**
+     * Gets the EC2 client for a region.
+     *
+     * @param region the region.
+     * @return the EC2 client.
+     */
+    public Ec2Client getClient(final Region region) {
+        return getOrBuild(clients, region, this::buildClient);
+    }
+
+    /**
+     * Gets the asynchronous EC2 client for the default region.
+     *
+     * @return the asynchronous EC2 client.
+     */
+    public Ec2AsyncClient getAsyncClient() {
+        return getAsyncClient(getRegion());
+    }
+
+    /**
+     * Gets the asynchronous EC2 client for a region.
+     *
+     * @param region the region.
+     * @return the asynchronous EC2 client.
+     */
+    public Ec2AsyncClient getAsyncClient(final Region region) {
+        return getOrBuild(asyncClients, region, this::buildAsyncClient);
+    }
+
+    /**
+     * Gets the lean reader for the default region.
+     *
+     * @return the lean reader.
+     */
+    public LeanEc2Reader getLeanReader() {
+        return getLeanReader(getRegion());
+    }
+
+    /**
+     * Gets the lean reader for a region. It sends its requests with the HTTP client, the credentials and the rate
+     * limiters of this provider.
+     *
+     * @param region the region.
+     * @return the lean reader.
+     */
+    public LeanEc2Reader getLeanReader(final Region region) {
+        return getOrBuild(leanReaders, region, key -> new LeanEc2Reader(this, key));
+    }
+
+    /**
+     * Gets the default region of this provider.
+     *
+     * @return the region.
+     */
+    public Region getRegion() {
+        if (config.getRegion() != null) {
+            return config.getRegion();
+        }
+        Region region = environmentRegion;
+        if (region == null) {
+            try {
+                region = Region.of(PropertiesUtils.getPropertyValue(PropertiesUtils.PROPERTY_KEY_AWS_REGION));
+            } catch (Exception e) {
+                log.error(e.getMessage());
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            environmentRegion = region;
+        }
+        return region;
+    }
+
+    /**
+     * Gets the identity of the account of the default region: the access key id of the credentials (there is no
+     * account id without an STS call), the region and the endpoint override.
+     *
+     * @return the identity.
+     */
+    public String getIdentity() {
+        final AwsCredentialsProvider credentialsProvider = config.getCredentialsProvider() != null
+                ? config.getCredentialsProvider()
+                : DefaultCredentialsProvider.create();
+        return String.join(" ", credentialsProvider.resolveCredentials().accessKeyId(), getRegion().id(),
+                config.getEndpointOverride() == null ? "" : config.getEndpointOverride().toString());
+    }
+
+    /**
+     * Checks if the provider is closed.
+     *
+     * @return true if closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes all the EC2 clients and the shared HTTP client, even with calls in flight.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        clients.values().forEach(Ec2Client::close);
+        clients.clear();
+        asyncClients.values().forEach(Ec2AsyncClient::close);
+        asyncClients.clear();
+        leanReaders.clear();
+
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
+        if (asyncHttpClient != null) {
+            asyncHttpClient.close();
+            asyncHttpClient = null;
+        }
+    }
+
+    /**
+     * Retires the provider: after the grace period, it is closed as soon as it has no call in flight. The grace period
+     * covers the callers between two calls, that hold a client but have no call in flight.
+     *
+     * @param gracePeriod the grace period.
+     */
+    void retire(final Duration gracePeriod) {
+        Thread.ofVirtual().name("ec2-client-provider-retire").start(() -> {
+            try {
+                Thread.sleep(gracePeriod);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            retired = true;
+            if (inFlight.get() == 0) {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Counts a call in flight, see {@link #endCall()}.
+     */
+    void beginCall() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Ends a call in flight. The last call of a retired provider closes it.
+     */
+    void endCall() {
+        if (inFlight.decrementAndGet() == 0 && retired) {
+            //Not on the thread of the call, that may belong to the HTTP client being closed.
+            Thread.ofVirtual().name("ec2-client-provider-close").start(this::close);
+        }
+    }
+
+    /**
+     * Gets a client of a region, building it on first use.
+     *
+     * @param cache   the clients, by region.
+     * @param region  the region.
+     * @param builder the builder of a client.
+     * @param <T>     the type of the clients.
+     * @return the client.
+     */
+    private <T> T getOrBuild(final Map<Region, T> cache, final Region region, final Function<Region, T> builder) {
+        Validate.notNull(region, "region cannot be null.");
+
+        final T cached = cache.get(region);
+        if (cached != null && !closed) {
+            return cached;
+        }
+        //Built under the lock of close(), so a client built while closing is not left open.
+        synchronized (this) {
+            Validate.validState(!closed, MESSAGE_PROVIDER_IS_CLOSED);
+            return cache.computeIfAbsent(region, builder);
+        }
+    }
+
+    /**
+     * Builds the EC2 client of a region.
+     *
+     * @param region the region.
+     * @return the EC2 client.
+     */
+    private Ec2Client buildClient(final Region region) {
+        final Ec2ClientBuilder builder = Ec2Client.builder()
+                .region(region)
+                .httpClient(getHttpClient())
+                .overrideConfiguration(overrideConfiguration(config.getThrottling().isEnabled()));
+
+        if (config.getEndpointOverride() != null) {
+            builder.endpointOverride(config.getEndpointOverride());
+        }
+        if (config.getCredentialsProvider() != null) {
+            builder.credentialsProvider(config.getCredentialsProvider());
+        }
+        log.debug("Building EC2 client for region: {}", region);
+        return builder.build();
+    }
+
+    /**
+     * Builds the asynchronous EC2 client of a region.
+     *
+     * @param region the region.
+     * @return the asynchronous EC2 client.
+     */
+    private Ec2AsyncClient buildAsyncClient(final Region region) {
+        final Ec2AsyncClientBuilder builder = Ec2AsyncClient.builder()
+                .region(region)
+                .httpClient(getAsyncHttpClient())
+                .overrideConfiguration(overrideConfiguration(false));
+
+        if (config.getEndpointOverride() != null) {
+            builder.endpointOverride(config.getEndpointOverride());
+        }
+        if (config.getCredentialsProvider() != null) {
+            builder.credentialsProvider(config.getCredentialsProvider());
+        }
+        log.debug("Building asynchronous EC2 client for region: {}", region);
+        return builder.build();
+    }
+
+    /**
+     * Builds the retry policy and the interceptors of a client.
+     *
+     * @param rateLimited true to send the requests through the rate limiters.
+     * @return the override configuration.
+     */
+    private ClientOverrideConfiguration overrideConfiguration(final boolean rateLimited) {
+        final ThrottlingConfig throttling = config.getThrottling();
+
+        //Full jitter spreads the retries of many callers throttled at the same time.
+        final BackoffStrategy backoffStrategy = FullJitterBackoffStrategy.builder()
+                .baseDelay(throttling.getBaseDelay())
+                .maxBackoffTime(throttling.getMaxBackoff())
+                .build();
+        final TokenBucketExceptionCostFunction retryCost = TokenBucketExceptionCostFunction.builder()
+                .throttlingExceptionCost(throttling.getRetryCost())
+                .defaultExceptionCost(throttling.getRetryCost())
+                .build();
+        final RetryPolicy retryPolicy = RetryPolicy.builder(RetryMode.STANDARD)
+                .numRetries(throttling.getMaxRetries())
+                .backoffStrategy(backoffStrategy)
+                .throttlingBackoffStrategy(backoffStrategy)
+                .retryCapacityCondition(TokenBucketRetryCondition.builder()
+                        .tokenBucketSize(throttling.getRetryBudget())
+                        .exceptionCostFunction(retryCost)
+                        .build())
+                .build();
+
+        final ClientOverrideConfiguration.Builder builder = ClientOverrideConfiguration.builder()
+                .retryPolicy(retryPolicy);
+        if (rateLimited) {
+            builder.addExecutionInterceptor(new ThrottlingInterceptor(rateLimiters));
+        }
+        //Always installed, a recorder can be configured after the clients are built.
+        builder.addExecutionInterceptor(new MetricsInterceptor());
+        //The last one, see InFlightInterceptor.
+        builder.addExecutionInterceptor(new InFlightInterceptor(this));
+        return builder.build();
+    }
+
+    /**
+     * Gets the shared asynchronous HTTP client, building it on first use.
+     *
+     * @return the asynchronous HTTP client.
+     */
+    private synchronized SdkAsyncHttpClient getAsyncHttpClient() {
+        Validate.validState(!closed, MESSAGE_PROVIDER_IS_CLOSED);
+
+        if (asyncHttpClient == null) {
+            asyncHttpClient = NettyNioAsyncHttpClient.builder()
+                    .maxConcurrency(config.getMaxConcurrency())
+                    .maxPendingConnectionAcquires(config.getMaxPendingConnectionAcquires())
+                    .connectionTimeout(config.getConnectionTimeout())
+                    .readTimeout(config.getSocketTimeout())
+                    .writeTimeout(config.getSocketTimeout())
+                    .connectionMaxIdleTime(config.getConnectionMaxIdleTime())
+                    .build();
+        }
+        return asyncHttpClient;
+    }
+
+    /**
+     * Gets the shared HTTP client, building it on first use.
+     *
+     * @return the HTTP client.
+     */
+    synchronized SdkHttpClient getHttpClient() {
+        Validate.validState(!closed, MESSAGE_PROVIDER_IS_CLOSED);
+
+        if (httpClient == null) {
+            httpClient = switch (config.getHttpClientType()) {
+                case APACHE -> ApacheHttpClient.builder()
+                        .maxConnections(config.getMaxConnections())
+                        .connectionTimeout(config.getConnectionTimeout())
+                        .socketTimeout(config.getSocketTimeout())
+                        .connectionMaxIdleTime(config.getConnectionMaxIdleTime())
+                        .build();
+                case URL_CONNECTION -> UrlConnectionHttpClient.builder()
+                        .connectionTimeout(config.getConnectionTimeout())
+                        .socketTimeout(config.getSocketTimeout())
+                        .build();
+            };
+        }
+        return httpClient;
+    }
+}
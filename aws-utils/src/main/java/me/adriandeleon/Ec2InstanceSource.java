@@ -0,0 +1,189 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeInstanceStatusRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeTagsRequest;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceStatus;
+import software.amazon.awssdk.services.ec2.model.NetworkInterface;
+import software.amazon.awssdk.services.ec2.model.NetworkInterfaceAttachment;
+import software.amazon.awssdk.services.ec2.model.TagDescription;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Ec2InstanceSource: the {@link IncrementalInstanceSource} of an EC2 account.
+ * <p>
+ * The signatures come from three paged listings that are much smaller than the instances: DescribeInstanceStatus
+ * (with the stopped instances) for the states, DescribeTags for the "Name" tags, and DescribeNetworkInterfaces (only
+ * the attached interfaces not managed by AWS services) for the public IPs (of the primary network interfaces) and the
+ * security groups (of all of them). An unchanged account costs one request per page of each listing and no
+ * DescribeInstances. The changed instances are described by id, {@value #MAX_FILTER_VALUES} per request.
+ */
+public final class Ec2InstanceSource implements IncrementalInstanceSource {
+
+    /**
+     * The constant MAX_FILTER_VALUES.
+     */
+    public static final int MAX_FILTER_VALUES = 200;
+
+    /**
+     * The constant MAX_RESULTS_PER_PAGE.
+     */
+    private static final int MAX_RESULTS_PER_PAGE = 1000;
+    /**
+     * The constant FILTER_INSTANCE_ID.
+     */
+    private static final String FILTER_INSTANCE_ID = "instance-id";
+    /**
+     * The constant FILTER_RESOURCE_TYPE.
+     */
+    private static final String FILTER_RESOURCE_TYPE = "resource-type";
+    /**
+     * The constant FILTER_KEY.
+     */
+    private static final String FILTER_KEY = "key";
+    /**
+     * The constant RESOURCE_TYPE_INSTANCE.
+     */
+    private static final String RESOURCE_TYPE_INSTANCE = "instance";
+    /**
+     * The constant FILTER_ATTACHMENT_STATUS.
+     */
+    private static final String FILTER_ATTACHMENT_STATUS = "attachment.status";
+    /**
+     * The constant FILTER_REQUESTER_MANAGED.
+     */
+    private static final String FILTER_REQUESTER_MANAGED = "requester-managed";
+
+    /**
+     * Gets the client of the account, on every call.
+     */
+    private final Supplier<Ec2Client> client;
+    /**
+     * Gets the identity of the account.
+     */
+    private final Supplier<String> identity;
+
+    /**
+     * Creates a source without identity.
+     *
+     * @param client gets the client of the account, on every call.
+     */
+    public Ec2InstanceSource(final Supplier<Ec2Client> client) {
+        this(client, () -> "");
+    }
+
+    /**
+     * Creates a source.
+     *
+     * @param client   gets the client of the account, on every call.
+     * @param identity gets the identity of the account, see {@link Ec2ClientProvider#getIdentity()}.
+     */
+    public Ec2InstanceSource(final Supplier<Ec2Client> client, final Supplier<String> identity) {
+        Validate.notNull(client, "client cannot be null.");
+        Validate.notNull(identity, "identity cannot be null.");
+        this.client = client;
+        this.identity = identity;
+    }
+
+    @Override
+    public Iterable<Instance> describeAll() {
+        final DescribeInstancesRequest request = DescribeInstancesRequest.builder()
+                .maxResults(MAX_RESULTS_PER_PAGE)
+                .build();
+        return () -> client.get().describeInstancesPaginator(request).reservations().stream()
+                .flatMap(reservation -> reservation.instances().stream())
+                .iterator();
+    }
+
+    @Override
+    public String identity() {
+        return identity.get();
+    }
+
+    @Override
+    public Map<String, Signature> describeSignatures() {
+        final Ec2Client ec2Client = client.get();
+
+        final Map<String, String> names = new HashMap<>();
+        final DescribeTagsRequest tagsRequest = DescribeTagsRequest.builder()
+                .filters(Filter.builder().name(FILTER_RESOURCE_TYPE).values(RESOURCE_TYPE_INSTANCE).build(),
+                        Filter.builder().name(FILTER_KEY).values(InstanceSnapshot.TAG_KEY_NAME).build())
+                .maxResults(MAX_RESULTS_PER_PAGE)
+                .build();
+        for (TagDescription tag : ec2Client.describeTagsPaginator(tagsRequest).tags()) {
+            names.put(tag.resourceId(), tag.value());
+        }
+
+        final Map<String, String> publicIps = new HashMap<>();
+        final Map<String, Set<String>> securityGroupIds = new HashMap<>();
+        //Only the attached interfaces that AWS services (load balancers, Lambda functions, NAT gateways...) did not
+        //create, so the listing has about one interface per instance.
+        final DescribeNetworkInterfacesRequest interfacesRequest = DescribeNetworkInterfacesRequest.builder()
+                .filters(Filter.builder().name(FILTER_ATTACHMENT_STATUS).values("attached").build(),
+                        Filter.builder().name(FILTER_REQUESTER_MANAGED).values("false").build())
+                .maxResults(MAX_RESULTS_PER_PAGE)
+                .build();
+        for (NetworkInterface networkInterface
+                : ec2Client.describeNetworkInterfacesPaginator(interfacesRequest).networkInterfaces()) {
+            //An interface attached to something else than an instance is skipped too.
+            final NetworkInterfaceAttachment attachment = networkInterface.attachment();
+            if (attachment == null || attachment.instanceId() == null) {
+                continue;
+            }
+            if (attachment.deviceIndex() != null && attachment.deviceIndex() == 0
+                    && networkInterface.association() != null) {
+                publicIps.put(attachment.instanceId(), networkInterface.association().publicIp());
+            }
+            networkInterface.groups().forEach(group -> securityGroupIds
+                    .computeIfAbsent(attachment.instanceId(), instanceId -> new HashSet<>())
+                    .add(group.groupId()));
+        }
+
+        final Map<String, Signature> signatures = new HashMap<>();
+        final DescribeInstanceStatusRequest statusRequest = DescribeInstanceStatusRequest.builder()
+                .includeAllInstances(true)
+                .maxResults(MAX_RESULTS_PER_PAGE)
+                .build();
+        for (InstanceStatus status : ec2Client.describeInstanceStatusPaginator(statusRequest).instanceStatuses()) {
+            final String state = status.instanceState() == null ? null : status.instanceState().nameAsString();
+            final String instanceId = status.instanceId();
+            signatures.put(instanceId, new Signature(state, names.get(instanceId), publicIps.get(instanceId),
+                    securityGroupIds.getOrDefault(instanceId, Set.of())));
+        }
+        return signatures;
+    }
+
+    @Override
+    public Iterable<Instance> describe(final Collection<String> instanceIds) {
+        Validate.notNull(instanceIds, "instanceIds cannot be null.");
+
+        final Ec2Client ec2Client = client.get();
+        final List<String> ids = List.copyOf(instanceIds);
+        final List<Instance> instances = new ArrayList<>(ids.size());
+        //Filter by "instance-id" instead of using instanceIds, an instance terminated meanwhile is not an error.
+        for (int from = 0; from < ids.size(); from += MAX_FILTER_VALUES) {
+            final DescribeInstancesRequest request = DescribeInstancesRequest.builder()
+                    .filters(Filter.builder()
+                            .name(FILTER_INSTANCE_ID)
+                            .values(ids.subList(from, Math.min(ids.size(), from + MAX_FILTER_VALUES)))
+                            .build())
+                    .build();
+            ec2Client.describeInstancesPaginator(request).reservations()
+                    .forEach(reservation -> instances.addAll(reservation.instances()));
+        }
+        return instances;
+    }
+}
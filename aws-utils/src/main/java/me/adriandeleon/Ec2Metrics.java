@@ -0,0 +1,145 @@
+package me.adriandeleon;
+
+import lombok.experimental.UtilityClass;
+import org.apache.commons.lang3.Validate;
+
+import java.time.Duration;
+
+/**
+ * Ec2Metrics: the {@link MetricsRecorder} used by the EC2 clients and the helpers.
+ * <p>
+ * Nothing is recorded until a recorder is configured; while disabled, the instrumented code only reads a field.
+ * The HTTP round trips of the EC2 calls are also emitted as JFR events ({@link Ec2RoundTripEvent#NAME}) whenever
+ * a flight recording enables them, with or without a recorder.
+ */
+@UtilityClass
+public class Ec2Metrics {
+
+    /**
+     * The constant CACHE_INSTANCE_CATALOG.
+     */
+    public static final String CACHE_INSTANCE_CATALOG = "instanceCatalog";
+
+    /**
+     * The constant CACHE_PORT_PROBE.
+     */
+    public static final String CACHE_PORT_PROBE = "portProbe";
+
+    /**
+     * The constant CACHE_SECURITY_GROUP_RULES.
+     */
+    public static final String CACHE_SECURITY_GROUP_RULES = "securityGroupRules";
+
+    /**
+     * The constant CACHE_PUBLIC_IP.
+     */
+    public static final String CACHE_PUBLIC_IP = "publicIp";
+
+    /**
+     * The constant CACHE_IN_FLIGHT, a hit is a lookup that waited for the same request of another caller.
+     */
+    public static final String CACHE_IN_FLIGHT = "inFlight";
+
+    /**
+     * The constant NOOP, a recorder that records nothing.
+     */
+    private static final MetricsRecorder NOOP = new MetricsRecorder() {
+    };
+
+    /**
+     * The recorder of the measurements.
+     */
+    private static volatile MetricsRecorder recorder = NOOP;
+
+    /**
+     * Sets the recorder of the measurements.
+     *
+     * @param metricsRecorder the recorder.
+     */
+    public static void configure(final MetricsRecorder metricsRecorder) {
+        Validate.notNull(metricsRecorder, "metricsRecorder cannot be null.");
+        recorder = metricsRecorder;
+        //The limiters created before the recorder are registered now, the next ones when they are created.
+        Ec2ClientProvider.registerRateLimiters(metricsRecorder);
+    }
+
+    /**
+     * Stops recording the measurements.
+     */
+    public static void disable() {
+        recorder = NOOP;
+    }
+
+    /**
+     * Checks if a recorder is configured.
+     *
+     * @return true if the measurements are recorded.
+     */
+    public static boolean isEnabled() {
+        return recorder != NOOP;
+    }
+
+    /**
+     * Gets the recorder of the measurements, a recorder that does nothing when disabled.
+     *
+     * @return the recorder.
+     */
+    public static MetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Runs a call and records its time as an operation.
+     *
+     * @param operation the operation name.
+     * @param call      the call.
+     * @param <T>       the type of the result.
+     * @param <E>       the type of the exception thrown by the call.
+     * @return the result of the call.
+     * @throws E the exception thrown by the call.
+     */
+    public static <T, E extends Exception> T time(final String operation, final TimedCall<T, E> call) throws E {
+        final MetricsRecorder current = recorder;
+        if (current == NOOP) {
+            return call.call();
+        }
+
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final T result = call.call();
+            success = true;
+            return result;
+        } finally {
+            current.recordOperation(operation, Duration.ofNanos(System.nanoTime() - start), success);
+        }
+    }
+
+    /**
+     * Records a lookup in one of the caches.
+     *
+     * @param cache the cache name.
+     * @param hit   true if the cached value was used.
+     */
+    static void recordCacheAccess(final String cache, final boolean hit) {
+        recorder.recordCacheAccess(cache, hit);
+    }
+
+    /**
+     * A call timed by {@link #time(String, TimedCall)}.
+     *
+     * @param <T> the type of the result.
+     * @param <E> the type of the exception thrown.
+     */
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Exception> {
+
+        /**
+         * Runs the call.
+         *
+         * @return the result.
+         * @throws E if the call fails.
+         */
+        T call() throws E;
+    }
+}
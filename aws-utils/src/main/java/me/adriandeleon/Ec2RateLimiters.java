@@ -0,0 +1,82 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ec2RateLimiters: the {@link AdaptiveRateLimiter}s of an {@link Ec2ClientProvider}, one per API action and region.
+ */
+public final class Ec2RateLimiters {
+
+    /**
+     * The throttling configuration of the limiters.
+     */
+    private final ThrottlingConfig config;
+    /**
+     * The limiters, by "action/region".
+     */
+    private final Map<String, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the limiters, they are created lazily on the first request of every action and region.
+     *
+     * @param config the throttling configuration.
+     */
+    public Ec2RateLimiters(final ThrottlingConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+        this.config = config;
+    }
+
+    /**
+     * Gets the limiter of an API action in a region.
+     *
+     * @param action the API action, for example DescribeInstances.
+     * @param region the region.
+     * @return the limiter.
+     */
+    public AdaptiveRateLimiter getLimiter(final String action, final Region region) {
+        return limiters.computeIfAbsent(key(action, region), key -> {
+            final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(config);
+            Ec2Metrics.getRecorder().registerRateLimiter(action, region.id(), limiter);
+            return limiter;
+        });
+    }
+
+    /**
+     * Registers the existing limiters in a recorder, the next ones are registered when they are created.
+     *
+     * @param recorder the recorder.
+     */
+    void registerAll(final MetricsRecorder recorder) {
+        limiters.forEach((key, limiter) -> {
+            final int separator = key.indexOf('/');
+            recorder.registerRateLimiter(key.substring(0, separator), key.substring(separator + 1), limiter);
+        });
+    }
+
+    /**
+     * Gets the current permitted rate of every API action and region.
+     *
+     * @return the rates, in requests per second, by "action/region".
+     */
+    public Map<String, Double> getRates() {
+        final Map<String, Double> rates = new TreeMap<>();
+        limiters.forEach((key, limiter) -> rates.put(key, limiter.getRate()));
+        return rates;
+    }
+
+    /**
+     * Gets the key of a limiter.
+     *
+     * @param action the API action.
+     * @param region the region.
+     * @return the key, "action/region".
+     */
+    private static String key(final String action, final Region region) {
+        return action + "/" + region.id();
+    }
+}
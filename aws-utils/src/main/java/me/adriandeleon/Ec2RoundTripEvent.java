@@ -0,0 +1,65 @@
+package me.adriandeleon;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Ec2RoundTripEvent: a JFR event for one HTTP round trip of an EC2 API call. A retried call has one event per attempt.
+ * <p>
+ * The event is enabled by default, so any flight recording has it, like {@code jcmd <pid> JFR.start}.
+ */
+@Name(Ec2RoundTripEvent.NAME)
+@Label("EC2 Round Trip")
+@Category({"AWS", "EC2"})
+@Description("One HTTP round trip of an EC2 API call")
+@StackTrace(false)
+final class Ec2RoundTripEvent extends Event {
+
+    /**
+     * The constant NAME.
+     */
+    static final String NAME = "me.adriandeleon.Ec2RoundTrip";
+
+    /**
+     * The EC2 operation.
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * The region id.
+     */
+    @Label("Region")
+    String region;
+
+    /**
+     * The attempt of the call, from 1.
+     */
+    @Label("Attempt")
+    int attempt;
+
+    /**
+     * The HTTP status code of the response.
+     */
+    @Label("Status Code")
+    int statusCode;
+
+    /**
+     * The size of the request, -1 if unknown.
+     */
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    /**
+     * The size of the response, -1 if unknown.
+     */
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+}
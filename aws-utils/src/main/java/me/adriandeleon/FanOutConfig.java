@@ -0,0 +1,37 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * FanOutConfig: the settings of a {@link FanOutExecutor}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class FanOutConfig {
+
+    /**
+     * The maximum number of tasks running at the same time against one region, so a fan-out does not get the account
+     * throttled by the EC2 API.
+     */
+    @Builder.Default
+    int maxConcurrencyPerRegion = 8;
+
+    /**
+     * How long all the tasks of a fan-out can take. The tasks still running after it are cancelled and reported as
+     * failed.
+     */
+    @Builder.Default
+    Duration timeout = Duration.ofMinutes(2);
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static FanOutConfig defaults() {
+        return FanOutConfig.builder().build();
+    }
+}
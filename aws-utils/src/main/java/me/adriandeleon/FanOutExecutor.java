@@ -0,0 +1,165 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.regions.Region;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * FanOutExecutor: runs many blocking EC2 calls at once, one virtual thread per task.
+ * <p>
+ * Every call to {@link #invokeAll(Collection)} is a scope: its tasks run on their own virtual threads, the call never
+ * waits past its timeout (the tasks still running then are interrupted, and reported as timed out), and every task
+ * gets its own result or failure, so one failing target does not stop the others. The tasks of a region share a
+ * semaphore, which caps the requests in flight per region across all the fan-outs of this executor.
+ */
+@Log4j2
+public final class FanOutExecutor {
+
+    /**
+     * The constant MESSAGE_FAN_OUT_TIMED_OUT.
+     */
+    public static final String MESSAGE_FAN_OUT_TIMED_OUT = "The task did not finish before the fan-out timeout.";
+
+    /**
+     * The fan-out configuration.
+     */
+    @Getter
+    private final FanOutConfig config;
+    /**
+     * The permits of the concurrent tasks, by region.
+     */
+    private final Map<Region, Semaphore> regionPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an executor.
+     *
+     * @param config the fan-out configuration.
+     */
+    public FanOutExecutor(final FanOutConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.isTrue(config.getMaxConcurrencyPerRegion() > 0, "maxConcurrencyPerRegion must be positive.");
+        Validate.notNull(config.getTimeout(), "timeout cannot be null.");
+        this.config = config;
+    }
+
+    /**
+     * Runs all the tasks and waits for them, or for the timeout.
+     *
+     * @param tasks the tasks.
+     * @param <T>   the result type.
+     * @return one result per task, in the order of the tasks.
+     */
+    public <T> List<TargetResult<T>> invokeAll(final Collection<FanOutTask<T>> tasks) {
+        Validate.notNull(tasks, "tasks cannot be null.");
+
+        final List<FanOutTask<T>> taskList = List.copyOf(tasks);
+        final List<TargetResult<T>> results = new ArrayList<>(taskList.size());
+
+        final List<Future<T>> futures = new ArrayList<>(taskList.size());
+        final List<Thread> threads = new ArrayList<>(taskList.size());
+        for (FanOutTask<T> task : taskList) {
+            final FutureTask<T> future = new FutureTask<>(() -> callWithPermit(task));
+            futures.add(future);
+            threads.add(Thread.ofVirtual().start(future));
+        }
+
+        final long deadline = System.nanoTime() + config.getTimeout().toNanos();
+        for (int i = 0; i < taskList.size(); i++) {
+            results.add(await(taskList.get(i), futures.get(i), deadline));
+        }
+
+        //A cancelled future is done at once, but its thread may still be unwinding: wait for it, up to the deadline.
+        joinAll(threads, deadline);
+        return List.copyOf(results);
+    }
+
+    /**
+     * Calls a task with a permit of its region, waiting for one.
+     *
+     * @param task the task.
+     * @param <T>  the type of the result.
+     * @return the result.
+     * @throws Exception if the task fails, or is interrupted while waiting.
+     */
+    private <T> T callWithPermit(final FanOutTask<T> task) throws Exception {
+        final Semaphore permits = regionPermits.computeIfAbsent(task.region(),
+                region -> new Semaphore(config.getMaxConcurrencyPerRegion()));
+        permits.acquire();
+        try {
+            return task.call().call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Waits for the threads to end, up to the deadline. An interrupt is kept for after the wait.
+     *
+     * @param threads  the threads.
+     * @param deadline the deadline, in {@link System#nanoTime()}.
+     */
+    private static void joinAll(final List<Thread> threads, final long deadline) {
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    //Stuck in a call that ignores interrupts, like a socket read: it ends on its own, without us.
+                    log.debug("The fan-out thread {} is still running after the timeout.", thread);
+                    break;
+                }
+                try {
+                    thread.join(Duration.ofNanos(remaining));
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the result of a task, up to the deadline, cancelling it on timeout.
+     *
+     * @param task     the task.
+     * @param future   the future of the task.
+     * @param deadline the deadline, in {@link System#nanoTime()}.
+     * @param <T>      the type of the result.
+     * @return the result of the task, or its failure.
+     */
+    private static <T> TargetResult<T> await(final FanOutTask<T> task, final Future<T> future, final long deadline) {
+        try {
+            final T value = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return TargetResult.success(task.region(), task.target(), value);
+        } catch (ExecutionException e) {
+            log.error("{} in {} failed: {}", task.target(), task.region(), e.getCause().getMessage());
+            return TargetResult.failure(task.region(), task.target(), e.getCause());
+        } catch (TimeoutException | CancellationException e) {
+            future.cancel(true);
+            log.error("{} in {} timed out.", task.target(), task.region());
+            return TargetResult.failure(task.region(), task.target(), new TimeoutException(MESSAGE_FAN_OUT_TIMED_OUT));
+        } catch (InterruptedException e) {
+            //Keep the interrupt, the remaining tasks are cancelled as they time out right away.
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return TargetResult.failure(task.region(), task.target(), e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.concurrent.Callable;
+
+/**
+ * FanOutTask: one unit of work of a {@link FanOutExecutor}, against one target of one region.
+ *
+ * @param region the region the task calls, used for the per-region concurrency cap.
+ * @param target the target of the task (an instance or security group id), used in the results.
+ * @param call   the work.
+ * @param <T>    the result type.
+ */
+public record FanOutTask<T>(Region region, String target, Callable<T> call) {
+
+    /**
+     * Creates a task.
+     */
+    public FanOutTask {
+        Validate.notNull(region, "region cannot be null.");
+        Validate.notBlank(target, "target cannot be null or blank.");
+        Validate.notNull(call, "call cannot be null.");
+    }
+}
@@ -0,0 +1,15 @@
+package me.adriandeleon;
+
+/**
+ * The HTTP client implementation used by the EC2 clients.
+ */
+public enum HttpClientType {
+    /**
+     * Apache HTTP client, a pooled client that keeps connections alive. Best for long-running processes.
+     */
+    APACHE,
+    /**
+     * JDK HttpURLConnection based client. Loads fewer classes, best for short-lived processes.
+     */
+    URL_CONNECTION
+}
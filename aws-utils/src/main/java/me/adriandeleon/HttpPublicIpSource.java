@@ -0,0 +1,58 @@
+package me.adriandeleon;
+
+import kong.unirest.HttpResponse;
+import kong.unirest.UnirestInstance;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HttpPublicIpSource: an HTTP endpoint that answers with our IP in plain text, like checkip.amazonaws.com.
+ */
+final class HttpPublicIpSource implements PublicIpSource {
+
+    /**
+     * The HTTP client.
+     */
+    private final UnirestInstance unirest;
+    /**
+     * The endpoint.
+     */
+    private final URI endpoint;
+
+    /**
+     * Creates a source.
+     *
+     * @param unirest  the HTTP client.
+     * @param endpoint the endpoint.
+     */
+    HttpPublicIpSource(final UnirestInstance unirest, final URI endpoint) {
+        this.unirest = unirest;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public CompletableFuture<String> resolve() {
+        return unirest.get(endpoint.toString()).asStringAsync()
+                .thenApply(response -> body(response, endpoint));
+    }
+
+    /**
+     * Gets the body of a successful response.
+     *
+     * @param response the response.
+     * @param endpoint the endpoint, for the error message.
+     * @return the body.
+     */
+    static String body(final HttpResponse<String> response, final URI endpoint) {
+        if (!response.isSuccess()) {
+            throw new IllegalStateException(endpoint + " answered with status " + response.getStatus());
+        }
+        return response.getBody();
+    }
+
+    @Override
+    public String toString() {
+        return endpoint.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package me.adriandeleon;
+
+import kong.unirest.UnirestInstance;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ImdsPublicIpSource: the EC2 instance metadata service (IMDSv2), for the public IP of the instance we run on.
+ * <p>
+ * IMDSv2 needs a session token, taken with a PUT before reading the metadata.
+ */
+final class ImdsPublicIpSource implements PublicIpSource {
+
+    /**
+     * The constant TOKEN_PATH.
+     */
+    static final String TOKEN_PATH = "/latest/api/token";
+    /**
+     * The constant PUBLIC_IPV4_PATH.
+     */
+    static final String PUBLIC_IPV4_PATH = "/latest/meta-data/public-ipv4";
+    /**
+     * The constant HEADER_TOKEN.
+     */
+    static final String HEADER_TOKEN = "X-aws-ec2-metadata-token";
+    /**
+     * The constant HEADER_TOKEN_TTL.
+     */
+    static final String HEADER_TOKEN_TTL = "X-aws-ec2-metadata-token-ttl-seconds";
+    /**
+     * The constant TOKEN_TTL_SECONDS.
+     */
+    private static final String TOKEN_TTL_SECONDS = "60";
+
+    /**
+     * The HTTP client.
+     */
+    private final UnirestInstance unirest;
+    /**
+     * The endpoint of the metadata service.
+     */
+    private final URI endpoint;
+
+    /**
+     * Creates a source.
+     *
+     * @param unirest  the HTTP client.
+     * @param endpoint the endpoint of the metadata service.
+     */
+    ImdsPublicIpSource(final UnirestInstance unirest, final URI endpoint) {
+        this.unirest = unirest;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public CompletableFuture<String> resolve() {
+        final URI tokenUri = endpoint.resolve(TOKEN_PATH);
+        final URI publicIpUri = endpoint.resolve(PUBLIC_IPV4_PATH);
+
+        return unirest.put(tokenUri.toString())
+                .header(HEADER_TOKEN_TTL, TOKEN_TTL_SECONDS)
+                .asStringAsync()
+                .thenApply(response -> HttpPublicIpSource.body(response, tokenUri))
+                .thenCompose(token -> unirest.get(publicIpUri.toString())
+                        .header(HEADER_TOKEN, token)
+                        .asStringAsync())
+                .thenApply(response -> HttpPublicIpSource.body(response, publicIpUri));
+    }
+
+    @Override
+    public String toString() {
+        return endpoint.toString();
+    }
+}
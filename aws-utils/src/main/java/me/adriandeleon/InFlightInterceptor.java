@@ -0,0 +1,65 @@
+package me.adriandeleon;
+
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+/**
+ * InFlightInterceptor: counts the calls in flight on the clients of an {@link Ec2ClientProvider}, so a retired provider
+ * is closed only once its calls are done.
+ * <p>
+ * It must be the last interceptor of the client: the SDK reports a failure only to the calls that got past
+ * {@code beforeExecution}.
+ */
+final class InFlightInterceptor implements ExecutionInterceptor {
+
+    /**
+     * The constant IN_FLIGHT, set while the call is counted.
+     */
+    private static final ExecutionAttribute<Boolean> IN_FLIGHT = new ExecutionAttribute<>("InFlight");
+
+    /**
+     * The provider of the client.
+     */
+    private final Ec2ClientProvider provider;
+
+    /**
+     * Creates a new interceptor.
+     *
+     * @param provider the provider of the client.
+     */
+    InFlightInterceptor(final Ec2ClientProvider provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public void beforeExecution(final Context.BeforeExecution context, final ExecutionAttributes executionAttributes) {
+        provider.beginCall();
+        executionAttributes.putAttribute(IN_FLIGHT, true);
+    }
+
+    @Override
+    public void afterExecution(final Context.AfterExecution context, final ExecutionAttributes executionAttributes) {
+        endCall(executionAttributes);
+    }
+
+    @Override
+    public void onExecutionFailure(final Context.FailedExecution context,
+                                   final ExecutionAttributes executionAttributes) {
+        endCall(executionAttributes);
+    }
+
+    /**
+     * Ends the call, if it is counted.
+     *
+     * @param executionAttributes the attributes of the call.
+     */
+    private void endCall(final ExecutionAttributes executionAttributes) {
+        //A failure in afterExecution is reported again, the call ends only once.
+        if (Boolean.TRUE.equals(executionAttributes.getAttribute(IN_FLIGHT))) {
+            executionAttributes.putAttribute(IN_FLIGHT, false);
+            provider.endCall();
+        }
+    }
+}
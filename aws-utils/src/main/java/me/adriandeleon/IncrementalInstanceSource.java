@@ -0,0 +1,80 @@
+package me.adriandeleon;
+
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * IncrementalInstanceSource: an {@link InstanceSource} that also lists a cheap {@link Signature} of every instance and
+ * describes instances by id, so an {@link InstanceCatalog} only describes again the instances whose signature changed.
+ */
+public interface IncrementalInstanceSource extends InstanceSource {
+
+    /**
+     * Gets the signature of every instance of the account, by instance id.
+     *
+     * @return the signatures.
+     */
+    Map<String, Signature> describeSignatures();
+
+    /**
+     * Describes some instances, the unknown ones are skipped.
+     *
+     * @param instanceIds the instance ids.
+     * @return the instances.
+     */
+    Iterable<Instance> describe(Collection<String> instanceIds);
+
+    /**
+     * The part of an instance that is cheap to list for the whole account. An instance whose signature did not change
+     * is assumed unchanged, so the signature has every field the lookups are served from: the state, the "Name" tag,
+     * the public IP (an Elastic IP can be associated at any time) and the security groups.
+     *
+     * @param state            the state name, like "running".
+     * @param name             the "Name" tag, or null.
+     * @param publicIp         the public IPv4 address, or null.
+     * @param securityGroupIds the security group ids.
+     */
+    record Signature(String state, String name, String publicIp, Set<String> securityGroupIds) {
+
+        /**
+         * Creates a signature.
+         *
+         * @param state            the state name, like "running".
+         * @param name             the "Name" tag, or null.
+         * @param publicIp         the public IPv4 address, or null.
+         * @param securityGroupIds the security group ids.
+         */
+        public Signature {
+            securityGroupIds = Set.copyOf(securityGroupIds);
+        }
+
+        /**
+         * Gets the signature of an instance of an inventory.
+         *
+         * @param inventory the inventory.
+         * @param position  the position of the instance.
+         * @return the signature.
+         */
+        public static Signature of(final CompactInventory inventory, final int position) {
+            return new Signature(inventory.state(position), inventory.name(position),
+                    inventory.publicIpAddress(position), Set.copyOf(inventory.securityGroupIds(position)));
+        }
+
+        /**
+         * Gets the signature of an instance.
+         *
+         * @param instance the instance.
+         * @return the signature.
+         */
+        public static Signature of(final Instance instance) {
+            return new Signature(instance.state() == null ? null : instance.state().nameAsString(),
+                    InstanceSnapshot.getName(instance).orElse(null), instance.publicIpAddress(),
+                    instance.securityGroups().stream().map(GroupIdentifier::groupId).collect(Collectors.toSet()));
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InstanceCatalog: a cache of the EC2 instances of an account.
+ * <p>
+ * The instances are loaded once into an immutable {@link InstanceSnapshot}, so repeated lookups by instance id,
+ * Name tag or security group are memory reads instead of EC2 requests. The snapshot is loaded again when it is
+ * older than the TTL, or after {@link #invalidate()}.
+ * <p>
+ * With a snapshot file ({@link InstanceCatalogConfig#snapshotFile}), every loaded snapshot is saved, and the first
+ * lookup of a new catalog starts with the saved one: a fresh snapshot is used as it is, an older one is used while it
+ * is loaded again from EC2 in the background. A file saved for another account, region or endpoint (see
+ * {@link InstanceSource#identity()}) is not used.
+ * <p>
+ * With an {@link IncrementalInstanceSource}, the instances are only loaded in full the first time and every
+ * {@link InstanceCatalogConfig#fullSyncInterval}. In between, a sync lists the signatures of the instances and
+ * describes again only the new and changed ones, the others are copied from the previous snapshot. An old snapshot
+ * is then used while the sync runs in the background: the lookups never wait, the sync builds a new snapshot and
+ * swaps it in.
+ */
+@Log4j2
+public final class InstanceCatalog {
+
+    /**
+     * The catalog configuration.
+     */
+    @Getter
+    private final InstanceCatalogConfig config;
+    /**
+     * Where the instances are read from.
+     */
+    private final InstanceSource source;
+    /**
+     * The clock of the snapshot ages.
+     */
+    private final Clock clock;
+
+    /**
+     * The lookups answered by a cached snapshot.
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * The lookups that had to load the instances.
+     */
+    private final LongAdder misses = new LongAdder();
+    /**
+     * The snapshots loaded.
+     */
+    private final LongAdder loads = new LongAdder();
+    /**
+     * The explicit invalidations.
+     */
+    private final LongAdder invalidations = new LongAdder();
+    /**
+     * Bumped by every invalidation, a load that overlaps an invalidation is not kept.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The snapshot of the lookups, null until loaded and after an invalidation.
+     */
+    private volatile InstanceSnapshot snapshot;
+    /**
+     * Set when the account has more instances than the catalog can hold, to avoid loading it on every lookup.
+     */
+    private volatile Instant oversizedAt;
+    /**
+     * The snapshot file is read once, by the first lookup.
+     */
+    private volatile boolean restored;
+    /**
+     * Set while a snapshot is loaded again in the background, the old one is used meanwhile.
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    /**
+     * The last loaded snapshot, kept by the invalidations: the next sync compares the instances with it.
+     */
+    private InstanceSnapshot latest;
+    /**
+     * When the instances were last loaded in full, see {@link InstanceCatalogConfig#fullSyncInterval}.
+     */
+    private Instant fullLoadAt;
+    /**
+     * The files are written outside the load lock, one at a time, so an older snapshot never replaces a newer one.
+     */
+    private final Object saveLock = new Object();
+    /**
+     * The snapshot of the file, the last one written or read.
+     */
+    private InstanceSnapshot saved;
+
+    /**
+     * Creates a catalog.
+     *
+     * @param config the catalog configuration.
+     * @param source where the instances are read from.
+     */
+    public InstanceCatalog(final InstanceCatalogConfig config, final InstanceSource source) {
+        this(config, source, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a catalog with a clock, for the tests.
+     *
+     * @param config the catalog configuration.
+     * @param source where the instances are read from.
+     * @param clock  the clock of the snapshot ages.
+     */
+    InstanceCatalog(final InstanceCatalogConfig config, final InstanceSource source, final Clock clock) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.notNull(source, "source cannot be null.");
+        Validate.notNull(clock, "clock cannot be null.");
+
+        this.config = config;
+        this.source = source;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets a fresh snapshot of the instances, loading it if needed.
+     *
+     * @return an Optional with the snapshot, empty if the catalog is disabled or the account is too big to cache.
+     */
+    public Optional<InstanceSnapshot> getSnapshot() {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        if (!restored) {
+            restore();
+        }
+
+        final InstanceSnapshot current = snapshot;
+        if (current != null && (isFresh(current.getLoadedAt()) || refreshing.get())) {
+            hits.increment();
+            Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_INSTANCE_CATALOG, true);
+            return Optional.of(current);
+        }
+        if (current != null && source instanceof IncrementalInstanceSource) {
+            refreshInBackground();
+            hits.increment();
+            Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_INSTANCE_CATALOG, true);
+            return Optional.of(current);
+        }
+        if (oversizedAt != null && isFresh(oversizedAt)) {
+            return Optional.empty();
+        }
+
+        misses.increment();
+        Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_INSTANCE_CATALOG, false);
+        return Optional.ofNullable(load());
+    }
+
+    /**
+     * Drops the current snapshot, the next lookup loads the instances again.
+     */
+    public void invalidate() {
+        invalidations.increment();
+        generation.incrementAndGet();
+        snapshot = null;
+        oversizedAt = null;
+    }
+
+    /**
+     * Gets the hit/miss counters of the catalog.
+     *
+     * @return the counters.
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), invalidations.sum());
+    }
+
+    /**
+     * Loads a snapshot, then saves it to the snapshot file if it is still the current one.
+     *
+     * @return the snapshot, or null if the account has too many instances.
+     */
+    private InstanceSnapshot load() {
+        final InstanceSnapshot loaded = loadSnapshot();
+        //The lookups waiting for the snapshot do not wait for the file too.
+        if (loaded != null && loaded == snapshot) {
+            save(loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads a snapshot, with a sync of the previous one when possible, unless another thread just loaded one.
+     *
+     * @return the snapshot, or null if the account has too many instances.
+     */
+    private synchronized InstanceSnapshot loadSnapshot() {
+        //Another thread may have loaded it while we waited for the lock.
+        final InstanceSnapshot current = snapshot;
+        if (current != null && isFresh(current.getLoadedAt())) {
+            return current;
+        }
+
+        final long loadGeneration = generation.get();
+        final Instant loadedAt = clock.instant();
+        CompactInventory inventory = source instanceof IncrementalInstanceSource incremental && canSync(loadedAt)
+                ? sync(incremental, latest.getInventory()) : null;
+        if (inventory == null) {
+            inventory = loadAll();
+            if (inventory == null) {
+                log.warn("The account has more than {} instances, the instance catalog is not used.",
+                        config.getMaxInstances());
+                if (loadGeneration == generation.get()) {
+                    snapshot = null;
+                    oversizedAt = loadedAt;
+                }
+                return null;
+            }
+            fullLoadAt = loadedAt;
+        }
+        loads.increment();
+
+        final InstanceSnapshot loaded = new InstanceSnapshot(inventory, loadedAt);
+        latest = loaded;
+        if (loadGeneration == generation.get()) {
+            snapshot = loaded;
+            oversizedAt = null;
+        }
+        return loaded;
+    }
+
+    /**
+     * Checks if the next load can be a sync of the latest snapshot.
+     *
+     * @param now the time of the load.
+     * @return true if there is a latest snapshot and a full load is not due.
+     */
+    private boolean canSync(final Instant now) {
+        return latest != null && fullLoadAt != null
+                && now.isBefore(fullLoadAt.plus(config.getFullSyncInterval()));
+    }
+
+    /**
+     * Loads all the instances of the source.
+     *
+     * @return the inventory, or null if there are more than {@link InstanceCatalogConfig#maxInstances}.
+     */
+    private CompactInventory loadAll() {
+        //The instances are copied into the compact columns as the pages are read, the SDK objects are not kept.
+        final CompactInventory.Builder inventory = CompactInventory.builder();
+        for (Instance instance : source.describeAll()) {
+            if (inventory.size() == config.getMaxInstances()) {
+                return null;
+            }
+            inventory.add(instance);
+        }
+        return inventory.build();
+    }
+
+    /**
+     * Builds a new inventory from the previous one, describing only the instances whose signature changed.
+     *
+     * @param incremental the source.
+     * @param previous    the previous inventory, it is not modified.
+     * @return the new inventory, or null if most instances changed and they should all be loaded.
+     */
+    private CompactInventory sync(final IncrementalInstanceSource incremental, final CompactInventory previous) {
+        final Map<String, IncrementalInstanceSource.Signature> signatures = incremental.describeSignatures();
+        final BitSet unchanged = new BitSet(previous.size());
+        final List<String> changed = new ArrayList<>();
+        signatures.forEach((instanceId, signature) -> {
+            final int position = previous.indexOf(instanceId);
+            if (position != CompactInventory.NOT_FOUND
+                    && signature.equals(IncrementalInstanceSource.Signature.of(previous, position))) {
+                unchanged.set(position);
+            } else {
+                changed.add(instanceId);
+            }
+        });
+        if (changed.size() > signatures.size() / 2 || signatures.size() > config.getMaxInstances()) {
+            return null;
+        }
+        log.debug("Instance catalog sync: {} changed, {} removed.", changed.size(),
+                previous.size() - unchanged.cardinality());
+        if (changed.isEmpty() && unchanged.cardinality() == previous.size()) {
+            return previous;
+        }
+
+        final CompactInventory.Builder inventory = CompactInventory.builder();
+        unchanged.stream().forEach(position -> inventory.add(previous, position));
+        for (Instance instance : incremental.describe(changed)) {
+            inventory.add(instance);
+        }
+        return inventory.build();
+    }
+
+    /**
+     * Reads the snapshot file, once. An old snapshot is used while a new one is loaded in the background.
+     */
+    private synchronized void restore() {
+        if (restored) {
+            return;
+        }
+        restored = true;
+        final Path file = config.getSnapshotFile();
+        if (file == null) {
+            return;
+        }
+
+        final InstanceSnapshot restoredSnapshot;
+        try {
+            restoredSnapshot = InventorySnapshotFile.read(file, source.identity()).orElse(null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("The instance snapshot file {} cannot be read, the instances are loaded from EC2: {}", file,
+                    e.getMessage());
+            return;
+        }
+        if (restoredSnapshot == null || restoredSnapshot.size() > config.getMaxInstances()
+                || !clock.instant().isBefore(restoredSnapshot.getLoadedAt().plus(config.getSnapshotFileMaxAge()))) {
+            return;
+        }
+
+        snapshot = restoredSnapshot;
+        latest = restoredSnapshot;
+        fullLoadAt = restoredSnapshot.getLoadedAt();
+        synchronized (saveLock) {
+            saved = restoredSnapshot;
+        }
+        if (!isFresh(restoredSnapshot.getLoadedAt())) {
+            refreshInBackground();
+        }
+    }
+
+    /**
+     * Loads a new snapshot on a virtual thread, unless one is already being loaded.
+     */
+    private void refreshInBackground() {
+        if (refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("instance-catalog-refresh").start(this::refresh);
+        }
+    }
+
+    /**
+     * Loads a new snapshot, logging the failures.
+     */
+    private void refresh() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            log.warn("The instances cannot be loaded from EC2: {}", e.getMessage());
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Writes a snapshot to the snapshot file, unless it is already saved or older than the saved one.
+     *
+     * @param loaded the snapshot.
+     */
+    private void save(final InstanceSnapshot loaded) {
+        final Path file = config.getSnapshotFile();
+        if (file == null) {
+            return;
+        }
+        synchronized (saveLock) {
+            if (saved != null && (saved == loaded || loaded.getLoadedAt().isBefore(saved.getLoadedAt()))) {
+                return;
+            }
+            try {
+                InventorySnapshotFile.write(file, loaded, source.identity());
+                saved = loaded;
+            } catch (IOException | RuntimeException e) {
+                log.warn("The instance snapshot file {} cannot be written: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks if a snapshot loaded at this time is still within the TTL.
+     *
+     * @param instant when the snapshot was loaded.
+     * @return true if fresh.
+     */
+    private boolean isFresh(final Instant instant) {
+        return clock.instant().isBefore(instant.plus(config.getTtl()));
+    }
+
+    /**
+     * The counters of an instance catalog.
+     *
+     * @param hits          lookups answered by a cached snapshot.
+     * @param misses        lookups that had to load the instances.
+     * @param loads         snapshots loaded.
+     * @param invalidations explicit invalidations.
+     */
+    public record Stats(long hits, long misses, long loads, long invalidations) {
+
+        /**
+         * Gets the ratio of lookups answered by a cached snapshot.
+         *
+         * @return the hit ratio, between 0 and 1.
+         */
+        public double hitRatio() {
+            final long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
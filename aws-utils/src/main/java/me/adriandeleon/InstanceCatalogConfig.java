@@ -0,0 +1,86 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * InstanceCatalogConfig: the settings of an {@link InstanceCatalog}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class InstanceCatalogConfig {
+
+    /**
+     * Enables or disables the catalog. A disabled catalog (the default) never caches, every lookup goes to EC2. The
+     * first lookup of an enabled catalog describes all the instances of the account, enable it in long-lived processes
+     * or with a {@link #snapshotFile}.
+     */
+    @Builder.Default
+    boolean enabled = false;
+
+    /**
+     * How long a snapshot of the instances is used before loading it again.
+     */
+    @Builder.Default
+    Duration ttl = Duration.ofSeconds(30);
+
+    /**
+     * The maximum number of instances kept in a snapshot. Bigger accounts are not cached, and the lookups use
+     * filtered EC2 requests instead. A snapshot takes tens of bytes per instance plus its distinct strings, see
+     * {@link CompactInventory}.
+     */
+    @Builder.Default
+    int maxInstances = 100_000;
+
+    /**
+     * How often all the instances are loaded, with an {@link IncrementalInstanceSource}. The syncs in between only see
+     * the changes of state, "Name" tag, public IP and security groups, the full loads also catch the other changes
+     * (other tags, type, private IP).
+     */
+    @Builder.Default
+    Duration fullSyncInterval = Duration.ofMinutes(10);
+
+    /**
+     * The file where every loaded snapshot is saved, and where a new catalog reads its first snapshot from, see
+     * {@link InventorySnapshotFile}. Null (the default) keeps the snapshots in memory only. Use one file per account
+     * and region, a file saved for another one is not used.
+     */
+    Path snapshotFile;
+
+    /**
+     * How old the snapshot of the file can be to be used. A snapshot older than the TTL but younger than this is used
+     * while it is loaded again from EC2 in the background.
+     */
+    @Builder.Default
+    Duration snapshotFileMaxAge = Duration.ofHours(1);
+
+    /**
+     * Gets the default configuration, the catalog is disabled.
+     *
+     * @return the default configuration.
+     */
+    public static InstanceCatalogConfig defaults() {
+        return InstanceCatalogConfig.builder().build();
+    }
+
+    /**
+     * Gets a configuration that enables the catalog, with the default settings.
+     *
+     * @return the enabled configuration.
+     */
+    public static InstanceCatalogConfig enabled() {
+        return InstanceCatalogConfig.builder().enabled(true).build();
+    }
+
+    /**
+     * Gets a configuration that disables the catalog.
+     *
+     * @return the disabled configuration.
+     */
+    public static InstanceCatalogConfig disabled() {
+        return InstanceCatalogConfig.builder().enabled(false).build();
+    }
+}
@@ -0,0 +1,74 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * InstanceLookup: the result of a lookup of many instances, the values of the instances found and the ids of the
+ * ones that were not.
+ *
+ * @param values     the values by instance id, in the order of the ids asked.
+ * @param missingIds the ids without a value.
+ * @param <T>        the value type.
+ */
+public record InstanceLookup<T>(Map<String, T> values, Set<String> missingIds) {
+
+    /**
+     * Creates a lookup result.
+     */
+    public InstanceLookup {
+        Validate.notNull(values, "values cannot be null.");
+        Validate.notNull(missingIds, "missingIds cannot be null.");
+        values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        missingIds = Collections.unmodifiableSet(new LinkedHashSet<>(missingIds));
+    }
+
+    /**
+     * Gets the value of an instance.
+     *
+     * @param instanceId the instance id.
+     * @return an Optional with the value, empty if the instance is missing.
+     */
+    public Optional<T> get(final String instanceId) {
+        return Optional.ofNullable(values.get(instanceId));
+    }
+
+    /**
+     * Checks if every instance asked has a value.
+     *
+     * @return true if no instance is missing.
+     */
+    public boolean isComplete() {
+        return missingIds.isEmpty();
+    }
+
+    /**
+     * Maps the values. The instances without a mapped value (the mapper returns null) become missing.
+     *
+     * @param mapper the mapper.
+     * @param <R>    the new value type.
+     * @return the mapped lookup result.
+     */
+    public <R> InstanceLookup<R> map(final Function<T, R> mapper) {
+        Validate.notNull(mapper, "mapper cannot be null.");
+
+        final Map<String, R> mapped = new LinkedHashMap<>();
+        final Set<String> missing = new LinkedHashSet<>(missingIds);
+        values.forEach((instanceId, value) -> {
+            final R result = mapper.apply(value);
+            if (result == null) {
+                missing.add(instanceId);
+            } else {
+                mapped.put(instanceId, result);
+            }
+        });
+        return new InstanceLookup<>(mapped, missing);
+    }
+}
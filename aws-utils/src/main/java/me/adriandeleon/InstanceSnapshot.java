@@ -0,0 +1,205 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * InstanceSnapshot: an immutable copy of the EC2 instances of an account, indexed by instance id, Name tag and
+ * security group id.
+ * <p>
+ * The instances are kept in a {@link CompactInventory}, the lookups rebuild the SDK instances they return.
+ */
+public final class InstanceSnapshot {
+
+    /**
+     * The constant TAG_KEY_NAME.
+     */
+    public static final String TAG_KEY_NAME = "Name";
+
+    /**
+     * When the instances were loaded.
+     */
+    @Getter
+    private final Instant loadedAt;
+    /**
+     * The instances.
+     */
+    @Getter
+    private final CompactInventory inventory;
+    /**
+     * The distinct names, sorted by the first prefix lookup.
+     */
+    private volatile String[] sortedNames;
+
+    /**
+     * Creates a snapshot and builds its indexes.
+     *
+     * @param instances the instances.
+     * @param loadedAt  when the instances were loaded.
+     */
+    public InstanceSnapshot(final Collection<Instance> instances, final Instant loadedAt) {
+        this(CompactInventory.of(Validate.notNull(instances, "instances cannot be null.")), loadedAt);
+    }
+
+    /**
+     * Creates a snapshot of an inventory.
+     *
+     * @param inventory the inventory.
+     * @param loadedAt  when the instances were loaded.
+     */
+    public InstanceSnapshot(final CompactInventory inventory, final Instant loadedAt) {
+        Validate.notNull(inventory, "inventory cannot be null.");
+        Validate.notNull(loadedAt, "loadedAt cannot be null.");
+
+        this.loadedAt = loadedAt;
+        this.inventory = inventory;
+    }
+
+    /**
+     * Gets the value of the "Name" tag of an instance.
+     *
+     * @param instance the instance.
+     * @return an Optional with the name.
+     */
+    public static Optional<String> getName(final Instance instance) {
+        for (Tag tag : instance.tags()) {
+            if (TAG_KEY_NAME.equals(tag.key())) {
+                return Optional.ofNullable(tag.value());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the number of instances.
+     *
+     * @return the number of instances.
+     */
+    public int size() {
+        return inventory.size();
+    }
+
+    /**
+     * Gets all the instances. Every instance is rebuilt, prefer the lookups.
+     *
+     * @return the instances.
+     */
+    public List<Instance> getInstances() {
+        final List<Instance> instances = new ArrayList<>(inventory.size());
+        for (int position = 0; position < inventory.size(); position++) {
+            instances.add(inventory.toInstance(position));
+        }
+        return List.copyOf(instances);
+    }
+
+    /**
+     * Finds an instance by instance id.
+     *
+     * @param instanceId the instance id.
+     * @return an Optional with the instance.
+     */
+    public Optional<Instance> findById(final String instanceId) {
+        final int position = inventory.indexOf(instanceId);
+        return position == CompactInventory.NOT_FOUND ? Optional.empty() : Optional.of(inventory.toInstance(position));
+    }
+
+    /**
+     * Finds the instances with this exact "Name" tag.
+     *
+     * @param name the name.
+     * @return the instances.
+     */
+    public List<Instance> findByName(final String name) {
+        final List<Instance> found = new ArrayList<>();
+        inventory.forEachByName(name, position -> found.add(inventory.toInstance(position)));
+        return List.copyOf(found);
+    }
+
+    /**
+     * Finds the instances whose "Name" tag starts with a prefix.
+     *
+     * @param prefix the name prefix.
+     * @return the instances.
+     */
+    public List<Instance> findByNamePrefix(final String prefix) {
+        String[] names = sortedNames;
+        if (names == null) {
+            names = inventory.sortedNames();
+            sortedNames = names;
+        }
+
+        final List<Instance> found = new ArrayList<>();
+        final int insertionPoint = Arrays.binarySearch(names, prefix);
+        for (int index = insertionPoint < 0 ? -insertionPoint - 1 : insertionPoint;
+             index < names.length && names[index].startsWith(prefix); index++) {
+            inventory.forEachByName(names[index], position -> found.add(inventory.toInstance(position)));
+        }
+        return List.copyOf(found);
+    }
+
+    /**
+     * Finds the instances whose "Name" tag contains a text, in the order EC2 returned them.
+     *
+     * @param text the text.
+     * @return the instances.
+     */
+    public List<Instance> findByNameContaining(final String text) {
+        final List<Instance> found = new ArrayList<>();
+        for (int position = 0; position < inventory.size(); position++) {
+            if (nameContains(position, text)) {
+                found.add(inventory.toInstance(position));
+            }
+        }
+        return List.copyOf(found);
+    }
+
+    /**
+     * Finds the ids of the instances whose "Name" tag contains a text, in the order EC2 returned them. Unlike
+     * {@link #findByNameContaining(String)}, the instances are not rebuilt.
+     *
+     * @param text the text.
+     * @return the instance ids.
+     */
+    public List<String> findIdsByNameContaining(final String text) {
+        final List<String> found = new ArrayList<>();
+        for (int position = 0; position < inventory.size(); position++) {
+            if (nameContains(position, text)) {
+                found.add(inventory.instanceId(position));
+            }
+        }
+        return List.copyOf(found);
+    }
+
+    /**
+     * Finds the instances attached to a security group.
+     *
+     * @param groupId the security group id.
+     * @return the instances.
+     */
+    public List<Instance> findBySecurityGroup(final String groupId) {
+        final List<Instance> found = new ArrayList<>();
+        inventory.forEachBySecurityGroup(groupId, position -> found.add(inventory.toInstance(position)));
+        return List.copyOf(found);
+    }
+
+    /**
+     * Checks if the Name tag of an instance contains a text.
+     *
+     * @param position the position of the instance.
+     * @param text     the text.
+     * @return true if the instance has a Name tag with the text.
+     */
+    private boolean nameContains(final int position, final String text) {
+        final String name = inventory.name(position);
+        return name != null && name.contains(text);
+    }
+}
@@ -0,0 +1,32 @@
+package me.adriandeleon;
+
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+/**
+ * InstanceSource: where an {@link InstanceCatalog} reads the instances of an account from.
+ * <p>
+ * Every source can describe all the instances. An {@link IncrementalInstanceSource} also lists a cheap signature of
+ * every instance and describes instances by id, so the catalog only describes again the instances whose signature
+ * changed.
+ */
+@FunctionalInterface
+public interface InstanceSource {
+
+    /**
+     * Describes all the instances of the account. The instances are read lazily, and only up to the maximum size of
+     * the catalog.
+     *
+     * @return the instances.
+     */
+    Iterable<Instance> describeAll();
+
+    /**
+     * Gets the identity of the account the instances come from, like its region and endpoint. A snapshot file written
+     * for another identity is not used, see {@link InventorySnapshotFile}.
+     *
+     * @return the identity, empty by default.
+     */
+    default String identity() {
+        return "";
+    }
+}
@@ -0,0 +1,189 @@
+package me.adriandeleon;
+
+import lombok.experimental.UtilityClass;
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * InventorySnapshotFile: an {@link InstanceSnapshot} saved in a binary file, so a new JVM can start with the
+ * instances of the previous one instead of reading them all from EC2.
+ * <p>
+ * The file is a header (magic number, format version, load time, identity of the account), the columns of the
+ * {@link CompactInventory} and a CRC32C of everything before it. The identity (see {@link InstanceSource#identity()})
+ * tells which account, region and endpoint the instances come from, a file of another one is rejected. It is written
+ * to a temporary file of the same directory and moved over the old one atomically, so concurrent processes read either
+ * the old or the new file, never a partial one, and the last writer wins. It is read by memory-mapping it and copying
+ * the columns in bulk; the indexes are built again.
+ */
+@UtilityClass
+public class InventorySnapshotFile {
+
+    /**
+     * The constant MAGIC.
+     */
+    public static final int MAGIC = 0x41575349;
+
+    /**
+     * The constant VERSION.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The constant MESSAGE_INVALID_FILE.
+     */
+    public static final String MESSAGE_INVALID_FILE = "The file is not an instance snapshot: ";
+
+    /**
+     * The constant MESSAGE_CORRUPTED_FILE.
+     */
+    public static final String MESSAGE_CORRUPTED_FILE = "The instance snapshot is corrupted: ";
+
+    /**
+     * The constant MESSAGE_OTHER_IDENTITY.
+     */
+    public static final String MESSAGE_OTHER_IDENTITY = "The instance snapshot belongs to another account or region: ";
+
+    /**
+     * The constant MESSAGE_IDENTITY_CANNOT_BE_NULL.
+     */
+    private static final String MESSAGE_IDENTITY_CANNOT_BE_NULL = "identity cannot be null.";
+    /**
+     * The constant HEADER_BYTES: the magic number, the version and the load time.
+     */
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    /**
+     * The constant BUFFER_BYTES.
+     */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /**
+     * Writes a snapshot to a file, replacing it atomically.
+     *
+     * @param file     the file.
+     * @param snapshot the snapshot.
+     * @param identity the identity of the account the instances come from.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(final Path file, final InstanceSnapshot snapshot, final String identity)
+            throws IOException {
+        Validate.notNull(file, "file cannot be null.");
+        Validate.notNull(snapshot, "snapshot cannot be null.");
+        Validate.notNull(identity, MESSAGE_IDENTITY_CANNOT_BE_NULL);
+
+        final Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream fileOut = Files.newOutputStream(temporary, StandardOpenOption.WRITE)) {
+                final CRC32C checksum = new CRC32C();
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(fileOut, checksum), BUFFER_BYTES));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(snapshot.getLoadedAt().toEpochMilli());
+                final byte[] identityBytes = identity.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(identityBytes.length);
+                out.write(identityBytes);
+                snapshot.getInventory().writeTo(out);
+                //The buffered bytes go through the checksum first, the checksum itself is not part of it.
+                out.flush();
+                out.writeInt((int) checksum.getValue());
+                out.flush();
+            }
+            moveAtomically(temporary, file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param file     the file.
+     * @param identity the identity of the account the instances must come from.
+     * @return an Optional with the snapshot, empty if the file does not exist or was written by another format
+     * version.
+     * @throws IOException if the file cannot be read, is corrupted, or was written for another identity.
+     */
+    public static Optional<InstanceSnapshot> read(final Path file, final String identity) throws IOException {
+        Validate.notNull(file, "file cannot be null.");
+        Validate.notNull(identity, MESSAGE_IDENTITY_CANNOT_BE_NULL);
+
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //The mapping stays valid after the channel is closed, and after the file is replaced by a writer.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        if (buffer.limit() < HEADER_BYTES + Integer.BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(MESSAGE_INVALID_FILE + file);
+        }
+        if (buffer.getInt(Integer.BYTES) != VERSION) {
+            return Optional.empty();
+        }
+
+        final int checksumPosition = buffer.limit() - Integer.BYTES;
+        final CRC32C checksum = new CRC32C();
+        checksum.update(buffer.slice(0, checksumPosition));
+        if ((int) checksum.getValue() != buffer.getInt(checksumPosition)) {
+            throw new IOException(MESSAGE_CORRUPTED_FILE + file);
+        }
+
+        final ByteBuffer body;
+        try {
+            final byte[] identityBytes = new byte[buffer.getInt(HEADER_BYTES)];
+            buffer.get(HEADER_BYTES + Integer.BYTES, identityBytes);
+            if (!identity.equals(new String(identityBytes, StandardCharsets.UTF_8))) {
+                throw new IOException(MESSAGE_OTHER_IDENTITY + file);
+            }
+            final int bodyPosition = HEADER_BYTES + Integer.BYTES + identityBytes.length;
+            body = buffer.slice(bodyPosition, checksumPosition - bodyPosition);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException(MESSAGE_CORRUPTED_FILE + file, e);
+        }
+
+        try {
+            final Instant loadedAt = Instant.ofEpochMilli(buffer.getLong(Integer.BYTES + Integer.BYTES));
+            return Optional.of(new InstanceSnapshot(CompactInventory.readFrom(body), loadedAt));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(MESSAGE_CORRUPTED_FILE + file, e);
+        }
+    }
+
+    /**
+     * Moves a file, replacing the target atomically when the file system can.
+     *
+     * @param source the file.
+     * @param target the target.
+     * @throws IOException if the file cannot be moved.
+     */
+    private static void moveAtomically(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            //Some file systems cannot replace a file atomically, readers may then see it missing for a moment.
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
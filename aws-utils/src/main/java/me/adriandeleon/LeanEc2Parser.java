@@ -0,0 +1,435 @@
+package me.adriandeleon;
+
+import lombok.experimental.UtilityClass;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * LeanEc2Parser: a pull parser of the EC2 Query API responses that reads only the fields it is asked for.
+ * <p>
+ * The SDK unmarshalls every element of a DescribeInstances response into model objects: block device mappings,
+ * network interfaces, every tag. This parser walks the response as it is read from the connection, builds strings only
+ * for the fields of the projection, and skips every other element without building anything.
+ */
+@UtilityClass
+class LeanEc2Parser {
+
+    /**
+     * The constant XML_INPUT_FACTORY.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+    /**
+     * Parses a DescribeInstances response page.
+     *
+     * @param body   the response body.
+     * @param fields the fields to read, besides the instance ids.
+     * @return the instances of the page and its next token.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    static Page<LeanInstance> parseInstances(final InputStream body, final Set<LeanInstance.Field> fields)
+            throws XMLStreamException {
+        final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(body);
+        try {
+            final List<LeanInstance> instances = new ArrayList<>();
+            String nextToken = null;
+            nextChild(reader);
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "reservationSet" -> {
+                        while (nextChild(reader)) {
+                            parseReservation(reader, fields, instances);
+                        }
+                    }
+                    case "nextToken" -> nextToken = reader.getElementText();
+                    default -> skip(reader);
+                }
+            }
+            return new Page<>(instances, nextToken);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses a DescribeSecurityGroups response page into the ingress rules of its groups.
+     *
+     * @param body the response body.
+     * @return the rules of the page and its next token.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    static Page<SecurityGroupRule> parseSecurityGroupRules(final InputStream body) throws XMLStreamException {
+        final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(body);
+        try {
+            final List<SecurityGroupRule> rules = new ArrayList<>();
+            String nextToken = null;
+            nextChild(reader);
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "securityGroupInfo" -> {
+                        while (nextChild(reader)) {
+                            parseSecurityGroup(reader, rules);
+                        }
+                    }
+                    case "nextToken" -> nextToken = reader.getElementText();
+                    default -> skip(reader);
+                }
+            }
+            return new Page<>(rules, nextToken);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses an EC2 error response into the exception the SDK would throw.
+     *
+     * @param statusCode the HTTP status code.
+     * @param body       the response body.
+     * @return the exception.
+     */
+    static Ec2Exception parseError(final int statusCode, final InputStream body) {
+        String code = null;
+        String message = null;
+        String requestId = null;
+        try {
+            final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(body);
+            try {
+                //The error is small, every element of it is looked at.
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "Code" -> code = reader.getElementText();
+                            case "Message" -> message = reader.getElementText();
+                            case "RequestID", "RequestId" -> requestId = reader.getElementText();
+                            default -> {
+                                //A container, its children are read next.
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            message = "EC2 answered with status " + statusCode + " and an unreadable error: " + e.getMessage();
+        }
+
+        final String errorMessage = message == null ? "EC2 answered with status " + statusCode : message;
+        return (Ec2Exception) Ec2Exception.builder()
+                .statusCode(statusCode)
+                .requestId(requestId)
+                .message(errorMessage)
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .serviceName("Ec2")
+                        .errorCode(code)
+                        .errorMessage(errorMessage)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Parses the instances of a reservation.
+     *
+     * @param reader    the reader, on the start of the reservation.
+     * @param fields    the fields to read, besides the instance ids.
+     * @param instances filled with the instances.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static void parseReservation(final XMLStreamReader reader, final Set<LeanInstance.Field> fields,
+                                         final List<LeanInstance> instances) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if ("instancesSet".equals(reader.getLocalName())) {
+                while (nextChild(reader)) {
+                    instances.add(parseInstance(reader, fields));
+                }
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    /**
+     * Parses an instance.
+     *
+     * @param reader the reader, on the start of the instance.
+     * @param fields the fields to read, besides the instance id.
+     * @return the instance.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static LeanInstance parseInstance(final XMLStreamReader reader, final Set<LeanInstance.Field> fields)
+            throws XMLStreamException {
+        String instanceId = null;
+        String name = null;
+        String publicIp = null;
+        String state = null;
+        List<String> securityGroupIds = null;
+
+        //Only the direct children of the instance: the network interfaces also have a groupSet and a public IP.
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "instanceId" -> instanceId = reader.getElementText();
+                case "ipAddress" -> {
+                    if (fields.contains(LeanInstance.Field.PUBLIC_IP)) {
+                        publicIp = reader.getElementText();
+                    } else {
+                        skip(reader);
+                    }
+                }
+                case "instanceState" -> {
+                    if (fields.contains(LeanInstance.Field.STATE)) {
+                        state = childText(reader, "name");
+                    } else {
+                        skip(reader);
+                    }
+                }
+                case "tagSet" -> {
+                    if (fields.contains(LeanInstance.Field.NAME)) {
+                        name = parseNameTag(reader);
+                    } else {
+                        skip(reader);
+                    }
+                }
+                case "groupSet" -> {
+                    if (fields.contains(LeanInstance.Field.SECURITY_GROUPS)) {
+                        securityGroupIds = new ArrayList<>();
+                        while (nextChild(reader)) {
+                            final String groupId = childText(reader, "groupId");
+                            if (groupId != null) {
+                                securityGroupIds.add(groupId);
+                            }
+                        }
+                    } else {
+                        skip(reader);
+                    }
+                }
+                default -> skip(reader);
+            }
+        }
+        return new LeanInstance(instanceId, name, publicIp, state, securityGroupIds);
+    }
+
+    /**
+     * Parses the value of the "Name" tag of a tag set.
+     *
+     * @param reader the reader, on the start of the tag set.
+     * @return the value, or null if there is no "Name" tag.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static String parseNameTag(final XMLStreamReader reader) throws XMLStreamException {
+        String name = null;
+        while (nextChild(reader)) {
+            String key = null;
+            String value = null;
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "key" -> key = reader.getElementText();
+                    case "value" -> value = reader.getElementText();
+                    default -> skip(reader);
+                }
+            }
+            if (InstanceSnapshot.TAG_KEY_NAME.equals(key)) {
+                name = value;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Parses the ingress rules of a security group.
+     *
+     * @param reader the reader, on the start of the security group.
+     * @param rules  filled with the rules.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static void parseSecurityGroup(final XMLStreamReader reader, final List<SecurityGroupRule> rules)
+            throws XMLStreamException {
+        String groupId = null;
+        final List<Range> ranges = new ArrayList<>();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "groupId" -> groupId = reader.getElementText();
+                //Only the ingress rules, the egress ones are in ipPermissionsEgress.
+                case "ipPermissions" -> {
+                    while (nextChild(reader)) {
+                        parseIpPermission(reader, ranges);
+                    }
+                }
+                default -> skip(reader);
+            }
+        }
+        //The group id may come after its rules.
+        for (Range range : ranges) {
+            rules.add(new SecurityGroupRule(groupId, range.protocol(), range.fromPort(), range.toPort(), range.cidr(),
+                    range.description()));
+        }
+    }
+
+    /**
+     * Parses the ranges of an ip permission.
+     *
+     * @param reader the reader, on the start of the ip permission.
+     * @param ranges filled with the ranges.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static void parseIpPermission(final XMLStreamReader reader, final List<Range> ranges)
+            throws XMLStreamException {
+        String protocol = null;
+        //EC2 leaves out the ports when the rule opens all of them.
+        int fromPort = SecurityGroupRule.ALL;
+        int toPort = SecurityGroupRule.ALL;
+        final List<Cidr> cidrs = new ArrayList<>();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "ipProtocol" -> protocol = reader.getElementText();
+                case "fromPort" -> fromPort = Integer.parseInt(reader.getElementText().trim());
+                case "toPort" -> toPort = Integer.parseInt(reader.getElementText().trim());
+                case "ipRanges" -> parseIpRanges(reader, "cidrIp", cidrs);
+                case "ipv6Ranges" -> parseIpRanges(reader, "cidrIpv6", cidrs);
+                default -> skip(reader);
+            }
+        }
+        for (Cidr cidr : cidrs) {
+            ranges.add(new Range(protocol, fromPort, toPort, cidr.cidr(), cidr.description()));
+        }
+    }
+
+    /**
+     * Parses the IPv4 or IPv6 ranges of an ip permission.
+     *
+     * @param reader      the reader, on the start of the ranges.
+     * @param cidrElement the name of the CIDR element, cidrIp or cidrIpv6.
+     * @param cidrs       filled with the CIDRs.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static void parseIpRanges(final XMLStreamReader reader, final String cidrElement,
+                                      final List<Cidr> cidrs) throws XMLStreamException {
+        while (nextChild(reader)) {
+            String cidr = null;
+            String description = null;
+            while (nextChild(reader)) {
+                final String element = reader.getLocalName();
+                if (cidrElement.equals(element)) {
+                    cidr = reader.getElementText();
+                } else if ("description".equals(element)) {
+                    description = reader.getElementText();
+                } else {
+                    skip(reader);
+                }
+            }
+            cidrs.add(new Cidr(cidr, description));
+        }
+    }
+
+    /**
+     * Reads the text of one child of the current element, skipping the others.
+     *
+     * @param reader  the reader, on the start of the element.
+     * @param element the name of the child.
+     * @return the text of the child, or null if there is none.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static String childText(final XMLStreamReader reader, final String element) throws XMLStreamException {
+        String text = null;
+        while (nextChild(reader)) {
+            if (element.equals(reader.getLocalName())) {
+                text = reader.getElementText();
+            } else {
+                skip(reader);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Moves to the start of the next child of the current element.
+     *
+     * @param reader the reader, on the start of the element or on the end of one of its children.
+     * @return true if the reader is on the start of a child, false if it is on the end of the element.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static boolean nextChild(final XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the current element and all its children, without building their text.
+     *
+     * @param reader the reader, on the start of the element. It ends on the end of the element.
+     * @throws XMLStreamException if the response is not valid XML.
+     */
+    private static void skip(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Creates the XML input factory: no DTD, no external entities and no namespaces.
+     *
+     * @return the factory.
+     */
+    private static XMLInputFactory newXmlInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        //The responses have no DTD nor entities, and the elements are matched by local name.
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return factory;
+    }
+
+    /**
+     * A page of a paged response.
+     *
+     * @param items     the items of the page.
+     * @param nextToken the token of the next page, null on the last one.
+     * @param <T>       the item type.
+     */
+    record Page<T>(List<T> items, String nextToken) {
+    }
+
+    /**
+     * A CIDR of an ip permission.
+     *
+     * @param protocol    the protocol.
+     * @param fromPort    the start of the port range.
+     * @param toPort      the end of the port range.
+     * @param cidr        the CIDR.
+     * @param description the description of the range.
+     */
+    private record Range(String protocol, int fromPort, int toPort, String cidr, String description) {
+    }
+
+    /**
+     * A CIDR and its description.
+     *
+     * @param cidr        the CIDR.
+     * @param description the description of the range.
+     */
+    private record Cidr(String cidr, String description) {
+    }
+}
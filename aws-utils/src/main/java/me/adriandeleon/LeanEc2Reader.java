@@ -0,0 +1,451 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.auth.aws.signer.AwsV4HttpSigner;
+import software.amazon.awssdk.http.auth.spi.signer.SignedRequest;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * LeanEc2Reader: reads instances and security group rules of a region without the SDK model objects.
+ * <p>
+ * The requests are the same EC2 Query API requests the SDK sends, signed with SigV4 and sent with the HTTP client of
+ * the {@link Ec2ClientProvider}. The responses are parsed as they are read from the connection by
+ * {@link LeanEc2Parser}, which only builds the {@link LeanInstance.Field}s asked for. On a large account this is a
+ * fraction of the CPU and allocation of unmarshalling every block device, network interface and tag of every instance.
+ * <p>
+ * The requests go through the rate limiters of the provider, and the throttled ones are retried with jittered
+ * backoff, like the requests of the EC2 clients, see {@link ThrottlingConfig}.
+ */
+@Log4j2
+public final class LeanEc2Reader {
+
+    /**
+     * The constant API_VERSION.
+     */
+    public static final String API_VERSION = "2016-11-15";
+
+    /**
+     * The constant ACTION_DESCRIBE_INSTANCES.
+     */
+    public static final String ACTION_DESCRIBE_INSTANCES = "DescribeInstances";
+
+    /**
+     * The constant ACTION_DESCRIBE_SECURITY_GROUPS.
+     */
+    public static final String ACTION_DESCRIBE_SECURITY_GROUPS = "DescribeSecurityGroups";
+
+    /**
+     * The constant SIGNING_NAME.
+     */
+    private static final String SIGNING_NAME = "ec2";
+    /**
+     * The constant CONTENT_TYPE.
+     */
+    private static final String CONTENT_TYPE = "application/x-www-form-urlencoded; charset=utf-8";
+    /**
+     * The constant FILTER_TAG_NAME.
+     */
+    private static final String FILTER_TAG_NAME = "tag:Name";
+    /**
+     * The constant FILTER_INSTANCE_ID.
+     */
+    private static final String FILTER_INSTANCE_ID = "instance-id";
+    /**
+     * The constant HEADER_CONTENT_LENGTH.
+     */
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    /**
+     * The constant MAX_RESULTS_PER_PAGE.
+     */
+    private static final int MAX_RESULTS_PER_PAGE = 1000;
+    /**
+     * The constant HTTP_SERVER_ERROR.
+     */
+    private static final int HTTP_SERVER_ERROR = 500;
+    /**
+     * The constant UNKNOWN_SIZE.
+     */
+    private static final long UNKNOWN_SIZE = -1;
+
+    /**
+     * The provider of the HTTP client, the credentials and the rate limiters.
+     */
+    private final Ec2ClientProvider provider;
+    /**
+     * The region.
+     */
+    @Getter
+    private final Region region;
+    /**
+     * The EC2 endpoint of the region, or the endpoint override.
+     */
+    @Getter
+    private final URI endpoint;
+    /**
+     * The credentials the requests are signed with.
+     */
+    private final AwsCredentialsProvider credentialsProvider;
+    /**
+     * The SigV4 signer of the requests.
+     */
+    private final AwsV4HttpSigner signer = AwsV4HttpSigner.create();
+
+    /**
+     * Creates a reader, use {@link Ec2ClientProvider#getLeanReader(Region)}.
+     *
+     * @param provider the provider of the HTTP client, the credentials and the rate limiters.
+     * @param region   the region.
+     */
+    LeanEc2Reader(final Ec2ClientProvider provider, final Region region) {
+        Validate.notNull(provider, "provider cannot be null.");
+        Validate.notNull(region, "region cannot be null.");
+
+        this.provider = provider;
+        this.region = region;
+        final URI endpointOverride = provider.getConfig().getEndpointOverride();
+        this.endpoint = (endpointOverride == null
+                ? URI.create("https://" + Ec2Client.serviceMetadata().endpointFor(region))
+                : endpointOverride).resolve("/");
+        this.credentialsProvider = provider.getConfig().getCredentialsProvider() == null
+                ? DefaultCredentialsProvider.create()
+                : provider.getConfig().getCredentialsProvider();
+    }
+
+    /**
+     * Reads the instances whose "Name" tag contains one of the tag names.
+     *
+     * @param tagNames the tag names.
+     * @param fields   the fields to read, besides the instance ids.
+     * @return the instances, in the order EC2 returned them.
+     */
+    public List<LeanInstance> describeInstancesByName(final Collection<String> tagNames,
+                                                      final Set<LeanInstance.Field> fields) {
+        Validate.notEmpty(tagNames, "tagNames cannot be null or empty.");
+        //Let EC2 match the "Name" tag, the wildcards keep the "contains" semantics of the tag names.
+        return describeInstances(Map.of(FILTER_TAG_NAME, tagNames.stream()
+                .map(tagName -> "*" + AwsEc2Utils.escapeFilterValue(tagName) + "*")
+                .toList()), fields);
+    }
+
+    /**
+     * Reads instances by instance id, {@value Ec2InstanceSource#MAX_FILTER_VALUES} per request. The unknown ids are
+     * skipped.
+     *
+     * @param instanceIds the instance ids.
+     * @param fields      the fields to read, besides the instance ids.
+     * @return the instances found.
+     */
+    public List<LeanInstance> describeInstancesById(final Collection<String> instanceIds,
+                                                    final Set<LeanInstance.Field> fields) {
+        Validate.notNull(instanceIds, "instanceIds cannot be null.");
+
+        final List<String> ids = List.copyOf(instanceIds);
+        final List<LeanInstance> instances = new ArrayList<>(ids.size());
+        //Filter by "instance-id" instead of using InstanceId, an instance terminated meanwhile is not an error.
+        for (int from = 0; from < ids.size(); from += Ec2InstanceSource.MAX_FILTER_VALUES) {
+            instances.addAll(describeInstances(Map.of(FILTER_INSTANCE_ID,
+                    ids.subList(from, Math.min(ids.size(), from + Ec2InstanceSource.MAX_FILTER_VALUES))), fields));
+        }
+        return instances;
+    }
+
+    /**
+     * Reads the instances that match some filters, following the next tokens.
+     *
+     * @param filters the EC2 filters, their values by name. Empty for all the instances of the region.
+     * @param fields  the fields to read, besides the instance ids.
+     * @return the instances, in the order EC2 returned them.
+     */
+    public List<LeanInstance> describeInstances(final Map<String, ? extends Collection<String>> filters,
+                                                final Set<LeanInstance.Field> fields) {
+        Validate.notNull(filters, "filters cannot be null.");
+        Validate.notNull(fields, "fields cannot be null.");
+
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        int filterIndex = 0;
+        for (Map.Entry<String, ? extends Collection<String>> filter : filters.entrySet()) {
+            filterIndex++;
+            parameters.put("Filter." + filterIndex + ".Name", filter.getKey());
+            int valueIndex = 0;
+            for (String value : filter.getValue()) {
+                parameters.put("Filter." + filterIndex + ".Value." + ++valueIndex, value);
+            }
+        }
+        parameters.put("MaxResults", String.valueOf(MAX_RESULTS_PER_PAGE));
+
+        final List<LeanInstance> instances = new ArrayList<>();
+        String nextToken = null;
+        do {
+            final LeanEc2Parser.Page<LeanInstance> page = execute(ACTION_DESCRIBE_INSTANCES, parameters, nextToken,
+                    body -> LeanEc2Parser.parseInstances(body, fields));
+            instances.addAll(page.items());
+            nextToken = page.nextToken();
+        } while (nextToken != null && !nextToken.isEmpty());
+        return instances;
+    }
+
+    /**
+     * Reads the ingress rules of security groups, following the next tokens.
+     *
+     * @param groupIds the security group ids. Empty for all the security groups of the region.
+     * @return the rules, see {@link SecurityGroupRule#fromSecurityGroup}.
+     */
+    public List<SecurityGroupRule> describeSecurityGroupRules(final Collection<String> groupIds) {
+        Validate.notNull(groupIds, "groupIds cannot be null.");
+
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        int groupIndex = 0;
+        for (String groupId : groupIds) {
+            parameters.put("GroupId." + ++groupIndex, groupId);
+        }
+        //EC2 only pages the requests without group ids.
+        if (groupIds.isEmpty()) {
+            parameters.put("MaxResults", String.valueOf(MAX_RESULTS_PER_PAGE));
+        }
+
+        final List<SecurityGroupRule> rules = new ArrayList<>();
+        String nextToken = null;
+        do {
+            final LeanEc2Parser.Page<SecurityGroupRule> page = execute(ACTION_DESCRIBE_SECURITY_GROUPS, parameters,
+                    nextToken, LeanEc2Parser::parseSecurityGroupRules);
+            rules.addAll(page.items());
+            nextToken = page.nextToken();
+        } while (nextToken != null && !nextToken.isEmpty());
+        return List.copyOf(rules);
+    }
+
+    /**
+     * Sends a request and parses its response, retrying the throttled and failed requests like the EC2 clients.
+     *
+     * @param action     the EC2 action.
+     * @param parameters the parameters of the action.
+     * @param nextToken  the token of the page, or null for the first page.
+     * @param parser     the parser of the response.
+     * @param <T>        the type of the items.
+     * @return the page.
+     */
+    private <T> LeanEc2Parser.Page<T> execute(final String action, final Map<String, String> parameters,
+                                              final String nextToken, final ResponseParser<T> parser) {
+        final byte[] form = form(action, parameters, nextToken);
+        final ThrottlingConfig throttling = provider.getConfig().getThrottling();
+        final AdaptiveRateLimiter limiter = throttling.isEnabled()
+                ? provider.getRateLimiters().getLimiter(action, region)
+                : null;
+
+        final long startedAt = System.nanoTime();
+        int attempts = 0;
+        int throttles = 0;
+        boolean success = false;
+        provider.beginCall();
+        try {
+            while (true) {
+                attempts++;
+                final long sentAt = acquire(limiter);
+                final Ec2RoundTripEvent event = new Ec2RoundTripEvent();
+                event.begin();
+
+                final HttpExecuteResponse response;
+                try {
+                    response = provider.getHttpClient().prepareRequest(sign(form)).call();
+                } catch (IOException e) {
+                    if (attempts > throttling.getMaxRetries()) {
+                        throw SdkClientException.create("Unable to execute " + action + ": " + e.getMessage(), e);
+                    }
+                    log.debug("{} failed, retrying: {}", action, e.getMessage());
+                    backoff(throttling, attempts);
+                    continue;
+                }
+
+                final int statusCode = response.httpResponse().statusCode();
+                final long responseBytes = response.httpResponse().firstMatchingHeader(HEADER_CONTENT_LENGTH)
+                        .map(Long::parseLong)
+                        .orElse(UNKNOWN_SIZE);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = action;
+                    event.region = region.id();
+                    event.attempt = attempts;
+                    event.statusCode = statusCode;
+                    event.requestBytes = form.length;
+                    event.responseBytes = responseBytes;
+                    event.commit();
+                }
+                if (Ec2Metrics.isEnabled()) {
+                    Ec2Metrics.getRecorder().recordPayload(action, form.length, responseBytes);
+                }
+
+                try (InputStream body = response.responseBody()
+                        .map(InputStream.class::cast)
+                        .orElseGet(InputStream::nullInputStream)) {
+                    if (response.httpResponse().isSuccessful()) {
+                        if (limiter != null) {
+                            limiter.onSuccess();
+                        }
+                        final LeanEc2Parser.Page<T> page = parser.parse(body);
+                        success = true;
+                        return page;
+                    }
+
+                    final boolean throttled = ThrottlingInterceptor.isThrottled(statusCode);
+                    if (throttled) {
+                        throttles++;
+                        if (limiter != null) {
+                            limiter.onThrottle(sentAt);
+                        }
+                    }
+                    if ((!throttled && statusCode < HTTP_SERVER_ERROR) || attempts > throttling.getMaxRetries()) {
+                        throw LeanEc2Parser.parseError(statusCode, body);
+                    }
+                    log.debug("{} answered with status {}, retrying.", action, statusCode);
+                } catch (IOException | XMLStreamException e) {
+                    throw SdkClientException.create("Unable to read the " + action + " response: " + e.getMessage(),
+                            e);
+                }
+                backoff(throttling, attempts);
+            }
+        } finally {
+            provider.endCall();
+            if (Ec2Metrics.isEnabled()) {
+                Ec2Metrics.getRecorder().recordApiCall(action, region.id(),
+                        Duration.ofNanos(System.nanoTime() - startedAt), attempts, throttles, success);
+            }
+        }
+    }
+
+    /**
+     * Builds a signed POST request.
+     *
+     * @param form the form of the request.
+     * @return the request.
+     */
+    private HttpExecuteRequest sign(final byte[] form) {
+        final SdkHttpRequest request = SdkHttpFullRequest.builder()
+                .method(SdkHttpMethod.POST)
+                .uri(endpoint)
+                .putHeader("Content-Type", CONTENT_TYPE)
+                .putHeader(HEADER_CONTENT_LENGTH, String.valueOf(form.length))
+                .build();
+        final ContentStreamProvider payload = () -> new ByteArrayInputStream(form);
+        //Resolved on every request, the credentials provider caches and refreshes them.
+        final SignedRequest signed = signer.sign(signRequest -> signRequest
+                .request(request)
+                .payload(payload)
+                .identity(credentialsProvider.resolveCredentials())
+                .putProperty(AwsV4HttpSigner.SERVICE_SIGNING_NAME, SIGNING_NAME)
+                .putProperty(AwsV4HttpSigner.REGION_NAME, region.id()));
+        return HttpExecuteRequest.builder()
+                .request(signed.request())
+                .contentStreamProvider(signed.payload().orElse(payload))
+                .build();
+    }
+
+    /**
+     * Encodes the form of a request.
+     *
+     * @param action     the EC2 action.
+     * @param parameters the parameters of the action.
+     * @param nextToken  the token of the page, or null for the first page.
+     * @return the form, in UTF-8.
+     */
+    private static byte[] form(final String action, final Map<String, String> parameters, final String nextToken) {
+        final StringBuilder form = new StringBuilder("Action=").append(action)
+                .append("&Version=").append(API_VERSION);
+        parameters.forEach((name, value) -> form.append('&').append(encode(name)).append('=').append(encode(value)));
+        if (nextToken != null) {
+            form.append("&NextToken=").append(encode(nextToken));
+        }
+        return form.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a form value.
+     *
+     * @param value the value.
+     * @return the encoded value.
+     */
+    private static String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Waits for a permit of the rate limiter.
+     *
+     * @param limiter the rate limiter, or null if the requests are not rate limited.
+     * @return when the request is sent, in {@link System#nanoTime()}.
+     */
+    private static long acquire(final AdaptiveRateLimiter limiter) {
+        if (limiter == null) {
+            return System.nanoTime();
+        }
+        try {
+            return limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.create("Interrupted while waiting for the EC2 rate limiter.", e);
+        }
+    }
+
+    /**
+     * Waits before a retry, with full jitter.
+     *
+     * @param throttling the throttling configuration.
+     * @param attempts   the attempts made.
+     */
+    private static void backoff(final ThrottlingConfig throttling, final int attempts) {
+        //Full jitter, like the retries of the EC2 clients.
+        final long ceiling = Math.min(throttling.getMaxBackoff().toMillis(),
+                throttling.getBaseDelay().toMillis() << Math.min(attempts - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.create("Interrupted while retrying an EC2 request.", e);
+        }
+    }
+
+    /**
+     * A parser of a response page.
+     *
+     * @param <T> the type of the items.
+     */
+    @FunctionalInterface
+    private interface ResponseParser<T> {
+        /**
+         * Parses a response.
+         *
+         * @param body the response body.
+         * @return the page.
+         * @throws XMLStreamException if the response is not valid XML.
+         */
+        LeanEc2Parser.Page<T> parse(InputStream body) throws XMLStreamException;
+    }
+}
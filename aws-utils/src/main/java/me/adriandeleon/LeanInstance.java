@@ -0,0 +1,85 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * LeanInstance: the few fields of an EC2 instance the helpers read, as read by a {@link LeanEc2Reader}.
+ * <p>
+ * Only the {@link Field}s asked are read from the response, the others are null (or empty, for the security groups).
+ *
+ * @param instanceId       the instance id, always read.
+ * @param name             the "Name" tag, or null.
+ * @param publicIpAddress  the public IP, or null.
+ * @param state            the state name, like "running", or null.
+ * @param securityGroupIds the security group ids.
+ */
+public record LeanInstance(String instanceId, String name, String publicIpAddress, String state,
+                           List<String> securityGroupIds) {
+
+    /**
+     * Creates an instance.
+     */
+    public LeanInstance {
+        Validate.notBlank(instanceId, AwsEc2Utils.MESSAGE_INSTANCE_ID_CANNOT_BE_NULL_OR_BLANK);
+        securityGroupIds = securityGroupIds == null ? List.of() : List.copyOf(securityGroupIds);
+    }
+
+    /**
+     * Gets the fields of an SDK instance.
+     *
+     * @param instance the instance.
+     * @return the lean instance, with all its fields.
+     */
+    public static LeanInstance of(final Instance instance) {
+        Validate.notNull(instance, "instance cannot be null.");
+        return new LeanInstance(instance.instanceId(), InstanceSnapshot.getName(instance).orElse(null),
+                instance.publicIpAddress(), instance.state() == null ? null : instance.state().nameAsString(),
+                instance.securityGroups().stream().map(GroupIdentifier::groupId).toList());
+    }
+
+    /**
+     * The fields of an instance that can be read, besides its id.
+     */
+    public enum Field {
+        /**
+         * The "Name" tag.
+         */
+        NAME,
+        /**
+         * The public IP.
+         */
+        PUBLIC_IP,
+        /**
+         * The state name.
+         */
+        STATE,
+        /**
+         * The security group ids.
+         */
+        SECURITY_GROUPS;
+
+        /**
+         * Gets all the fields.
+         *
+         * @return the fields.
+         */
+        public static Set<Field> all() {
+            return EnumSet.allOf(Field.class);
+        }
+
+        /**
+         * Gets no field, only the instance ids are read.
+         *
+         * @return the empty set.
+         */
+        public static Set<Field> none() {
+            return EnumSet.noneOf(Field.class);
+        }
+    }
+}
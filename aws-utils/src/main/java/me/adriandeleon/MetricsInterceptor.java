@@ -0,0 +1,158 @@
+package me.adriandeleon;
+
+import software.amazon.awssdk.awscore.AwsExecutionAttribute;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+
+import java.time.Duration;
+
+/**
+ * MetricsInterceptor: measures every EC2 call for the {@link Ec2Metrics} recorder, and emits an
+ * {@link Ec2RoundTripEvent} for every HTTP round trip.
+ * <p>
+ * It runs after the {@link ThrottlingInterceptor}, so a round trip does not include the wait for the rate limiter,
+ * but the whole call does.
+ */
+final class MetricsInterceptor implements ExecutionInterceptor {
+
+    /**
+     * The constant STARTED_AT, when the call started in nanoseconds.
+     */
+    private static final ExecutionAttribute<Long> STARTED_AT = new ExecutionAttribute<>("MetricsStartedAt");
+    /**
+     * The constant ATTEMPTS, the HTTP round trips of the call.
+     */
+    private static final ExecutionAttribute<Integer> ATTEMPTS = new ExecutionAttribute<>("MetricsAttempts");
+    /**
+     * The constant THROTTLES, the throttled round trips of the call.
+     */
+    private static final ExecutionAttribute<Integer> THROTTLES = new ExecutionAttribute<>("MetricsThrottles");
+    /**
+     * The constant REQUEST_BYTES, the size of the last request.
+     */
+    private static final ExecutionAttribute<Long> REQUEST_BYTES = new ExecutionAttribute<>("MetricsRequestBytes");
+    /**
+     * The constant ROUND_TRIP, the event of the current round trip.
+     */
+    private static final ExecutionAttribute<Ec2RoundTripEvent> ROUND_TRIP = new ExecutionAttribute<>("MetricsRoundTrip");
+    /**
+     * The constant HEADER_CONTENT_LENGTH.
+     */
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    /**
+     * The constant UNKNOWN_SIZE.
+     */
+    private static final long UNKNOWN_SIZE = -1;
+
+    @Override
+    public void beforeExecution(final Context.BeforeExecution context, final ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(STARTED_AT, System.nanoTime());
+        executionAttributes.putAttribute(ATTEMPTS, 0);
+        executionAttributes.putAttribute(THROTTLES, 0);
+    }
+
+    @Override
+    public void beforeTransmission(final Context.BeforeTransmission context,
+                                   final ExecutionAttributes executionAttributes) {
+        final int attempt = executionAttributes.getAttribute(ATTEMPTS) + 1;
+        executionAttributes.putAttribute(ATTEMPTS, attempt);
+
+        final long requestBytes = context.httpRequest().firstMatchingHeader(HEADER_CONTENT_LENGTH)
+                .map(Long::parseLong)
+                .or(() -> context.requestBody().flatMap(RequestBody::optionalContentLength))
+                .or(() -> context.asyncRequestBody().flatMap(AsyncRequestBody::contentLength))
+                .orElse(UNKNOWN_SIZE);
+        executionAttributes.putAttribute(REQUEST_BYTES, requestBytes);
+
+        final Ec2RoundTripEvent event = new Ec2RoundTripEvent();
+        if (event.isEnabled()) {
+            event.operation = operation(executionAttributes);
+            event.region = region(executionAttributes);
+            event.attempt = attempt;
+            event.requestBytes = requestBytes;
+            event.begin();
+            executionAttributes.putAttribute(ROUND_TRIP, event);
+        }
+    }
+
+    @Override
+    public void afterTransmission(final Context.AfterTransmission context,
+                                  final ExecutionAttributes executionAttributes) {
+        final int statusCode = context.httpResponse().statusCode();
+        if (ThrottlingInterceptor.isThrottled(statusCode)) {
+            executionAttributes.putAttribute(THROTTLES, executionAttributes.getAttribute(THROTTLES) + 1);
+        }
+        final long responseBytes = context.httpResponse().firstMatchingHeader(HEADER_CONTENT_LENGTH)
+                .map(Long::parseLong)
+                .orElse(UNKNOWN_SIZE);
+
+        final Ec2RoundTripEvent event = executionAttributes.getAttribute(ROUND_TRIP);
+        if (event != null && event.attempt == executionAttributes.getAttribute(ATTEMPTS)) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.statusCode = statusCode;
+                event.responseBytes = responseBytes;
+                event.commit();
+            }
+        }
+
+        if (Ec2Metrics.isEnabled()) {
+            Ec2Metrics.getRecorder().recordPayload(operation(executionAttributes),
+                    executionAttributes.getAttribute(REQUEST_BYTES), responseBytes);
+        }
+    }
+
+    @Override
+    public void afterExecution(final Context.AfterExecution context, final ExecutionAttributes executionAttributes) {
+        recordApiCall(executionAttributes, true);
+    }
+
+    @Override
+    public void onExecutionFailure(final Context.FailedExecution context,
+                                   final ExecutionAttributes executionAttributes) {
+        recordApiCall(executionAttributes, false);
+    }
+
+    /**
+     * Records a call, if the metrics are enabled.
+     *
+     * @param executionAttributes the attributes of the call.
+     * @param success             true if the call succeeded.
+     */
+    private static void recordApiCall(final ExecutionAttributes executionAttributes, final boolean success) {
+        final Long startedAt = executionAttributes.getAttribute(STARTED_AT);
+        if (!Ec2Metrics.isEnabled() || startedAt == null) {
+            return;
+        }
+        Ec2Metrics.getRecorder().recordApiCall(operation(executionAttributes), region(executionAttributes),
+                Duration.ofNanos(System.nanoTime() - startedAt), executionAttributes.getAttribute(ATTEMPTS),
+                executionAttributes.getAttribute(THROTTLES), success);
+    }
+
+    /**
+     * Gets the operation of a call.
+     *
+     * @param executionAttributes the attributes of the call.
+     * @return the operation name.
+     */
+    private static String operation(final ExecutionAttributes executionAttributes) {
+        return executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+    }
+
+    /**
+     * Gets the region of a call.
+     *
+     * @param executionAttributes the attributes of the call.
+     * @return the region id, or "unknown".
+     */
+    private static String region(final ExecutionAttributes executionAttributes) {
+        final Region region = executionAttributes.getAttribute(AwsExecutionAttribute.AWS_REGION);
+        return region == null ? "unknown" : region.id();
+    }
+}
@@ -0,0 +1,68 @@
+package me.adriandeleon;
+
+import java.time.Duration;
+
+/**
+ * MetricsRecorder: receives the measurements of the EC2 calls, the helper operations and the caches.
+ * <p>
+ * Every method does nothing by default, so an implementation only overrides what it needs. Configure it with
+ * {@link Ec2Metrics#configure(MetricsRecorder)}, for example with a {@link MicrometerMetricsRecorder}.
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Records a finished EC2 API call, retries included.
+     *
+     * @param operation the API action, like DescribeInstances.
+     * @param region    the region id.
+     * @param elapsed   the time of the whole call, waits for the rate limiter and retries included.
+     * @param attempts  the number of HTTP round trips.
+     * @param throttles the number of round trips throttled by EC2.
+     * @param success   false if the call failed.
+     */
+    default void recordApiCall(final String operation, final String region, final Duration elapsed,
+                               final int attempts, final int throttles, final boolean success) {
+    }
+
+    /**
+     * Records the payload sizes of an HTTP round trip of an EC2 API call.
+     *
+     * @param operation     the API action.
+     * @param requestBytes  the size of the request body, -1 if unknown.
+     * @param responseBytes the size of the response body, -1 if unknown.
+     */
+    default void recordPayload(final String operation, final long requestBytes, final long responseBytes) {
+    }
+
+    /**
+     * Records a step of a helper method, like the public IP resolution of openEC2Ports.
+     *
+     * @param operation the operation name.
+     * @param elapsed   the time of the operation.
+     * @param success   false if the operation threw an exception.
+     */
+    default void recordOperation(final String operation, final Duration elapsed, final boolean success) {
+    }
+
+    /**
+     * Records a lookup in one of the caches.
+     *
+     * @param cache the cache name, see the CACHE_* constants of {@link Ec2Metrics}.
+     * @param hit   true if the cached value was used.
+     */
+    default void recordCacheAccess(final String cache, final boolean hit) {
+    }
+
+    /**
+     * Registers the rate limiter of an API action in a region, to observe its permitted rate. It is called when the
+     * limiter is created, and for the limiters of the default {@link Ec2ClientProvider} when the recorder is
+     * configured. A newer limiter of the same action and region, like the one of a reconfigured provider, replaces
+     * the previous one.
+     *
+     * @param action  the API action, like DescribeInstances.
+     * @param region  the region id.
+     * @param limiter the limiter.
+     */
+    default void registerRateLimiter(final String action, final String region, final AdaptiveRateLimiter limiter) {
+    }
+}
@@ -0,0 +1,194 @@
+package me.adriandeleon;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.apache.commons.lang3.Validate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MicrometerMetricsRecorder: records the measurements as Micrometer meters.
+ * <p>
+ * Micrometer is an optional dependency: add {@code io.micrometer:micrometer-core} to use this class. The meters are:
+ * <ul>
+ *     <li>{@value #METRIC_API_CALLS}: timer of the EC2 calls, by operation, region and outcome.</li>
+ *     <li>{@value #METRIC_API_RETRIES} and {@value #METRIC_API_THROTTLES}: counters, by operation and region.</li>
+ *     <li>{@value #METRIC_API_REQUEST_SIZE} and {@value #METRIC_API_RESPONSE_SIZE}: payload sizes, by operation.</li>
+ *     <li>{@value #METRIC_OPERATIONS}: timer of the steps of the helpers, by operation and outcome.</li>
+ *     <li>{@value #METRIC_CACHE_GETS}: counter of the cache lookups, by cache and result (hit or miss).</li>
+ *     <li>{@value #METRIC_RATE_PERMITTED}: gauge of the permitted rate of the rate limiters, in requests per second,
+ *     by action and region.</li>
+ * </ul>
+ */
+public final class MicrometerMetricsRecorder implements MetricsRecorder {
+
+    /**
+     * The constant METRIC_API_CALLS.
+     */
+    public static final String METRIC_API_CALLS = "aws.ec2.api.calls";
+
+    /**
+     * The constant METRIC_API_RETRIES.
+     */
+    public static final String METRIC_API_RETRIES = "aws.ec2.api.retries";
+
+    /**
+     * The constant METRIC_API_THROTTLES.
+     */
+    public static final String METRIC_API_THROTTLES = "aws.ec2.api.throttles";
+
+    /**
+     * The constant METRIC_API_REQUEST_SIZE.
+     */
+    public static final String METRIC_API_REQUEST_SIZE = "aws.ec2.api.request.size";
+
+    /**
+     * The constant METRIC_API_RESPONSE_SIZE.
+     */
+    public static final String METRIC_API_RESPONSE_SIZE = "aws.ec2.api.response.size";
+
+    /**
+     * The constant METRIC_OPERATIONS.
+     */
+    public static final String METRIC_OPERATIONS = "aws.utils.operations";
+
+    /**
+     * The constant METRIC_CACHE_GETS.
+     */
+    public static final String METRIC_CACHE_GETS = "aws.utils.cache.gets";
+
+    /**
+     * The constant METRIC_RATE_PERMITTED.
+     */
+    public static final String METRIC_RATE_PERMITTED = "aws.ec2.rate.permitted";
+
+    /**
+     * The constant TAG_OPERATION.
+     */
+    private static final String TAG_OPERATION = "operation";
+    /**
+     * The constant TAG_REGION.
+     */
+    private static final String TAG_REGION = "region";
+    /**
+     * The constant TAG_OUTCOME.
+     */
+    private static final String TAG_OUTCOME = "outcome";
+    /**
+     * The constant TAG_CACHE.
+     */
+    private static final String TAG_CACHE = "cache";
+    /**
+     * The constant TAG_RESULT.
+     */
+    private static final String TAG_RESULT = "result";
+    /**
+     * The constant TAG_ACTION.
+     */
+    private static final String TAG_ACTION = "action";
+
+    /**
+     * The registry of the meters.
+     */
+    private final MeterRegistry registry;
+    /**
+     * The latest limiter of every gauge of {@value #METRIC_RATE_PERMITTED}, by "action/region".
+     */
+    private final Map<String, AtomicReference<AdaptiveRateLimiter>> rateLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a recorder registering its meters in a registry.
+     *
+     * @param registry the meter registry.
+     */
+    public MicrometerMetricsRecorder(final MeterRegistry registry) {
+        Validate.notNull(registry, "registry cannot be null.");
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordApiCall(final String operation, final String region, final Duration elapsed,
+                              final int attempts, final int throttles, final boolean success) {
+        Timer.builder(METRIC_API_CALLS)
+                .description("EC2 API calls, retries included")
+                .tags(TAG_OPERATION, operation, TAG_REGION, region, TAG_OUTCOME, outcome(success))
+                .register(registry)
+                .record(elapsed);
+        if (attempts > 1) {
+            Counter.builder(METRIC_API_RETRIES)
+                    .tags(TAG_OPERATION, operation, TAG_REGION, region)
+                    .register(registry)
+                    .increment(attempts - 1);
+        }
+        if (throttles > 0) {
+            Counter.builder(METRIC_API_THROTTLES)
+                    .tags(TAG_OPERATION, operation, TAG_REGION, region)
+                    .register(registry)
+                    .increment(throttles);
+        }
+    }
+
+    @Override
+    public void recordPayload(final String operation, final long requestBytes, final long responseBytes) {
+        if (requestBytes >= 0) {
+            DistributionSummary.builder(METRIC_API_REQUEST_SIZE)
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag(TAG_OPERATION, operation)
+                    .register(registry)
+                    .record(requestBytes);
+        }
+        if (responseBytes >= 0) {
+            DistributionSummary.builder(METRIC_API_RESPONSE_SIZE)
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag(TAG_OPERATION, operation)
+                    .register(registry)
+                    .record(responseBytes);
+        }
+    }
+
+    @Override
+    public void recordOperation(final String operation, final Duration elapsed, final boolean success) {
+        Timer.builder(METRIC_OPERATIONS)
+                .tags(TAG_OPERATION, operation, TAG_OUTCOME, outcome(success))
+                .register(registry)
+                .record(elapsed);
+    }
+
+    @Override
+    public void recordCacheAccess(final String cache, final boolean hit) {
+        Counter.builder(METRIC_CACHE_GETS)
+                .tags(TAG_CACHE, cache, TAG_RESULT, hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void registerRateLimiter(final String action, final String region, final AdaptiveRateLimiter limiter) {
+        //One gauge per action and region, it reads the latest limiter: a reconfigured provider has new limiters.
+        rateLimiters.computeIfAbsent(action + "/" + region, key -> {
+            final AtomicReference<AdaptiveRateLimiter> latest = new AtomicReference<>(limiter);
+            Gauge.builder(METRIC_RATE_PERMITTED, latest, reference -> reference.get().getRate())
+                    .description("Permitted rate of the EC2 API requests, in requests per second")
+                    .tags(TAG_ACTION, action, TAG_REGION, region)
+                    .register(registry);
+            return latest;
+        }).set(limiter);
+    }
+
+    /**
+     * Gets the outcome tag of a call.
+     *
+     * @param success true if the call succeeded.
+     * @return success or failure.
+     */
+    private static String outcome(final boolean success) {
+        return success ? "success" : "failure";
+    }
+}
@@ -0,0 +1,48 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * PortProbeConfig: the settings of a {@link PortProber}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class PortProbeConfig {
+
+    /**
+     * How long a probe waits for a port to accept the connection.
+     */
+    @Builder.Default
+    Duration timeout = Duration.ofMillis(250);
+
+    /**
+     * How long the result of a probe is reused.
+     */
+    @Builder.Default
+    Duration cacheTtl = Duration.ofSeconds(30);
+
+    /**
+     * The maximum number of ports of a range tried by a probe.
+     */
+    @Builder.Default
+    int maxPorts = 16;
+
+    /**
+     * The ports tried when the rule opens all the ports, or is not a TCP rule.
+     */
+    @Builder.Default
+    List<Integer> defaultPorts = List.of(22, 443, 80, 3389);
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static PortProbeConfig defaults() {
+        return PortProbeConfig.builder().build();
+    }
+}
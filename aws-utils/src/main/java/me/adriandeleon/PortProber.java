@@ -0,0 +1,287 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.IpPermission;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * PortProber: checks if a host accepts TCP connections on any of a few ports.
+ * <p>
+ * All the ports are tried at once with non-blocking channels on one selector, and the probe returns on the first port
+ * that accepts the connection, or when all of them fail or time out. The results are cached for
+ * {@link PortProbeConfig#cacheTtl}, so repeated checks of the same host cost nothing.
+ */
+@Log4j2
+public final class PortProber {
+
+    /**
+     * The constant PROTOCOL_TCP.
+     */
+    private static final String PROTOCOL_TCP = "tcp";
+    /**
+     * The constant PROTOCOL_ALL.
+     */
+    private static final String PROTOCOL_ALL = "-1";
+
+    /**
+     * The probe configuration.
+     */
+    @Getter
+    private final PortProbeConfig config;
+    /**
+     * The clock of the probes and the cache, in nanoseconds.
+     */
+    private final LongSupplier nanoTime;
+    /**
+     * Opens the channel of every port.
+     */
+    private final ChannelOpener channelOpener;
+    /**
+     * The last results, by host and ports.
+     */
+    private final Map<CacheKey, CachedResult> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a prober.
+     *
+     * @param config the probe configuration.
+     */
+    public PortProber(final PortProbeConfig config) {
+        this(config, System::nanoTime, SocketChannel::open);
+    }
+
+    /**
+     * Creates a prober with a clock, for the tests.
+     *
+     * @param config   the probe configuration.
+     * @param nanoTime the clock of the probes and the cache, in nanoseconds.
+     */
+    PortProber(final PortProbeConfig config, final LongSupplier nanoTime) {
+        this(config, nanoTime, SocketChannel::open);
+    }
+
+    /**
+     * Creates a prober with a clock and a channel opener, for the tests.
+     *
+     * @param config        the probe configuration.
+     * @param nanoTime      the clock of the probes and the cache, in nanoseconds.
+     * @param channelOpener opens the channel of every port.
+     */
+    PortProber(final PortProbeConfig config, final LongSupplier nanoTime, final ChannelOpener channelOpener) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.isTrue(!config.getTimeout().isNegative() && !config.getTimeout().isZero(), "timeout must be positive.");
+        Validate.isTrue(config.getMaxPorts() > 0, "maxPorts must be positive.");
+        this.config = config;
+        this.nanoTime = nanoTime;
+        this.channelOpener = channelOpener;
+    }
+
+    /**
+     * Probes the ports opened by an ip permission.
+     *
+     * @param host         the host (an IP or a host name).
+     * @param ipPermission the ip permission.
+     * @return the probe result.
+     */
+    public ProbeResult probe(final String host, final IpPermission ipPermission) {
+        Validate.notNull(ipPermission, "ipPermission cannot be null.");
+        return probe(host, portsOf(ipPermission));
+    }
+
+    /**
+     * Probes a few ports of a host.
+     *
+     * @param host  the host (an IP or a host name).
+     * @param ports the ports.
+     * @return the probe result.
+     */
+    public ProbeResult probe(final String host, final Collection<Integer> ports) {
+        Validate.notBlank(host, "host cannot be null or blank.");
+        Validate.notEmpty(ports, "ports cannot be null or empty.");
+
+        final CacheKey key = new CacheKey(host, List.copyOf(new LinkedHashSet<>(ports)));
+        final CachedResult cached = cache.get(key);
+        if (cached != null && nanoTime.getAsLong() - cached.expiresAt() < 0) {
+            Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_PORT_PROBE, true);
+            return cached.result();
+        }
+        Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_PORT_PROBE, false);
+
+        final ProbeResult result = connectToAny(host, key.ports());
+        cache.put(key, new CachedResult(result, nanoTime.getAsLong() + config.getCacheTtl().toNanos()));
+        log.debug("Probed {} on ports {}: {}", host, key.ports(), result);
+        return result;
+    }
+
+    /**
+     * Drops the cached results of a host, for example after opening its ports.
+     *
+     * @param host the host.
+     */
+    public void invalidate(final String host) {
+        cache.keySet().removeIf(key -> key.host().equals(host));
+    }
+
+    /**
+     * Gets the ports to probe for an ip permission: the first ports of its range for TCP, the default ports otherwise.
+     *
+     * @param ipPermission the ip permission.
+     * @return the ports.
+     */
+    List<Integer> portsOf(final IpPermission ipPermission) {
+        final String protocol = SecurityGroupRule.normalizeProtocol(ipPermission.ipProtocol());
+        final Integer fromPort = ipPermission.fromPort();
+        final Integer toPort = ipPermission.toPort();
+
+        //UDP and ICMP cannot be probed with a TCP connection, and "all traffic" has no ports.
+        if (PROTOCOL_ALL.equals(protocol) || !PROTOCOL_TCP.equals(protocol) || fromPort == null || toPort == null
+                || fromPort < 0) {
+            return config.getDefaultPorts();
+        }
+
+        final List<Integer> ports = new ArrayList<>();
+        for (int port = fromPort; port <= toPort && ports.size() < config.getMaxPorts(); port++) {
+            ports.add(port);
+        }
+        return ports;
+    }
+
+    /**
+     * Connects to all the ports at the same time, with non-blocking channels, until one connects or the timeout. A port
+     * whose connection cannot even start is skipped, the others are still probed.
+     *
+     * @param host  the host.
+     * @param ports the ports.
+     * @return the first port that connected, or an unreachable result.
+     */
+    private ProbeResult connectToAny(final String host, final List<Integer> ports) {
+        final long start = nanoTime.getAsLong();
+        final List<SocketChannel> channels = new ArrayList<>(ports.size());
+
+        try (Selector selector = Selector.open()) {
+            int pending = 0;
+            for (int port : ports) {
+                SocketChannel channel = null;
+                try {
+                    channel = channelOpener.open();
+                    channels.add(channel);
+                    channel.configureBlocking(false);
+                    if (channel.connect(new InetSocketAddress(host, port))) {
+                        return new ProbeResult(host, port, elapsedSince(start));
+                    }
+                    channel.register(selector, SelectionKey.OP_CONNECT, port);
+                    pending++;
+                } catch (IOException e) {
+                    //No route or no file descriptor left for this port, the other ports may still answer.
+                    log.debug("Could not probe {} on port {}: {}", host, port, e.getMessage());
+                    if (channel != null) {
+                        closeQuietly(channel);
+                    }
+                }
+            }
+
+            final long deadline = start + config.getTimeout().toNanos();
+            while (pending > 0) {
+                final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - nanoTime.getAsLong());
+                if (remainingMillis <= 0) {
+                    break;
+                }
+                selector.select(remainingMillis);
+
+                final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey selectedKey = selectedKeys.next();
+                    selectedKeys.remove();
+                    try {
+                        if (((SocketChannel) selectedKey.channel()).finishConnect()) {
+                            return new ProbeResult(host, (Integer) selectedKey.attachment(), elapsedSince(start));
+                        }
+                    } catch (IOException e) {
+                        //Refused or unreachable, the other ports may still answer.
+                        selectedKey.cancel();
+                        pending--;
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            //No selector, an unknown host or an invalid port.
+            log.debug("Could not probe {}: {}", host, e.getMessage());
+        } finally {
+            channels.forEach(PortProber::closeQuietly);
+        }
+        return ProbeResult.unreachable(host, elapsedSince(start));
+    }
+
+    /**
+     * Gets the time elapsed since a start.
+     *
+     * @param start the start, in nanoseconds.
+     * @return the elapsed time.
+     */
+    private Duration elapsedSince(final long start) {
+        return Duration.ofNanos(nanoTime.getAsLong() - start);
+    }
+
+    /**
+     * Closes a channel, logging the failure.
+     *
+     * @param channel the channel.
+     */
+    private static void closeQuietly(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+    /**
+     * The key of a cached result.
+     *
+     * @param host  the host.
+     * @param ports the ports probed.
+     */
+    private record CacheKey(String host, List<Integer> ports) {
+    }
+
+    /**
+     * A cached result.
+     *
+     * @param result    the result.
+     * @param expiresAt when it expires, in nanoseconds.
+     */
+    private record CachedResult(ProbeResult result, long expiresAt) {
+    }
+
+    /**
+     * Opens the channel of a port, {@link SocketChannel#open()} outside the tests.
+     */
+    @FunctionalInterface
+    interface ChannelOpener {
+
+        /**
+         * Opens a channel.
+         *
+         * @return the channel, not connected yet.
+         * @throws IOException if the channel cannot be opened.
+         */
+        SocketChannel open() throws IOException;
+    }
+}
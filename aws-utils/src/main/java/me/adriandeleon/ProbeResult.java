@@ -0,0 +1,33 @@
+package me.adriandeleon;
+
+import java.time.Duration;
+
+/**
+ * ProbeResult: the result of a {@link PortProber} probe.
+ *
+ * @param host    the probed host.
+ * @param port    the first port that accepted the connection, null if none did.
+ * @param elapsed how long the probe took.
+ */
+public record ProbeResult(String host, Integer port, Duration elapsed) {
+
+    /**
+     * Creates the result of a probe where no port accepted the connection.
+     *
+     * @param host    the probed host.
+     * @param elapsed how long the probe took.
+     * @return the probe result.
+     */
+    public static ProbeResult unreachable(final String host, final Duration elapsed) {
+        return new ProbeResult(host, null, elapsed);
+    }
+
+    /**
+     * Checks if a port accepted the connection.
+     *
+     * @return true if the host is reachable.
+     */
+    public boolean isReachable() {
+        return port != null;
+    }
+}
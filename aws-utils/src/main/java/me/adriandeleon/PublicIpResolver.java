@@ -0,0 +1,291 @@
+package me.adriandeleon;
+
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * PublicIpResolver: finds the public IP of this computer.
+ * <p>
+ * All the sources are asked at once and the first valid public IPv4 or IPv6 answer wins, so a slow or failing endpoint
+ * does not delay the others. The resolved IP is cached for {@link PublicIpResolverConfig#cacheTtl}, and the
+ * callers that ask while a resolution is in flight share it.
+ */
+@Log4j2
+public final class PublicIpResolver implements AutoCloseable {
+
+    /**
+     * The constant MESSAGE_COULD_NOT_RESOLVE_PUBLIC_IP.
+     */
+    public static final String MESSAGE_COULD_NOT_RESOLVE_PUBLIC_IP = "Could not resolve our public IP.";
+
+    /**
+     * The constant IPV4.
+     */
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    /**
+     * The constant IPV6.
+     */
+    private static final Pattern IPV6 = Pattern.compile("[0-9a-fA-F:.]*:[0-9a-fA-F:.]*");
+
+    /**
+     * The resolver configuration.
+     */
+    @Getter
+    private final PublicIpResolverConfig config;
+    /**
+     * The sources of our IP, asked at the same time.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final List<PublicIpSource> sources;
+    /**
+     * The HTTP client of the configured sources, null for other sources.
+     */
+    private final UnirestInstance unirest;
+    /**
+     * The clock of the cache, in nanoseconds.
+     */
+    private final LongSupplier nanoTime;
+    /**
+     * The cached IP, null until resolved and after an invalidation.
+     */
+    private final AtomicReference<CachedIp> cachedIp = new AtomicReference<>();
+
+    /**
+     * Creates a resolver that asks the endpoints (and the metadata service, if set) of the configuration.
+     *
+     * @param config the resolver configuration.
+     */
+    public PublicIpResolver(final PublicIpResolverConfig config) {
+        Validate.notNull(config, "config cannot be null.");
+        this.config = config;
+        this.nanoTime = System::nanoTime;
+
+        this.unirest = Unirest.spawnInstance();
+        unirest.config()
+                .connectTimeout((int) config.getConnectTimeout().toMillis())
+                .socketTimeout((int) config.getReadTimeout().toMillis())
+                .automaticRetries(false);
+
+        final List<PublicIpSource> configuredSources = new ArrayList<>();
+        for (URI endpoint : config.getEndpoints()) {
+            configuredSources.add(new HttpPublicIpSource(unirest, endpoint));
+        }
+        if (config.getImdsEndpoint() != null) {
+            configuredSources.add(new ImdsPublicIpSource(unirest, config.getImdsEndpoint()));
+        }
+        Validate.notEmpty(configuredSources, "endpoints cannot be empty when there is no imdsEndpoint.");
+        this.sources = List.copyOf(configuredSources);
+    }
+
+    /**
+     * Creates a resolver that asks other sources. Only the timeouts and the cache of the configuration are used.
+     *
+     * @param config  the resolver configuration.
+     * @param sources the sources.
+     */
+    public PublicIpResolver(final PublicIpResolverConfig config, final List<PublicIpSource> sources) {
+        this(config, sources, System::nanoTime);
+    }
+
+    /**
+     * Creates a resolver with a clock, for the tests.
+     *
+     * @param config   the resolver configuration.
+     * @param sources  the sources.
+     * @param nanoTime the clock of the cache, in nanoseconds.
+     */
+    PublicIpResolver(final PublicIpResolverConfig config, final List<PublicIpSource> sources,
+                     final LongSupplier nanoTime) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.notEmpty(sources, "sources cannot be null or empty.");
+        this.config = config;
+        this.sources = List.copyOf(sources);
+        this.unirest = null;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Gets our public IP, waiting for it.
+     *
+     * @return the IP.
+     */
+    public String resolve() {
+        try {
+            return resolveAsync().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Gets our public IP.
+     *
+     * @return a future with the IP.
+     */
+    public CompletableFuture<String> resolveAsync() {
+        while (true) {
+            final CachedIp cached = cachedIp.get();
+            //An IP still being resolved is shared, a resolved one is reused until it expires.
+            if (cached != null && (!cached.ip().isDone() || !cached.isExpired(nanoTime.getAsLong()))) {
+                Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_PUBLIC_IP, true);
+                return cached.ip().copy();
+            }
+
+            //Only one caller races the sources, the others get its future.
+            final CompletableFuture<String> ip = new CompletableFuture<>();
+            final CachedIp resolving = new CachedIp(ip, 0);
+            if (cachedIp.compareAndSet(cached, resolving)) {
+                Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_PUBLIC_IP, false);
+                race().whenComplete((resolved, error) -> {
+                    if (error == null) {
+                        cachedIp.compareAndSet(resolving,
+                                new CachedIp(ip, nanoTime.getAsLong() + config.getCacheTtl().toNanos()));
+                        ip.complete(resolved);
+                    } else {
+                        //Failures are not cached, the next caller tries again.
+                        cachedIp.compareAndSet(resolving, null);
+                        ip.completeExceptionally(error);
+                    }
+                });
+                return ip.copy();
+            }
+        }
+    }
+
+    /**
+     * Drops the cached IP, for example when the network changes.
+     */
+    public void invalidate() {
+        final CachedIp cached = cachedIp.get();
+        if (cached != null && cached.ip().isDone()) {
+            cachedIp.compareAndSet(cached, null);
+        }
+    }
+
+    /**
+     * Checks if an answer is a public IPv4 or IPv6 address.
+     *
+     * @param answer the answer of a source.
+     * @return true if it is a public IP.
+     */
+    static boolean isPublicIp(final String answer) {
+        if (StringUtils.isBlank(answer)) {
+            return false;
+        }
+        //Only IP literals are parsed, a host name would make getByName query the DNS.
+        if (!IPV4.matcher(answer).matches() && !IPV6.matcher(answer).matches()) {
+            return false;
+        }
+        try {
+            final InetAddress address = InetAddress.getByName(answer);
+            if (address instanceof Inet4Address && !address.getHostAddress().equals(answer)) {
+                return false;
+            }
+            return !address.isLoopbackAddress() && !address.isSiteLocalAddress() && !address.isLinkLocalAddress()
+                    && !address.isAnyLocalAddress() && !address.isMulticastAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Shuts down the HTTP client of the resolver.
+     */
+    @Override
+    public void close() {
+        if (unirest != null) {
+            unirest.shutDown();
+        }
+    }
+
+    /**
+     * Asks all the sources at the same time.
+     *
+     * @return the first public IP answered, or an {@link IllegalStateException} with the failures of all the sources.
+     */
+    private CompletableFuture<String> race() {
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(sources.size());
+        final IllegalStateException failures = new IllegalStateException(MESSAGE_COULD_NOT_RESOLVE_PUBLIC_IP);
+
+        for (PublicIpSource source : sources) {
+            final CompletableFuture<String> answer;
+            try {
+                answer = source.resolve();
+            } catch (RuntimeException e) {
+                onFailure(source, e, first, pending, failures);
+                continue;
+            }
+            answer.whenComplete((body, error) -> {
+                final String ip = body == null ? null : body.trim();
+                if (error == null && isPublicIp(ip)) {
+                    first.complete(ip);
+                } else {
+                    onFailure(source, error != null ? error : new IllegalStateException("Not a public IP: " + ip),
+                            first, pending, failures);
+                }
+            });
+        }
+        return first.orTimeout(config.getConnectTimeout().plus(config.getReadTimeout()).toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the failure of a source, and fails the race when all the sources failed.
+     *
+     * @param source   the source.
+     * @param error    the failure.
+     * @param first    the result of the race.
+     * @param pending  the sources that have not answered.
+     * @param failures the failures, suppressed.
+     */
+    private static void onFailure(final PublicIpSource source, final Throwable error,
+                                  final CompletableFuture<String> first, final AtomicInteger pending,
+                                  final IllegalStateException failures) {
+        log.debug("Public IP source {} failed: {}", source, error.getMessage());
+        synchronized (failures) {
+            failures.addSuppressed(error);
+        }
+        if (pending.decrementAndGet() == 0) {
+            first.completeExceptionally(failures);
+        }
+    }
+
+    /**
+     * A cached IP.
+     *
+     * @param ip        the IP, resolved or being resolved.
+     * @param expiresAt when it expires, in nanoseconds.
+     */
+    private record CachedIp(CompletableFuture<String> ip, long expiresAt) {
+
+        /**
+         * Checks if the IP expired.
+         *
+         * @param now the current time, in nanoseconds.
+         * @return true if expired.
+         */
+        boolean isExpired(final long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * PublicIpResolverConfig: the settings of a {@link PublicIpResolver}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class PublicIpResolverConfig {
+
+    /**
+     * The HTTP endpoints that answer with our IP in plain text, only checkip.amazonaws.com by default. They are all
+     * asked at once and the first answer is the IP opened in the security groups, so only add endpoints trusted as
+     * much as AWS.
+     */
+    @Builder.Default
+    List<URI> endpoints = List.of(URI.create(AwsEc2Utils.CHECK_IP_URL));
+
+    /**
+     * An optional instance metadata service (IMDSv2) base URI, like `http://169.254.169.254`, to also ask the public
+     * IP of the EC2 instance we run on. When null, the metadata service is not used.
+     */
+    URI imdsEndpoint;
+
+    /**
+     * The amount of time to wait when establishing a connection to a source.
+     */
+    @Builder.Default
+    Duration connectTimeout = Duration.ofMillis(500);
+
+    /**
+     * The amount of time to wait for the answer of a source.
+     */
+    @Builder.Default
+    Duration readTimeout = Duration.ofSeconds(2);
+
+    /**
+     * How long a resolved IP is reused.
+     */
+    @Builder.Default
+    Duration cacheTtl = Duration.ofSeconds(30);
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static PublicIpResolverConfig defaults() {
+        return PublicIpResolverConfig.builder().build();
+    }
+}
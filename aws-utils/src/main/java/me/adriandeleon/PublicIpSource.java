@@ -0,0 +1,17 @@
+package me.adriandeleon;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PublicIpSource: one way of finding the public IP of this computer, used by the {@link PublicIpResolver}.
+ */
+@FunctionalInterface
+public interface PublicIpSource {
+
+    /**
+     * Asks the source for the public IP.
+     *
+     * @return a future with the answer of the source, validated by the resolver.
+     */
+    CompletableFuture<String> resolve();
+}
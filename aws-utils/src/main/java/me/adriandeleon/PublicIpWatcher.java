@@ -0,0 +1,262 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * PublicIpWatcher: keeps the security group rules of some instances on our public IP, for as long as it runs.
+ * <p>
+ * Our IP is checked every {@link PublicIpWatcherConfig#pollInterval} by asking a single source of the
+ * {@link PublicIpResolver}, so a check is one small HTTP request. The other sources are only asked when it fails,
+ * and the source that answered is kept for the next checks. A new IP is checked again every
+ * {@link PublicIpWatcherConfig#confirmationInterval} until it is seen {@link PublicIpWatcherConfig#confirmations} times
+ * in a row, then the rules of all the tag names are updated at once with
+ * {@link AwsEc2Utils#updateSecurityGroupRulesWithIp(java.util.Collection, String, String, java.util.Collection)}.
+ * Nothing else reaches EC2 while the IP does not change, and a failed update is tried again on the next check.
+ */
+@Log4j2
+public final class PublicIpWatcher implements AutoCloseable {
+
+    /**
+     * The constant OPERATION_PUBLIC_IP_WATCHER_UPDATE.
+     */
+    public static final String OPERATION_PUBLIC_IP_WATCHER_UPDATE = "publicIpWatcher.update";
+
+    /**
+     * The watcher configuration.
+     */
+    @Getter
+    private final PublicIpWatcherConfig config;
+    /**
+     * The resolver, its cached IP is dropped when our IP changes.
+     */
+    private final PublicIpResolver resolver;
+    /**
+     * The sources of our IP, one per check.
+     */
+    private final List<PublicIpSource> sources;
+    /**
+     * The timeout of a source.
+     */
+    private final Duration timeout;
+    /**
+     * Updates the rules to an IP.
+     */
+    private final Function<String, List<TargetResult<ReconciliationReport.GroupChanges>>> update;
+
+    /**
+     * The IP the rules were last updated to.
+     */
+    private volatile String appliedIp;
+    /**
+     * The new IP seen by the last checks, not applied yet. Only the thread of the watcher checks, the candidate and
+     * the source need no locks.
+     */
+    private String candidateIp;
+    /**
+     * The checks in a row that saw the candidate IP.
+     */
+    private int candidateChecks;
+    /**
+     * The source asked first, the last one that answered.
+     */
+    private int sourceIndex;
+    /**
+     * The thread of the watcher, null until started.
+     */
+    private Thread thread;
+
+    /**
+     * Creates a watcher that uses the sources of {@link AwsEc2Utils#getPublicIpResolver()}.
+     *
+     * @param config the watcher configuration.
+     */
+    public PublicIpWatcher(final PublicIpWatcherConfig config) {
+        this(config, AwsEc2Utils.getPublicIpResolver());
+    }
+
+    /**
+     * Creates a watcher that uses the sources of a resolver.
+     *
+     * @param config   the watcher configuration.
+     * @param resolver the resolver, its cached IP is dropped when our IP changes.
+     */
+    public PublicIpWatcher(final PublicIpWatcherConfig config, final PublicIpResolver resolver) {
+        this(config, resolver, sourcesOf(resolver), timeoutOf(resolver.getConfig()),
+                ip -> AwsEc2Utils.updateSecurityGroupRulesWithIp(config.getTagNames(), config.getRuleDescription(), ip,
+                        config.getRegions().isEmpty() ? AwsEc2Utils.getRegions() : config.getRegions()));
+        Validate.notEmpty(config.getTagNames(), "tagNames cannot be null or empty.");
+        Validate.notBlank(config.getRuleDescription(), AwsEc2Utils.MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+    }
+
+    /**
+     * Creates a watcher, for the tests.
+     *
+     * @param config   the watcher configuration.
+     * @param resolver the resolver, can be null.
+     * @param sources  the sources of our IP.
+     * @param timeout  the timeout of a source.
+     * @param update   updates the rules to an IP.
+     */
+    PublicIpWatcher(final PublicIpWatcherConfig config, final PublicIpResolver resolver,
+                    final List<PublicIpSource> sources, final Duration timeout,
+                    final Function<String, List<TargetResult<ReconciliationReport.GroupChanges>>> update) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.notEmpty(sources, "sources cannot be null or empty.");
+        Validate.notNull(timeout, "timeout cannot be null.");
+        Validate.notNull(update, "update cannot be null.");
+        Validate.isTrue(config.getConfirmations() > 0, "confirmations must be positive.");
+        Validate.isTrue(config.getPollInterval().isPositive(), "pollInterval must be positive.");
+        Validate.isTrue(config.getConfirmationInterval().isPositive(), "confirmationInterval must be positive.");
+
+        this.config = config;
+        this.resolver = resolver;
+        this.sources = List.copyOf(sources);
+        this.timeout = timeout;
+        this.update = update;
+    }
+
+    /**
+     * Starts checking our IP in the background. The first check updates the rules right away.
+     */
+    public synchronized void start() {
+        Validate.validState(thread == null, "The watcher is already started.");
+        thread = Thread.ofVirtual().name("public-ip-watcher").start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Duration delay = check();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the IP the rules were last updated with.
+     *
+     * @return an Optional with the IP, empty until the first update succeeds.
+     */
+    public Optional<String> getAppliedIp() {
+        return Optional.ofNullable(appliedIp);
+    }
+
+    /**
+     * Stops checking our IP.
+     */
+    @Override
+    public synchronized void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Checks our IP once, and updates the rules if it changed and is confirmed.
+     *
+     * @return how long to wait before the next check.
+     */
+    Duration check() {
+        final String ip;
+        try {
+            ip = currentIp();
+        } catch (RuntimeException e) {
+            log.warn("Could not check our public IP: {}", e.getMessage());
+            return config.getPollInterval();
+        }
+
+        if (ip.equals(appliedIp)) {
+            //A flap back to the applied IP drops the new one.
+            candidateIp = null;
+            candidateChecks = 0;
+            return config.getPollInterval();
+        }
+        candidateChecks = ip.equals(candidateIp) ? candidateChecks + 1 : 1;
+        candidateIp = ip;
+        //The first IP has nothing to flap from, it is applied right away.
+        if (appliedIp != null && candidateChecks < config.getConfirmations()) {
+            return config.getConfirmationInterval();
+        }
+
+        if (resolver != null) {
+            resolver.invalidate();
+        }
+        try {
+            final List<TargetResult<ReconciliationReport.GroupChanges>> results =
+                    Ec2Metrics.time(OPERATION_PUBLIC_IP_WATCHER_UPDATE, () -> update.apply(ip));
+            final long failures = results.stream()
+                    .filter(result -> !result.isSuccess() || !result.value().isSuccess())
+                    .count();
+            if (failures == 0) {
+                log.info("Our public IP is now {}, {} security groups were updated.", ip, results.size());
+                appliedIp = ip;
+                candidateIp = null;
+                candidateChecks = 0;
+            } else {
+                log.warn("Our public IP is now {}, {} of {} security groups could not be updated.", ip, failures,
+                        results.size());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Our public IP is now {}, the security groups could not be updated: {}", ip, e.getMessage());
+        }
+        return config.getPollInterval();
+    }
+
+    /**
+     * Resolves our IP, asking the sources one at a time, from the last one that answered.
+     *
+     * @return our public IP.
+     * @throws IllegalStateException if no source answered with a public IP.
+     */
+    private String currentIp() {
+        final IllegalStateException failures = new IllegalStateException(
+                PublicIpResolver.MESSAGE_COULD_NOT_RESOLVE_PUBLIC_IP);
+        //One source per check, the next ones only when it fails.
+        for (int attempt = 0; attempt < sources.size(); attempt++) {
+            final int index = (sourceIndex + attempt) % sources.size();
+            final PublicIpSource source = sources.get(index);
+            try {
+                final String answer = source.resolve().orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).join();
+                final String ip = answer == null ? null : answer.trim();
+                if (PublicIpResolver.isPublicIp(ip)) {
+                    sourceIndex = index;
+                    return ip;
+                }
+                failures.addSuppressed(new IllegalStateException("Not a public IP: " + ip));
+            } catch (RuntimeException e) {
+                log.debug("Public IP source {} failed: {}", source, e.getMessage());
+                failures.addSuppressed(e);
+            }
+        }
+        throw failures;
+    }
+
+    /**
+     * Gets the sources of a resolver.
+     *
+     * @param resolver the resolver.
+     * @return the sources.
+     */
+    private static List<PublicIpSource> sourcesOf(final PublicIpResolver resolver) {
+        Validate.notNull(resolver, "resolver cannot be null.");
+        return resolver.getSources();
+    }
+
+    /**
+     * Gets the timeout of a source: the connect timeout plus the read timeout.
+     *
+     * @param config the resolver configuration.
+     * @return the timeout.
+     */
+    private static Duration timeoutOf(final PublicIpResolverConfig config) {
+        return config.getConnectTimeout().plus(config.getReadTimeout());
+    }
+}
@@ -0,0 +1,51 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+import software.amazon.awssdk.regions.Region;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * PublicIpWatcherConfig: the settings of a {@link PublicIpWatcher}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class PublicIpWatcherConfig {
+
+    /**
+     * The tag names of the instances whose security groups follow our IP.
+     */
+    @Builder.Default
+    List<String> tagNames = List.of();
+
+    /**
+     * The description of the rules that follow our IP.
+     */
+    String ruleDescription;
+
+    /**
+     * The regions of the instances. When empty, the region of the client configuration.
+     */
+    @Builder.Default
+    List<Region> regions = List.of();
+
+    /**
+     * How often our IP is checked while it does not change.
+     */
+    @Builder.Default
+    Duration pollInterval = Duration.ofSeconds(60);
+
+    /**
+     * How many checks in a row must see a new IP before the rules are updated, so a flapping IP does not rotate them.
+     */
+    @Builder.Default
+    int confirmations = 2;
+
+    /**
+     * How soon a new IP is checked again, until it is confirmed.
+     */
+    @Builder.Default
+    Duration confirmationInterval = Duration.ofSeconds(5);
+}
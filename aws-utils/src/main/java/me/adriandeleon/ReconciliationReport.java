@@ -0,0 +1,109 @@
+package me.adriandeleon;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ReconciliationReport: what a {@link SecurityGroupReconciler} changed (or would change, in a dry run).
+ *
+ * @param dryRun  true if nothing was modified.
+ * @param groups  the changes of every security group.
+ * @param elapsed how long the reconciliation took.
+ */
+public record ReconciliationReport(boolean dryRun, List<GroupChanges> groups, Duration elapsed) {
+
+    /**
+     * Creates a report.
+     */
+    public ReconciliationReport {
+        groups = List.copyOf(groups);
+    }
+
+    /**
+     * Gets the rules authorized in all the groups.
+     *
+     * @return the authorized rules.
+     */
+    public List<SecurityGroupRule> authorized() {
+        return groups.stream().flatMap(group -> group.authorized().stream()).toList();
+    }
+
+    /**
+     * Gets the rules revoked in all the groups.
+     *
+     * @return the revoked rules.
+     */
+    public List<SecurityGroupRule> revoked() {
+        return groups.stream().flatMap(group -> group.revoked().stream()).toList();
+    }
+
+    /**
+     * Gets the groups that could not be reconciled.
+     *
+     * @return the failed groups.
+     */
+    public List<GroupChanges> failures() {
+        return groups.stream().filter(group -> !group.isSuccess()).toList();
+    }
+
+    /**
+     * Checks if any group has changes.
+     *
+     * @return true if there are changes.
+     */
+    public boolean hasChanges() {
+        return groups.stream().anyMatch(GroupChanges::hasChanges);
+    }
+
+    /**
+     * The changes of one security group.
+     *
+     * @param groupId              the security group id.
+     * @param authorized           the rules authorized.
+     * @param revoked              the rules revoked.
+     * @param descriptionsUpdated  the rules that only changed their description.
+     * @param unchanged            the number of desired rules that were already there.
+     * @param error                the error message if the group could not be reconciled, null otherwise.
+     */
+    public record GroupChanges(String groupId, List<SecurityGroupRule> authorized, List<SecurityGroupRule> revoked,
+                               List<SecurityGroupRule> descriptionsUpdated, int unchanged, String error) {
+
+        /**
+         * Creates the changes of a group.
+         */
+        public GroupChanges {
+            authorized = List.copyOf(authorized);
+            revoked = List.copyOf(revoked);
+            descriptionsUpdated = List.copyOf(descriptionsUpdated);
+        }
+
+        /**
+         * Creates the result of a group that could not be reconciled.
+         *
+         * @param groupId the security group id.
+         * @param error   the error message.
+         * @return the failed group changes.
+         */
+        public static GroupChanges failed(final String groupId, final String error) {
+            return new GroupChanges(groupId, List.of(), List.of(), List.of(), 0, error);
+        }
+
+        /**
+         * Checks if the group was reconciled.
+         *
+         * @return true if there was no error.
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * Checks if the group has changes.
+         *
+         * @return true if there are changes.
+         */
+        public boolean hasChanges() {
+            return !authorized.isEmpty() || !revoked.isEmpty() || !descriptionsUpdated.isEmpty();
+        }
+    }
+}
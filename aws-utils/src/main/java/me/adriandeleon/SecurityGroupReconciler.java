@@ -0,0 +1,500 @@
+package me.adriandeleon;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.Ec2AsyncClient;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.AuthorizeSecurityGroupIngressRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupsRequest;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.RevokeSecurityGroupIngressRequest;
+import software.amazon.awssdk.services.ec2.model.SecurityGroup;
+import software.amazon.awssdk.services.ec2.model.UpdateSecurityGroupRuleDescriptionsIngressRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * SecurityGroupReconciler: brings the ingress rules of many security groups to a desired state.
+ * <p>
+ * The groups are described once (in batches), the desired rules are compared with the existing ones, and every group
+ * gets at most one AuthorizeSecurityGroupIngress, one UpdateSecurityGroupRuleDescriptionsIngress and one
+ * RevokeSecurityGroupIngress request, in that order so access is never missing in between.
+ * <p>
+ * Only the existing rules with a description used by a desired rule of the same group are managed, the other rules of
+ * the group are left alone. To rotate the IP of a developer, the desired rule keeps the description and has the new
+ * CIDR: the new CIDR is authorized and the old one is revoked.
+ * <p>
+ * The requests are idempotent: a rule that already exists (InvalidPermission.Duplicate) counts as authorized and a
+ * rule that is already gone (InvalidPermission.NotFound) as revoked, so changes computed from a stale copy of the group
+ * still apply without describing it again. A group at its rules limit gets the old rules revoked before the new ones
+ * are authorized, since there is no room for both.
+ * <p>
+ * With a {@link FanOutExecutor}, the groups are applied in parallel, up to its maximum concurrency per region.
+ */
+@Log4j2
+public final class SecurityGroupReconciler {
+
+    /**
+     * The groups are described in batches of this many group ids.
+     */
+    private static final int MAX_GROUP_IDS_PER_DESCRIBE = 100;
+    /**
+     * The constant ERROR_CODE_DUPLICATE.
+     */
+    private static final String ERROR_CODE_DUPLICATE = "InvalidPermission.Duplicate";
+    /**
+     * The constant ERROR_CODE_NOT_FOUND.
+     */
+    private static final String ERROR_CODE_NOT_FOUND = "InvalidPermission.NotFound";
+    /**
+     * The constant ERROR_CODE_RULES_LIMIT_EXCEEDED.
+     */
+    private static final String ERROR_CODE_RULES_LIMIT_EXCEEDED = "RulesPerSecurityGroupLimitExceeded";
+
+    /**
+     * The EC2 client.
+     */
+    private final Ec2Client ec2Client;
+    /**
+     * The executor of the groups, null to apply them one after the other.
+     */
+    private final FanOutExecutor executor;
+
+    /**
+     * Creates a reconciler that applies the groups one after the other.
+     *
+     * @param ec2Client the EC2 client.
+     */
+    public SecurityGroupReconciler(final Ec2Client ec2Client) {
+        Validate.notNull(ec2Client, "ec2Client cannot be null.");
+        this.ec2Client = ec2Client;
+        this.executor = null;
+    }
+
+    /**
+     * Creates a reconciler that applies the groups in parallel.
+     *
+     * @param ec2Client the EC2 client.
+     * @param executor  the executor of the group changes.
+     */
+    public SecurityGroupReconciler(final Ec2Client ec2Client, final FanOutExecutor executor) {
+        Validate.notNull(ec2Client, "ec2Client cannot be null.");
+        Validate.notNull(executor, "executor cannot be null.");
+        this.ec2Client = ec2Client;
+        this.executor = executor;
+    }
+
+    /**
+     * Reconciles the ingress rules of the groups of the desired rules.
+     *
+     * @param desiredRules the desired rules, of one or many groups.
+     * @param dryRun       if true, the changes are computed and reported but not applied.
+     * @return the report of the changes.
+     */
+    public ReconciliationReport reconcile(final Collection<SecurityGroupRule> desiredRules, final boolean dryRun) {
+        Validate.notNull(desiredRules, "desiredRules cannot be null.");
+        final long start = System.nanoTime();
+
+        final Map<String, List<SecurityGroupRule>> desiredByGroup = new LinkedHashMap<>();
+        for (SecurityGroupRule rule : desiredRules) {
+            desiredByGroup.computeIfAbsent(rule.groupId(), key -> new ArrayList<>()).add(rule);
+        }
+
+        final Map<String, SecurityGroup> securityGroups = new HashMap<>();
+        final Map<String, String> describeErrors = new HashMap<>();
+        describeSecurityGroups(List.copyOf(desiredByGroup.keySet()), securityGroups, describeErrors);
+
+        final List<ReconciliationReport.GroupChanges> groups = new ArrayList<>();
+        final List<FanOutTask<ReconciliationReport.GroupChanges>> applies = new ArrayList<>();
+        for (Map.Entry<String, List<SecurityGroupRule>> desired : desiredByGroup.entrySet()) {
+            final String groupId = desired.getKey();
+            final SecurityGroup securityGroup = securityGroups.get(groupId);
+
+            if (securityGroup == null) {
+                groups.add(ReconciliationReport.GroupChanges.failed(groupId,
+                        describeErrors.getOrDefault(groupId, "The security group does not exist.")));
+                continue;
+            }
+
+            final ReconciliationReport.GroupChanges changes = diff(securityGroup, desired.getValue());
+            if (dryRun || executor == null) {
+                groups.add(dryRun ? changes : apply(changes));
+            } else {
+                groups.add(changes);
+                if (changes.hasChanges()) {
+                    applies.add(new FanOutTask<>(ec2Client.serviceClientConfiguration().region(), groupId,
+                            () -> apply(changes)));
+                }
+            }
+        }
+        if (!applies.isEmpty()) {
+            //Every applied group replaces its planned changes, in the order of the groups.
+            final Map<String, ReconciliationReport.GroupChanges> applied = new HashMap<>();
+            for (TargetResult<ReconciliationReport.GroupChanges> result : executor.invokeAll(applies)) {
+                applied.put(result.target(), result.isSuccess()
+                        ? result.value()
+                        : ReconciliationReport.GroupChanges.failed(result.target(), result.error().getMessage()));
+            }
+            groups.replaceAll(changes -> applied.getOrDefault(changes.groupId(), changes));
+        }
+
+        final ReconciliationReport report = new ReconciliationReport(dryRun, groups,
+                Duration.ofNanos(System.nanoTime() - start));
+        log.info("Reconciled {} security groups (dry run: {}): {} rules authorized, {} revoked, {} failed groups.",
+                groups.size(), dryRun, report.authorized().size(), report.revoked().size(), report.failures().size());
+        return report;
+    }
+
+    /**
+     * Compares the existing rules of a group with the desired ones.
+     *
+     * @param securityGroup the security group, as described by EC2.
+     * @param desiredRules  the desired rules of the group.
+     * @return the changes needed.
+     */
+    static ReconciliationReport.GroupChanges diff(final SecurityGroup securityGroup,
+                                                  final List<SecurityGroupRule> desiredRules) {
+        return diff(securityGroup.groupId(), SecurityGroupRule.fromSecurityGroup(securityGroup), desiredRules);
+    }
+
+    /**
+     * Compares the existing rules of a group with the desired ones.
+     *
+     * @param groupId       the security group id.
+     * @param existingRules the existing rules of the group, for example from a {@link SecurityGroupRuleCache}.
+     * @param desiredRules  the desired rules of the group.
+     * @return the changes needed.
+     */
+    static ReconciliationReport.GroupChanges diff(final String groupId, final List<SecurityGroupRule> existingRules,
+                                                  final List<SecurityGroupRule> desiredRules) {
+        final Set<String> managedDescriptions = new HashSet<>();
+        desiredRules.forEach(rule -> managedDescriptions.add(rule.description()));
+
+        final List<SecurityGroupRule> toAuthorize = new ArrayList<>();
+        final List<SecurityGroupRule> toUpdateDescription = new ArrayList<>();
+        final Set<SecurityGroupRule> kept = new HashSet<>();
+        int unchanged = 0;
+
+        //A LinkedHashSet drops the duplicated desired rules, keeping their order.
+        for (SecurityGroupRule desired : new LinkedHashSet<>(desiredRules)) {
+            final Optional<SecurityGroupRule> sameTraffic = existingRules.stream()
+                    .filter(existing -> existing.sameTrafficAs(desired))
+                    .findFirst();
+
+            if (sameTraffic.isEmpty()) {
+                toAuthorize.add(desired);
+            } else if (sameTraffic.orElseThrow().equals(desired)) {
+                unchanged++;
+                kept.add(sameTraffic.orElseThrow());
+            } else {
+                //Same traffic with another description, EC2 would reject it as a duplicate.
+                toUpdateDescription.add(desired);
+                kept.add(sameTraffic.orElseThrow());
+            }
+        }
+
+        final List<SecurityGroupRule> toRevoke = existingRules.stream()
+                .filter(existing -> managedDescriptions.contains(existing.description()))
+                .filter(existing -> !kept.contains(existing))
+                .toList();
+
+        return new ReconciliationReport.GroupChanges(groupId, toAuthorize, toRevoke,
+                toUpdateDescription, unchanged, null);
+    }
+
+    /**
+     * Applies the changes of one group: authorize, then update the descriptions, then revoke.
+     *
+     * @param changes the changes, from {@link #diff(SecurityGroup, List)}.
+     * @return the changes, or a failed group if EC2 rejected them.
+     */
+    ReconciliationReport.GroupChanges apply(final ReconciliationReport.GroupChanges changes) {
+        final String groupId = changes.groupId();
+        try {
+            boolean revoked = false;
+            try {
+                authorize(groupId, changes.authorized());
+            } catch (Ec2Exception e) {
+                if (!ERROR_CODE_RULES_LIMIT_EXCEEDED.equals(errorCode(e)) || changes.revoked().isEmpty()) {
+                    throw e;
+                }
+                //The group is full, the old rules have to go before the new ones fit.
+                log.warn("Security group {} is at its rules limit, revoking before authorizing.", groupId);
+                revoke(groupId, changes.revoked());
+                revoked = true;
+                authorize(groupId, changes.authorized());
+            }
+            if (!changes.descriptionsUpdated().isEmpty()) {
+                ec2Client.updateSecurityGroupRuleDescriptionsIngress(UpdateSecurityGroupRuleDescriptionsIngressRequest.builder()
+                        .groupId(groupId)
+                        .ipPermissions(SecurityGroupRule.toIpPermissions(changes.descriptionsUpdated()))
+                        .build());
+            }
+            if (!revoked) {
+                revoke(groupId, changes.revoked());
+            }
+            return changes;
+        } catch (Ec2Exception e) {
+            log.error("Could not reconcile security group {}: {}", groupId, e.awsErrorDetails().errorMessage());
+            return ReconciliationReport.GroupChanges.failed(groupId, e.awsErrorDetails().errorMessage());
+        }
+    }
+
+    /**
+     * Applies the changes of one group without blocking, in the order of
+     * {@link #apply(ReconciliationReport.GroupChanges)}: authorize, then update the descriptions, then revoke.
+     *
+     * @param ec2AsyncClient the asynchronous EC2 client.
+     * @param changes        the changes, from {@link #diff(String, List, List)}.
+     * @return a future with the changes, or a failed group if EC2 rejected them.
+     */
+    static CompletableFuture<ReconciliationReport.GroupChanges> applyAsync(final Ec2AsyncClient ec2AsyncClient,
+                                                                          final ReconciliationReport.GroupChanges changes) {
+        final String groupId = changes.groupId();
+        final CompletableFuture<Boolean> revokedFirst = authorizeAsync(ec2AsyncClient, groupId, changes.authorized())
+                .thenApply(ignored -> false)
+                .exceptionallyCompose(error -> {
+                    if (!ERROR_CODE_RULES_LIMIT_EXCEEDED.equals(errorCode(error)) || changes.revoked().isEmpty()) {
+                        return CompletableFuture.failedFuture(error);
+                    }
+                    //The group is full, the old rules have to go before the new ones fit.
+                    log.warn("Security group {} is at its rules limit, revoking before authorizing.", groupId);
+                    return revokeAsync(ec2AsyncClient, groupId, changes.revoked())
+                            .thenCompose(ignored -> authorizeAsync(ec2AsyncClient, groupId, changes.authorized()))
+                            .thenApply(ignored -> true);
+                });
+
+        return revokedFirst
+                .thenCompose(revoked -> updateDescriptionsAsync(ec2AsyncClient, groupId, changes.descriptionsUpdated())
+                        .thenCompose(ignored -> revoked
+                                ? CompletableFuture.completedFuture(null)
+                                : revokeAsync(ec2AsyncClient, groupId, changes.revoked())))
+                .thenApply(ignored -> changes)
+                .exceptionally(error -> {
+                    if (!(unwrap(error) instanceof Ec2Exception e)) {
+                        throw new CompletionException(unwrap(error));
+                    }
+                    log.error("Could not reconcile security group {}: {}", groupId, e.awsErrorDetails().errorMessage());
+                    return ReconciliationReport.GroupChanges.failed(groupId, e.awsErrorDetails().errorMessage());
+                });
+    }
+
+    /**
+     * Authorizes rules in a security group, skipping the ones that already exist.
+     *
+     * @param groupId the security group id.
+     * @param rules   the rules.
+     */
+    private void authorize(final String groupId, final List<SecurityGroupRule> rules) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        try {
+            ec2Client.authorizeSecurityGroupIngress(AuthorizeSecurityGroupIngressRequest.builder()
+                    .groupId(groupId)
+                    .ipPermissions(SecurityGroupRule.toIpPermissions(rules))
+                    .build());
+        } catch (Ec2Exception e) {
+            if (!ERROR_CODE_DUPLICATE.equals(errorCode(e))) {
+                throw e;
+            }
+            //EC2 rejects the whole request when one of the rules exists, the others are authorized one by one.
+            if (rules.size() > 1) {
+                rules.forEach(rule -> authorize(groupId, List.of(rule)));
+            }
+        }
+    }
+
+    /**
+     * Revokes rules from a security group, skipping the ones that are already gone.
+     *
+     * @param groupId the security group id.
+     * @param rules   the rules.
+     */
+    private void revoke(final String groupId, final List<SecurityGroupRule> rules) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        try {
+            ec2Client.revokeSecurityGroupIngress(RevokeSecurityGroupIngressRequest.builder()
+                    .groupId(groupId)
+                    .ipPermissions(SecurityGroupRule.toIpPermissions(rules))
+                    .build());
+        } catch (Ec2Exception e) {
+            if (!ERROR_CODE_NOT_FOUND.equals(errorCode(e))) {
+                throw e;
+            }
+            //EC2 rejects the whole request when one of the rules is gone, the others are revoked one by one.
+            if (rules.size() > 1) {
+                rules.forEach(rule -> revoke(groupId, List.of(rule)));
+            }
+        }
+    }
+
+    /**
+     * Authorizes rules in a security group without blocking, skipping the ones that already exist.
+     *
+     * @param ec2AsyncClient the asynchronous EC2 client.
+     * @param groupId        the security group id.
+     * @param rules          the rules.
+     * @return a future completed when the rules are authorized.
+     */
+    private static CompletableFuture<Void> authorizeAsync(final Ec2AsyncClient ec2AsyncClient, final String groupId,
+                                                          final List<SecurityGroupRule> rules) {
+        if (rules.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ec2AsyncClient.authorizeSecurityGroupIngress(AuthorizeSecurityGroupIngressRequest.builder()
+                        .groupId(groupId)
+                        .ipPermissions(SecurityGroupRule.toIpPermissions(rules))
+                        .build())
+                .<Void>thenApply(ignored -> null)
+                .exceptionallyCompose(error -> {
+                    if (!ERROR_CODE_DUPLICATE.equals(errorCode(error))) {
+                        return CompletableFuture.failedFuture(error);
+                    }
+                    //EC2 rejects the whole request when one of the rules exists, the others are authorized one by one.
+                    if (rules.size() == 1) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return CompletableFuture.allOf(rules.stream()
+                            .map(rule -> authorizeAsync(ec2AsyncClient, groupId, List.of(rule)))
+                            .toArray(CompletableFuture[]::new));
+                });
+    }
+
+    /**
+     * Updates the descriptions of rules in a security group without blocking.
+     *
+     * @param ec2AsyncClient the asynchronous EC2 client.
+     * @param groupId        the security group id.
+     * @param rules          the rules, with their new descriptions.
+     * @return a future completed when the descriptions are updated.
+     */
+    private static CompletableFuture<Void> updateDescriptionsAsync(final Ec2AsyncClient ec2AsyncClient,
+                                                                   final String groupId,
+                                                                   final List<SecurityGroupRule> rules) {
+        if (rules.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ec2AsyncClient.updateSecurityGroupRuleDescriptionsIngress(
+                        UpdateSecurityGroupRuleDescriptionsIngressRequest.builder()
+                                .groupId(groupId)
+                                .ipPermissions(SecurityGroupRule.toIpPermissions(rules))
+                                .build())
+                .thenApply(ignored -> null);
+    }
+
+    /**
+     * Revokes rules from a security group without blocking, skipping the ones that are already gone.
+     *
+     * @param ec2AsyncClient the asynchronous EC2 client.
+     * @param groupId        the security group id.
+     * @param rules          the rules.
+     * @return a future completed when the rules are revoked.
+     */
+    private static CompletableFuture<Void> revokeAsync(final Ec2AsyncClient ec2AsyncClient, final String groupId,
+                                                       final List<SecurityGroupRule> rules) {
+        if (rules.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ec2AsyncClient.revokeSecurityGroupIngress(RevokeSecurityGroupIngressRequest.builder()
+                        .groupId(groupId)
+                        .ipPermissions(SecurityGroupRule.toIpPermissions(rules))
+                        .build())
+                .<Void>thenApply(ignored -> null)
+                .exceptionallyCompose(error -> {
+                    if (!ERROR_CODE_NOT_FOUND.equals(errorCode(error))) {
+                        return CompletableFuture.failedFuture(error);
+                    }
+                    //EC2 rejects the whole request when one of the rules is gone, the others are revoked one by one.
+                    if (rules.size() == 1) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return CompletableFuture.allOf(rules.stream()
+                            .map(rule -> revokeAsync(ec2AsyncClient, groupId, List.of(rule)))
+                            .toArray(CompletableFuture[]::new));
+                });
+    }
+
+    /**
+     * Gets the EC2 error code of the failure of a future.
+     *
+     * @param error the failure, as it reaches a future stage.
+     * @return the error code, or null if it is not an EC2 failure.
+     */
+    private static String errorCode(final Throwable error) {
+        return unwrap(error) instanceof Ec2Exception e ? errorCode(e) : null;
+    }
+
+    /**
+     * Gets the cause of the failure of a future, without its {@link CompletionException}.
+     *
+     * @param error the failure.
+     * @return the cause.
+     */
+    private static Throwable unwrap(final Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Gets the EC2 error code of a failure.
+     *
+     * @param e the failure.
+     * @return the error code, or null if there is none.
+     */
+    private static String errorCode(final Ec2Exception e) {
+        return e.awsErrorDetails() == null ? null : e.awsErrorDetails().errorCode();
+    }
+
+    /**
+     * Describes security groups in batches, recording the groups that cannot be described.
+     *
+     * @param groupIds       the security group ids.
+     * @param securityGroups filled with the security groups, by id.
+     * @param errors         filled with the error messages, by security group id.
+     */
+    private void describeSecurityGroups(final List<String> groupIds, final Map<String, SecurityGroup> securityGroups,
+                                        final Map<String, String> errors) {
+        for (int from = 0; from < groupIds.size(); from += MAX_GROUP_IDS_PER_DESCRIBE) {
+            final List<String> chunk = groupIds.subList(from, Math.min(from + MAX_GROUP_IDS_PER_DESCRIBE, groupIds.size()));
+            try {
+                describeChunk(chunk, securityGroups);
+            } catch (Ec2Exception e) {
+                //One unknown group fails the whole batch, describe the groups one by one to find which.
+                if (chunk.size() == 1) {
+                    errors.put(chunk.getFirst(), e.awsErrorDetails().errorMessage());
+                } else {
+                    chunk.forEach(groupId -> describeSecurityGroups(List.of(groupId), securityGroups, errors));
+                }
+            }
+        }
+    }
+
+    /**
+     * Describes a batch of security groups.
+     *
+     * @param groupIds       the security group ids.
+     * @param securityGroups filled with the security groups, by id.
+     */
+    private void describeChunk(final List<String> groupIds, final Map<String, SecurityGroup> securityGroups) {
+        final DescribeSecurityGroupsRequest request = DescribeSecurityGroupsRequest.builder()
+                .groupIds(groupIds)
+                .build();
+        for (SecurityGroup securityGroup : ec2Client.describeSecurityGroupsPaginator(request).securityGroups()) {
+            securityGroups.put(securityGroup.groupId(), securityGroup);
+        }
+    }
+}
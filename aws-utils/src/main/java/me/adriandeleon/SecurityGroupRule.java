@@ -0,0 +1,260 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.IpPermission;
+import software.amazon.awssdk.services.ec2.model.IpRange;
+import software.amazon.awssdk.services.ec2.model.Ipv6Range;
+import software.amazon.awssdk.services.ec2.model.SecurityGroup;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * SecurityGroupRule: one ingress rule of a security group, a protocol and port range opened to a CIDR.
+ * <p>
+ * Use -1 as the protocol (all traffic) or as the ports (all ports) like the EC2 API does.
+ *
+ * @param groupId     the security group id.
+ * @param protocol    the protocol name (tcp, udp, icmp) or number, -1 for all protocols.
+ * @param fromPort    the first port of the range, -1 for all ports.
+ * @param toPort      the last port of the range, -1 for all ports.
+ * @param cidr        the IPv4 or IPv6 CIDR.
+ * @param description the rule description.
+ */
+@Builder(toBuilder = true)
+public record SecurityGroupRule(String groupId, String protocol, int fromPort, int toPort, String cidr,
+                                String description) {
+
+    /**
+     * The constant ALL.
+     */
+    public static final int ALL = -1;
+
+    /**
+     * The constant EXPIRES_TAG, the start of the expiry written at the end of a description, see
+     * {@link #withExpiry(String, Instant)}.
+     */
+    public static final String EXPIRES_TAG = " [expires=";
+
+    private static final String EXPIRES_TAG_END = "]";
+
+    /**
+     * Creates a rule, normalizing the protocol so "6" and "tcp" are the same rule.
+     */
+    public SecurityGroupRule {
+        Validate.notBlank(groupId, AwsEc2Utils.MESSAGE_GROUP_ID_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(protocol, AwsEc2Utils.MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notBlank(cidr, "cidr cannot be null or blank.");
+        protocol = normalizeProtocol(protocol);
+    }
+
+    /**
+     * Creates a rule that opens a single IP.
+     *
+     * @param groupId     the security group id.
+     * @param protocol    the protocol.
+     * @param fromPort    the first port of the range.
+     * @param toPort      the last port of the range.
+     * @param ip          the IPv4 or IPv6 address.
+     * @param description the rule description.
+     * @return the rule.
+     */
+    public static SecurityGroupRule forIp(final String groupId, final String protocol, final int fromPort,
+                                          final int toPort, final String ip, final String description) {
+        Validate.notBlank(ip, AwsEc2Utils.MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+        return new SecurityGroupRule(groupId, protocol, fromPort, toPort, ip + (isIpv6(ip) ? "/128" : "/32"),
+                description);
+    }
+
+    /**
+     * Checks if the CIDR of the rule is an IPv6 CIDR.
+     *
+     * @return true for IPv6.
+     */
+    public boolean isIpv6() {
+        return isIpv6(cidr);
+    }
+
+    /**
+     * Checks if this rule opens the same traffic as another one, ignoring the description.
+     *
+     * @param other the other rule.
+     * @return true if both rules open the same traffic.
+     */
+    public boolean sameTrafficAs(final SecurityGroupRule other) {
+        return groupId.equals(other.groupId) && protocol.equals(other.protocol) && fromPort == other.fromPort
+                && toPort == other.toPort && cidr.equals(other.cidr);
+    }
+
+    /**
+     * Gets the time this rule expires at, written at the end of its description.
+     *
+     * @return an Optional with the expiry, empty if the rule does not expire.
+     */
+    public Optional<Instant> expiresAt() {
+        return parseExpiry(description);
+    }
+
+    /**
+     * Checks if this rule has expired.
+     *
+     * @param now the current time.
+     * @return true if the rule has an expiry and it is not after now.
+     */
+    public boolean isExpired(final Instant now) {
+        return expiresAt().map(expiresAt -> !expiresAt.isAfter(now)).orElse(false);
+    }
+
+    /**
+     * Gets the description of this rule without its expiry.
+     *
+     * @return the description, null if the rule has none.
+     */
+    public String baseDescription() {
+        return baseDescription(description);
+    }
+
+    /**
+     * Writes an expiry at the end of a description, like `developer [expires=2026-01-01T12:00:00Z]`. A rule with this
+     * description is revoked by the {@link SecurityGroupSweeper} once it expires, and is still found by the description
+     * alone.
+     *
+     * @param description the rule description, without an expiry.
+     * @param expiresAt   when the rule expires, in seconds.
+     * @return the description with the expiry.
+     */
+    public static String withExpiry(final String description, final Instant expiresAt) {
+        Validate.notBlank(description, AwsEc2Utils.MESSAGE_RULE_DESCRIPTION_CANNOT_BE_NULL_OR_BLANK);
+        Validate.notNull(expiresAt, "expiresAt cannot be null.");
+        return baseDescription(description) + EXPIRES_TAG + expiresAt.truncatedTo(ChronoUnit.SECONDS) + EXPIRES_TAG_END;
+    }
+
+    /**
+     * Gets a description without its expiry.
+     *
+     * @param description the description, with or without an expiry.
+     * @return the description without the expiry.
+     */
+    public static String baseDescription(final String description) {
+        return parseExpiry(description).isPresent()
+                ? description.substring(0, description.lastIndexOf(EXPIRES_TAG))
+                : description;
+    }
+
+    /**
+     * Gets the ingress rules of a security group, one rule per IP range.
+     *
+     * @param securityGroup the security group.
+     * @return the rules.
+     */
+    public static List<SecurityGroupRule> fromSecurityGroup(final SecurityGroup securityGroup) {
+        final List<SecurityGroupRule> rules = new ArrayList<>();
+        for (IpPermission ipPermission : securityGroup.ipPermissions()) {
+            //EC2 leaves out the ports when the rule opens all of them.
+            final int fromPort = ipPermission.fromPort() == null ? ALL : ipPermission.fromPort();
+            final int toPort = ipPermission.toPort() == null ? ALL : ipPermission.toPort();
+
+            for (IpRange ipRange : ipPermission.ipRanges()) {
+                rules.add(new SecurityGroupRule(securityGroup.groupId(), ipPermission.ipProtocol(), fromPort, toPort,
+                        ipRange.cidrIp(), ipRange.description()));
+            }
+            for (Ipv6Range ipv6Range : ipPermission.ipv6Ranges()) {
+                rules.add(new SecurityGroupRule(securityGroup.groupId(), ipPermission.ipProtocol(), fromPort, toPort,
+                        ipv6Range.cidrIpv6(), ipv6Range.description()));
+            }
+        }
+        return List.copyOf(rules);
+    }
+
+    /**
+     * Converts rules to the fewest ip permissions: one per protocol and port range, with all its IP ranges.
+     *
+     * @param rules the rules.
+     * @return the ip permissions.
+     */
+    public static List<IpPermission> toIpPermissions(final Collection<SecurityGroupRule> rules) {
+        final Map<List<Object>, List<SecurityGroupRule>> rulesByTraffic = new LinkedHashMap<>();
+        for (SecurityGroupRule rule : rules) {
+            rulesByTraffic.computeIfAbsent(List.of(rule.protocol(), rule.fromPort(), rule.toPort()),
+                    key -> new ArrayList<>()).add(rule);
+        }
+
+        final List<IpPermission> ipPermissions = new ArrayList<>();
+        for (List<SecurityGroupRule> sameTraffic : rulesByTraffic.values()) {
+            final SecurityGroupRule first = sameTraffic.getFirst();
+            ipPermissions.add(IpPermission.builder()
+                    .ipProtocol(first.protocol())
+                    .fromPort(first.fromPort())
+                    .toPort(first.toPort())
+                    .ipRanges(sameTraffic.stream()
+                            .filter(rule -> !rule.isIpv6())
+                            .map(rule -> IpRange.builder().cidrIp(rule.cidr()).description(rule.description()).build())
+                            .toList())
+                    .ipv6Ranges(sameTraffic.stream()
+                            .filter(SecurityGroupRule::isIpv6)
+                            .map(rule -> Ipv6Range.builder().cidrIpv6(rule.cidr()).description(rule.description()).build())
+                            .toList())
+                    .build());
+        }
+        return List.copyOf(ipPermissions);
+    }
+
+    /**
+     * Normalizes a protocol, the EC2 API accepts both names and numbers.
+     *
+     * @param protocol the protocol.
+     * @return the normalized protocol.
+     */
+    public static String normalizeProtocol(final String protocol) {
+        return switch (protocol.toLowerCase(Locale.ROOT)) {
+            case "6" -> "tcp";
+            case "17" -> "udp";
+            case "1" -> "icmp";
+            case "58" -> "icmpv6";
+            case "all" -> "-1";
+            default -> protocol.toLowerCase(Locale.ROOT);
+        };
+    }
+
+    /**
+     * Parses the expiry at the end of a description, see {@link #withExpiry(String, Instant)}.
+     *
+     * @param description the description, can be null.
+     * @return the expiry, empty if there is none or it is not valid.
+     */
+    private static Optional<Instant> parseExpiry(final String description) {
+        if (description == null || !description.endsWith(EXPIRES_TAG_END)) {
+            return Optional.empty();
+        }
+        final int start = description.lastIndexOf(EXPIRES_TAG);
+        if (start < 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Instant.parse(description.substring(start + EXPIRES_TAG.length(),
+                    description.length() - EXPIRES_TAG_END.length())));
+        } catch (DateTimeParseException e) {
+            //Free text that only looks like an expiry.
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Checks if an IP address or CIDR is an IPv6 one.
+     *
+     * @param address the IP address or CIDR.
+     * @return true for IPv6.
+     */
+    static boolean isIpv6(final String address) {
+        return address.indexOf(':') >= 0;
+    }
+}
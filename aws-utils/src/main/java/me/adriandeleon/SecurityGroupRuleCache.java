@@ -0,0 +1,165 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupsRequest;
+import software.amazon.awssdk.services.ec2.model.SecurityGroup;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SecurityGroupRuleCache: the ingress rules of the security groups, described once and indexed in a
+ * {@link SecurityGroupRuleIndex} per group.
+ * <p>
+ * A lookup of many groups describes only the groups that are not cached (or are older than the TTL), all of them in
+ * one DescribeSecurityGroups request. The helpers that change a rule drop the cached rules of its group with
+ * {@link #invalidate(String)}, so the next lookup reads it again.
+ * <p>
+ * The concurrent lookups of the same groups that are not cached share one request, see {@link SingleFlight}. An
+ * invalidation also fences the requests already sent, the lookups after it send a new one.
+ */
+public final class SecurityGroupRuleCache {
+
+    /**
+     * The cache configuration.
+     */
+    @Getter
+    private final SecurityGroupRuleCacheConfig config;
+    /**
+     * The clock of the index ages.
+     */
+    private final Clock clock;
+    /**
+     * The cached rules, one index per security group id.
+     */
+    private final Map<String, SecurityGroupRuleIndex> indexes = new ConcurrentHashMap<>();
+    /**
+     * The describes in flight, one request for the concurrent lookups of the same groups.
+     */
+    private final SingleFlight<List<Object>, Map<String, SecurityGroupRuleIndex>> describes =
+            new SingleFlight<>(Ec2Metrics.CACHE_IN_FLIGHT);
+
+    /**
+     * Creates a cache.
+     *
+     * @param config the cache configuration.
+     */
+    public SecurityGroupRuleCache(final SecurityGroupRuleCacheConfig config) {
+        this(config, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a cache with a clock, for the tests.
+     *
+     * @param config the cache configuration.
+     * @param clock  the clock of the index ages.
+     */
+    SecurityGroupRuleCache(final SecurityGroupRuleCacheConfig config, final Clock clock) {
+        Validate.notNull(config, "config cannot be null.");
+        Validate.notNull(clock, "clock cannot be null.");
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the rules of some security groups, describing the ones that are not cached.
+     *
+     * @param client   the EC2 client of the account and region of the groups.
+     * @param groupIds the security group ids, none is an empty index.
+     * @return the index of the rules of all the groups, in the order of the groups.
+     */
+    public SecurityGroupRuleIndex get(final Ec2Client client, final Collection<String> groupIds) {
+        Validate.notNull(client, "client cannot be null.");
+        Validate.notNull(groupIds, "groupIds cannot be null.");
+
+        final Set<String> uniqueGroupIds = new LinkedHashSet<>(groupIds);
+        final Instant now = clock.instant();
+        if (uniqueGroupIds.isEmpty()) {
+            return new SecurityGroupRuleIndex(List.of(), now);
+        }
+        final List<String> missing = new ArrayList<>();
+        for (String groupId : uniqueGroupIds) {
+            final SecurityGroupRuleIndex cached = config.isEnabled() ? indexes.get(groupId) : null;
+            final boolean hit = cached != null && now.isBefore(cached.getLoadedAt().plus(config.getTtl()));
+            Ec2Metrics.recordCacheAccess(Ec2Metrics.CACHE_SECURITY_GROUP_RULES, hit);
+            if (!hit) {
+                missing.add(groupId);
+            }
+        }
+
+        final Map<String, SecurityGroupRuleIndex> described = missing.isEmpty() ? Map.of()
+                : describes.execute(List.of(client, missing), () -> describe(client, missing, now));
+
+        if (uniqueGroupIds.size() == 1) {
+            final String groupId = uniqueGroupIds.iterator().next();
+            return described.getOrDefault(groupId, indexes.getOrDefault(groupId, new SecurityGroupRuleIndex(List.of(), now)));
+        }
+        //The rules of the groups, in the order of the groups, in one index.
+        final List<SecurityGroupRule> rules = new ArrayList<>();
+        Instant loadedAt = now;
+        for (String groupId : uniqueGroupIds) {
+            final SecurityGroupRuleIndex index = described.getOrDefault(groupId, indexes.get(groupId));
+            if (index != null) {
+                rules.addAll(index.getRules());
+                loadedAt = index.getLoadedAt().isBefore(loadedAt) ? index.getLoadedAt() : loadedAt;
+            }
+        }
+        return new SecurityGroupRuleIndex(rules, loadedAt);
+    }
+
+    /**
+     * Drops the cached rules of a security group.
+     *
+     * @param groupId the security group id.
+     */
+    public void invalidate(final String groupId) {
+        describes.fence();
+        indexes.remove(groupId);
+    }
+
+    /**
+     * Drops all the cached rules.
+     */
+    public void invalidateAll() {
+        describes.fence();
+        indexes.clear();
+    }
+
+    /**
+     * Describes security groups, and caches their rules unless the cache was invalidated meanwhile.
+     *
+     * @param client   the EC2 client.
+     * @param groupIds the security group ids.
+     * @param now      when the groups are described.
+     * @return the rules, one index per security group id.
+     */
+    private Map<String, SecurityGroupRuleIndex> describe(final Ec2Client client, final List<String> groupIds,
+                                                         final Instant now) {
+        final long generation = describes.generation();
+        final DescribeSecurityGroupsRequest request = DescribeSecurityGroupsRequest.builder()
+                .groupIds(groupIds)
+                .build();
+        final Map<String, SecurityGroupRuleIndex> described = new HashMap<>();
+        for (SecurityGroup securityGroup : client.describeSecurityGroups(request).securityGroups()) {
+            described.put(securityGroup.groupId(), SecurityGroupRuleIndex.of(List.of(securityGroup), now));
+        }
+        if (config.isEnabled()) {
+            indexes.putAll(described);
+            //Invalidated while it was described, the rules may be older than the change.
+            if (generation != describes.generation()) {
+                described.forEach(indexes::remove);
+            }
+        }
+        return described;
+    }
+}
@@ -0,0 +1,45 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * SecurityGroupRuleCacheConfig: the settings of a {@link SecurityGroupRuleCache}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SecurityGroupRuleCacheConfig {
+
+    /**
+     * Enables or disables the cache. A disabled cache describes the security groups on every lookup.
+     */
+    @Builder.Default
+    boolean enabled = true;
+
+    /**
+     * How long the rules of a security group are used before describing it again. The changes made by the helpers
+     * drop the rules of the changed group right away.
+     */
+    @Builder.Default
+    Duration ttl = Duration.ofSeconds(30);
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static SecurityGroupRuleCacheConfig defaults() {
+        return SecurityGroupRuleCacheConfig.builder().build();
+    }
+
+    /**
+     * Gets a configuration that disables the cache.
+     *
+     * @return the disabled configuration.
+     */
+    public static SecurityGroupRuleCacheConfig disabled() {
+        return SecurityGroupRuleCacheConfig.builder().enabled(false).build();
+    }
+}
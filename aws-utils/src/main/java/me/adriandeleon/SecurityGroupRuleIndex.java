@@ -0,0 +1,337 @@
+package me.adriandeleon;
+
+import lombok.Getter;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.services.ec2.model.SecurityGroup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * SecurityGroupRuleIndex: the ingress rules of some security groups, indexed by description, security group,
+ * protocol and CIDR.
+ * <p>
+ * The CIDRs are kept in binary prefix tries, one for IPv4 and one for IPv6, so the rules that cover an IP are found by
+ * walking the bits of the IP once instead of comparing every rule. Every lookup returns all the matching rules, in the
+ * order of the security groups and of their ip permissions.
+ */
+public final class SecurityGroupRuleIndex {
+
+    /**
+     * The constant PROTOCOL_ALL.
+     */
+    private static final String PROTOCOL_ALL = "-1";
+    /**
+     * The constant IPV4_BITS.
+     */
+    private static final int IPV4_BITS = 32;
+    /**
+     * The constant IPV6_BITS.
+     */
+    private static final int IPV6_BITS = 128;
+
+    /**
+     * The indexed rules.
+     */
+    @Getter
+    private final List<SecurityGroupRule> rules;
+    /**
+     * When the rules were read.
+     */
+    @Getter
+    private final Instant loadedAt;
+    /**
+     * The rules by description, without the expiry.
+     */
+    private final Map<String, List<SecurityGroupRule>> byDescription = new HashMap<>();
+    /**
+     * The rules by security group id.
+     */
+    private final Map<String, List<SecurityGroupRule>> byGroup = new HashMap<>();
+    /**
+     * The positions of the rules in the rules list, by protocol.
+     */
+    private final Map<String, List<Integer>> byProtocol = new HashMap<>();
+    /**
+     * The root of the trie of the IPv4 CIDRs.
+     */
+    private final TrieNode ipv4 = new TrieNode();
+    /**
+     * The root of the trie of the IPv6 CIDRs.
+     */
+    private final TrieNode ipv6 = new TrieNode();
+
+    /**
+     * Creates an index of some rules.
+     *
+     * @param rules    the rules.
+     * @param loadedAt when the rules were read.
+     */
+    public SecurityGroupRuleIndex(final Collection<SecurityGroupRule> rules, final Instant loadedAt) {
+        Validate.notNull(rules, "rules cannot be null.");
+        Validate.notNull(loadedAt, "loadedAt cannot be null.");
+
+        this.rules = List.copyOf(rules);
+        this.loadedAt = loadedAt;
+        for (int index = 0; index < this.rules.size(); index++) {
+            final SecurityGroupRule rule = this.rules.get(index);
+            if (rule.description() != null) {
+                //A rule with an expiry is found by its description alone.
+                byDescription.computeIfAbsent(rule.baseDescription(), key -> new ArrayList<>()).add(rule);
+            }
+            byGroup.computeIfAbsent(rule.groupId(), key -> new ArrayList<>()).add(rule);
+            byProtocol.computeIfAbsent(rule.protocol(), key -> new ArrayList<>()).add(index);
+            insert(rule.cidr(), index);
+        }
+    }
+
+    /**
+     * Creates an index of the ingress rules of some security groups.
+     *
+     * @param securityGroups the security groups.
+     * @param loadedAt       when the security groups were described.
+     * @return the index.
+     */
+    public static SecurityGroupRuleIndex of(final Collection<SecurityGroup> securityGroups, final Instant loadedAt) {
+        Validate.notNull(securityGroups, "securityGroups cannot be null.");
+        final List<SecurityGroupRule> rules = new ArrayList<>();
+        securityGroups.forEach(securityGroup -> rules.addAll(SecurityGroupRule.fromSecurityGroup(securityGroup)));
+        return new SecurityGroupRuleIndex(rules, loadedAt);
+    }
+
+    /**
+     * Finds the rules with a description, with or without an expiry, see
+     * {@link SecurityGroupRule#withExpiry(String, Instant)}.
+     *
+     * @param description the rule description.
+     * @return the rules.
+     */
+    public List<SecurityGroupRule> findByDescription(final String description) {
+        return List.copyOf(byDescription.getOrDefault(SecurityGroupRule.baseDescription(description), List.of()));
+    }
+
+    /**
+     * Finds the rules of a security group.
+     *
+     * @param groupId the security group id.
+     * @return the rules.
+     */
+    public List<SecurityGroupRule> findByGroup(final String groupId) {
+        return List.copyOf(byGroup.getOrDefault(groupId, List.of()));
+    }
+
+    /**
+     * Finds the rules that open a port: the rules of that protocol, or of all the protocols, whose port range contains
+     * the port.
+     *
+     * @param protocol the protocol name or number.
+     * @param port     the port.
+     * @return the rules.
+     */
+    public List<SecurityGroupRule> findByTraffic(final String protocol, final int port) {
+        Validate.notBlank(protocol, AwsEc2Utils.MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        final String normalized = SecurityGroupRule.normalizeProtocol(protocol);
+        final BitSet candidates = new BitSet(rules.size());
+        byProtocol.getOrDefault(normalized, List.of()).forEach(candidates::set);
+        byProtocol.getOrDefault(PROTOCOL_ALL, List.of()).forEach(candidates::set);
+        return candidates.stream()
+                .mapToObj(rules::get)
+                .filter(rule -> opens(rule, normalized, port))
+                .toList();
+    }
+
+    /**
+     * Finds the rules whose CIDR contains an IP.
+     *
+     * @param ip the IPv4 or IPv6 address.
+     * @return the rules, empty if the IP is not valid.
+     */
+    public List<SecurityGroupRule> findCovering(final String ip) {
+        return findCovering(ip, rule -> true);
+    }
+
+    /**
+     * Finds the rules whose CIDR contains an IP and that open a port.
+     *
+     * @param ip       the IPv4 or IPv6 address.
+     * @param protocol the protocol name or number.
+     * @param port     the port.
+     * @return the rules, empty if the IP is not valid.
+     */
+    public List<SecurityGroupRule> findCovering(final String ip, final String protocol, final int port) {
+        Validate.notBlank(protocol, AwsEc2Utils.MESSAGE_PROTOCOL_CANNOT_BE_NULL_OR_BLANK);
+        final String normalized = SecurityGroupRule.normalizeProtocol(protocol);
+        return findCovering(ip, rule -> opens(rule, normalized, port));
+    }
+
+    /**
+     * Finds the rules whose CIDR contains an IP and that pass a filter.
+     *
+     * @param ip     the IPv4 or IPv6 address.
+     * @param filter the filter.
+     * @return the rules, empty if the IP is not valid.
+     */
+    private List<SecurityGroupRule> findCovering(final String ip, final Predicate<SecurityGroupRule> filter) {
+        Validate.notBlank(ip, AwsEc2Utils.MESSAGE_IP_CANNOT_BE_NULL_OR_BLANK);
+        final byte[] address = parseAddress(ip);
+        if (address == null) {
+            return List.of();
+        }
+
+        //Every node on the path of the IP holds the rules of a prefix of it.
+        final BitSet covering = new BitSet(rules.size());
+        TrieNode node = address.length == 4 ? ipv4 : ipv6;
+        for (int bit = 0; node != null; bit++) {
+            node.ruleIndexes.forEach(covering::set);
+            node = bit < address.length * 8 ? node.child(bitAt(address, bit)) : null;
+        }
+
+        return covering.stream().mapToObj(rules::get).filter(filter).toList();
+    }
+
+    /**
+     * Adds a rule to the trie of its CIDR. A CIDR that is not valid is skipped.
+     *
+     * @param cidr      the CIDR, or an IP for a single address.
+     * @param ruleIndex the position of the rule in the rules list.
+     */
+    private void insert(final String cidr, final int ruleIndex) {
+        final int slash = cidr.indexOf('/');
+        final byte[] address = parseAddress(slash < 0 ? cidr : cidr.substring(0, slash));
+        if (address == null) {
+            return;
+        }
+        final int maxBits = address.length == 4 ? IPV4_BITS : IPV6_BITS;
+        final int prefixLength;
+        try {
+            prefixLength = slash < 0 ? maxBits : Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (prefixLength < 0 || prefixLength > maxBits) {
+            return;
+        }
+
+        TrieNode node = address.length == 4 ? ipv4 : ipv6;
+        for (int bit = 0; bit < prefixLength; bit++) {
+            node = node.childOrCreate(bitAt(address, bit));
+        }
+        node.ruleIndexes.add(ruleIndex);
+    }
+
+    /**
+     * Checks if a rule opens a port.
+     *
+     * @param rule     the rule.
+     * @param protocol the normalized protocol.
+     * @param port     the port.
+     * @return true if the rule is of that protocol, or of all the protocols, and its port range contains the port.
+     */
+    private static boolean opens(final SecurityGroupRule rule, final String protocol, final int port) {
+        final boolean protocolMatches = PROTOCOL_ALL.equals(rule.protocol()) || rule.protocol().equals(protocol);
+        final boolean allPorts = rule.fromPort() == SecurityGroupRule.ALL || PROTOCOL_ALL.equals(rule.protocol());
+        return protocolMatches && (allPorts || (rule.fromPort() <= port && port <= rule.toPort()));
+    }
+
+    /**
+     * Gets a bit of an address, the most significant bit first.
+     *
+     * @param address the address bytes.
+     * @param bit     the position of the bit.
+     * @return the bit, 0 or 1.
+     */
+    private static int bitAt(final byte[] address, final int bit) {
+        return address[bit >>> 3] >>> (7 - (bit & 7)) & 1;
+    }
+
+    /**
+     * Parses an IP address literal, without any DNS lookup.
+     *
+     * @param ip the IP.
+     * @return the address bytes (4 or 16), or null if it is not an IP address.
+     */
+    static byte[] parseAddress(final String ip) {
+        if (ip.indexOf(':') >= 0) {
+            //A host with a colon is only parsed as an IPv6 literal, never looked up.
+            try {
+                final byte[] address = InetAddress.getByName(ip).getAddress();
+                return address.length == 16 ? address : null;
+            } catch (UnknownHostException | SecurityException e) {
+                return null;
+            }
+        }
+
+        final String[] octets = ip.split("\\.", -1);
+        if (octets.length != 4) {
+            return null;
+        }
+        final byte[] address = new byte[4];
+        for (int index = 0; index < octets.length; index++) {
+            final String octet = octets[index];
+            if (octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                return null;
+            }
+            final int value = Integer.parseInt(octet);
+            if (value > 255) {
+                return null;
+            }
+            address[index] = (byte) value;
+        }
+        return address;
+    }
+
+    /**
+     * A node of a binary prefix trie: the rules of a CIDR are in the node at the depth of its prefix length.
+     */
+    private static final class TrieNode {
+        /**
+         * The child for a 0 bit.
+         */
+        private TrieNode zero;
+        /**
+         * The child for a 1 bit.
+         */
+        private TrieNode one;
+        /**
+         * The positions in the rules list of the rules of this prefix.
+         */
+        private final List<Integer> ruleIndexes = new ArrayList<>(0);
+
+        /**
+         * Gets a child.
+         *
+         * @param bit the bit, 0 or 1.
+         * @return the child, or null if there is none.
+         */
+        TrieNode child(final int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        /**
+         * Gets a child, creating it if there is none.
+         *
+         * @param bit the bit, 0 or 1.
+         * @return the child.
+         */
+        TrieNode childOrCreate(final int bit) {
+            if (bit == 0) {
+                if (zero == null) {
+                    zero = new TrieNode();
+                }
+                return zero;
+            }
+            if (one == null) {
+                one = new TrieNode();
+            }
+            return one;
+        }
+    }
+}
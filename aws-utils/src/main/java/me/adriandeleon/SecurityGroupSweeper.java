@@ -0,0 +1,165 @@
+package me.adriandeleon;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupsResponse;
+import software.amazon.awssdk.services.ec2.model.SecurityGroup;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SecurityGroupSweeper: revokes the temporary ingress rules of all the security groups of a region once they expire.
+ * <p>
+ * A temporary rule has an expiry at the end of its description, see
+ * {@link SecurityGroupRule#withExpiry(String, Instant)}. The sweeper revokes the expired rules, and the duplicates of
+ * the ones still valid: the rules with an expiry and the same description and ports as another one that expires later,
+ * like the old IPs of a developer. The rules without an expiry are never touched.
+ * <p>
+ * The groups are described a page at a time, and the revokes of a page (one RevokeSecurityGroupIngress request per
+ * group) run in parallel on the {@link FanOutExecutor} while the next page is described.
+ */
+@Log4j2
+public final class SecurityGroupSweeper {
+
+    /**
+     * The constant MAX_RESULTS_PER_PAGE.
+     */
+    private static final int MAX_RESULTS_PER_PAGE = 1000;
+
+    /**
+     * The EC2 client of the region to sweep.
+     */
+    private final Ec2Client ec2Client;
+    /**
+     * The executor of the revokes.
+     */
+    private final FanOutExecutor executor;
+    /**
+     * The clock the expiries are compared with.
+     */
+    private final Clock clock;
+
+    /**
+     * Creates a sweeper.
+     *
+     * @param ec2Client the EC2 client of the region to sweep.
+     * @param executor  the executor of the revokes.
+     */
+    public SecurityGroupSweeper(final Ec2Client ec2Client, final FanOutExecutor executor) {
+        this(ec2Client, executor, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a sweeper with a clock, for the tests.
+     *
+     * @param ec2Client the EC2 client of the region to sweep.
+     * @param executor  the executor of the revokes.
+     * @param clock     the clock the expiries are compared with.
+     */
+    SecurityGroupSweeper(final Ec2Client ec2Client, final FanOutExecutor executor, final Clock clock) {
+        Validate.notNull(ec2Client, "ec2Client cannot be null.");
+        Validate.notNull(executor, "executor cannot be null.");
+        Validate.notNull(clock, "clock cannot be null.");
+        this.ec2Client = ec2Client;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Revokes the expired and duplicate rules of all the security groups.
+     *
+     * @param dryRun if true, the rules are found and reported but not revoked.
+     * @return the report of the sweep.
+     */
+    public SweepReport sweep(final boolean dryRun) {
+        final long start = System.nanoTime();
+        final Instant now = clock.instant();
+        final Region region = ec2Client.serviceClientConfiguration().region();
+        final SecurityGroupReconciler reconciler = new SecurityGroupReconciler(ec2Client);
+
+        int groupsScanned = 0;
+        int rulesScanned = 0;
+        final List<ReconciliationReport.GroupChanges> groups = new ArrayList<>();
+        final List<CompletableFuture<List<TargetResult<ReconciliationReport.GroupChanges>>>> pages = new ArrayList<>();
+        try (ExecutorService pageExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final DescribeSecurityGroupsRequest request = DescribeSecurityGroupsRequest.builder()
+                    .maxResults(MAX_RESULTS_PER_PAGE)
+                    .build();
+            for (DescribeSecurityGroupsResponse page : ec2Client.describeSecurityGroupsPaginator(request)) {
+                final List<FanOutTask<ReconciliationReport.GroupChanges>> revokes = new ArrayList<>();
+                for (SecurityGroup securityGroup : page.securityGroups()) {
+                    final List<SecurityGroupRule> rules = SecurityGroupRule.fromSecurityGroup(securityGroup);
+                    groupsScanned++;
+                    rulesScanned += rules.size();
+
+                    final List<SecurityGroupRule> stale = findStaleRules(rules, now);
+                    if (stale.isEmpty()) {
+                        continue;
+                    }
+                    final ReconciliationReport.GroupChanges changes = new ReconciliationReport.GroupChanges(
+                            securityGroup.groupId(), List.of(), stale, List.of(), 0, null);
+                    if (dryRun) {
+                        groups.add(changes);
+                    } else {
+                        revokes.add(new FanOutTask<>(region, securityGroup.groupId(), () -> reconciler.apply(changes)));
+                    }
+                }
+                if (!revokes.isEmpty()) {
+                    pages.add(CompletableFuture.supplyAsync(() -> executor.invokeAll(revokes), pageExecutor));
+                }
+            }
+        }
+        for (CompletableFuture<List<TargetResult<ReconciliationReport.GroupChanges>>> page : pages) {
+            for (TargetResult<ReconciliationReport.GroupChanges> result : page.join()) {
+                groups.add(result.isSuccess()
+                        ? result.value()
+                        : ReconciliationReport.GroupChanges.failed(result.target(), result.error().getMessage()));
+            }
+        }
+
+        final SweepReport report = new SweepReport(dryRun, groupsScanned, rulesScanned, groups,
+                Duration.ofNanos(System.nanoTime() - start));
+        log.info("Swept {} security groups and {} rules in {} ms ({} rules/s, dry run: {}): {} rules revoked, {} "
+                        + "failed groups.", groupsScanned, rulesScanned, report.elapsed().toMillis(),
+                Math.round(report.rulesPerSecond()), dryRun, report.revoked().size(), report.failures().size());
+        return report;
+    }
+
+    /**
+     * Finds the rules of a group to revoke: the expired ones, and the ones with an expiry that have the same
+     * description, ports and address family as another one that expires later.
+     *
+     * @param rules the rules of a security group.
+     * @param now   the current time.
+     * @return the rules to revoke, in the order of the rules.
+     */
+    static List<SecurityGroupRule> findStaleRules(final List<SecurityGroupRule> rules, final Instant now) {
+        final Map<List<Object>, SecurityGroupRule> latest = new LinkedHashMap<>();
+        final Comparator<SecurityGroupRule> byExpiry = Comparator.comparing(rule -> rule.expiresAt().orElseThrow());
+        for (SecurityGroupRule rule : rules) {
+            if (rule.expiresAt().isPresent() && !rule.isExpired(now)) {
+                //Among the same rules, the one that expires last is kept. An IPv4 and an IPv6 rule are a dual-stack
+                //pair, not the same rule.
+                latest.merge(List.of(rule.baseDescription(), rule.protocol(), rule.fromPort(), rule.toPort(),
+                        rule.isIpv6()), rule, (kept, other) -> byExpiry.compare(other, kept) >= 0 ? other : kept);
+            }
+        }
+        return rules.stream()
+                .filter(rule -> rule.expiresAt().isPresent())
+                .filter(rule -> rule.isExpired(now) || !latest.containsValue(rule))
+                .toList();
+    }
+}
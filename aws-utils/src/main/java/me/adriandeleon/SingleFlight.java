@@ -0,0 +1,109 @@
+package me.adriandeleon;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight: runs one call at a time per key, the callers asking for a key while its call runs wait for it and
+ * share its result or its exception.
+ * <p>
+ * A burst of identical lookups is then one EC2 request. The changes call {@link #fence()}: the callers that arrive
+ * after it start a new call instead of sharing one started before the change, so nobody reads what was there before
+ * their own write.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the results.
+ */
+final class SingleFlight<K, V> {
+
+    /**
+     * The name of its metrics.
+     */
+    private final String name;
+    /**
+     * The calls running, by key.
+     */
+    private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    /**
+     * Incremented by every fence, the calls started before it are not shared anymore.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a single flight.
+     *
+     * @param name the name of its metrics, see {@link Ec2Metrics#recordCacheAccess(String, boolean)}.
+     */
+    SingleFlight(final String name) {
+        Validate.notBlank(name, "name cannot be null or blank.");
+        this.name = name;
+    }
+
+    /**
+     * Runs the call of a key, or waits for the one already running.
+     *
+     * @param key  the key.
+     * @param call the call, only run if no call of the key is running.
+     * @return the result of the call.
+     */
+    V execute(final K key, final Supplier<V> call) {
+        Validate.notNull(key, "key cannot be null.");
+        Validate.notNull(call, "call cannot be null.");
+
+        final Flight<V> created = new Flight<>(generation.get(), new CompletableFuture<>());
+        final Flight<V> flight = flights.merge(key, created,
+                (running, fresh) -> running.generation() >= fresh.generation() ? running : fresh);
+        Ec2Metrics.recordCacheAccess(name, flight != created);
+        if (flight != created) {
+            try {
+                return flight.result().join();
+            } catch (CompletionException e) {
+                //The same exception as the caller that ran it, not a wrapper.
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            final V result = call.get();
+            created.result().complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, created);
+        }
+    }
+
+    /**
+     * Gets the current generation, incremented by every {@link #fence()}.
+     *
+     * @return the generation.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Stops sharing the calls running now, the next callers start new ones.
+     */
+    void fence() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * A call running.
+     *
+     * @param generation the generation it started in.
+     * @param result     the result of the call.
+     * @param <V>        the type of the result.
+     */
+    private record Flight<V>(long generation, CompletableFuture<V> result) {
+    }
+}
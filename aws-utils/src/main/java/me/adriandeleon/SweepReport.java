@@ -0,0 +1,73 @@
+package me.adriandeleon;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * SweepReport: what a {@link SecurityGroupSweeper} revoked (or would revoke, in a dry run), and how fast it went.
+ *
+ * @param dryRun        true if nothing was modified.
+ * @param groupsScanned the number of security groups described.
+ * @param rulesScanned  the number of ingress rules of those groups.
+ * @param groups        the changes of the groups with expired or duplicate rules.
+ * @param elapsed       how long the sweep took.
+ */
+public record SweepReport(boolean dryRun, int groupsScanned, int rulesScanned,
+                          List<ReconciliationReport.GroupChanges> groups, Duration elapsed) {
+
+    /**
+     * Creates a report.
+     */
+    public SweepReport {
+        groups = List.copyOf(groups);
+    }
+
+    /**
+     * Gets the rules revoked in all the groups.
+     *
+     * @return the revoked rules.
+     */
+    public List<SecurityGroupRule> revoked() {
+        return groups.stream().filter(ReconciliationReport.GroupChanges::isSuccess)
+                .flatMap(group -> group.revoked().stream())
+                .toList();
+    }
+
+    /**
+     * Gets the groups whose rules could not be revoked.
+     *
+     * @return the failed groups.
+     */
+    public List<ReconciliationReport.GroupChanges> failures() {
+        return groups.stream().filter(group -> !group.isSuccess()).toList();
+    }
+
+    /**
+     * Gets the number of rules scanned per second.
+     *
+     * @return the throughput, 0 if no time elapsed.
+     */
+    public double rulesPerSecond() {
+        return perSecond(rulesScanned);
+    }
+
+    /**
+     * Gets the number of security groups scanned per second.
+     *
+     * @return the throughput, 0 if no time elapsed.
+     */
+    public double groupsPerSecond() {
+        return perSecond(groupsScanned);
+    }
+
+    /**
+     * Gets a throughput over the elapsed time.
+     *
+     * @param count the count.
+     * @return the count per second, 0 if no time elapsed.
+     */
+    private double perSecond(final int count) {
+        final long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : count * 1_000_000_000d / nanos;
+    }
+}
@@ -0,0 +1,50 @@
+package me.adriandeleon;
+
+import software.amazon.awssdk.regions.Region;
+
+/**
+ * TargetResult: the result or the failure of one target of a fan-out.
+ *
+ * @param region the region of the target.
+ * @param target the target (an instance or security group id).
+ * @param value  the result, null if the target failed.
+ * @param error  the failure, null if the target succeeded.
+ * @param <T>    the result type.
+ */
+public record TargetResult<T>(Region region, String target, T value, Throwable error) {
+
+    /**
+     * Creates the result of a target that succeeded.
+     *
+     * @param region the region of the target.
+     * @param target the target.
+     * @param value  the result.
+     * @param <T>    the result type.
+     * @return the target result.
+     */
+    public static <T> TargetResult<T> success(final Region region, final String target, final T value) {
+        return new TargetResult<>(region, target, value, null);
+    }
+
+    /**
+     * Creates the result of a target that failed.
+     *
+     * @param region the region of the target.
+     * @param target the target.
+     * @param error  the failure.
+     * @param <T>    the result type.
+     * @return the target result.
+     */
+    public static <T> TargetResult<T> failure(final Region region, final String target, final Throwable error) {
+        return new TargetResult<>(region, target, null, error);
+    }
+
+    /**
+     * Checks if the target succeeded.
+     *
+     * @return true if there was no error.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,106 @@
+package me.adriandeleon;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * ThrottlingConfig: the client-side rate limits and retries of the EC2 clients, see {@link AdaptiveRateLimiter}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ThrottlingConfig {
+
+    /**
+     * Enables or disables the rate limiters. The retries are configured either way.
+     */
+    @Builder.Default
+    boolean enabled = true;
+
+    /**
+     * The starting rate of every API action and region, in requests per second.
+     */
+    @Builder.Default
+    double initialRate = 20;
+
+    /**
+     * The maximum number of requests sent at once, before the rate applies. Like the EC2 request token buckets, a
+     * burst of requests is allowed and then refilled at the rate.
+     */
+    @Builder.Default
+    int burst = 100;
+
+    /**
+     * The rate never goes below this, in requests per second.
+     */
+    @Builder.Default
+    double minRate = 1;
+
+    /**
+     * The rate never goes over this, in requests per second.
+     */
+    @Builder.Default
+    double maxRate = 200;
+
+    /**
+     * How much the rate grows for every second of requests without throttling, in requests per second.
+     */
+    @Builder.Default
+    double additiveIncrease = 1;
+
+    /**
+     * The rate is multiplied by this when EC2 throttles a request.
+     */
+    @Builder.Default
+    double multiplicativeDecrease = 0.5;
+
+    /**
+     * The maximum number of retries of a request.
+     */
+    @Builder.Default
+    int maxRetries = 5;
+
+    /**
+     * The base delay of the retries, the delays grow exponentially from it with full jitter.
+     */
+    @Builder.Default
+    Duration baseDelay = Duration.ofMillis(100);
+
+    /**
+     * The maximum delay of a retry.
+     */
+    @Builder.Default
+    Duration maxBackoff = Duration.ofSeconds(20);
+
+    /**
+     * The retry budget of a client. Every retry takes {@link #retryCost} from it and the successes give it back, so
+     * when most requests fail the client stops retrying instead of stampeding.
+     */
+    @Builder.Default
+    int retryBudget = 500;
+
+    /**
+     * What one retry takes from the retry budget.
+     */
+    @Builder.Default
+    int retryCost = 5;
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static ThrottlingConfig defaults() {
+        return ThrottlingConfig.builder().build();
+    }
+
+    /**
+     * Gets a configuration without rate limiters, only with the retries.
+     *
+     * @return the configuration.
+     */
+    public static ThrottlingConfig disabled() {
+        return ThrottlingConfig.builder().enabled(false).build();
+    }
+}
@@ -0,0 +1,91 @@
+package me.adriandeleon;
+
+import lombok.extern.log4j.Log4j2;
+import software.amazon.awssdk.awscore.AwsExecutionAttribute;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+/**
+ * ThrottlingInterceptor: applies the {@link Ec2RateLimiters} to every attempt of a request, retries included.
+ * <p>
+ * EC2 answers RequestLimitExceeded with a 503, so 503 and 429 responses count as throttled.
+ */
+@Log4j2
+final class ThrottlingInterceptor implements ExecutionInterceptor {
+
+    /**
+     * The constant LIMITER, the rate limiter of the call.
+     */
+    private static final ExecutionAttribute<AdaptiveRateLimiter> LIMITER = new ExecutionAttribute<>("RateLimiter");
+    /**
+     * The constant SENT_AT, when the last request was sent in nanoseconds.
+     */
+    private static final ExecutionAttribute<Long> SENT_AT = new ExecutionAttribute<>("RateLimiterSentAt");
+    /**
+     * The constant HTTP_TOO_MANY_REQUESTS.
+     */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    /**
+     * The constant HTTP_SERVICE_UNAVAILABLE.
+     */
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    /**
+     * The rate limiters, by action and region.
+     */
+    private final Ec2RateLimiters rateLimiters;
+
+    /**
+     * Creates a new interceptor.
+     *
+     * @param rateLimiters the rate limiters, by action and region.
+     */
+    ThrottlingInterceptor(final Ec2RateLimiters rateLimiters) {
+        this.rateLimiters = rateLimiters;
+    }
+
+    @Override
+    public void beforeTransmission(final Context.BeforeTransmission context,
+                                   final ExecutionAttributes executionAttributes) {
+        final AdaptiveRateLimiter limiter = rateLimiters.getLimiter(
+                executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME),
+                executionAttributes.getAttribute(AwsExecutionAttribute.AWS_REGION));
+        try {
+            executionAttributes.putAttribute(SENT_AT, limiter.acquire());
+            executionAttributes.putAttribute(LIMITER, limiter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.create("Interrupted while waiting for the EC2 rate limiter.", e);
+        }
+    }
+
+    @Override
+    public void afterTransmission(final Context.AfterTransmission context,
+                                  final ExecutionAttributes executionAttributes) {
+        final AdaptiveRateLimiter limiter = executionAttributes.getAttribute(LIMITER);
+        final int statusCode = context.httpResponse().statusCode();
+
+        if (isThrottled(statusCode)) {
+            limiter.onThrottle(executionAttributes.getAttribute(SENT_AT));
+            log.warn("{} was throttled, rate lowered to {} requests per second.",
+                    executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME),
+                    String.format("%.2f", limiter.getRate()));
+        } else if (context.httpResponse().isSuccessful()) {
+            limiter.onSuccess();
+        }
+    }
+
+    /**
+     * Checks if a response status means the request was throttled.
+     *
+     * @param statusCode the HTTP status code.
+     * @return true if the request was throttled.
+     */
+    static boolean isThrottled(final int statusCode) {
+        return statusCode == HTTP_SERVICE_UNAVAILABLE || statusCode == HTTP_TOO_MANY_REQUESTS;
+    }
+}
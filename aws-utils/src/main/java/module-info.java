@@ -0,0 +1,21 @@
+module aws.utils {
+    requires java.xml;
+    requires jdk.jfr;
+    requires org.apache.commons.lang3;
+    requires org.apache.logging.log4j;
+    requires software.amazon.awssdk.auth;
+    requires software.amazon.awssdk.awscore;
+    requires software.amazon.awssdk.core;
+    requires software.amazon.awssdk.http;
+    requires software.amazon.awssdk.http.apache;
+    requires software.amazon.awssdk.http.auth.aws;
+    requires software.amazon.awssdk.http.auth.spi;
+    requires software.amazon.awssdk.http.nio.netty;
+    requires software.amazon.awssdk.http.urlconnection;
+    requires software.amazon.awssdk.identity.spi;
+    requires software.amazon.awssdk.regions;
+    requires software.amazon.awssdk.services.ec2;
+    requires unirest.java;
+    requires lombok;
+    requires static micrometer.core;
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@Tag("UnitTest")
+class AdaptiveRateLimiterTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(ThrottlingConfig.builder()
+            .initialRate(10)
+            .minRate(1)
+            .maxRate(12)
+            .burst(10)
+            .build(), nanoTime::get);
+
+    @Test
+    void reserve_Test_WaitsWhenTheBucketIsEmpty() {
+        //The bucket starts full.
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.reserve()).isZero();
+        }
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(limiter.reserve()).isZero();
+    }
+
+    @Test
+    void onThrottle_Test_DecreasesOncePerSentRequest() {
+        final long sentBefore = nanoTime.get();
+        nanoTime.addAndGet(1);
+
+        limiter.onThrottle(sentBefore);
+        assertThat(limiter.getRate()).isEqualTo(5);
+
+        //Sent at the old rate, it does not lower the rate again.
+        limiter.onThrottle(sentBefore);
+        assertThat(limiter.getRate()).isEqualTo(5);
+
+        nanoTime.addAndGet(1);
+        limiter.onThrottle(nanoTime.get());
+        assertThat(limiter.getRate()).isEqualTo(2.5);
+        assertThat(limiter.getThrottledCount()).isEqualTo(3);
+    }
+
+    @Test
+    void onSuccess_Test_IncreasesUpToTheMaxRate() {
+        //A second of requests at 10 per second adds about one request per second.
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess();
+        }
+        assertThat(limiter.getRate()).isCloseTo(11, within(0.1));
+
+        for (int i = 0; i < 1_000; i++) {
+            limiter.onSuccess();
+        }
+        assertThat(limiter.getRate()).isEqualTo(12);
+    }
+}
@@ -0,0 +1,226 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Runs the asynchronous helpers against a local EC2 stub, no AWS account needed.
+@Tag("UnitTest")
+class AwsEc2AsyncUtilsTest {
+
+    private static final int MAX_CONCURRENCY = 4;
+
+    //Closing the Netty event loops takes a couple of seconds, so the stub and the clients are shared by the tests.
+    private static Ec2StubServer stubServer;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        stubServer = new Ec2StubServer();
+        StubClients.configure(stubServer, config -> config.maxConcurrency(MAX_CONCURRENCY));
+    }
+
+    @AfterAll
+    static void afterAll() {
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        stubServer.reset();
+    }
+
+    @Test
+    void getListOfInstanceNames_Test_FollowsNextToken() {
+        stubServer.on("DescribeInstances", parameters -> parameters.containsKey("NextToken")
+                ? Ec2StubServer.describeInstancesResponse(null,
+                Ec2StubServer.instance("i-2", "web-2", "10.0.0.2", "sg-1"))
+                : Ec2StubServer.describeInstancesResponse("page-2",
+                Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1")));
+
+        assertThat(AwsEc2AsyncUtils.getListOfInstanceNames("web").join()).containsExactly("i-1", "i-2");
+        assertThat(stubServer.requests("DescribeInstances").getFirst()).containsEntry("Filter.1.Value.1", "*web*");
+    }
+
+    @Test
+    void getInstance_Test_UnknownInstanceId() {
+        stubServer.on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null));
+
+        assertThat(AwsEc2AsyncUtils.getInstance("i-DoNotExist").join()).isNotPresent();
+    }
+
+    @Test
+    void getInstance_Test_ConcurrentCallsAreBoundedByMaxConcurrency() {
+        stubServer.on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null,
+                Ec2StubServer.instance(parameters.get("Filter.1.Value.1"), "web", "10.0.0.1", "sg-1")));
+
+        final List<CompletableFuture<Optional<Instance>>> futures = IntStream.range(0, 200)
+                .mapToObj(i -> AwsEc2AsyncUtils.getInstance("i-" + i))
+                .toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(futures).allSatisfy(future -> assertThat(future.join()).isPresent());
+        assertThat(stubServer.requestCount()).isEqualTo(200);
+        assertThat(stubServer.connectionCount()).isBetween(1, MAX_CONCURRENCY);
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_AuthorizesTheNewIpBeforeRevokingTheOld() {
+        final List<String> actions = new CopyOnWriteArrayList<>();
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"),
+                                Ec2StubServer.ipPermission("tcp", 80, 80, "0.0.0.0/0", "web"))))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    actions.add("authorize");
+                    return Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress");
+                })
+                .on("RevokeSecurityGroupIngress", parameters -> {
+                    actions.add("revoke");
+                    return Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress");
+                });
+
+        AwsEc2AsyncUtils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8").join();
+
+        assertThat(actions).containsExactly("authorize", "revoke");
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(1);
+        //The new rule keeps the ports of the old one, and the web rule is left alone.
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress").getFirst())
+                .containsEntry("GroupId", "sg-1")
+                .containsEntry("IpPermissions.1.IpProtocol", "tcp")
+                .containsEntry("IpPermissions.1.FromPort", "22")
+                .containsEntry("IpPermissions.1.ToPort", "22")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "5.6.7.8/32")
+                .containsEntry("IpPermissions.1.IpRanges.1.Description", "developer");
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress").getFirst())
+                .containsEntry("GroupId", "sg-1")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "1.2.3.4/32")
+                .doesNotContainKey("IpPermissions.2.IpProtocol");
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_ChangesTheProtocolAndKeepsThePorts() {
+        final List<String> actions = new CopyOnWriteArrayList<>();
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 8000, 8100, "1.2.3.4/32", "developer"))))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    actions.add("authorize");
+                    return Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress");
+                })
+                .on("RevokeSecurityGroupIngress", parameters -> {
+                    actions.add("revoke");
+                    return Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress");
+                });
+
+        AwsEc2AsyncUtils.updateEC2SecurityGroupRule("sg-1", "developer", "udp", "5.6.7.8").join();
+
+        assertThat(actions).containsExactly("authorize", "revoke");
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.IpProtocol", "udp")
+                .containsEntry("IpPermissions.1.FromPort", "8000")
+                .containsEntry("IpPermissions.1.ToPort", "8100")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "5.6.7.8/32");
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_ToleratesADuplicateRule() {
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"))))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    throw new Ec2StubServer.StubError(400, "InvalidPermission.Duplicate", "The rule already exists");
+                })
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+
+        AwsEc2AsyncUtils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8").join();
+
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).hasSize(1);
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_KeepsTheOldRuleWhenTheAuthorizeFails() {
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"))))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    throw new Ec2StubServer.StubError(400, "InvalidParameterValue", "Invalid IP");
+                });
+
+        assertThatThrownBy(() -> AwsEc2AsyncUtils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8").join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("Invalid IP");
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).isEmpty();
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_FindsATemporaryRuleWithoutItsExpiry() {
+        final String temporary = SecurityGroupRule.withExpiry("developer", Instant.parse("2026-01-01T12:00:00Z"));
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", temporary))))
+                .on("AuthorizeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+
+        assertThat(AwsEc2AsyncUtils.getIpPermission("sg-1", "developer").join()).isPresent();
+
+        AwsEc2AsyncUtils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8").join();
+
+        //The new rule keeps the expiry.
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "5.6.7.8/32")
+                .containsEntry("IpPermissions.1.IpRanges.1.Description", temporary);
+
+        AwsEc2AsyncUtils.removeEC2SecurityGroupRule("sg-1", "developer").join();
+
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).hasSize(2);
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress").getLast())
+                .containsEntry("IpPermissions.1.FromPort", "22")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "1.2.3.4/32");
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_DropsTheCachedRulesOfTheGroup() {
+        final AtomicReference<String> cidr = new AtomicReference<>("1.2.3.4/32");
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, cidr.get(), "developer"))))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    cidr.set(parameters.get("IpPermissions.1.IpRanges.1.CidrIp"));
+                    return Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress");
+                });
+        AwsEc2Utils.getSecurityGroupRuleCache().invalidateAll();
+        assertThat(AwsEc2Utils.getSecurityGroupRules("sg-1", "developer"))
+                .extracting(SecurityGroupRule::cidr).containsExactly("1.2.3.4/32");
+
+        AwsEc2AsyncUtils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8").join();
+
+        //The synchronous helpers describe the group again instead of serving the rules cached before the update.
+        assertThat(AwsEc2Utils.getSecurityGroupRules("sg-1", "developer"))
+                .extracting(SecurityGroupRule::cidr).containsExactly("5.6.7.8/32");
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(3);
+    }
+}
@@ -0,0 +1,429 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.IpPermission;
+import software.amazon.awssdk.services.ec2.model.IpRange;
+import software.amazon.awssdk.services.ec2.model.Ipv6Range;
+import software.amazon.awssdk.services.ec2.model.SecurityGroup;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+//Runs the helpers against a local EC2 stub, no AWS account needed.
+@Tag("UnitTest")
+class AwsEc2UtilsTest {
+
+    private Ec2StubServer stubServer;
+    private final List<Map<String, String>> requests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer();
+        StubClients.configure(stubServer);
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.defaults());
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void getListOfInstanceNames_Test_FiltersOnTheServerAndFollowsNextToken() {
+        stubServer.on("DescribeInstances", parameters -> {
+            requests.add(parameters);
+            return parameters.containsKey("NextToken")
+                    ? Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.instance("i-2", "web-2", "10.0.0.2", "sg-1"))
+                    : Ec2StubServer.describeInstancesResponse("page-2",
+                    Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"));
+        });
+
+        assertThat(AwsEc2Utils.getListOfInstanceNames("web")).containsExactly("i-1", "i-2");
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.getFirst())
+                .containsEntry("Filter.1.Name", "tag:Name")
+                .containsEntry("Filter.1.Value.1", "*web*")
+                .containsEntry("MaxResults", "1000");
+        assertThat(requests.get(1)).containsEntry("NextToken", "page-2");
+    }
+
+    @Test
+    void configure_Test_ReplacesOnlyWhatChanged() {
+        final AwsUtilsConfig previous = AwsEc2Utils.getConfig();
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        try {
+            //A new fan-out keeps the clients and their connection pools.
+            AwsEc2Utils.configure(previous.toBuilder()
+                    .fanOut(FanOutConfig.builder().maxConcurrencyPerRegion(2).build())
+                    .build());
+            assertThat(Ec2ClientProvider.getDefault()).isSameAs(provider);
+            assertThat(AwsEc2Utils.getConfig().getFanOut().getMaxConcurrencyPerRegion()).isEqualTo(2);
+
+            final Ec2ClientConfig client = provider.getConfig().toBuilder().maxConnections(5).build();
+            AwsEc2Utils.configure(AwsEc2Utils.getConfig().toBuilder().client(client).build());
+            assertThat(Ec2ClientProvider.getDefault()).isNotSameAs(provider);
+            assertThat(Ec2ClientProvider.getDefault().getConfig()).isEqualTo(client);
+            //Retired, it still serves the callers that hold its clients.
+            assertThat(provider.isClosed()).isFalse();
+            assertThat(provider.getClient()).isNotNull();
+        } finally {
+            provider.close();
+            AwsEc2Utils.configure(previous);
+        }
+    }
+
+    @Test
+    void getInstance_Test_FiltersByInstanceId() {
+        stubServer.on("DescribeInstances", parameters -> {
+            requests.add(parameters);
+            return Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"));
+        });
+
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+        assertThat(requests.getFirst())
+                .containsEntry("Filter.1.Name", "instance-id")
+                .containsEntry("Filter.1.Value.1", "i-1");
+    }
+
+    @Test
+    void getInstance_Test_ConcurrentCallersShareOneRequest() throws Exception {
+        stubServer.latency(Duration.ofMillis(300))
+                .on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null,
+                        Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1")));
+
+        final List<Optional<Instance>> instances = concurrently(() -> AwsEc2Utils.getInstance("i-1"));
+
+        assertThat(instances).allSatisfy(instance -> assertThat(instance).isPresent());
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(1);
+    }
+
+    @Test
+    void getSecurityGroupRules_Test_ConcurrentCallersShareOneRequest() throws Exception {
+        AwsEc2Utils.configureSecurityGroupRuleCache(SecurityGroupRuleCacheConfig.disabled());
+        try {
+            stubServer.latency(Duration.ofMillis(300))
+                    .on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                            Ec2StubServer.securityGroup("sg-1",
+                                    Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"))));
+
+            final List<List<SecurityGroupRule>> rules =
+                    concurrently(() -> AwsEc2Utils.getSecurityGroupRules("sg-1", "developer"));
+
+            assertThat(rules).allSatisfy(groupRules -> assertThat(groupRules).hasSize(1));
+            //The cache is disabled, the callers share the request itself.
+            assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(1);
+        } finally {
+            AwsEc2Utils.configureSecurityGroupRuleCache(SecurityGroupRuleCacheConfig.defaults());
+        }
+    }
+
+    @Test
+    void getPublicIps_Test_ChunksTheIdsAndReportsTheMissingOnes() {
+        stubServer.on("DescribeInstances", parameters -> {
+            final List<String> instances = new ArrayList<>();
+            for (int value = 1; parameters.containsKey("Filter.1.Value." + value); value++) {
+                final String instanceId = parameters.get("Filter.1.Value." + value);
+                if (instanceId.equals("i-7")) {
+                    //Running without a public IP.
+                    instances.add(Ec2StubServer.instance(instanceId, "web", "-", "sg-1")
+                            .replace("<ipAddress>-</ipAddress>", ""));
+                } else if (!instanceId.equals("i-terminated")) {
+                    instances.add(Ec2StubServer.instance(instanceId, "web", "10.0.0.1", "sg-" + value));
+                }
+            }
+            return Ec2StubServer.describeInstancesResponse(null, instances.toArray(String[]::new));
+        });
+        final List<String> instanceIds = new ArrayList<>();
+        for (int i = 0; i < 450; i++) {
+            instanceIds.add("i-" + i);
+        }
+        instanceIds.add("i-terminated");
+
+        final InstanceLookup<String> publicIps = AwsEc2Utils.getPublicIps(instanceIds);
+
+        assertThat(publicIps.values()).hasSize(449).containsEntry("i-0", "10.0.0.1");
+        assertThat(publicIps.missingIds()).containsExactlyInAnyOrder("i-7", "i-terminated");
+        assertThat(publicIps.isComplete()).isFalse();
+        //200 ids per request, the last one with the 51 left.
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(3)
+                .allSatisfy(request -> assertThat(request).containsEntry("Filter.1.Name", "instance-id")
+                        .doesNotContainKey("Filter.1.Value.201"));
+
+        final InstanceLookup<List<String>> securityGroups = AwsEc2Utils.getSecurityGroups(List.of("i-7", "i-terminated"));
+        assertThat(securityGroups.get("i-7")).hasValue(List.of("sg-1"));
+        assertThat(securityGroups.missingIds()).containsExactly("i-terminated");
+    }
+
+    @Test
+    void getInstance_Test_UnknownInstanceId() {
+        stubServer.on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null));
+
+        assertThat(AwsEc2Utils.getInstance("i-DoNotExist")).isNotPresent();
+    }
+
+    @Test
+    void getPublicIpFromInstance_Test_LeanReads() {
+        Ec2ClientProvider.configure(Ec2ClientProvider.getDefault().getConfig().toBuilder().leanReads(true).build());
+        stubServer.on("DescribeInstances", parameters -> {
+            requests.add(parameters);
+            return Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.detailedInstance("i-1", "web-1", "10.0.0.1", "sg-1", "running"));
+        });
+
+        assertThat(AwsEc2Utils.getListOfInstanceNames("web")).containsExactly("i-1");
+        assertThat(AwsEc2Utils.getPublicIpFromInstance("i-1")).isEqualTo("10.0.0.1");
+        assertThat(AwsEc2Utils.getSecurityGroupList("i-1")).containsExactly("sg-1");
+
+        assertThat(requests).hasSize(3);
+        assertThat(requests.getFirst())
+                .containsEntry("Version", LeanEc2Reader.API_VERSION)
+                .containsEntry("Filter.1.Name", "tag:Name")
+                .containsEntry("Filter.1.Value.1", "*web*");
+        assertThat(requests.get(1))
+                .containsEntry("Filter.1.Name", "instance-id")
+                .containsEntry("Filter.1.Value.1", "i-1");
+    }
+
+    @Test
+    void instanceCatalog_Test_LookupsShareOneDescribe() {
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.enabled());
+        stubServer.on("DescribeInstances", parameters -> {
+            requests.add(parameters);
+            return Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"),
+                    Ec2StubServer.instance("i-2", "db-1", "10.0.0.2", "sg-2"));
+        });
+
+        assertThat(AwsEc2Utils.getPublicIpFromInstanceByName("web")).isEqualTo("10.0.0.1");
+        assertThat(AwsEc2Utils.getListOfInstanceNames("web")).containsExactly("i-1");
+        assertThat(AwsEc2Utils.getSecurityGroupList("i-2")).containsExactly("sg-2");
+        assertThat(AwsEc2Utils.getInstance("i-3")).isNotPresent();
+
+        assertThat(requests).hasSize(1);
+        assertThat(requests.getFirst()).doesNotContainKey("Filter.1.Name");
+        assertThat(AwsEc2Utils.getInstanceCatalog().getStats().hits()).isEqualTo(4);
+    }
+
+    @Test
+    void updateSecurityGroupRulesWithIp_Test_EveryGroupInEveryRegion() {
+        stubServer.on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null,
+                        Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"),
+                        Ec2StubServer.instance("i-2", "web-2", "10.0.0.2", "sg-2"),
+                        Ec2StubServer.instance("i-3", "web-3", "10.0.0.3", "sg-1")))
+                .on("DescribeSecurityGroups", parameters -> {
+                    if ("sg-2".equals(parameters.get("GroupId.1"))) {
+                        throw new Ec2StubServer.StubError(400, "InvalidGroup.NotFound", "The group does not exist");
+                    }
+                    return Ec2StubServer.describeSecurityGroupsResponse(Ec2StubServer.securityGroup("sg-1",
+                            Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer")));
+                })
+                .on("AuthorizeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+
+        final List<TargetResult<ReconciliationReport.GroupChanges>> results = AwsEc2Utils.updateSecurityGroupRulesWithIp(
+                "web", "developer", "5.6.7.8", List.of(Region.US_EAST_1, Region.EU_WEST_1));
+
+        //sg-1 is shared by two instances but updated once per region, the failure of sg-2 does not stop it.
+        assertThat(results).extracting(TargetResult::region, TargetResult::target).containsExactly(
+                tuple(Region.US_EAST_1, "sg-1"), tuple(Region.US_EAST_1, "sg-2"),
+                tuple(Region.EU_WEST_1, "sg-1"), tuple(Region.EU_WEST_1, "sg-2"));
+        assertThat(results).filteredOn(result -> result.target().equals("sg-1")).allSatisfy(result -> {
+            assertThat(result.isSuccess()).isTrue();
+            assertThat(result.value().authorized()).extracting(SecurityGroupRule::cidr).containsExactly("5.6.7.8/32");
+            assertThat(result.value().revoked()).extracting(SecurityGroupRule::cidr).containsExactly("1.2.3.4/32");
+        });
+        assertThat(results).filteredOn(result -> result.target().equals("sg-2"))
+                .allSatisfy(result -> assertThat(result.isSuccess()).isFalse());
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.FromPort", "22")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "5.6.7.8/32");
+    }
+
+    @Test
+    void updateSecurityGroupRulesWithIp_Test_AllTheTagNamesInOneRequest() {
+        stubServer.on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null,
+                        Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"),
+                        Ec2StubServer.instance("i-2", "bastion", "10.0.0.2", "sg-1")))
+                .on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"))))
+                .on("AuthorizeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+
+        final List<TargetResult<ReconciliationReport.GroupChanges>> results = AwsEc2Utils.updateSecurityGroupRulesWithIp(
+                List.of("web", "bastion"), "developer", "5.6.7.8", List.of(Region.US_EAST_1));
+
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(1);
+        assertThat(stubServer.requests("DescribeInstances").getFirst())
+                .containsEntry("Filter.1.Value.1", "*web*")
+                .containsEntry("Filter.1.Value.2", "*bastion*");
+        //Both instances share sg-1, it is updated once.
+        assertThat(results).extracting(TargetResult::target).containsExactly("sg-1");
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress")).hasSize(1);
+    }
+
+    @Test
+    void probeInstance_Test_ProbesThePortsOfTheRule() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            final int port = server.socket().getLocalPort();
+            stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                    Ec2StubServer.securityGroup("sg-1",
+                            Ec2StubServer.ipPermission("tcp", port, port, "1.2.3.4/32", "developer"))));
+            final Instance instance = Instance.builder()
+                    .instanceId("i-1")
+                    .publicIpAddress("127.0.0.1")
+                    .securityGroups(GroupIdentifier.builder().groupId("sg-1").build())
+                    .build();
+
+            final ProbeResult result = AwsEc2Utils.probeInstance(instance, "developer");
+
+            assertThat(result.port()).isEqualTo(port);
+            assertThat(stubServer.requests("DescribeSecurityGroups").getFirst()).containsEntry("GroupId.1", "sg-1");
+        }
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_AuthorizesTheNewIpBeforeRevokingTheOld() {
+        final List<String> actions = new CopyOnWriteArrayList<>();
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"),
+                                Ec2StubServer.ipPermission("tcp", 8000, 8100, "1.2.3.4/32", "developer"),
+                                Ec2StubServer.ipPermission("tcp", 80, 80, "0.0.0.0/0", "web"))))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    actions.add("authorize");
+                    return Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress");
+                })
+                .on("RevokeSecurityGroupIngress", parameters -> {
+                    actions.add("revoke");
+                    return Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress");
+                });
+
+        AwsEc2Utils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8");
+
+        assertThat(actions).containsExactly("authorize", "revoke");
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(1);
+        //Both rules keep their ports, and the web rule is left alone.
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.FromPort", "22")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "5.6.7.8/32")
+                .containsEntry("IpPermissions.1.IpRanges.1.Description", "developer")
+                .containsEntry("IpPermissions.2.FromPort", "8000")
+                .containsEntry("IpPermissions.2.ToPort", "8100");
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "1.2.3.4/32")
+                .containsEntry("IpPermissions.2.IpRanges.1.CidrIp", "1.2.3.4/32")
+                .doesNotContainKey("IpPermissions.3.IpProtocol");
+
+        //The changed group is described again.
+        assertThat(AwsEc2Utils.getSecurityGroupRules("sg-1", "web")).hasSize(1);
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(2);
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_RotatesATemporaryRuleAndKeepsItsExpiry() {
+        final String temporary = SecurityGroupRule.withExpiry("developer", Instant.parse("2026-01-01T12:00:00Z"));
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", temporary))))
+                .on("AuthorizeSecurityGroupIngress",
+                        parameters -> Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress",
+                        parameters -> Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+
+        AwsEc2Utils.updateEC2SecurityGroupRule("sg-1", "developer", "5.6.7.8");
+
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "5.6.7.8/32")
+                .containsEntry("IpPermissions.1.IpRanges.1.Description", temporary);
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress").getFirst())
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "1.2.3.4/32");
+    }
+
+    @Test
+    void updateEC2SecurityGroupRule_Test_KeepsTheOldRuleWhenTheAuthorizeFails() {
+        stubServer.on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "1.2.3.4/32", "developer"))))
+                .on("AuthorizeSecurityGroupIngress", parameters -> {
+                    throw new Ec2StubServer.StubError(400, "InvalidParameterValue", "Invalid IP");
+                });
+
+        assertThatThrownBy(() -> AwsEc2Utils.updateEC2SecurityGroupRule("sg-1", "developer", "tcp", "5.6.7.8"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Invalid IP");
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).isEmpty();
+    }
+
+    @Test
+    void newIpPermission_Test_Ipv6AddressGoesInTheIpv6Ranges() {
+        final IpPermission ipv4 = AwsEc2Utils.newIpPermission("home", "tcp", "1.2.3.4");
+        assertThat(ipv4.ipRanges()).extracting(IpRange::cidrIp).containsExactly("1.2.3.4/32");
+        assertThat(ipv4.ipv6Ranges()).isEmpty();
+
+        final IpPermission ipv6 = AwsEc2Utils.newIpPermission("home", "tcp", "2001:db8::1");
+        assertThat(ipv6.ipRanges()).isEmpty();
+        assertThat(ipv6.ipv6Ranges()).extracting(Ipv6Range::cidrIpv6).containsExactly("2001:db8::1/128");
+
+        //The rule is found again by its description, to be revoked.
+        final SecurityGroup group = SecurityGroup.builder().groupId("sg-1").ipPermissions(ipv6).build();
+        assertThat(AwsEc2Utils.findIpPermission(List.of(group), "home")).hasValue(ipv6);
+    }
+
+    @Test
+    void escapeFilterValue_Test_Wildcards() {
+        assertThat(AwsEc2Utils.escapeFilterValue("web*?\\")).isEqualTo("web\\*\\?\\\\");
+    }
+
+    private static <T> List<T> concurrently(final Callable<T> call) throws Exception {
+        final int callers = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return call.call();
+                }));
+            }
+            start.countDown();
+            final List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+    }
+}
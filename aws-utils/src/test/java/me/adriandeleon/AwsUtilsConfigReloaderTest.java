@@ -0,0 +1,73 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class AwsUtilsConfigReloaderTest {
+
+    @TempDir
+    private Path directory;
+
+    private final List<AwsUtilsConfig> applied = new ArrayList<>();
+
+    @Test
+    void check_Test_AppliesOnlyWhenTheFileChanges() throws IOException {
+        final Path file = write("awsutils.fan-out.max-concurrency-per-region=4", Instant.parse("2026-01-01T00:00:00Z"));
+        final AwsUtilsConfigReloader reloader = reloader(file);
+
+        assertThat(reloader.reload()).isTrue();
+        assertThat(reloader.check()).isFalse();
+        assertThat(applied).hasSize(1);
+
+        write("awsutils.fan-out.max-concurrency-per-region=2", Instant.parse("2026-01-01T00:01:00Z"));
+        assertThat(reloader.check()).isTrue();
+        assertThat(reloader.check()).isFalse();
+
+        assertThat(applied).extracting(config -> config.getFanOut().getMaxConcurrencyPerRegion())
+                .containsExactly(4, 2);
+    }
+
+    @Test
+    void check_Test_AnInvalidFileKeepsTheConfiguration() throws IOException {
+        final Path file = write("awsutils.fan-out.max-concurrency-per-region=4", Instant.parse("2026-01-01T00:00:00Z"));
+        final AwsUtilsConfigReloader reloader = reloader(file);
+        reloader.reload();
+
+        write("awsutils.fan-out.max-concurrency-per-region=many", Instant.parse("2026-01-01T00:01:00Z"));
+        assertThat(reloader.check()).isFalse();
+
+        //Fixed, it is applied on the next check.
+        write("awsutils.fan-out.max-concurrency-per-region=6", Instant.parse("2026-01-01T00:02:00Z"));
+        assertThat(reloader.check()).isTrue();
+        assertThat(applied).extracting(config -> config.getFanOut().getMaxConcurrencyPerRegion())
+                .containsExactly(4, 6);
+    }
+
+    private AwsUtilsConfigReloader reloader(final Path file) {
+        return new AwsUtilsConfigReloader(file, Duration.ofSeconds(1),
+                path -> AwsUtilsConfig.load(path, Map.of(), new Properties()), applied::add);
+    }
+
+    private Path write(final String content, final Instant modified) throws IOException {
+        final Path file = directory.resolve("aws-utils.properties");
+        Files.writeString(file, content);
+        //Set explicitly, two writes in the same millisecond would look unchanged.
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+        return file;
+    }
+}
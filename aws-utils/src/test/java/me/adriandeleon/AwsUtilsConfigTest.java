@@ -0,0 +1,87 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Tag("UnitTest")
+class AwsUtilsConfigTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void load_Test_TheLayersOverrideEachOther() throws IOException {
+        final Path file = directory.resolve("aws-utils.properties");
+        Files.writeString(file, """
+                awsutils.client.max-connections=10
+                awsutils.client.max-concurrency=10
+                AWSUTILS_FAN_OUT_TIMEOUT=90s
+                awsutils.regions=us-east-1, eu-west-1
+                """);
+        final Map<String, String> environment = Map.of(
+                "AWSUTILS_CLIENT_MAX_CONNECTIONS", "20",
+                "AWS_REGION", "eu-west-1",
+                "HOME", "/root");
+        final Properties systemProperties = new Properties();
+        systemProperties.setProperty("awsutils.client.max-connections", "30");
+        systemProperties.setProperty("awsutils.throttling.enabled", "false");
+
+        final AwsUtilsConfig config = AwsUtilsConfig.load(file, environment, systemProperties);
+
+        assertThat(config.getClient().getMaxConnections()).isEqualTo(30);
+        assertThat(config.getClient().getMaxConcurrency()).isEqualTo(10);
+        assertThat(config.getClient().getRegion()).isEqualTo(Region.EU_WEST_1);
+        assertThat(config.getClient().getThrottling().isEnabled()).isFalse();
+        assertThat(config.getFanOut().getTimeout()).isEqualTo(Duration.ofSeconds(90));
+        assertThat(config.getRegions()).containsExactly(Region.US_EAST_1, Region.EU_WEST_1);
+        //What is not set keeps its default.
+        assertThat(config.getInstanceCatalog()).isEqualTo(InstanceCatalogConfig.defaults());
+        //A cold process does not describe the whole account unless asked to.
+        assertThat(config.getInstanceCatalog().isEnabled()).isFalse();
+    }
+
+    @Test
+    void load_Test_ParsesDurationsAndLists() {
+        final AwsUtilsConfig config = AwsUtilsConfig.load(null, Map.of(
+                "AWSUTILS_INSTANCE_CATALOG_TTL", "500ms",
+                "AWSUTILS_INSTANCE_CATALOG_FULL_SYNC_INTERVAL", "5m",
+                "AWSUTILS_INSTANCE_CATALOG_SNAPSHOT_FILE_MAX_AGE", "2h",
+                "AWSUTILS_PUBLIC_IP_RESOLVER_CACHE_TTL", "PT1M30S",
+                "AWSUTILS_PORT_PROBE_DEFAULT_PORTS", "22,8080",
+                "AWSUTILS_CLIENT_HTTP_CLIENT_TYPE", "url-connection"), new Properties());
+
+        assertThat(config.getInstanceCatalog().getTtl()).isEqualTo(Duration.ofMillis(500));
+        assertThat(config.getInstanceCatalog().getFullSyncInterval()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(config.getInstanceCatalog().getSnapshotFileMaxAge()).isEqualTo(Duration.ofHours(2));
+        assertThat(config.getPublicIpResolver().getCacheTtl()).isEqualTo(Duration.ofSeconds(90));
+        assertThat(config.getPortProbe().getDefaultPorts()).isEqualTo(List.of(22, 8080));
+        assertThat(config.getClient().getHttpClientType()).isEqualTo(HttpClientType.URL_CONNECTION);
+    }
+
+    @Test
+    void load_Test_NothingSetIsTheDefaults() {
+        assertThat(AwsUtilsConfig.load(null, Map.of(), new Properties())).isEqualTo(AwsUtilsConfig.defaults());
+    }
+
+    @Test
+    void load_Test_InvalidValueNamesTheKey() {
+        final Map<String, String> environment = Map.of("AWSUTILS_FAN_OUT_TIMEOUT", "soon");
+
+        assertThatThrownBy(() -> AwsUtilsConfig.load(null, environment, new Properties()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("awsutils.fan-out.timeout");
+    }
+}
@@ -0,0 +1,100 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.InstanceType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class CompactInventoryTest {
+
+    @Test
+    void indexOf_Test_PackedAndUnpackedIds() {
+        final List<String> ids = List.of("i-0123456789abcdef0", "i-f123456789abcdef0", "i-1a2b3c4d", "i-1",
+                "i-00000001", "I-ABC", "custom-id");
+        final CompactInventory inventory = CompactInventory.of(ids.stream()
+                .map(id -> instance(id, "web", "sg-1"))
+                .toList());
+
+        for (int position = 0; position < ids.size(); position++) {
+            assertThat(inventory.indexOf(ids.get(position))).isEqualTo(position);
+            assertThat(inventory.instanceId(position)).isEqualTo(ids.get(position));
+        }
+        assertThat(inventory.indexOf("i-01")).isEqualTo(CompactInventory.NOT_FOUND);
+        assertThat(inventory.indexOf("i-0123456789ABCDEF0")).isEqualTo(CompactInventory.NOT_FOUND);
+        assertThat(inventory.indexOf(null)).isEqualTo(CompactInventory.NOT_FOUND);
+    }
+
+    @Test
+    void toInstance_Test_KeepsTheCachedFields() {
+        final Instance instance = instance("i-0123456789abcdef0", "web-1", "sg-1", "sg-2").toBuilder()
+                .instanceType(InstanceType.T3_MICRO)
+                .state(InstanceState.builder().name(InstanceStateName.RUNNING).build())
+                .publicIpAddress("203.0.113.7")
+                .privateIpAddress("10.0.255.1")
+                .build();
+
+        final Instance rebuilt = CompactInventory.of(List.of(instance)).toInstance(0);
+
+        assertThat(rebuilt.instanceId()).isEqualTo("i-0123456789abcdef0");
+        assertThat(rebuilt.instanceType()).isEqualTo(InstanceType.T3_MICRO);
+        assertThat(rebuilt.state().name()).isEqualTo(InstanceStateName.RUNNING);
+        assertThat(rebuilt.publicIpAddress()).isEqualTo("203.0.113.7");
+        assertThat(rebuilt.privateIpAddress()).isEqualTo("10.0.255.1");
+        assertThat(rebuilt.tags()).isEqualTo(instance.tags());
+        assertThat(rebuilt.securityGroups()).isEqualTo(instance.securityGroups());
+    }
+
+    @Test
+    void forEach_Test_NameAndSecurityGroupIndexes() {
+        final CompactInventory inventory = CompactInventory.of(IntStream.range(0, 1000)
+                .mapToObj(index -> instance("i-%08x".formatted(index), "web-" + index % 10, "sg-" + index % 3))
+                .toList());
+
+        final List<String> named = new ArrayList<>();
+        inventory.forEachByName("web-7", position -> named.add(inventory.instanceId(position)));
+        assertThat(named).hasSize(100).startsWith("i-00000007", "i-00000011");
+
+        final List<Integer> grouped = new ArrayList<>();
+        inventory.forEachBySecurityGroup("sg-2", grouped::add);
+        assertThat(grouped).hasSize(333).allMatch(position -> position % 3 == 2);
+
+        inventory.forEachByName("unknown", position -> named.add("unexpected"));
+        assertThat(named).hasSize(100);
+        //"Name", 10 names and 3 groups, each stored once.
+        assertThat(inventory.dictionarySize()).isEqualTo(14);
+    }
+
+    @Test
+    void packIp_Test_OnlyDottedIpv4() {
+        assertThat(CompactInventory.formatIp(CompactInventory.packIp("10.0.0.1"))).isEqualTo("10.0.0.1");
+        assertThat(CompactInventory.formatIp(CompactInventory.packIp("255.255.255.254"))).isEqualTo("255.255.255.254");
+        assertThat(CompactInventory.packIp("1.2.3")).isZero();
+        assertThat(CompactInventory.packIp("1.2.3.4.5")).isZero();
+        assertThat(CompactInventory.packIp("256.1.1.1")).isZero();
+        assertThat(CompactInventory.packIp("1..2.3")).isZero();
+        assertThat(CompactInventory.packIp("::1")).isZero();
+        assertThat(CompactInventory.packIp(null)).isZero();
+        assertThat(CompactInventory.formatIp(0)).isNull();
+    }
+
+    private static Instance instance(final String instanceId, final String name, final String... groupIds) {
+        return Instance.builder()
+                .instanceId(instanceId)
+                .tags(software.amazon.awssdk.services.ec2.model.Tag.builder().key("Name").value(name).build())
+                .securityGroups(Arrays.stream(groupIds)
+                        .map(groupId -> GroupIdentifier.builder().groupId(groupId).groupName(groupId).build())
+                        .toList())
+                .build();
+    }
+}
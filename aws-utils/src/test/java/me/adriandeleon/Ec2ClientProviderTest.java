@@ -0,0 +1,170 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Tag("UnitTest")
+class Ec2ClientProviderTest {
+
+    private static final String INSTANCE_ID = "i-0123456789abcdef0";
+
+    private Ec2StubServer stubServer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer()
+                .on("DescribeInstances", parameters ->
+                        Ec2StubServer.describeInstancesResponse(null,
+                                Ec2StubServer.instance(INSTANCE_ID, "web-server", "10.0.0.1", "sg-1")));
+        //Every call must reach the stub.
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.defaults());
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void getClient_Test_SameClientIsReused() {
+        try (Ec2ClientProvider provider = new Ec2ClientProvider(stubConfig(4))) {
+            final Ec2Client client = provider.getClient();
+            assertThat(provider.getClient()).isSameAs(client);
+            assertThat(provider.getClient(Region.US_WEST_2)).isNotSameAs(client);
+        }
+    }
+
+    @Test
+    void getClient_Test_ClosedProvider() {
+        final Ec2ClientProvider provider = new Ec2ClientProvider(stubConfig(4));
+        provider.getClient();
+        provider.close();
+
+        assertThat(provider.isClosed()).isTrue();
+        assertThatThrownBy(provider::getClient)
+                .hasMessage(Ec2ClientProvider.MESSAGE_PROVIDER_IS_CLOSED);
+    }
+
+    @Test
+    void retire_Test_ClosesOnceTheCallsInFlightAreDone() throws Exception {
+        stubServer.latency(Duration.ofMillis(500));
+        final Ec2ClientProvider provider = new Ec2ClientProvider(stubConfig(4));
+        final Ec2Client client = provider.getClient();
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            final Future<Integer> call = executor.submit(() -> client.describeInstances().reservations().size());
+            awaitRequests(1);
+            provider.retire(Duration.ZERO);
+
+            assertThat(call.get()).isEqualTo(1);
+        }
+        awaitClosed(provider);
+        assertThatThrownBy(provider::getClient)
+                .hasMessage(Ec2ClientProvider.MESSAGE_PROVIDER_IS_CLOSED);
+    }
+
+    @Test
+    void retire_Test_LeanReadsInFlightAreDoneBeforeClosing() throws Exception {
+        stubServer.latency(Duration.ofMillis(500));
+        final Ec2ClientProvider provider = new Ec2ClientProvider(stubConfig(4));
+        final LeanEc2Reader reader = provider.getLeanReader();
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            final Future<Integer> read = executor.submit(() -> reader.describeInstancesById(List.of(INSTANCE_ID),
+                    LeanInstance.Field.all()).size());
+            awaitRequests(1);
+            provider.retire(Duration.ZERO);
+
+            assertThat(read.get()).isEqualTo(1);
+        }
+        awaitClosed(provider);
+    }
+
+    @Test
+    void getIdentity_Test_AccessKeyRegionAndEndpoint() {
+        try (Ec2ClientProvider provider = new Ec2ClientProvider(stubConfig(4))) {
+            assertThat(provider.getIdentity()).isEqualTo("test us-east-1 " + stubServer.endpoint());
+        }
+    }
+
+    @Test
+    void awsEc2Utils_Test_SequentialCallsReuseOneConnection() {
+        Ec2ClientProvider.configure(stubConfig(4));
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(AwsEc2Utils.getListOfInstanceNames("web")).containsExactly(INSTANCE_ID);
+            assertThat(AwsEc2Utils.getInstance(INSTANCE_ID)).isPresent();
+        }
+
+        assertThat(stubServer.requestCount()).isEqualTo(100);
+        assertThat(stubServer.connectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void awsEc2Utils_Test_ConcurrentCallsAreBoundedByThePool() throws Exception {
+        final int maxConnections = 4;
+        Ec2ClientProvider.configure(stubConfig(maxConnections));
+
+        final List<Future<List<String>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < 200; i++) {
+                //A different tag name each time, the same lookups at the same time would share one request.
+                final String tagName = "web-" + i;
+                futures.add(executor.submit(() -> AwsEc2Utils.getListOfInstanceNames(tagName)));
+            }
+            for (Future<List<String>> future : futures) {
+                assertThat(future.get()).containsExactly(INSTANCE_ID);
+            }
+        }
+
+        assertThat(stubServer.requestCount()).isEqualTo(200);
+        assertThat(stubServer.connectionCount()).isBetween(1, maxConnections);
+    }
+
+    @Test
+    void awsEc2Utils_Test_UrlConnectionClient() {
+        Ec2ClientProvider.configure(stubConfig(4).toBuilder()
+                .httpClientType(HttpClientType.URL_CONNECTION)
+                .build());
+
+        assertThat(AwsEc2Utils.getInstance(INSTANCE_ID)).isPresent();
+    }
+
+    private void awaitRequests(final int requests) throws InterruptedException {
+        while (stubServer.requestCount() < requests) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitClosed(final Ec2ClientProvider provider) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!provider.isClosed() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(provider.isClosed()).isTrue();
+    }
+
+    private Ec2ClientConfig stubConfig(final int maxConnections) {
+        return StubClients.config(stubServer, config -> config
+                .maxConnections(maxConnections)
+                //The connection pool is tested here, the rate limiters would only pace the requests.
+                .throttling(ThrottlingConfig.disabled()));
+    }
+}
@@ -0,0 +1,125 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Reads the instance signatures and the changed instances from a local EC2 stub.
+@Tag("UnitTest")
+class Ec2InstanceSourceTest {
+
+    private Ec2StubServer stubServer;
+    private Ec2InstanceSource source;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer();
+        StubClients.configure(stubServer);
+        source = new Ec2InstanceSource(() -> Ec2ClientProvider.getDefault().getClient());
+    }
+
+    @AfterEach
+    void tearDown() {
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void describeSignatures_Test_MergesStatesNamesAndNetworkInterfaces() {
+        stubServer.on("DescribeInstanceStatus", parameters -> parameters.containsKey("NextToken")
+                        ? Ec2StubServer.describeInstanceStatusResponse(null,
+                        Ec2StubServer.instanceStatus("i-3", "pending"))
+                        : Ec2StubServer.describeInstanceStatusResponse("page-2",
+                        Ec2StubServer.instanceStatus("i-1", "running"),
+                        Ec2StubServer.instanceStatus("i-2", "stopped")))
+                .on("DescribeTags", parameters -> Ec2StubServer.describeTagsResponse(null,
+                        Ec2StubServer.tag("i-1", "Name", "web-1"),
+                        Ec2StubServer.tag("i-3", "Name", "web-3")))
+                //The public IP of the primary interface, the security groups of all of them.
+                .on("DescribeNetworkInterfaces", parameters -> Ec2StubServer.describeNetworkInterfacesResponse(null,
+                        Ec2StubServer.networkInterface("i-1", 0, "203.0.113.1", "sg-1"),
+                        Ec2StubServer.networkInterface("i-1", 1, "203.0.113.9", "sg-2", "sg-3"),
+                        Ec2StubServer.networkInterface("i-2", 0, null, "sg-1")));
+
+        assertThat(source.describeSignatures()).isEqualTo(Map.of(
+                "i-1", new IncrementalInstanceSource.Signature("running", "web-1", "203.0.113.1", Set.of("sg-1", "sg-2", "sg-3")),
+                "i-2", new IncrementalInstanceSource.Signature("stopped", null, null, Set.of("sg-1")),
+                "i-3", new IncrementalInstanceSource.Signature("pending", "web-3", null, Set.of())));
+
+        assertThat(stubServer.requests("DescribeInstanceStatus").getFirst())
+                .containsEntry("IncludeAllInstances", "true")
+                .containsEntry("MaxResults", "1000");
+        assertThat(stubServer.requests("DescribeTags").getFirst())
+                .containsEntry("Filter.1.Name", "resource-type")
+                .containsEntry("Filter.1.Value.1", "instance")
+                .containsEntry("Filter.2.Name", "key")
+                .containsEntry("Filter.2.Value.1", "Name");
+        assertThat(stubServer.requests("DescribeNetworkInterfaces").getFirst())
+                .containsEntry("Filter.1.Name", "attachment.status")
+                .containsEntry("Filter.1.Value.1", "attached")
+                .containsEntry("Filter.2.Name", "requester-managed")
+                .containsEntry("Filter.2.Value.1", "false")
+                .containsEntry("MaxResults", "1000");
+    }
+
+    @Test
+    void describeSignatures_Test_UnchangedFleetCostsAFractionOfAFullLoad() {
+        //A typical account: the interfaces of the load balancers and Lambda functions outnumber the instances.
+        new SyntheticInventory(2_500, true).serviceNetworkInterfaces(6_000).register(stubServer);
+        stubServer.recordRequests(true);
+
+        assertThat(source.describeAll()).hasSize(2_500);
+        final int fullLoadRequests = stubServer.requestCount();
+        final long fullLoadBytes = stubServer.responseBytes();
+        stubServer.reset();
+        new SyntheticInventory(2_500, true).serviceNetworkInterfaces(6_000).register(stubServer);
+        stubServer.recordRequests(true);
+
+        assertThat(source.describeSignatures()).hasSize(2_500);
+
+        //One request per page of each listing, like the full load: EC2 filters out the interfaces of the services.
+        assertThat(fullLoadRequests).isEqualTo(3);
+        assertThat(stubServer.requests("DescribeInstances")).isEmpty();
+        assertThat(stubServer.requests("DescribeInstanceStatus")).hasSize(fullLoadRequests);
+        assertThat(stubServer.requests("DescribeTags")).hasSize(fullLoadRequests);
+        assertThat(stubServer.requests("DescribeNetworkInterfaces")).hasSize(fullLoadRequests);
+        assertThat(stubServer.responseBytes()).isLessThan(fullLoadBytes / 4);
+    }
+
+    @Test
+    void describe_Test_BatchesTheInstanceIds() {
+        stubServer.on("DescribeInstances", parameters -> {
+            final List<String> instances = new ArrayList<>();
+            for (int index = 1; parameters.containsKey("Filter.1.Value." + index); index++) {
+                final String instanceId = parameters.get("Filter.1.Value." + index);
+                instances.add(Ec2StubServer.instance(instanceId, "web", "10.0.0.1", "sg-1", "running"));
+            }
+            return Ec2StubServer.describeInstancesResponse(null, instances.toArray(String[]::new));
+        });
+        final List<String> instanceIds = IntStream.range(0, 450).mapToObj(index -> "i-" + index).toList();
+
+        final List<String> described = StreamSupport.stream(source.describe(instanceIds).spliterator(), false)
+                .map(Instance::instanceId)
+                .toList();
+
+        assertThat(described).isEqualTo(instanceIds);
+        assertThat(stubServer.requests("DescribeInstances"))
+                .extracting(parameters -> parameters.keySet().stream()
+                        .filter(key -> key.startsWith("Filter.1.Value."))
+                        .count())
+                .containsExactly(200L, 200L, 50L);
+    }
+}
@@ -0,0 +1,163 @@
+package me.adriandeleon;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+//Records the EC2 calls made to a local EC2 stub in a Micrometer registry and in a flight recording.
+@Tag("UnitTest")
+class Ec2MetricsTest {
+
+    private Ec2StubServer stubServer;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger throttledRequests = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer();
+        stubServer.on("DescribeInstances", parameters -> {
+            if (throttledRequests.getAndIncrement() < 1) {
+                throw new Ec2StubServer.StubError(503, "RequestLimitExceeded", "Request limit exceeded.");
+            }
+            return Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"));
+        });
+        StubClients.configure(stubServer, config -> config
+                .throttling(ThrottlingConfig.builder()
+                        .baseDelay(Duration.ofMillis(1))
+                        .maxBackoff(Duration.ofMillis(5))
+                        .build()));
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.disabled());
+        Ec2Metrics.configure(new MicrometerMetricsRecorder(registry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Ec2Metrics.disable();
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.defaults());
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void apiCall_Test_RecordsTimerRetriesThrottlesAndPayloads() {
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_API_CALLS)
+                .tags("operation", "DescribeInstances", "region", "us-east-1", "outcome", "success")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_API_RETRIES).counter().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_API_THROTTLES).counter().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_API_REQUEST_SIZE).summary().count()).isEqualTo(2);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_API_RESPONSE_SIZE).summary().totalAmount())
+                .isPositive();
+    }
+
+    @Test
+    void cacheAccess_Test_CountsHitsAndMisses() {
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.enabled());
+
+        AwsEc2Utils.getInstance("i-1");
+        AwsEc2Utils.getInstance("i-1");
+        AwsEc2Utils.getInstance("i-1");
+
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_CACHE_GETS)
+                .tags("cache", Ec2Metrics.CACHE_INSTANCE_CATALOG, "result", "miss").counter().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_CACHE_GETS)
+                .tags("cache", Ec2Metrics.CACHE_INSTANCE_CATALOG, "result", "hit").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void time_Test_RecordsFailedOperations() {
+        assertThatThrownBy(() -> Ec2Metrics.time("failing", () -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(Ec2Metrics.time("working", () -> "result")).isEqualTo("result");
+
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_OPERATIONS)
+                .tags("operation", "failing", "outcome", "failure").timer().count()).isEqualTo(1);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_OPERATIONS)
+                .tags("operation", "working", "outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rateLimiter_Test_GaugeReadsThePermittedRate() {
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+
+        final AdaptiveRateLimiter limiter = Ec2ClientProvider.getDefault().getRateLimiters()
+                .getLimiter("DescribeInstances", Region.US_EAST_1);
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_RATE_PERMITTED)
+                .tags("action", "DescribeInstances", "region", "us-east-1").gauge().value())
+                .isEqualTo(limiter.getRate());
+    }
+
+    @Test
+    void rateLimiter_Test_ExistingLimitersAreRegisteredWhenConfigured() {
+        Ec2Metrics.disable();
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+        final SimpleMeterRegistry laterRegistry = new SimpleMeterRegistry();
+
+        Ec2Metrics.configure(new MicrometerMetricsRecorder(laterRegistry));
+
+        assertThat(laterRegistry.get(MicrometerMetricsRecorder.METRIC_RATE_PERMITTED)
+                .tags("action", "DescribeInstances", "region", "us-east-1").gauge().value())
+                .isEqualTo(Ec2ClientProvider.getDefault().getRateLimiters().getRates()
+                        .get("DescribeInstances/us-east-1"));
+    }
+
+    @Test
+    void rateLimiter_Test_GaugeFollowsTheLimiterOfANewProvider() {
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+        StubClients.configure(stubServer, config -> config
+                .throttling(ThrottlingConfig.builder().initialRate(7).build()));
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+
+        assertThat(registry.get(MicrometerMetricsRecorder.METRIC_RATE_PERMITTED)
+                .tags("action", "DescribeInstances", "region", "us-east-1").gauge().value())
+                .isEqualTo(Ec2ClientProvider.getDefault().getRateLimiters()
+                        .getLimiter("DescribeInstances", Region.US_EAST_1).getRate());
+    }
+
+    @Test
+    void roundTrip_Test_EmitsOneJfrEventPerAttempt() throws Exception {
+        Ec2Metrics.disable();
+        final Path file = Files.createTempFile("ec2-round-trips", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(Ec2RoundTripEvent.NAME);
+            recording.start();
+            assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(Ec2RoundTripEvent.NAME))
+                    .toList();
+            assertThat(events).extracting(event -> event.getInt("attempt"), event -> event.getInt("statusCode"))
+                    .containsExactly(tuple(1, 503), tuple(2, 200));
+            assertThat(events).allSatisfy(event -> {
+                assertThat(event.getString("operation")).isEqualTo("DescribeInstances");
+                assertThat(event.getString("region")).isEqualTo("us-east-1");
+                assertThat(event.getLong("responseBytes")).isPositive();
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Throttles the requests with a local EC2 stub, like EC2 does with RequestLimitExceeded.
+@Tag("UnitTest")
+class Ec2RateLimitersTest {
+
+    private static final ThrottlingConfig THROTTLING = ThrottlingConfig.builder()
+            .initialRate(200)
+            .maxRate(200)
+            .maxRetries(4)
+            .baseDelay(Duration.ofMillis(1))
+            .maxBackoff(Duration.ofMillis(5))
+            .build();
+
+    private Ec2StubServer stubServer;
+    private final AtomicInteger throttledRequests = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer();
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.defaults());
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void throttledRequests_Test_AreRetriedAndLowerTheRate() {
+        configure(THROTTLING);
+        throttleFirst(2);
+
+        assertThat(AwsEc2Utils.getInstance("i-1")).isPresent();
+
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(3);
+        final AdaptiveRateLimiter limiter = Ec2ClientProvider.getDefault().getRateLimiters()
+                .getLimiter("DescribeInstances", Region.US_EAST_1);
+        assertThat(limiter.getThrottledCount()).isEqualTo(2);
+        assertThat(limiter.getRate()).isLessThan(100);
+        assertThat(Ec2ClientProvider.getDefault().getRateLimiters().getRates())
+                .containsOnlyKeys("DescribeInstances/us-east-1");
+    }
+
+    @Test
+    void throttledRequests_Test_StopRetryingWhenTheBudgetIsSpent() {
+        //The budget pays for two retries.
+        configure(THROTTLING.toBuilder().retryBudget(10).retryCost(5).build());
+        throttleFirst(Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> AwsEc2Utils.getInstance("i-1"))
+                .isInstanceOfSatisfying(Ec2Exception.class, e ->
+                        assertThat(e.awsErrorDetails().errorCode()).isEqualTo("RequestLimitExceeded"));
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(3);
+    }
+
+    @Test
+    void throttledRequests_Test_GiveUpAfterMaxRetries() {
+        configure(THROTTLING);
+        throttleFirst(Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> AwsEc2Utils.getInstance("i-1")).isInstanceOf(Ec2Exception.class);
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(5);
+    }
+
+    private void configure(final ThrottlingConfig throttling) {
+        StubClients.configure(stubServer, config -> config.throttling(throttling));
+    }
+
+    private void throttleFirst(final int requests) {
+        stubServer.on("DescribeInstances", parameters -> {
+            if (throttledRequests.getAndIncrement() < requests) {
+                throw new Ec2StubServer.StubError(503, "RequestLimitExceeded", "Request limit exceeded.");
+            }
+            return Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"));
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class FanOutExecutorTest {
+
+    @Test
+    void invokeAll_Test_ConcurrencyIsCappedPerRegion() {
+        final FanOutExecutor executor = new FanOutExecutor(FanOutConfig.builder().maxConcurrencyPerRegion(2).build());
+        final Map<Region, AtomicInteger> running = new ConcurrentHashMap<>();
+        final Map<Region, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+
+        final List<FanOutTask<String>> tasks = new ArrayList<>();
+        for (Region region : List.of(Region.US_EAST_1, Region.EU_WEST_1)) {
+            running.put(region, new AtomicInteger());
+            maxRunning.put(region, new AtomicInteger());
+            for (int i = 0; i < 20; i++) {
+                tasks.add(new FanOutTask<>(region, "i-" + i, () -> {
+                    maxRunning.get(region).accumulateAndGet(running.get(region).incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    running.get(region).decrementAndGet();
+                    return "done";
+                }));
+            }
+        }
+
+        final List<TargetResult<String>> results = executor.invokeAll(tasks);
+
+        assertThat(results).hasSize(40).allSatisfy(result -> assertThat(result.value()).isEqualTo("done"));
+        assertThat(maxRunning.get(Region.US_EAST_1).get()).isEqualTo(2);
+        assertThat(maxRunning.get(Region.EU_WEST_1).get()).isEqualTo(2);
+    }
+
+    @Test
+    void invokeAll_Test_EveryTargetGetsItsOwnResult() {
+        final FanOutExecutor executor = new FanOutExecutor(FanOutConfig.defaults());
+
+        final List<TargetResult<String>> results = executor.invokeAll(List.of(
+                new FanOutTask<>(Region.US_EAST_1, "sg-1", () -> "sg-1 updated"),
+                new FanOutTask<>(Region.US_EAST_1, "sg-2", () -> {
+                    throw new IllegalStateException("sg-2 failed");
+                }),
+                new FanOutTask<>(Region.EU_WEST_1, "sg-3", () -> "sg-3 updated")));
+
+        assertThat(results).extracting(TargetResult::target).containsExactly("sg-1", "sg-2", "sg-3");
+        assertThat(results.get(0).value()).isEqualTo("sg-1 updated");
+        assertThat(results.get(1).isSuccess()).isFalse();
+        assertThat(results.get(1).error()).hasMessage("sg-2 failed");
+        assertThat(results.get(2).value()).isEqualTo("sg-3 updated");
+    }
+
+    @Test
+    void invokeAll_Test_SlowTasksAreCancelledAtTheTimeout() throws InterruptedException {
+        final FanOutExecutor executor = new FanOutExecutor(FanOutConfig.builder()
+                .timeout(Duration.ofMillis(200))
+                .build());
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        final List<TargetResult<String>> results = executor.invokeAll(List.of(
+                new FanOutTask<>(Region.US_EAST_1, "fast", () -> "done"),
+                new FanOutTask<>(Region.US_EAST_1, "slow", () -> {
+                    try {
+                        Thread.sleep(Duration.ofMinutes(1));
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                    return "done";
+                })));
+
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(1).error()).isInstanceOf(TimeoutException.class);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void invokeAll_Test_TasksIgnoringTheInterruptDoNotHoldTheCaller() {
+        final FanOutExecutor executor = new FanOutExecutor(FanOutConfig.builder()
+                .timeout(Duration.ofMillis(200))
+                .build());
+        final AtomicBoolean released = new AtomicBoolean();
+
+        final long start = System.nanoTime();
+        try {
+            final List<TargetResult<String>> results = executor.invokeAll(List.of(
+                    new FanOutTask<>(Region.US_EAST_1, "stuck", () -> {
+                        //Like a socket read, parking again after every interrupt.
+                        while (!released.get()) {
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                        }
+                        return "done";
+                    })));
+
+            assertThat(results.getFirst().error()).isInstanceOf(TimeoutException.class);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        } finally {
+            released.set(true);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class InstanceCatalogTest {
+
+    private static final List<Instance> INSTANCES = List.of(
+            instance("i-1", "web-1", "sg-1", "sg-2"),
+            instance("i-2", "web-2", "sg-2"),
+            instance("i-3", "db-web", "sg-3"),
+            instance("i-4", null, "sg-3"));
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private MutableClock clock;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    }
+
+    @Test
+    void getSnapshot_Test_Indexes() {
+        final InstanceSnapshot snapshot = newCatalog(InstanceCatalogConfig.enabled()).getSnapshot().orElseThrow();
+
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.findById("i-3")).get().extracting(Instance::instanceId).isEqualTo("i-3");
+        assertThat(snapshot.findById("i-5")).isNotPresent();
+        assertThat(ids(snapshot.findByName("web-2"))).containsExactly("i-2");
+        assertThat(ids(snapshot.findByNamePrefix("web"))).containsExactly("i-1", "i-2");
+        assertThat(ids(snapshot.findByNameContaining("web"))).containsExactly("i-1", "i-2", "i-3");
+        assertThat(ids(snapshot.findBySecurityGroup("sg-2"))).containsExactly("i-1", "i-2");
+        assertThat(ids(snapshot.findBySecurityGroup("sg-9"))).isEmpty();
+    }
+
+    @Test
+    void getSnapshot_Test_TtlAndCounters() {
+        final InstanceCatalog catalog = newCatalog(InstanceCatalogConfig.enabled().toBuilder()
+                .ttl(Duration.ofSeconds(10))
+                .build());
+
+        catalog.getSnapshot();
+        catalog.getSnapshot();
+        clock.advance(Duration.ofSeconds(9));
+        catalog.getSnapshot();
+        assertThat(loadCount).hasValue(1);
+
+        clock.advance(Duration.ofSeconds(1));
+        catalog.getSnapshot();
+        assertThat(loadCount).hasValue(2);
+
+        assertThat(catalog.getStats()).isEqualTo(new InstanceCatalog.Stats(2, 2, 2, 0));
+        assertThat(catalog.getStats().hitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    void invalidate_Test_ReloadsOnNextLookup() {
+        final InstanceCatalog catalog = newCatalog(InstanceCatalogConfig.enabled());
+
+        catalog.getSnapshot();
+        catalog.invalidate();
+        catalog.getSnapshot();
+
+        assertThat(loadCount).hasValue(2);
+        assertThat(catalog.getStats().invalidations()).isEqualTo(1);
+    }
+
+    @Test
+    void getSnapshot_Test_OversizedAccountIsNotCached() {
+        final InstanceCatalog catalog = newCatalog(InstanceCatalogConfig.enabled().toBuilder()
+                .maxInstances(3)
+                .build());
+
+        assertThat(catalog.getSnapshot()).isNotPresent();
+        assertThat(catalog.getSnapshot()).isNotPresent();
+        assertThat(loadCount).hasValue(1);
+    }
+
+    @Test
+    void getSnapshot_Test_Disabled() {
+        final InstanceCatalog catalog = newCatalog(InstanceCatalogConfig.disabled());
+
+        assertThat(catalog.getSnapshot()).isNotPresent();
+        assertThat(loadCount).hasValue(0);
+    }
+
+    @Test
+    @Timeout(10)
+    void getSnapshot_Test_SavedSnapshotIsUsedByTheNextCatalog() throws Exception {
+        final InstanceCatalogConfig config = InstanceCatalogConfig.enabled().toBuilder()
+                .ttl(Duration.ofSeconds(10))
+                .snapshotFile(directory.resolve("instances.bin"))
+                .build();
+        newCatalog(config).getSnapshot();
+        assertThat(loadCount).hasValue(1);
+
+        //A fresh saved snapshot is used as it is.
+        clock.advance(Duration.ofSeconds(5));
+        assertThat(ids(newCatalog(config).getSnapshot().orElseThrow().getInstances()))
+                .containsExactly("i-1", "i-2", "i-3", "i-4");
+        assertThat(loadCount).hasValue(1);
+
+        //An older one is used while it is loaded again in the background.
+        clock.advance(Duration.ofSeconds(10));
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final InstanceCatalog catalog = new InstanceCatalog(config, () -> {
+            awaitUninterruptibly(loaded);
+            return INSTANCES.subList(0, 2);
+        }, clock);
+        assertThat(catalog.getSnapshot().orElseThrow().size()).isEqualTo(4);
+        assertThat(catalog.getSnapshot().orElseThrow().size()).isEqualTo(4);
+        loaded.countDown();
+        while (catalog.getSnapshot().orElseThrow().size() != 2) {
+            Thread.onSpinWait();
+        }
+        //The file is written after the new snapshot is in use.
+        while (InventorySnapshotFile.read(config.getSnapshotFile(), "").orElseThrow().size() != 2) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    void getSnapshot_Test_ExpiredSavedSnapshotIsNotUsed() {
+        final InstanceCatalogConfig config = InstanceCatalogConfig.enabled().toBuilder()
+                .snapshotFile(directory.resolve("instances.bin"))
+                .snapshotFileMaxAge(Duration.ofMinutes(5))
+                .build();
+        newCatalog(config).getSnapshot();
+
+        clock.advance(Duration.ofMinutes(5));
+        newCatalog(config).getSnapshot();
+
+        assertThat(loadCount).hasValue(2);
+    }
+
+    @Test
+    void getSnapshot_Test_SavedSnapshotOfAnotherAccountIsNotUsed() {
+        final InstanceCatalogConfig config = InstanceCatalogConfig.enabled().toBuilder()
+                .snapshotFile(directory.resolve("instances.bin"))
+                .build();
+        new InstanceCatalog(config, identifiedSource("account-1 us-east-1"), clock).getSnapshot();
+        assertThat(loadCount).hasValue(1);
+
+        new InstanceCatalog(config, identifiedSource("account-2 us-east-1"), clock).getSnapshot();
+        assertThat(loadCount).hasValue(2);
+
+        //The file now belongs to the second account.
+        new InstanceCatalog(config, identifiedSource("account-2 us-east-1"), clock).getSnapshot();
+        assertThat(loadCount).hasValue(2);
+    }
+
+    @Test
+    @Timeout(10)
+    void getSnapshot_Test_IncrementalSyncDescribesOnlyTheChangedInstances() {
+        final IncrementalSource source = new IncrementalSource(INSTANCES);
+        final InstanceCatalog catalog = new InstanceCatalog(
+                InstanceCatalogConfig.enabled().toBuilder().ttl(Duration.ofSeconds(10)).build(), source, clock);
+        catalog.getSnapshot();
+
+        //i-2 is renamed, i-4 is terminated and i-5 is launched.
+        source.instances = List.of(INSTANCES.get(0), instance("i-2", "web-2b", "sg-2"), INSTANCES.get(2),
+                instance("i-5", "web-5", "sg-1"));
+        clock.advance(Duration.ofSeconds(10));
+
+        //The old snapshot is used while the sync runs in the background.
+        assertThat(catalog.getSnapshot().orElseThrow().findById("i-4")).isPresent();
+        InstanceSnapshot snapshot = catalog.getSnapshot().orElseThrow();
+        while (snapshot.findById("i-5").isEmpty()) {
+            Thread.onSpinWait();
+            snapshot = catalog.getSnapshot().orElseThrow();
+        }
+        assertThat(ids(snapshot.getInstances())).containsExactly("i-1", "i-3", "i-2", "i-5");
+        assertThat(ids(snapshot.findByName("web-2b"))).containsExactly("i-2");
+        assertThat(ids(snapshot.findBySecurityGroup("sg-2"))).containsExactly("i-1", "i-2");
+        assertThat(source.described).containsExactly(List.of("i-2", "i-5"));
+        assertThat(source.fullLoads).hasValue(1);
+
+        //After the full sync interval, all the instances are loaded again.
+        clock.advance(Duration.ofMinutes(10));
+        catalog.invalidate();
+        catalog.getSnapshot();
+        assertThat(source.fullLoads).hasValue(2);
+    }
+
+    @Test
+    void invalidate_Test_SyncSeesTheSecurityGroupAndPublicIpChanges() {
+        final IncrementalSource source = new IncrementalSource(INSTANCES);
+        final InstanceCatalog catalog = new InstanceCatalog(InstanceCatalogConfig.enabled(), source, clock);
+        catalog.getSnapshot();
+
+        //i-1 leaves sg-2, i-3 gets an Elastic IP: same state and name.
+        source.instances = List.of(instance("i-1", "web-1", "sg-1"), INSTANCES.get(1),
+                INSTANCES.get(2).toBuilder().publicIpAddress("203.0.113.3").build(), INSTANCES.get(3));
+        catalog.invalidate();
+
+        final InstanceSnapshot snapshot = catalog.getSnapshot().orElseThrow();
+        assertThat(source.described).containsExactly(List.of("i-1", "i-3"));
+        assertThat(ids(snapshot.findBySecurityGroup("sg-2"))).containsExactly("i-2");
+        assertThat(snapshot.findById("i-3")).get().extracting(Instance::publicIpAddress).isEqualTo("203.0.113.3");
+    }
+
+    @Test
+    void invalidate_Test_SyncsIncrementallyAndKeepsAnUnchangedInventory() {
+        final IncrementalSource source = new IncrementalSource(INSTANCES);
+        final InstanceCatalog catalog = new InstanceCatalog(InstanceCatalogConfig.enabled(), source, clock);
+        final CompactInventory inventory = catalog.getSnapshot().orElseThrow().getInventory();
+
+        catalog.invalidate();
+
+        assertThat(catalog.getSnapshot().orElseThrow().getInventory()).isSameAs(inventory);
+        assertThat(source.fullLoads).hasValue(1);
+        assertThat(source.described).isEmpty();
+    }
+
+    private InstanceCatalog newCatalog(final InstanceCatalogConfig config) {
+        return new InstanceCatalog(config, () -> {
+            loadCount.incrementAndGet();
+            return INSTANCES;
+        }, clock);
+    }
+
+    private InstanceSource identifiedSource(final String identity) {
+        return new InstanceSource() {
+            @Override
+            public Iterable<Instance> describeAll() {
+                loadCount.incrementAndGet();
+                return INSTANCES;
+            }
+
+            @Override
+            public String identity() {
+                return identity;
+            }
+        };
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> ids(final List<Instance> instances) {
+        return instances.stream().map(Instance::instanceId).toList();
+    }
+
+    private static Instance instance(final String instanceId, final String name, final String... groupIds) {
+        final Instance.Builder builder = Instance.builder()
+                .instanceId(instanceId)
+                .securityGroups(Arrays.stream(groupIds)
+                        .map(groupId -> GroupIdentifier.builder().groupId(groupId).build())
+                        .toList());
+        if (name != null) {
+            builder.tags(software.amazon.awssdk.services.ec2.model.Tag.builder().key("Name").value(name).build());
+        }
+        return builder.build();
+    }
+
+    private static final class IncrementalSource implements IncrementalInstanceSource {
+        private volatile List<Instance> instances;
+        private final AtomicInteger fullLoads = new AtomicInteger();
+        private final List<List<String>> described = new CopyOnWriteArrayList<>();
+
+        private IncrementalSource(final List<Instance> instances) {
+            this.instances = instances;
+        }
+
+        @Override
+        public Iterable<Instance> describeAll() {
+            fullLoads.incrementAndGet();
+            return instances;
+        }
+
+        @Override
+        public Map<String, Signature> describeSignatures() {
+            final Map<String, Signature> signatures = new LinkedHashMap<>();
+            for (Instance instance : instances) {
+                signatures.put(instance.instanceId(), Signature.of(instance));
+            }
+            return signatures;
+        }
+
+        @Override
+        public Iterable<Instance> describe(final Collection<String> instanceIds) {
+            described.add(List.copyOf(instanceIds));
+            return instances.stream().filter(instance -> instanceIds.contains(instance.instanceId())).toList();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        private MutableClock(final Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(final Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Tag("UnitTest")
+class InventorySnapshotFileTest {
+
+    private static final Instant LOADED_AT = Instant.parse("2026-01-01T00:00:00Z");
+    private static final String IDENTITY = "AKIAEXAMPLE us-east-1 ";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void write_Test_ReadBackTheSameSnapshot() throws IOException {
+        final List<Instance> instances = IntStream.range(0, 1000)
+                .mapToObj(index -> instance("i-%017x".formatted(index), "web-" + index, "sg-" + index % 7))
+                .toList();
+        final Path file = directory.resolve("cache/instances.bin");
+
+        InventorySnapshotFile.write(file, new InstanceSnapshot(instances, LOADED_AT), IDENTITY);
+        final InstanceSnapshot snapshot = InventorySnapshotFile.read(file, IDENTITY).orElseThrow();
+
+        assertThat(snapshot.getLoadedAt()).isEqualTo(LOADED_AT);
+        assertThat(snapshot.getInstances()).isEqualTo(new InstanceSnapshot(instances, LOADED_AT).getInstances());
+        assertThat(snapshot.findById("i-000000000000003e7")).get()
+                .extracting(Instance::publicIpAddress).isEqualTo("203.0.113.7");
+        assertThat(snapshot.findByName("web-42")).hasSize(1);
+        assertThat(snapshot.findBySecurityGroup("sg-3")).hasSize(143);
+        assertThat(directory.resolve("cache")).isDirectoryNotContaining("glob:**.tmp");
+    }
+
+    @Test
+    void write_Test_ReplacesTheFile() throws IOException {
+        final Path file = directory.resolve("instances.bin");
+
+        InventorySnapshotFile.write(file, new InstanceSnapshot(List.of(instance("i-1", "web-1", "sg-1")), LOADED_AT),
+                IDENTITY);
+        final InstanceSnapshot first = InventorySnapshotFile.read(file, IDENTITY).orElseThrow();
+        InventorySnapshotFile.write(file, new InstanceSnapshot(List.of(instance("i-2", "web-2", "sg-1")),
+                LOADED_AT.plusSeconds(60)), IDENTITY);
+
+        //A file read before it was replaced is still usable.
+        assertThat(first.findById("i-1")).isPresent();
+        assertThat(InventorySnapshotFile.read(file, IDENTITY).orElseThrow().findById("i-2")).isPresent();
+    }
+
+    @Test
+    void read_Test_MissingFileOrOtherVersion() throws IOException {
+        final Path file = directory.resolve("instances.bin");
+        assertThat(InventorySnapshotFile.read(file, IDENTITY)).isNotPresent();
+
+        InventorySnapshotFile.write(file, new InstanceSnapshot(List.of(instance("i-1", "web-1", "sg-1")), LOADED_AT),
+                IDENTITY);
+        writeInt(file, Integer.BYTES, InventorySnapshotFile.VERSION + 1);
+        assertThat(InventorySnapshotFile.read(file, IDENTITY)).isNotPresent();
+    }
+
+    @Test
+    void read_Test_CorruptedFile() throws IOException {
+        final Path file = directory.resolve("instances.bin");
+        InventorySnapshotFile.write(file, new InstanceSnapshot(List.of(instance("i-1", "web-1", "sg-1")), LOADED_AT),
+                IDENTITY);
+        writeInt(file, Files.size(file) - 2 * Integer.BYTES, 42);
+
+        assertThatThrownBy(() -> InventorySnapshotFile.read(file, IDENTITY))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith(InventorySnapshotFile.MESSAGE_CORRUPTED_FILE);
+
+        Files.writeString(file, "not a snapshot");
+        assertThatThrownBy(() -> InventorySnapshotFile.read(file, IDENTITY))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith(InventorySnapshotFile.MESSAGE_INVALID_FILE);
+    }
+
+    @Test
+    void read_Test_OtherIdentity() throws IOException {
+        final Path file = directory.resolve("instances.bin");
+        InventorySnapshotFile.write(file, new InstanceSnapshot(List.of(instance("i-1", "web-1", "sg-1")), LOADED_AT),
+                IDENTITY);
+
+        assertThatThrownBy(() -> InventorySnapshotFile.read(file, "AKIAEXAMPLE eu-west-1 "))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith(InventorySnapshotFile.MESSAGE_OTHER_IDENTITY);
+        assertThat(InventorySnapshotFile.read(file, IDENTITY)).isPresent();
+    }
+
+    private static void writeInt(final Path file, final long position, final int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), position);
+        }
+    }
+
+    private static Instance instance(final String instanceId, final String name, final String groupId) {
+        return Instance.builder()
+                .instanceId(instanceId)
+                .publicIpAddress("203.0.113.7")
+                .state(InstanceState.builder().name(InstanceStateName.RUNNING).build())
+                .tags(software.amazon.awssdk.services.ec2.model.Tag.builder().key("Name").value(name).build())
+                .securityGroups(GroupIdentifier.builder().groupId(groupId).groupName("group-" + groupId).build())
+                .build();
+    }
+}
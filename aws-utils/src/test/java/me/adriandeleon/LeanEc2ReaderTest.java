@@ -0,0 +1,126 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupsRequest;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Reads instances and security group rules from a local EC2 stub with the lean parser, and compares them with the SDK.
+@Tag("UnitTest")
+class LeanEc2ReaderTest {
+
+    private Ec2StubServer stubServer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer();
+        StubClients.configure(stubServer, config -> config
+                .throttling(ThrottlingConfig.builder().baseDelay(Duration.ofMillis(1)).build()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void describeInstances_Test_ReadsTheSameFieldsAsTheSdk() {
+        final SyntheticInventory inventory = new SyntheticInventory(2_500, true);
+        inventory.register(stubServer);
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+
+        final List<LeanInstance> lean = provider.getLeanReader().describeInstances(Map.of(), LeanInstance.Field.all());
+
+        final List<LeanInstance> sdk = provider.getClient()
+                .describeInstancesPaginator(DescribeInstancesRequest.builder().maxResults(1000).build())
+                .reservations().stream()
+                .flatMap(reservation -> reservation.instances().stream())
+                .map(LeanInstance::of)
+                .toList();
+        assertThat(lean).hasSize(2_500).isEqualTo(sdk);
+        //The public IP and the group of the instance, not the ones of its network interface.
+        assertThat(lean.get(7)).isEqualTo(new LeanInstance(SyntheticInventory.instanceId(7), SyntheticInventory.name(7),
+                "192.0.2.1", SyntheticInventory.STATE_RUNNING, List.of(SyntheticInventory.groupId(7))));
+    }
+
+    @Test
+    void describeInstances_Test_ReadsOnlyTheFieldsAsked() {
+        new SyntheticInventory(10, true).register(stubServer);
+        final LeanEc2Reader reader = Ec2ClientProvider.getDefault().getLeanReader();
+
+        assertThat(reader.describeInstancesByName(List.of(SyntheticInventory.name(3)), LeanInstance.Field.none()))
+                .containsExactly(new LeanInstance(SyntheticInventory.instanceId(3), null, null, null, List.of()));
+        assertThat(reader.describeInstancesById(List.of(SyntheticInventory.instanceId(4), "i-unknown"),
+                EnumSet.of(LeanInstance.Field.PUBLIC_IP)))
+                .containsExactly(new LeanInstance(SyntheticInventory.instanceId(4), null, "192.0.2.1", null, List.of()));
+    }
+
+    @Test
+    void describeSecurityGroupRules_Test_ReadsTheSameRulesAsTheSdk() {
+        final SyntheticInventory inventory = new SyntheticInventory(100);
+        inventory.register(stubServer);
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+        final List<String> groupIds = List.of(SyntheticInventory.groupId(1), SyntheticInventory.groupId(2));
+
+        final List<SecurityGroupRule> sdk = provider.getClient()
+                .describeSecurityGroups(DescribeSecurityGroupsRequest.builder().groupIds(groupIds).build())
+                .securityGroups().stream()
+                .flatMap(securityGroup -> SecurityGroupRule.fromSecurityGroup(securityGroup).stream())
+                .toList();
+
+        assertThat(provider.getLeanReader().describeSecurityGroupRules(groupIds))
+                .hasSize(2 * (SyntheticInventory.DEVELOPER_RULES_PER_GROUP + 2))
+                .isEqualTo(sdk);
+        assertThat(provider.getLeanReader().describeSecurityGroupRules(List.of()))
+                .hasSize(SyntheticInventory.SECURITY_GROUPS * (SyntheticInventory.DEVELOPER_RULES_PER_GROUP + 2));
+    }
+
+    @Test
+    void describeInstances_Test_RetriesTheThrottledRequests() {
+        final AtomicInteger calls = new AtomicInteger();
+        stubServer.on("DescribeInstances", parameters -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new Ec2StubServer.StubError(503, Ec2StubServer.ERROR_CODE_THROTTLED, "Request limit exceeded.");
+            }
+            return Ec2StubServer.describeInstancesResponse(null,
+                    Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"));
+        });
+        final Ec2ClientProvider provider = Ec2ClientProvider.getDefault();
+
+        assertThat(provider.getLeanReader().describeInstancesById(List.of("i-1"), LeanInstance.Field.all()))
+                .extracting(LeanInstance::instanceId)
+                .containsExactly("i-1");
+        assertThat(calls).hasValue(2);
+        assertThat(provider.getRateLimiters().getLimiter(LeanEc2Reader.ACTION_DESCRIBE_INSTANCES, Region.US_EAST_1)
+                .getThrottledCount()).isEqualTo(1);
+    }
+
+    @Test
+    void describeSecurityGroupRules_Test_ThrowsTheEc2Error() {
+        new SyntheticInventory(10).register(stubServer);
+
+        assertThatThrownBy(() -> Ec2ClientProvider.getDefault().getLeanReader()
+                .describeSecurityGroupRules(List.of("sg-unknown")))
+                .isInstanceOfSatisfying(Ec2Exception.class, e -> {
+                    assertThat(e.statusCode()).isEqualTo(400);
+                    assertThat(e.awsErrorDetails().errorCode()).isEqualTo("InvalidGroup.NotFound");
+                    assertThat(e.awsErrorDetails().errorMessage()).contains("sg-unknown");
+                });
+    }
+}
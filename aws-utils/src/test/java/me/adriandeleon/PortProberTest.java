@@ -0,0 +1,139 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.IpPermission;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class PortProberTest {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final PortProbeConfig CONFIG = PortProbeConfig.builder()
+            .timeout(Duration.ofSeconds(5))
+            .cacheTtl(Duration.ofSeconds(30))
+            .build();
+
+    private ServerSocketChannel openServer;
+    private int closedPort;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        openServer = listen();
+
+        //A port nobody listens on, the connection is refused.
+        try (ServerSocketChannel closedServer = listen()) {
+            closedPort = closedServer.socket().getLocalPort();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        openServer.close();
+    }
+
+    @Test
+    void probe_Test_ReturnsTheFirstPortThatAccepts() {
+        final int openPort = openServer.socket().getLocalPort();
+
+        final ProbeResult result = new PortProber(CONFIG).probe(LOCALHOST, List.of(closedPort, openPort));
+
+        assertThat(result.isReachable()).isTrue();
+        assertThat(result.port()).isEqualTo(openPort);
+        assertThat(result.elapsed()).isLessThan(CONFIG.getTimeout());
+    }
+
+    @Test
+    void probe_Test_RefusedPortsDoNotWaitForTheTimeout() {
+        final ProbeResult result = new PortProber(CONFIG).probe(LOCALHOST, List.of(closedPort));
+
+        assertThat(result.isReachable()).isFalse();
+        assertThat(result.elapsed()).isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void probe_Test_PortsThatCannotConnectAreSkipped() {
+        final int openPort = openServer.socket().getLocalPort();
+        final AtomicInteger opened = new AtomicInteger();
+        final List<SocketChannel> channels = new ArrayList<>();
+        //The first port has no file descriptor left, the connect of the second one fails.
+        final PortProber prober = new PortProber(CONFIG, System::nanoTime, () -> {
+            final SocketChannel channel = switch (opened.incrementAndGet()) {
+                case 1 -> throw new IOException("Too many open files");
+                case 2 -> {
+                    final SocketChannel closed = SocketChannel.open();
+                    closed.close();
+                    yield closed;
+                }
+                default -> SocketChannel.open();
+            };
+            channels.add(channel);
+            return channel;
+        });
+
+        final ProbeResult result = prober.probe(LOCALHOST, List.of(closedPort, closedPort + 1, openPort));
+
+        assertThat(result.isReachable()).isTrue();
+        assertThat(result.port()).isEqualTo(openPort);
+        assertThat(channels).noneMatch(SocketChannel::isOpen);
+    }
+
+    @Test
+    void probe_Test_ResultsAreCachedUntilTheTtl() throws IOException {
+        final AtomicLong nanoTime = new AtomicLong();
+        final PortProber prober = new PortProber(CONFIG, nanoTime::get);
+        final int openPort = openServer.socket().getLocalPort();
+
+        assertThat(prober.probe(LOCALHOST, List.of(openPort)).isReachable()).isTrue();
+        openServer.close();
+        assertThat(prober.probe(LOCALHOST, List.of(openPort)).isReachable()).isTrue();
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertThat(prober.probe(LOCALHOST, List.of(openPort)).isReachable()).isFalse();
+    }
+
+    @Test
+    void probe_Test_InvalidateDropsTheCachedResults() throws IOException {
+        final PortProber prober = new PortProber(CONFIG);
+        final int openPort = openServer.socket().getLocalPort();
+
+        assertThat(prober.probe(LOCALHOST, List.of(openPort)).isReachable()).isTrue();
+        openServer.close();
+        prober.invalidate(LOCALHOST);
+
+        assertThat(prober.probe(LOCALHOST, List.of(openPort)).isReachable()).isFalse();
+    }
+
+    @Test
+    void portsOf_Test_UsesTheRangeOfTcpRules() {
+        final PortProber prober = new PortProber(CONFIG);
+
+        assertThat(prober.portsOf(IpPermission.builder().ipProtocol("tcp").fromPort(22).toPort(22).build()))
+                .containsExactly(22);
+        assertThat(prober.portsOf(IpPermission.builder().ipProtocol("6").fromPort(8000).toPort(9000).build()))
+                .hasSize(CONFIG.getMaxPorts())
+                .startsWith(8000, 8001);
+        assertThat(prober.portsOf(IpPermission.builder().ipProtocol("-1").build()))
+                .isEqualTo(CONFIG.getDefaultPorts());
+        assertThat(prober.portsOf(IpPermission.builder().ipProtocol("udp").fromPort(53).toPort(53).build()))
+                .isEqualTo(CONFIG.getDefaultPorts());
+    }
+
+    private static ServerSocketChannel listen() throws IOException {
+        return ServerSocketChannel.open().bind(new InetSocketAddress(LOCALHOST, 0));
+    }
+}
@@ -0,0 +1,162 @@
+package me.adriandeleon;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//The IP endpoints and the metadata service are stood in for by a local HTTP server.
+@Tag("UnitTest")
+class PublicIpResolverTest {
+
+    private static final String FAST_IP = "203.0.113.7";
+    private static final String IMDS_IP = "198.51.100.9";
+    private static final String IMDS_TOKEN = "imds-token";
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final AtomicInteger fastRequests = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/fast", exchange -> {
+            fastRequests.incrementAndGet();
+            respond(exchange, 200, FAST_IP + "\n");
+        });
+        server.createContext("/slow", exchange -> {
+            sleep(Duration.ofSeconds(1));
+            respond(exchange, 200, "192.0.2.1");
+        });
+        server.createContext("/html", exchange -> respond(exchange, 200, "<html>blocked</html>"));
+        server.createContext("/private", exchange -> respond(exchange, 200, "10.0.0.1"));
+        server.createContext("/error", exchange -> respond(exchange, 500, FAST_IP));
+        server.createContext(ImdsPublicIpSource.TOKEN_PATH, exchange ->
+                respond(exchange, "PUT".equals(exchange.getRequestMethod())
+                        && exchange.getRequestHeaders().containsKey(ImdsPublicIpSource.HEADER_TOKEN_TTL)
+                        ? 200 : 401, IMDS_TOKEN));
+        server.createContext(ImdsPublicIpSource.PUBLIC_IPV4_PATH, exchange ->
+                respond(exchange, IMDS_TOKEN.equals(exchange.getRequestHeaders()
+                        .getFirst(ImdsPublicIpSource.HEADER_TOKEN)) ? 200 : 401, IMDS_IP));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void resolve_Test_TheFastestValidAnswerWins() {
+        try (PublicIpResolver resolver = resolver(List.of(endpoint("/slow"), endpoint("/html"), endpoint("/fast")))) {
+            final long start = System.nanoTime();
+
+            assertThat(resolver.resolve()).isEqualTo(FAST_IP);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        }
+    }
+
+    @Test
+    void resolve_Test_FailsWhenNoSourceHasAValidAnswer() {
+        try (PublicIpResolver resolver = resolver(List.of(endpoint("/html"), endpoint("/private"),
+                endpoint("/error")))) {
+            assertThatThrownBy(resolver::resolve)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage(PublicIpResolver.MESSAGE_COULD_NOT_RESOLVE_PUBLIC_IP)
+                    .satisfies(e -> assertThat(e.getSuppressed()).hasSize(3));
+        }
+    }
+
+    @Test
+    void resolve_Test_ConcurrentCallersShareOneCachedAnswer() {
+        try (PublicIpResolver resolver = resolver(List.of(endpoint("/fast")))) {
+            final List<CompletableFuture<String>> futures = IntStream.range(0, 20)
+                    .mapToObj(i -> resolver.resolveAsync())
+                    .toList();
+
+            assertThat(futures).allSatisfy(future -> assertThat(future.join()).isEqualTo(FAST_IP));
+            assertThat(resolver.resolve()).isEqualTo(FAST_IP);
+            assertThat(fastRequests.get()).isEqualTo(1);
+
+            resolver.invalidate();
+            assertThat(resolver.resolve()).isEqualTo(FAST_IP);
+            assertThat(fastRequests.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void resolve_Test_InstanceMetadataService() {
+        try (PublicIpResolver resolver = new PublicIpResolver(PublicIpResolverConfig.builder()
+                .endpoints(List.of(endpoint("/error")))
+                .imdsEndpoint(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+                .build())) {
+            assertThat(resolver.resolve()).isEqualTo(IMDS_IP);
+        }
+    }
+
+    @Test
+    void defaults_Test_OnlyAsksCheckIp() {
+        //Every extra endpoint could choose the IP opened in the security groups, so they are opt-in.
+        assertThat(PublicIpResolverConfig.defaults().getEndpoints()).containsExactly(URI.create(AwsEc2Utils.CHECK_IP_URL));
+        assertThat(PublicIpResolverConfig.defaults().getImdsEndpoint()).isNull();
+    }
+
+    @Test
+    void isPublicIp_Test_OnlyPublicIpLiterals() {
+        assertThat(PublicIpResolver.isPublicIp("203.0.113.7")).isTrue();
+        assertThat(PublicIpResolver.isPublicIp("2001:db8::1")).isTrue();
+        assertThat(PublicIpResolver.isPublicIp("256.1.1.1")).isFalse();
+        assertThat(PublicIpResolver.isPublicIp("example.com")).isFalse();
+        assertThat(PublicIpResolver.isPublicIp("127.0.0.1")).isFalse();
+        assertThat(PublicIpResolver.isPublicIp("192.168.1.10")).isFalse();
+        assertThat(PublicIpResolver.isPublicIp("")).isFalse();
+    }
+
+    private PublicIpResolver resolver(final List<URI> endpoints) {
+        return new PublicIpResolver(PublicIpResolverConfig.builder()
+                .endpoints(endpoints)
+                .readTimeout(Duration.ofSeconds(5))
+                .build());
+    }
+
+    private URI endpoint(final String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static void sleep(final Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
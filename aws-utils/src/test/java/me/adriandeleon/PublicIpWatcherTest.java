@@ -0,0 +1,113 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class PublicIpWatcherTest {
+
+    private static final PublicIpWatcherConfig CONFIG = PublicIpWatcherConfig.builder()
+            .tagNames(List.of("web", "bastion"))
+            .ruleDescription("developer")
+            .confirmations(2)
+            .build();
+
+    private final Deque<String> answers = new ArrayDeque<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> updates = new ArrayList<>();
+    private boolean updateFails;
+
+    @Test
+    void check_Test_UpdatesOnlyWhenTheIpChanges() {
+        final PublicIpWatcher watcher = watcher(List.of(this::answer));
+        answers.addAll(List.of("1.1.1.1", "1.1.1.1", "1.1.1.1"));
+
+        //The first IP is applied right away, then every check is one request and nothing else.
+        assertThat(watcher.check()).isEqualTo(CONFIG.getPollInterval());
+        assertThat(watcher.check()).isEqualTo(CONFIG.getPollInterval());
+        assertThat(watcher.check()).isEqualTo(CONFIG.getPollInterval());
+
+        assertThat(requests).hasValue(3);
+        assertThat(updates).containsExactly("1.1.1.1");
+        assertThat(watcher.getAppliedIp()).hasValue("1.1.1.1");
+    }
+
+    @Test
+    void check_Test_FlapsAreIgnored() {
+        final PublicIpWatcher watcher = watcher(List.of(this::answer));
+        answers.addAll(List.of("1.1.1.1", "2.2.2.2", "1.1.1.1", "2.2.2.2", "2.2.2.2"));
+
+        watcher.check();
+        //2.2.2.2 is seen once and then 1.1.1.1 is back, the rules stay.
+        assertThat(watcher.check()).isEqualTo(CONFIG.getConfirmationInterval());
+        assertThat(watcher.check()).isEqualTo(CONFIG.getPollInterval());
+        assertThat(updates).containsExactly("1.1.1.1");
+
+        //Seen twice in a row, 2.2.2.2 is applied.
+        assertThat(watcher.check()).isEqualTo(CONFIG.getConfirmationInterval());
+        assertThat(watcher.check()).isEqualTo(CONFIG.getPollInterval());
+        assertThat(updates).containsExactly("1.1.1.1", "2.2.2.2");
+        assertThat(watcher.getAppliedIp()).hasValue("2.2.2.2");
+    }
+
+    @Test
+    void check_Test_FailingSourceAndUpdateAreRetried() {
+        final AtomicInteger failingRequests = new AtomicInteger();
+        final PublicIpWatcher watcher = watcher(List.of(
+                () -> {
+                    failingRequests.incrementAndGet();
+                    return CompletableFuture.failedFuture(new IllegalStateException("Service unavailable"));
+                },
+                this::answer));
+        answers.addAll(List.of("1.1.1.1", "1.1.1.1"));
+        updateFails = true;
+
+        watcher.check();
+        assertThat(watcher.getAppliedIp()).isEmpty();
+
+        //The source that answered is asked first now, and the failed update is tried again.
+        updateFails = false;
+        watcher.check();
+        assertThat(failingRequests).hasValue(1);
+        assertThat(updates).containsExactly("1.1.1.1", "1.1.1.1");
+        assertThat(watcher.getAppliedIp()).hasValue("1.1.1.1");
+    }
+
+    @Test
+    void check_Test_NoAnswerKeepsTheRules() {
+        final PublicIpWatcher watcher = watcher(List.of(this::answer));
+        answers.addAll(List.of("1.1.1.1", "10.0.0.1"));
+
+        watcher.check();
+        assertThat(watcher.check()).isEqualTo(CONFIG.getPollInterval());
+
+        assertThat(updates).containsExactly("1.1.1.1");
+        assertThat(watcher.getAppliedIp()).hasValue("1.1.1.1");
+    }
+
+    private PublicIpWatcher watcher(final List<PublicIpSource> sources) {
+        return new PublicIpWatcher(CONFIG, null, sources, Duration.ofSeconds(1), ip -> {
+            updates.add(ip);
+            return List.of(updateFails
+                    ? TargetResult.failure(Region.US_EAST_1, "sg-1", new IllegalStateException("Throttled"))
+                    : TargetResult.success(Region.US_EAST_1, "sg-1",
+                    new ReconciliationReport.GroupChanges("sg-1", List.of(), List.of(), List.of(), 1, null)));
+        });
+    }
+
+    private CompletableFuture<String> answer() {
+        requests.incrementAndGet();
+        return CompletableFuture.completedFuture(answers.removeFirst() + "\n");
+    }
+}
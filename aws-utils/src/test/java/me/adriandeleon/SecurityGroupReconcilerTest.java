@@ -0,0 +1,196 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class SecurityGroupReconcilerTest {
+
+    private static final List<SecurityGroupRule> DESIRED_RULES = List.of(
+            SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "1.1.1.1", "developer-a"),
+            SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "9.9.9.9", "developer-b"),
+            SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "4.4.4.4", "developer-c"),
+            SecurityGroupRule.forIp("sg-2", "6", 443, 443, "4.4.4.4", "developer-c"));
+
+    private Ec2StubServer stubServer;
+    private Ec2ClientProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer()
+                .on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermissionWithRanges("tcp", 22, 22,
+                                        Ec2StubServer.ipRange("1.1.1.1/32", "developer-a"),
+                                        Ec2StubServer.ipRange("2.2.2.2/32", "developer-b"),
+                                        Ec2StubServer.ipRange("3.3.3.3/32", "office"))),
+                        Ec2StubServer.securityGroup("sg-2",
+                                Ec2StubServer.ipPermission("tcp", 443, 443, "4.4.4.4/32", "old-description"))))
+                .on("AuthorizeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"))
+                .on("UpdateSecurityGroupRuleDescriptionsIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("UpdateSecurityGroupRuleDescriptionsIngress"));
+        provider = StubClients.provider(stubServer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        provider.close();
+        stubServer.close();
+    }
+
+    @Test
+    void reconcile_Test_OneRequestPerChangeAndGroup() {
+        final ReconciliationReport report = new SecurityGroupReconciler(provider.getClient())
+                .reconcile(DESIRED_RULES, false);
+
+        assertThat(report.failures()).isEmpty();
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(1);
+        assertThat(stubServer.requests("DescribeSecurityGroups").getFirst())
+                .containsEntry("GroupId.1", "sg-1")
+                .containsEntry("GroupId.2", "sg-2");
+
+        //developer-b is rotated and developer-c is added, in one authorize with both ranges.
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress")).hasSize(1);
+        final Map<String, String> authorize = stubServer.requests("AuthorizeSecurityGroupIngress").getFirst();
+        assertThat(authorize)
+                .containsEntry("GroupId", "sg-1")
+                .containsEntry("IpPermissions.1.IpProtocol", "tcp")
+                .containsEntry("IpPermissions.1.FromPort", "22")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "9.9.9.9/32")
+                .containsEntry("IpPermissions.1.IpRanges.2.CidrIp", "4.4.4.4/32")
+                .doesNotContainKey("IpPermissions.2.IpProtocol");
+
+        //Only the old IP of developer-b is revoked, the office rule is not managed.
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).hasSize(1);
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress").getFirst())
+                .containsEntry("GroupId", "sg-1")
+                .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "2.2.2.2/32")
+                .doesNotContainKey("IpPermissions.1.IpRanges.2.CidrIp");
+
+        //sg-2 already opens the traffic, only its description changes.
+        assertThat(stubServer.requests("UpdateSecurityGroupRuleDescriptionsIngress")).hasSize(1);
+        assertThat(stubServer.requests("UpdateSecurityGroupRuleDescriptionsIngress").getFirst())
+                .containsEntry("GroupId", "sg-2")
+                .containsEntry("IpPermissions.1.IpRanges.1.Description", "developer-c");
+
+        assertThat(report.authorized()).extracting(SecurityGroupRule::cidr).containsExactly("9.9.9.9/32", "4.4.4.4/32");
+        assertThat(report.revoked()).extracting(SecurityGroupRule::cidr).containsExactly("2.2.2.2/32");
+        assertThat(report.groups().getFirst().unchanged()).isEqualTo(1);
+    }
+
+    @Test
+    void reconcile_Test_ExistingAndMissingRulesAreNotErrors() {
+        //The rules changed since the describe: 9.9.9.9 was authorized and 2.2.2.2 revoked by someone else.
+        stubServer.on("AuthorizeSecurityGroupIngress", parameters -> {
+                    if ("9.9.9.9/32".equals(parameters.get("IpPermissions.1.IpRanges.1.CidrIp"))) {
+                        throw new Ec2StubServer.StubError(400, "InvalidPermission.Duplicate", "The rule already exists");
+                    }
+                    return Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress");
+                })
+                .on("RevokeSecurityGroupIngress", parameters -> {
+                    throw new Ec2StubServer.StubError(400, "InvalidPermission.NotFound", "The rule does not exist");
+                });
+
+        final ReconciliationReport report = new SecurityGroupReconciler(provider.getClient())
+                .reconcile(DESIRED_RULES, false);
+
+        assertThat(report.failures()).isEmpty();
+        //The rejected request is retried rule by rule, so 4.4.4.4 is still authorized.
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress"))
+                .extracting(parameters -> parameters.get("IpPermissions.1.IpRanges.1.CidrIp"))
+                .containsExactly("9.9.9.9/32", "9.9.9.9/32", "4.4.4.4/32");
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).hasSize(1);
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(1);
+    }
+
+    @Test
+    void reconcile_Test_FullGroupRevokesFirst() {
+        final List<String> actions = new CopyOnWriteArrayList<>();
+        stubServer.on("AuthorizeSecurityGroupIngress", parameters -> {
+                    actions.add("authorize");
+                    if (!actions.contains("revoke")) {
+                        throw new Ec2StubServer.StubError(400, "RulesPerSecurityGroupLimitExceeded",
+                                "The maximum number of rules per security group has been reached");
+                    }
+                    return Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress");
+                })
+                .on("RevokeSecurityGroupIngress", parameters -> {
+                    actions.add("revoke");
+                    return Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress");
+                });
+
+        final ReconciliationReport report = new SecurityGroupReconciler(provider.getClient())
+                .reconcile(DESIRED_RULES, false);
+
+        assertThat(report.failures()).isEmpty();
+        assertThat(actions).containsExactly("authorize", "revoke", "authorize");
+    }
+
+    @Test
+    void reconcile_Test_AppliesTheGroupsInParallel() {
+        //Each group waits for the other one, so they only finish if they run at the same time.
+        final CountDownLatch bothGroups = new CountDownLatch(2);
+        final Function<String, Function<Map<String, String>, String>> waitForBoth = action -> parameters -> {
+            bothGroups.countDown();
+            try {
+                if (!bothGroups.await(5, TimeUnit.SECONDS)) {
+                    throw new Ec2StubServer.StubError(500, "InternalError", "The groups were applied one by one");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Ec2StubServer.returnTrueResponse(action);
+        };
+        stubServer.on("AuthorizeSecurityGroupIngress", waitForBoth.apply("AuthorizeSecurityGroupIngress"))
+                .on("UpdateSecurityGroupRuleDescriptionsIngress",
+                        waitForBoth.apply("UpdateSecurityGroupRuleDescriptionsIngress"));
+
+        final ReconciliationReport report = new SecurityGroupReconciler(provider.getClient(),
+                new FanOutExecutor(FanOutConfig.builder().maxConcurrencyPerRegion(2).build()))
+                .reconcile(DESIRED_RULES, false);
+
+        assertThat(report.failures()).isEmpty();
+        assertThat(report.groups()).extracting(ReconciliationReport.GroupChanges::groupId).containsExactly("sg-1", "sg-2");
+        assertThat(report.revoked()).extracting(SecurityGroupRule::cidr).containsExactly("2.2.2.2/32");
+    }
+
+    @Test
+    void reconcile_Test_DryRunDoesNotModify() {
+        final ReconciliationReport report = new SecurityGroupReconciler(provider.getClient())
+                .reconcile(DESIRED_RULES, true);
+
+        assertThat(report.dryRun()).isTrue();
+        assertThat(report.hasChanges()).isTrue();
+        assertThat(report.authorized()).hasSize(2);
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress")).isEmpty();
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).isEmpty();
+    }
+
+    @Test
+    void reconcile_Test_UnknownGroupIsReported() {
+        stubServer.on("DescribeSecurityGroups", parameters -> {
+            throw new Ec2StubServer.StubError(400, "InvalidGroup.NotFound", "The security group does not exist");
+        });
+
+        final ReconciliationReport report = new SecurityGroupReconciler(provider.getClient())
+                .reconcile(DESIRED_RULES, false);
+
+        assertThat(report.failures()).extracting(ReconciliationReport.GroupChanges::groupId)
+                .containsExactly("sg-1", "sg-2");
+    }
+}
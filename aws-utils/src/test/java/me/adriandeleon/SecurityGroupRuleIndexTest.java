@@ -0,0 +1,62 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class SecurityGroupRuleIndexTest {
+
+    private static final SecurityGroupRule SSH_OFFICE =
+            new SecurityGroupRule("sg-1", "tcp", 22, 22, "10.1.0.0/16", "office");
+    private static final SecurityGroupRule SSH_DEVELOPER =
+            new SecurityGroupRule("sg-1", "tcp", 22, 22, "10.1.2.3/32", "developer");
+    private static final SecurityGroupRule WEB_DEVELOPER =
+            new SecurityGroupRule("sg-2", "6", 8000, 8100, "10.1.2.3/32", "developer");
+    private static final SecurityGroupRule ALL_TRAFFIC =
+            new SecurityGroupRule("sg-2", "-1", -1, -1, "0.0.0.0/0", "anywhere");
+    private static final SecurityGroupRule DNS_IPV6 =
+            new SecurityGroupRule("sg-2", "udp", 53, 53, "2001:db8::/32", null);
+
+    private final SecurityGroupRuleIndex index = new SecurityGroupRuleIndex(
+            List.of(SSH_OFFICE, SSH_DEVELOPER, WEB_DEVELOPER, ALL_TRAFFIC, DNS_IPV6), Instant.EPOCH);
+
+    @Test
+    void findByDescription_Test_AllTheMatches() {
+        assertThat(index.findByDescription("developer")).containsExactly(SSH_DEVELOPER, WEB_DEVELOPER);
+        assertThat(index.findByDescription("nobody")).isEmpty();
+        assertThat(index.findByGroup("sg-2")).containsExactly(WEB_DEVELOPER, ALL_TRAFFIC, DNS_IPV6);
+    }
+
+    @Test
+    void findCovering_Test_EveryPrefixOfTheIp() {
+        assertThat(index.findCovering("10.1.2.3")).containsExactly(SSH_OFFICE, SSH_DEVELOPER, WEB_DEVELOPER,
+                ALL_TRAFFIC);
+        assertThat(index.findCovering("10.1.9.9")).containsExactly(SSH_OFFICE, ALL_TRAFFIC);
+        assertThat(index.findCovering("192.168.0.1")).containsExactly(ALL_TRAFFIC);
+        assertThat(index.findCovering("2001:db8::1")).containsExactly(DNS_IPV6);
+        assertThat(index.findCovering("2001:db9::1")).isEmpty();
+        assertThat(index.findCovering("not-an-ip")).isEmpty();
+    }
+
+    @Test
+    void findCovering_Test_OnlyTheRulesOpeningThePort() {
+        assertThat(index.findCovering("10.1.2.3", "tcp", 22)).containsExactly(SSH_OFFICE, SSH_DEVELOPER, ALL_TRAFFIC);
+        assertThat(index.findCovering("10.1.2.3", "6", 8080)).containsExactly(WEB_DEVELOPER, ALL_TRAFFIC);
+        assertThat(index.findByTraffic("udp", 53)).containsExactly(ALL_TRAFFIC, DNS_IPV6);
+        assertThat(index.findByTraffic("tcp", 443)).containsExactly(ALL_TRAFFIC);
+    }
+
+    @Test
+    void parseAddress_Test_OnlyIpLiterals() {
+        assertThat(SecurityGroupRuleIndex.parseAddress("192.168.0.1")).containsExactly(192, 168, 0, 1);
+        assertThat(SecurityGroupRuleIndex.parseAddress("::1")).hasSize(16);
+        assertThat(SecurityGroupRuleIndex.parseAddress("256.1.1.1")).isNull();
+        assertThat(SecurityGroupRuleIndex.parseAddress("1.2.3")).isNull();
+        assertThat(SecurityGroupRuleIndex.parseAddress("localhost")).isNull();
+    }
+}
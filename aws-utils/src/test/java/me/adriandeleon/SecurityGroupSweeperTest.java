@@ -0,0 +1,131 @@
+package me.adriandeleon;
+
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class SecurityGroupSweeperTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+    private static final String EXPIRED = SecurityGroupRule.withExpiry("developer", NOW.minusSeconds(60));
+    private static final String VALID = SecurityGroupRule.withExpiry("developer", NOW.plusSeconds(3600));
+    private static final String VALID_LONGER = SecurityGroupRule.withExpiry("developer", NOW.plusSeconds(7200));
+
+    private Ec2StubServer stubServer;
+    private Ec2ClientProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer()
+                .on("DescribeSecurityGroups", parameters -> parameters.containsKey("NextToken")
+                        ? Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-3",
+                                Ec2StubServer.ipPermission("tcp", 443, 443, "3.3.3.3/32", VALID)))
+                        : Ec2StubServer.describeSecurityGroupsResponse(
+                                Ec2StubServer.securityGroup("sg-1",
+                                        Ec2StubServer.ipPermissionWithRanges("tcp", 22, 22,
+                                                Ec2StubServer.ipRange("1.1.1.1/32", EXPIRED),
+                                                Ec2StubServer.ipRange("1.1.1.2/32", "office"))),
+                                Ec2StubServer.securityGroup("sg-2",
+                                        Ec2StubServer.ipPermissionWithRanges("tcp", 22, 22,
+                                                Ec2StubServer.ipRange("2.2.2.1/32", VALID),
+                                                Ec2StubServer.ipRange("2.2.2.2/32", VALID_LONGER),
+                                                Ec2StubServer.ipRange("2.2.2.3/32", EXPIRED))))
+                        .replace("</securityGroupInfo>", "</securityGroupInfo><nextToken>page-2</nextToken>"))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+        provider = StubClients.provider(stubServer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        provider.close();
+        stubServer.close();
+    }
+
+    @Test
+    void sweep_Test_OneRevokePerGroupWithStaleRules() {
+        final SweepReport report = sweeper().sweep(false);
+
+        assertThat(report.groupsScanned()).isEqualTo(3);
+        assertThat(report.rulesScanned()).isEqualTo(6);
+        assertThat(report.failures()).isEmpty();
+        assertThat(report.revoked()).extracting(SecurityGroupRule::cidr)
+                .containsExactlyInAnyOrder("1.1.1.1/32", "2.2.2.1/32", "2.2.2.3/32");
+        assertThat(report.rulesPerSecond()).isPositive();
+
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(2);
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress"))
+                .extracting(parameters -> parameters.get("GroupId"))
+                .containsExactlyInAnyOrder("sg-1", "sg-2");
+        //The two stale rules of sg-2 in one request, the one that expires last is kept.
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress"))
+                .filteredOn(parameters -> parameters.get("GroupId").equals("sg-2"))
+                .singleElement()
+                .satisfies(parameters -> assertThat(parameters)
+                        .containsEntry("IpPermissions.1.IpRanges.1.CidrIp", "2.2.2.1/32")
+                        .containsEntry("IpPermissions.1.IpRanges.2.CidrIp", "2.2.2.3/32")
+                        .doesNotContainKey("IpPermissions.1.IpRanges.3.CidrIp"));
+    }
+
+    @Test
+    void sweep_Test_DryRunRevokesNothing() {
+        final SweepReport report = sweeper().sweep(true);
+
+        assertThat(report.dryRun()).isTrue();
+        assertThat(report.revoked()).hasSize(3);
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).isEmpty();
+    }
+
+    @Test
+    void findStaleRules_Test_OnlyRulesWithAnExpiry() {
+        final SecurityGroupRule office = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "1.1.1.1", "office");
+        final SecurityGroupRule officeToo = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "1.1.1.2", "office");
+        final SecurityGroupRule ssh = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "2.2.2.2", VALID);
+        //The same description on other ports is not a duplicate.
+        final SecurityGroupRule web = SecurityGroupRule.forIp("sg-1", "tcp", 443, 443, "2.2.2.1", VALID);
+
+        assertThat(SecurityGroupSweeper.findStaleRules(List.of(office, officeToo, ssh, web), NOW)).isEmpty();
+        assertThat(SecurityGroupSweeper.findStaleRules(List.of(office, ssh, web), NOW.plusSeconds(3600)))
+                .containsExactly(ssh, web);
+    }
+
+    @Test
+    void findStaleRules_Test_KeepsBothRulesOfADualStackPair() {
+        final SecurityGroupRule ipv4 = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "1.1.1.1", VALID);
+        final SecurityGroupRule ipv6 = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "2001:db8::1", VALID_LONGER);
+        final SecurityGroupRule ipv6Older = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "2001:db8::2", VALID);
+
+        assertThat(SecurityGroupSweeper.findStaleRules(List.of(ipv4, ipv6), NOW)).isEmpty();
+        assertThat(SecurityGroupSweeper.findStaleRules(List.of(ipv4, ipv6, ipv6Older), NOW)).containsExactly(ipv6Older);
+    }
+
+    @Test
+    void withExpiry_Test_FoundByTheDescriptionAlone() {
+        final SecurityGroupRule rule = SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "1.1.1.1", VALID);
+
+        assertThat(VALID).isEqualTo("developer [expires=2026-01-01T13:00:00Z]");
+        assertThat(rule.expiresAt()).hasValue(NOW.plusSeconds(3600));
+        assertThat(rule.baseDescription()).isEqualTo("developer");
+        assertThat(rule.isExpired(NOW)).isFalse();
+        assertThat(new SecurityGroupRuleIndex(List.of(rule), NOW).findByDescription("developer")).containsExactly(rule);
+        //Free text that looks like an expiry is only a description.
+        assertThat(SecurityGroupRule.forIp("sg-1", "tcp", 22, 22, "1.1.1.1", "vpn [expires=never]").expiresAt())
+                .isEmpty();
+    }
+
+    private SecurityGroupSweeper sweeper() {
+        return new SecurityGroupSweeper(provider.getClient(), new FanOutExecutor(FanOutConfig.defaults()),
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,98 @@
+package me.adriandeleon;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Tag("UnitTest")
+class SingleFlightTest {
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>(Ec2Metrics.CACHE_IN_FLIGHT);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void execute_Test_CallersOfTheSameKeyShareTheCall() throws Exception {
+        final CompletableFuture<Integer> first = runAsync("sg-1");
+        started.await();
+        final CompletableFuture<Integer> second = runAsync("sg-1");
+        final CompletableFuture<Integer> other = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("sg-2", () -> 42));
+
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+        awaitWaiting(second);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(calls).hasValue(1);
+
+        //Once it is done, the next caller runs a new call.
+        assertThat(singleFlight.execute("sg-1", calls::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    void execute_Test_CallersShareTheFailure() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("throttled");
+        final CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("sg-1", () -> {
+                    started.countDown();
+                    await(release);
+                    throw failure;
+                }));
+        started.await();
+        final CompletableFuture<Integer> second = runAsync("sg-1");
+        awaitWaiting(second);
+        release.countDown();
+
+        assertThatThrownBy(first::join).hasCause(failure);
+        assertThatThrownBy(second::join).hasCause(failure);
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void fence_Test_CallersAfterItRunANewCall() throws Exception {
+        final CompletableFuture<Integer> first = runAsync("sg-1");
+        started.await();
+
+        singleFlight.fence();
+        //Not the call started before the change.
+        assertThat(singleFlight.execute("sg-1", () -> 100 + calls.incrementAndGet())).isEqualTo(102);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    private CompletableFuture<Integer> runAsync(final String key) {
+        return CompletableFuture.supplyAsync(() -> singleFlight.execute(key, () -> {
+            final int call = calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return call;
+        }));
+    }
+
+    private static void awaitWaiting(final CompletableFuture<Integer> caller) throws InterruptedException {
+        //The caller has no way to tell it joined, give it the time to.
+        Thread.sleep(100);
+        assertThat(caller).isNotDone();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package me.adriandeleon;
+
+import lombok.experimental.UtilityClass;
+import me.adriandeleon.fixtures.Ec2StubServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * StubClients: the EC2 clients of the tests and the benchmarks, pointed at a local {@link Ec2StubServer} in us-east-1
+ * with fake credentials.
+ * <p>
+ * It is packaged in the test jar of aws-utils, so the cli tests and the benchmarks share it.
+ */
+@UtilityClass
+public class StubClients {
+
+    /**
+     * The constant CREDENTIALS_PROVIDER.
+     */
+    public static final StaticCredentialsProvider CREDENTIALS_PROVIDER =
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test"));
+
+    /**
+     * Gets the configuration of the clients of a stub.
+     *
+     * @param stubServer the stub.
+     * @return the configuration.
+     */
+    public static Ec2ClientConfig config(final Ec2StubServer stubServer) {
+        return config(stubServer, UnaryOperator.identity());
+    }
+
+    /**
+     * Gets the configuration of the clients of a stub.
+     *
+     * @param stubServer the stub.
+     * @param customizer changes the rest of the configuration, like the throttling or the maximum concurrency.
+     * @return the configuration.
+     */
+    public static Ec2ClientConfig config(final Ec2StubServer stubServer,
+                                         final UnaryOperator<Ec2ClientConfig.Ec2ClientConfigBuilder> customizer) {
+        return customizer.apply(Ec2ClientConfig.builder()
+                        .region(Region.US_EAST_1)
+                        .endpointOverride(stubServer.endpoint())
+                        .credentialsProvider(CREDENTIALS_PROVIDER))
+                .build();
+    }
+
+    /**
+     * Configures the default {@link Ec2ClientProvider} with the clients of a stub.
+     *
+     * @param stubServer the stub.
+     */
+    public static void configure(final Ec2StubServer stubServer) {
+        configure(stubServer, UnaryOperator.identity());
+    }
+
+    /**
+     * Configures the default {@link Ec2ClientProvider} with the clients of a stub.
+     *
+     * @param stubServer the stub.
+     * @param customizer changes the rest of the configuration, like the throttling or the maximum concurrency.
+     */
+    public static void configure(final Ec2StubServer stubServer,
+                                 final UnaryOperator<Ec2ClientConfig.Ec2ClientConfigBuilder> customizer) {
+        Ec2ClientProvider.configure(config(stubServer, customizer));
+    }
+
+    /**
+     * Creates a provider of the clients of a stub, the caller closes it.
+     *
+     * @param stubServer the stub.
+     * @return the provider.
+     */
+    public static Ec2ClientProvider provider(final Ec2StubServer stubServer) {
+        return provider(stubServer, UnaryOperator.identity());
+    }
+
+    /**
+     * Creates a provider of the clients of a stub, the caller closes it.
+     *
+     * @param stubServer the stub.
+     * @param customizer changes the rest of the configuration, like the throttling or the maximum concurrency.
+     * @return the provider.
+     */
+    public static Ec2ClientProvider provider(final Ec2StubServer stubServer,
+                                             final UnaryOperator<Ec2ClientConfig.Ec2ClientConfigBuilder> customizer) {
+        return new Ec2ClientProvider(config(stubServer, customizer));
+    }
+}
@@ -0,0 +1,139 @@
+package me.adriandeleon.benchmarks;
+
+import me.adriandeleon.AwsEc2Utils;
+import me.adriandeleon.Ec2ClientProvider;
+import me.adriandeleon.InstanceCatalogConfig;
+import me.adriandeleon.SecurityGroupRuleCacheConfig;
+import me.adriandeleon.PortProbeConfig;
+import me.adriandeleon.PublicIpResolver;
+import me.adriandeleon.PublicIpResolverConfig;
+import me.adriandeleon.StubClients;
+import me.adriandeleon.ThrottlingConfig;
+import me.adriandeleon.fixtures.Ec2StubServer;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ec2StubState: a local EC2 stub serving a {@link SyntheticInventory}, with the helpers configured to use it.
+ * <p>
+ * The instances point to 127.0.0.1, where one port accepts connections and another one refuses them, so the
+ * port probes of openEC2Ports are real TCP connects. Our public IP is a constant, no HTTP endpoint is called.
+ */
+@State(Scope.Benchmark)
+public class Ec2StubState {
+
+    /**
+     * The constant MY_IP.
+     */
+    public static final String MY_IP = "203.0.113.7";
+
+    /**
+     * The number of instances of the account.
+     */
+    @Param({"10", "1000", "50000"})
+    public int instanceCount;
+
+    /**
+     * Whether the lookups use the instance catalog and the security group rule cache, or always go to EC2.
+     */
+    @Param({"true", "false"})
+    public boolean catalog;
+
+    private SyntheticInventory inventory;
+    private Ec2StubServer stubServer;
+    private ServerSocketChannel openPort;
+    private PrintStream systemOut;
+
+    /**
+     * Starts the stub and points the helpers to it.
+     *
+     * @throws IOException if the stub or the open port cannot be started.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        openPort = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        Thread.ofVirtual().start(this::acceptConnections);
+
+        inventory = new SyntheticInventory(instanceCount, "127.0.0.1",
+                ((InetSocketAddress) openPort.getLocalAddress()).getPort(), closedPort());
+        stubServer = new Ec2StubServer();
+        inventory.register(stubServer);
+
+        StubClients.configure(stubServer, config -> config
+                //The stub is never throttled, the rate limiter would only measure itself.
+                .throttling(ThrottlingConfig.disabled()));
+        AwsEc2Utils.configureInstanceCatalog(catalog
+                ? InstanceCatalogConfig.enabled().toBuilder().maxInstances(Integer.MAX_VALUE).build()
+                : InstanceCatalogConfig.disabled());
+        AwsEc2Utils.configureSecurityGroupRuleCache(catalog
+                ? SecurityGroupRuleCacheConfig.defaults()
+                : SecurityGroupRuleCacheConfig.disabled());
+        //Every openEC2Ports call probes the ports again.
+        AwsEc2Utils.configurePortProbe(PortProbeConfig.builder().cacheTtl(Duration.ZERO).build());
+        AwsEc2Utils.configurePublicIpResolver(new PublicIpResolver(PublicIpResolverConfig.defaults(),
+                List.of(() -> CompletableFuture.completedFuture(MY_IP))));
+
+        //openEC2Ports tells what it does on the standard output.
+        systemOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Stops the stub and restores the default configuration of the helpers.
+     *
+     * @throws IOException if the open port cannot be closed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(systemOut);
+        AwsEc2Utils.configurePublicIpResolver(PublicIpResolverConfig.defaults());
+        AwsEc2Utils.configurePortProbe(PortProbeConfig.defaults());
+        AwsEc2Utils.configureInstanceCatalog(InstanceCatalogConfig.defaults());
+        AwsEc2Utils.configureSecurityGroupRuleCache(SecurityGroupRuleCacheConfig.defaults());
+        Ec2ClientProvider.shutdown();
+        stubServer.close();
+        openPort.close();
+    }
+
+    /**
+     * Gets the generated inventory.
+     *
+     * @return the inventory.
+     */
+    public SyntheticInventory getInventory() {
+        return inventory;
+    }
+
+    private void acceptConnections() {
+        //The probes only connect, the connections are closed right away.
+        while (openPort.isOpen()) {
+            try (SocketChannel ignored = openPort.accept()) {
+                //Nothing to do.
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static int closedPort() throws IOException {
+        //A port that was just free, nothing listens on it anymore.
+        try (ServerSocketChannel channel = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        }
+    }
+}
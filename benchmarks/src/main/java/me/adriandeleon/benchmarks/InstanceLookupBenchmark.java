@@ -0,0 +1,49 @@
+package me.adriandeleon.benchmarks;
+
+import me.adriandeleon.AwsEc2Utils;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InstanceLookupBenchmark: the instance lookups, by instance id and by "Name" tag, of a random instance.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InstanceLookupBenchmark {
+
+    /**
+     * Looks up an instance by instance id.
+     *
+     * @param state the stub.
+     * @return the instance.
+     */
+    @Benchmark
+    public Optional<Instance> getInstance(final Ec2StubState state) {
+        return AwsEc2Utils.getInstance(SyntheticInventory.instanceId(state.getInventory().randomIndex()));
+    }
+
+    /**
+     * Looks up the instance ids by "Name" tag.
+     *
+     * @param state the stub.
+     * @return the instance ids.
+     */
+    @Benchmark
+    public List<String> getListOfInstanceNames(final Ec2StubState state) {
+        return AwsEc2Utils.getListOfInstanceNames(SyntheticInventory.name(state.getInventory().randomIndex()));
+    }
+}
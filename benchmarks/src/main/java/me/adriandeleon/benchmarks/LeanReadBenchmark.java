@@ -0,0 +1,158 @@
+package me.adriandeleon.benchmarks;
+
+import me.adriandeleon.Ec2ClientProvider;
+import me.adriandeleon.InstanceSnapshot;
+import me.adriandeleon.LeanInstance;
+import me.adriandeleon.SecurityGroupRule;
+import me.adriandeleon.StubClients;
+import me.adriandeleon.ThrottlingConfig;
+import me.adriandeleon.fixtures.Ec2StubServer;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSecurityGroupsRequest;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Reservation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LeanReadBenchmark: reads every instance (or every security group rule) of a large account, with the SDK model and
+ * with the lean reader. The instances are described with everything EC2 returns, see
+ * {@link Ec2StubServer#detailedInstance}. Run it with {@code -prof gc} to compare the allocation per read.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeanReadBenchmark {
+
+    private static final Set<LeanInstance.Field> FIELDS = EnumSet.of(LeanInstance.Field.NAME,
+            LeanInstance.Field.PUBLIC_IP, LeanInstance.Field.SECURITY_GROUPS);
+
+    /**
+     * Reads the id, name, public IP and security groups of every instance with the SDK model.
+     *
+     * @param state the stub.
+     * @return the instances.
+     */
+    @Benchmark
+    public List<LeanInstance> sdkDescribeInstances(final LeanReadState state) {
+        final List<LeanInstance> instances = new ArrayList<>();
+        final DescribeInstancesRequest request = DescribeInstancesRequest.builder().maxResults(1000).build();
+        for (Reservation reservation : state.provider.getClient().describeInstancesPaginator(request).reservations()) {
+            for (Instance instance : reservation.instances()) {
+                instances.add(new LeanInstance(instance.instanceId(), InstanceSnapshot.getName(instance).orElse(null),
+                        instance.publicIpAddress(), null,
+                        instance.securityGroups().stream().map(GroupIdentifier::groupId).toList()));
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Reads the id, name, public IP and security groups of every instance with the lean reader.
+     *
+     * @param state the stub.
+     * @return the instances.
+     */
+    @Benchmark
+    public List<LeanInstance> leanDescribeInstances(final LeanReadState state) {
+        return state.provider.getLeanReader().describeInstances(Map.of(), FIELDS);
+    }
+
+    /**
+     * Reads only the ids of every instance with the lean reader, like a lookup of instance ids by name.
+     *
+     * @param state the stub.
+     * @return the instances.
+     */
+    @Benchmark
+    public List<LeanInstance> leanDescribeInstanceIds(final LeanReadState state) {
+        return state.provider.getLeanReader().describeInstances(Map.of(), LeanInstance.Field.none());
+    }
+
+    /**
+     * Reads the ingress rules of every security group with the SDK model.
+     *
+     * @param state the stub.
+     * @return the rules.
+     */
+    @Benchmark
+    public List<SecurityGroupRule> sdkDescribeSecurityGroupRules(final LeanReadState state) {
+        return state.provider.getClient().describeSecurityGroups(DescribeSecurityGroupsRequest.builder().build())
+                .securityGroups().stream()
+                .flatMap(securityGroup -> SecurityGroupRule.fromSecurityGroup(securityGroup).stream())
+                .toList();
+    }
+
+    /**
+     * Reads the ingress rules of every security group with the lean reader.
+     *
+     * @param state the stub.
+     * @return the rules.
+     */
+    @Benchmark
+    public List<SecurityGroupRule> leanDescribeSecurityGroupRules(final LeanReadState state) {
+        return state.provider.getLeanReader().describeSecurityGroupRules(List.of());
+    }
+
+    /**
+     * LeanReadState: a local EC2 stub serving a detailed {@link SyntheticInventory}, and a provider pointed to it.
+     */
+    @State(Scope.Benchmark)
+    public static class LeanReadState {
+
+        /**
+         * The number of instances of the account.
+         */
+        @Param({"1000", "10000"})
+        public int instanceCount;
+
+        private Ec2StubServer stubServer;
+        private Ec2ClientProvider provider;
+
+        /**
+         * Starts the stub.
+         *
+         * @throws IOException if the stub cannot be started.
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            stubServer = new Ec2StubServer();
+            new SyntheticInventory(instanceCount, true).register(stubServer);
+            provider = StubClients.provider(stubServer, config -> config
+                    //The stub is never throttled, the rate limiter would only measure itself.
+                    .throttling(ThrottlingConfig.disabled()));
+        }
+
+        /**
+         * Stops the stub.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            provider.close();
+            stubServer.close();
+        }
+    }
+}
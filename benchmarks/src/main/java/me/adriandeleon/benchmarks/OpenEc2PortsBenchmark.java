@@ -0,0 +1,53 @@
+package me.adriandeleon.benchmarks;
+
+import me.adriandeleon.AwsEc2Utils;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenEc2PortsBenchmark: the whole openEC2Ports flow for a random instance, from the instance lookup and the port
+ * probe to the update of the rule.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenEc2PortsBenchmark {
+
+    /**
+     * The port of the rule accepts our connections, so the rule is left as it is.
+     *
+     * @param state the stub.
+     * @throws URISyntaxException never.
+     * @throws IOException        never.
+     */
+    @Benchmark
+    public void openEC2Ports_AlreadyOpen(final Ec2StubState state) throws URISyntaxException, IOException {
+        AwsEc2Utils.openEC2Ports(SyntheticInventory.name(state.getInventory().randomIndex()),
+                SyntheticInventory.RULE_OPEN);
+    }
+
+    /**
+     * The port of the rule refuses our connections, so the rule is moved to our IP (revoke, then authorize).
+     *
+     * @param state the stub.
+     * @throws URISyntaxException never.
+     * @throws IOException        never.
+     */
+    @Benchmark
+    public void openEC2Ports_UpdatesTheRule(final Ec2StubState state) throws URISyntaxException, IOException {
+        AwsEc2Utils.openEC2Ports(SyntheticInventory.name(state.getInventory().randomIndex()),
+                SyntheticInventory.RULE_CLOSED);
+    }
+}
@@ -0,0 +1,42 @@
+package me.adriandeleon.benchmarks;
+
+import me.adriandeleon.AwsEc2Utils;
+import me.adriandeleon.fixtures.SyntheticInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.model.IpPermission;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SecurityGroupBenchmark: the lookup of a rule by description in a security group with many rules.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityGroupBenchmark {
+
+    /**
+     * Looks up a random developer rule of the security group of a random instance.
+     *
+     * @param state the stub.
+     * @return the ip permission.
+     * @throws Exception if the rule is not found.
+     */
+    @Benchmark
+    public Optional<IpPermission> getIpPermission(final Ec2StubState state) throws Exception {
+        final String ruleDescription = SyntheticInventory.RULE_DEVELOPER_PREFIX
+                + ThreadLocalRandom.current().nextInt(SyntheticInventory.DEVELOPER_RULES_PER_GROUP);
+        return AwsEc2Utils.getIpPermission(SyntheticInventory.groupId(state.getInventory().randomIndex()),
+                ruleDescription);
+    }
+}
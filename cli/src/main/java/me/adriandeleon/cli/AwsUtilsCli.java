@@ -0,0 +1,308 @@
+package me.adriandeleon.cli;
+
+import me.adriandeleon.AwsEc2Utils;
+import me.adriandeleon.Ec2ClientProvider;
+import me.adriandeleon.FanOutConfig;
+import me.adriandeleon.ReconciliationReport;
+import me.adriandeleon.SecurityGroupRule;
+import me.adriandeleon.TargetResult;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * AwsUtilsCli: the command line of aws-utils, applies a {@link RulePlan} once, or again every time our public IP
+ * changes, or opens the ports of one server to our public IP with {@link AwsEc2Utils#openEC2Ports}.
+ */
+public final class AwsUtilsCli {
+
+    /**
+     * The constant EXIT_OK.
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * The constant EXIT_FAILURES, some regions or groups failed.
+     */
+    public static final int EXIT_FAILURES = 1;
+
+    /**
+     * The constant EXIT_USAGE, the arguments or the plan are not valid.
+     */
+    public static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = """
+            Usage: java -jar aws-utils-cli.jar open <tag-name> <rule-description>
+                   java -jar aws-utils-cli.jar apply <plan.yaml|plan.json> [options]
+              --dry-run             show the changes without applying them
+              --ip <ip>             the IP of the rules (default: the ip of the plan, or our public IP)
+              --concurrency <n>     the requests in flight per region (default: 8)
+              --daemon              keep running, and apply the plan again when our public IP changes
+              --interval <seconds>  how often the daemon checks our public IP (default: 60)""";
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(60);
+
+    private AwsUtilsCli() {
+    }
+
+    /**
+     * Runs the command line and exits with its status.
+     *
+     * @param args the arguments.
+     */
+    public static void main(final String[] args) {
+        final int status;
+        try {
+            status = run(args, System.out, System.err);
+        } finally {
+            Ec2ClientProvider.shutdown();
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Runs the command line.
+     *
+     * @param args the arguments.
+     * @param out  where the changes and the summary are printed.
+     * @param err  where the errors are printed.
+     * @return the exit status.
+     */
+    static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        if (args.length > 0 && "open".equals(args[0])) {
+            return open(args, err);
+        }
+
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        final RulePlanRunner runner = new RulePlanRunner(Ec2ClientProvider.getDefault(),
+                FanOutConfig.builder().maxConcurrencyPerRegion(options.concurrency()).build());
+        try {
+            return options.daemon() ? daemon(options, runner, out, err) : apply(options, runner, out);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return EXIT_USAGE;
+        } catch (IOException | RuntimeException e) {
+            err.println("Could not apply " + options.plan() + ": " + e.getMessage());
+            return EXIT_FAILURES;
+        }
+    }
+
+    private static int open(final String[] args, final PrintStream err) {
+        if (args.length != 3) {
+            err.println("Missing the tag name and the rule description of the open command.");
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        try {
+            //Prints its progress to System.out.
+            AwsEc2Utils.openEC2Ports(args[1], args[2]);
+            return EXIT_OK;
+        } catch (URISyntaxException | IOException | RuntimeException e) {
+            err.println("Could not open the ports of " + args[1] + ": " + e.getMessage());
+            return EXIT_FAILURES;
+        }
+    }
+
+    private static int apply(final Options options, final RulePlanRunner runner, final PrintStream out)
+            throws IOException {
+        final RulePlan plan = RulePlan.load(options.plan());
+        return apply(options, plan, ipOf(options, plan), runner, out);
+    }
+
+    private static int apply(final Options options, final RulePlan plan, final String ip, final RulePlanRunner runner,
+                             final PrintStream out) {
+        final long start = System.nanoTime();
+        //Every region is printed as soon as it is done, in one piece.
+        final List<TargetResult<RulePlanRunner.RegionResult>> results = runner.run(plan, ip, options.dryRun(),
+                result -> out.print(format(result)));
+        out.println(summary(results, Duration.ofNanos(System.nanoTime() - start), options.dryRun()));
+
+        final boolean failed = results.stream().anyMatch(result -> !result.isSuccess()
+                || !result.value().report().failures().isEmpty());
+        return failed ? EXIT_FAILURES : EXIT_OK;
+    }
+
+    private static int daemon(final Options options, final RulePlanRunner runner, final PrintStream out,
+                              final PrintStream err) {
+        String appliedIp = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                //The plan is read again every time, so it can be edited while the daemon runs.
+                final RulePlan plan = RulePlan.load(options.plan());
+                final String ip = ipOf(options, plan);
+                if (!ip.equals(appliedIp)) {
+                    out.println("Applying " + options.plan() + " for " + ip);
+                    //A failed apply is retried on the next check.
+                    if (apply(options, plan, ip, runner, out) == EXIT_OK) {
+                        appliedIp = ip;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                err.println("Could not apply " + options.plan() + ": " + e.getMessage());
+            }
+
+            try {
+                Thread.sleep(options.interval());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return EXIT_OK;
+    }
+
+    private static String ipOf(final Options options, final RulePlan plan) {
+        if (options.ip() != null) {
+            return options.ip();
+        }
+        return plan.ip() != null ? plan.ip() : AwsEc2Utils.getPublicIpResolver().resolve();
+    }
+
+    /**
+     * Formats the changes of a region.
+     *
+     * @param result the result of the region.
+     * @return the text, one line per change.
+     */
+    static String format(final TargetResult<RulePlanRunner.RegionResult> result) {
+        final StringBuilder text = new StringBuilder(result.region().id()).append(": ");
+        if (!result.isSuccess()) {
+            return text.append("failed: ").append(result.error().getMessage()).append(System.lineSeparator())
+                    .toString();
+        }
+
+        final RulePlanRunner.RegionResult region = result.value();
+        final ReconciliationReport report = region.report();
+        text.append("%d instances, %d groups, resolved in %d ms, %s in %d ms".formatted(region.instances(),
+                        report.groups().size(), region.resolveTime().toMillis(),
+                        report.dryRun() ? "planned" : "applied", report.elapsed().toMillis()))
+                .append(System.lineSeparator());
+        for (ReconciliationReport.GroupChanges group : report.groups()) {
+            group.authorized().forEach(rule -> text.append(line('+', rule)));
+            group.descriptionsUpdated().forEach(rule -> text.append(line('~', rule)));
+            group.revoked().forEach(rule -> text.append(line('-', rule)));
+            if (!group.isSuccess()) {
+                text.append("  ! ").append(group.groupId()).append(": ").append(group.error())
+                        .append(System.lineSeparator());
+            }
+        }
+        region.unmatchedInstances().forEach(name -> text.append("  ? no instance name contains \"").append(name)
+                .append('"').append(System.lineSeparator()));
+        return text.toString();
+    }
+
+    /**
+     * Formats the summary of all the regions.
+     *
+     * @param results the results of the regions.
+     * @param elapsed how long the whole plan took.
+     * @param dryRun  if the plan was a dry run.
+     * @return the text.
+     */
+    static String summary(final List<TargetResult<RulePlanRunner.RegionResult>> results, final Duration elapsed,
+                          final boolean dryRun) {
+        int groups = 0;
+        int authorized = 0;
+        int revoked = 0;
+        int descriptions = 0;
+        int failed = 0;
+        for (TargetResult<RulePlanRunner.RegionResult> result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+                continue;
+            }
+            final ReconciliationReport report = result.value().report();
+            groups += report.groups().size();
+            authorized += report.authorized().size();
+            revoked += report.revoked().size();
+            descriptions += report.groups().stream().mapToInt(group -> group.descriptionsUpdated().size()).sum();
+            failed += report.failures().size();
+        }
+        return "%d regions, %d groups: %d authorized, %d revoked, %d descriptions updated, %d failed in %d ms%s"
+                .formatted(results.size(), groups, authorized, revoked, descriptions, failed, elapsed.toMillis(),
+                        dryRun ? " (dry run, nothing was changed)" : "");
+    }
+
+    private static String line(final char change, final SecurityGroupRule rule) {
+        final String ports = rule.fromPort() == SecurityGroupRule.ALL ? "all"
+                : rule.fromPort() == rule.toPort() ? String.valueOf(rule.fromPort())
+                : rule.fromPort() + "-" + rule.toPort();
+        return "  %c %s %s %s %s %s%n".formatted(change, rule.groupId(), rule.protocol(), ports, rule.cidr(),
+                StringUtils.defaultString(rule.description()));
+    }
+
+    /**
+     * The command line options.
+     *
+     * @param plan        the plan file.
+     * @param dryRun      if the changes are only shown.
+     * @param ip          the IP of the rules, or null.
+     * @param concurrency the requests in flight per region.
+     * @param daemon      if the plan is applied again when our public IP changes.
+     * @param interval    how often the daemon checks our public IP.
+     */
+    record Options(Path plan, boolean dryRun, String ip, int concurrency, boolean daemon, Duration interval) {
+
+        /**
+         * Parses the arguments.
+         *
+         * @param args the arguments.
+         * @return the options.
+         */
+        static Options parse(final String[] args) {
+            if (args.length < 2 || !"apply".equals(args[0])) {
+                throw new IllegalArgumentException("Missing the apply command and its plan file.");
+            }
+
+            boolean dryRun = false;
+            String ip = null;
+            int concurrency = DEFAULT_CONCURRENCY;
+            boolean daemon = false;
+            Duration interval = DEFAULT_INTERVAL;
+            for (int index = 2; index < args.length; index++) {
+                switch (args[index].toLowerCase(Locale.ROOT)) {
+                    case "--dry-run" -> dryRun = true;
+                    case "--daemon" -> daemon = true;
+                    case "--ip" -> ip = value(args, ++index);
+                    case "--concurrency" -> concurrency = positive(args, ++index);
+                    case "--interval" -> interval = Duration.ofSeconds(positive(args, ++index));
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[index]);
+                }
+            }
+            return new Options(Path.of(args[1]), dryRun, ip, concurrency, daemon, interval);
+        }
+
+        private static String value(final String[] args, final int index) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing the value of " + args[index - 1] + ".");
+            }
+            return args[index];
+        }
+
+        private static int positive(final String[] args, final int index) {
+            final String value = value(args, index);
+            try {
+                final int number = Integer.parseInt(value);
+                if (number > 0) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                //Reported below.
+            }
+            throw new IllegalArgumentException(args[index - 1] + " must be a positive number, not " + value + ".");
+        }
+    }
+}
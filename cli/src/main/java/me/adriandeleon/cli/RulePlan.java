@@ -0,0 +1,192 @@
+package me.adriandeleon.cli;
+
+import me.adriandeleon.SecurityGroupRule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RulePlan: the security group rules to keep open for one IP, read from a YAML or JSON file.
+ * <pre>
+ * ip: 203.0.113.10            # optional, our public IP by default
+ * regions: [us-east-1, eu-west-1]  # optional, the region of the client configuration by default
+ * rules:
+ *   - description: developer-adrian
+ *     instances: [web, bastion]   # the security groups of the instances whose "Name" tag contains one of these
+ *     groups: [sg-0123456789abcdef0]
+ *     protocol: tcp
+ *     ports: 22                   # a port, a range like "8000-8100", or nothing for all the ports
+ * </pre>
+ *
+ * @param ip      the IP of the rules, null for our public IP.
+ * @param regions the regions, empty for the region of the client configuration.
+ * @param rules   the rules.
+ */
+public record RulePlan(String ip, List<Region> regions, List<Rule> rules) {
+
+    /**
+     * The constant MESSAGE_INVALID_PLAN.
+     */
+    public static final String MESSAGE_INVALID_PLAN = "Invalid plan";
+
+    private static final int ALL = -1;
+    private static final int MAX_PORT = 65_535;
+
+    /**
+     * Creates a plan.
+     */
+    public RulePlan {
+        Validate.notNull(regions, "regions cannot be null.");
+        Validate.notEmpty(rules, "rules cannot be null or empty.");
+        regions = List.copyOf(regions);
+        rules = List.copyOf(rules);
+    }
+
+    /**
+     * Reads a plan file.
+     *
+     * @param file the YAML or JSON file.
+     * @return the plan.
+     * @throws IOException if the file cannot be read.
+     */
+    public static RulePlan load(final Path file) throws IOException {
+        Validate.notNull(file, "file cannot be null.");
+        return parse(Files.readString(file));
+    }
+
+    /**
+     * Parses a plan.
+     *
+     * @param text the YAML or JSON text.
+     * @return the plan.
+     */
+    public static RulePlan parse(final String text) {
+        Validate.notNull(text, "text cannot be null.");
+
+        final Object document;
+        try {
+            //The safe constructor only builds maps, lists and scalars, never arbitrary classes.
+            document = new Yaml(new SafeConstructor(new LoaderOptions())).load(text);
+        } catch (YAMLException e) {
+            throw new IllegalArgumentException(MESSAGE_INVALID_PLAN + ": " + e.getMessage(), e);
+        }
+        final Map<?, ?> plan = map(document, "the plan");
+
+        final List<Region> regions = strings(plan.get("regions"), "regions").stream().map(Region::of).toList();
+        final List<Rule> rules = new ArrayList<>();
+        final Object ruleList = plan.get("rules");
+        if (!(ruleList instanceof List<?> list) || list.isEmpty()) {
+            throw invalid("rules must be a non-empty list");
+        }
+        for (int index = 0; index < list.size(); index++) {
+            rules.add(rule(map(list.get(index), "rules[" + index + "]"), "rules[" + index + "]"));
+        }
+        return new RulePlan(string(plan.get("ip"), "ip"), regions, rules);
+    }
+
+    private static Rule rule(final Map<?, ?> rule, final String path) {
+        final String description = string(rule.get("description"), path + ".description");
+        if (StringUtils.isBlank(description)) {
+            throw invalid(path + ".description is required");
+        }
+        final List<String> instances = strings(rule.get("instances"), path + ".instances");
+        final List<String> groups = strings(rule.get("groups"), path + ".groups");
+        if (instances.isEmpty() && groups.isEmpty()) {
+            throw invalid(path + " needs instances or groups");
+        }
+        final String protocol = StringUtils.defaultIfBlank(string(rule.get("protocol"), path + ".protocol"), "tcp");
+
+        final Object ports = rule.get("ports");
+        //EC2 wants the whole range for all the TCP or UDP ports, and -1 for the other protocols.
+        final boolean hasPorts = List.of("tcp", "udp").contains(SecurityGroupRule.normalizeProtocol(protocol));
+        int fromPort = hasPorts ? 0 : ALL;
+        int toPort = hasPorts ? MAX_PORT : ALL;
+        if (ports != null) {
+            final String[] range = String.valueOf(ports).split("-", 2);
+            try {
+                fromPort = Integer.parseInt(range[0].trim());
+                toPort = range.length == 2 ? Integer.parseInt(range[1].trim()) : fromPort;
+            } catch (NumberFormatException e) {
+                throw invalid(path + ".ports must be a port or a range like 8000-8100, not " + ports);
+            }
+            if (fromPort < 0 || toPort > MAX_PORT || fromPort > toPort) {
+                throw invalid(path + ".ports is not a valid range: " + ports);
+            }
+        }
+        return new Rule(description, instances, groups, protocol, fromPort, toPort);
+    }
+
+    private static Map<?, ?> map(final Object value, final String path) {
+        if (value instanceof Map<?, ?> map) {
+            return map;
+        }
+        throw invalid(path + " must be a map");
+    }
+
+    private static String string(final Object value, final String path) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value);
+        }
+        throw invalid(path + " must be a text");
+    }
+
+    private static List<String> strings(final Object value, final String path) {
+        if (value == null) {
+            return List.of();
+        }
+        //A single value is a list of one.
+        final Collection<?> values = value instanceof Collection<?> collection ? collection : List.of(value);
+        final List<String> strings = new ArrayList<>(values.size());
+        for (Object item : values) {
+            final String string = string(item, path);
+            if (StringUtils.isBlank(string)) {
+                throw invalid(path + " cannot have blank values");
+            }
+            strings.add(string);
+        }
+        return List.copyOf(strings);
+    }
+
+    private static IllegalArgumentException invalid(final String reason) {
+        return new IllegalArgumentException(MESSAGE_INVALID_PLAN + ": " + reason + ".");
+    }
+
+    /**
+     * One rule of a plan: a protocol and port range opened to the IP in some security groups.
+     *
+     * @param description the rule description, it identifies the rule in the groups.
+     * @param instances   the texts the "Name" tag of the instances contains, their security groups get the rule.
+     * @param groups      the security group ids that get the rule.
+     * @param protocol    the protocol, tcp by default.
+     * @param fromPort    the first port, -1 for all the ports of a protocol without ports.
+     * @param toPort      the last port, -1 for all the ports of a protocol without ports.
+     */
+    public record Rule(String description, List<String> instances, List<String> groups, String protocol, int fromPort,
+                       int toPort) {
+
+        /**
+         * Creates a rule.
+         */
+        public Rule {
+            Validate.notBlank(description, "description cannot be null or blank.");
+            Validate.notBlank(protocol, "protocol cannot be null or blank.");
+            instances = List.copyOf(instances);
+            groups = List.copyOf(groups);
+        }
+    }
+}
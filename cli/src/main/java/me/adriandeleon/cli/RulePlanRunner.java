@@ -0,0 +1,140 @@
+package me.adriandeleon.cli;
+
+import me.adriandeleon.Ec2ClientProvider;
+import me.adriandeleon.Ec2InstanceSource;
+import me.adriandeleon.FanOutConfig;
+import me.adriandeleon.FanOutExecutor;
+import me.adriandeleon.FanOutTask;
+import me.adriandeleon.InstanceSnapshot;
+import me.adriandeleon.ReconciliationReport;
+import me.adriandeleon.SecurityGroupReconciler;
+import me.adriandeleon.SecurityGroupRule;
+import me.adriandeleon.TargetResult;
+import org.apache.commons.lang3.Validate;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.GroupIdentifier;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * RulePlanRunner: applies a {@link RulePlan} to all its regions at once.
+ * <p>
+ * Every region reads its instances once, resolves the security groups of all the rules from that inventory, and
+ * reconciles all its groups with one {@link SecurityGroupReconciler}: one describe per batch of groups, then the groups
+ * in parallel, up to the maximum concurrency per region of the fan-out configuration.
+ */
+public final class RulePlanRunner {
+
+    private final Ec2ClientProvider provider;
+    private final FanOutConfig config;
+
+    /**
+     * Creates a runner.
+     *
+     * @param provider the EC2 clients.
+     * @param config   the concurrency and timeout of every region.
+     */
+    public RulePlanRunner(final Ec2ClientProvider provider, final FanOutConfig config) {
+        Validate.notNull(provider, "provider cannot be null.");
+        Validate.notNull(config, "config cannot be null.");
+        this.provider = provider;
+        this.config = config;
+    }
+
+    /**
+     * Applies a plan.
+     *
+     * @param plan     the plan.
+     * @param ip       the IP of the rules.
+     * @param dryRun   if true, the changes are computed and reported but not applied.
+     * @param progress called with every region as soon as it is done, from the thread of the region.
+     * @return one result per region, in the order of the regions.
+     */
+    public List<TargetResult<RegionResult>> run(final RulePlan plan, final String ip, final boolean dryRun,
+                                                final Consumer<TargetResult<RegionResult>> progress) {
+        Validate.notNull(plan, "plan cannot be null.");
+        Validate.notBlank(ip, "ip cannot be null or blank.");
+        Validate.notNull(progress, "progress cannot be null.");
+
+        final List<Region> regions = plan.regions().isEmpty() ? List.of(provider.getRegion()) : plan.regions();
+        //The regions and the groups use their own executors, a region never waits for a permit held by itself.
+        final FanOutExecutor regionExecutor = new FanOutExecutor(config.toBuilder().maxConcurrencyPerRegion(1).build());
+        final FanOutExecutor groupExecutor = new FanOutExecutor(config);
+
+        final List<FanOutTask<RegionResult>> tasks = new ArrayList<>();
+        for (Region region : new LinkedHashSet<>(regions)) {
+            tasks.add(new FanOutTask<>(region, region.id(), () -> {
+                try {
+                    final RegionResult result = runRegion(plan, region, ip, dryRun, groupExecutor);
+                    progress.accept(TargetResult.success(region, region.id(), result));
+                    return result;
+                } catch (RuntimeException e) {
+                    progress.accept(TargetResult.failure(region, region.id(), e));
+                    throw e;
+                }
+            }));
+        }
+        return regionExecutor.invokeAll(tasks);
+    }
+
+    private RegionResult runRegion(final RulePlan plan, final Region region, final String ip, final boolean dryRun,
+                                   final FanOutExecutor groupExecutor) {
+        final Ec2Client client = provider.getClient(region);
+
+        //One inventory read for all the rules of the region, and only if a rule targets instances.
+        final long resolveStart = System.nanoTime();
+        final boolean needsInstances = plan.rules().stream().anyMatch(rule -> !rule.instances().isEmpty());
+        final InstanceSnapshot inventory = needsInstances
+                ? new InstanceSnapshot(toList(new Ec2InstanceSource(() -> client).describeAll()), Instant.now())
+                : new InstanceSnapshot(List.of(), Instant.now());
+
+        final List<SecurityGroupRule> desiredRules = new ArrayList<>();
+        final List<String> unmatchedInstances = new ArrayList<>();
+        for (RulePlan.Rule rule : plan.rules()) {
+            final Set<String> groupIds = new LinkedHashSet<>(rule.groups());
+            for (String name : rule.instances()) {
+                final List<Instance> instances = inventory.findByNameContaining(name);
+                if (instances.isEmpty()) {
+                    unmatchedInstances.add(name);
+                }
+                instances.forEach(instance -> instance.securityGroups().stream()
+                        .map(GroupIdentifier::groupId)
+                        .forEach(groupIds::add));
+            }
+            groupIds.forEach(groupId -> desiredRules.add(SecurityGroupRule.forIp(groupId, rule.protocol(),
+                    rule.fromPort(), rule.toPort(), ip, rule.description())));
+        }
+        final Duration resolveTime = Duration.ofNanos(System.nanoTime() - resolveStart);
+
+        final ReconciliationReport report = desiredRules.isEmpty()
+                ? new ReconciliationReport(dryRun, List.of(), Duration.ZERO)
+                : new SecurityGroupReconciler(client, groupExecutor).reconcile(desiredRules, dryRun);
+        return new RegionResult(inventory.size(), List.copyOf(unmatchedInstances), resolveTime, report);
+    }
+
+    private static List<Instance> toList(final Iterable<Instance> instances) {
+        final List<Instance> list = new ArrayList<>();
+        instances.forEach(list::add);
+        return list;
+    }
+
+    /**
+     * The result of a plan in one region.
+     *
+     * @param instances          the number of instances read.
+     * @param unmatchedInstances the instance names of the plan that matched no instance.
+     * @param resolveTime        how long reading the instances and resolving the groups took.
+     * @param report             the changes of the groups.
+     */
+    public record RegionResult(int instances, List<String> unmatchedInstances, Duration resolveTime,
+                               ReconciliationReport report) {
+    }
+}
@@ -0,0 +1,40 @@
+package me.adriandeleon.cli;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class AwsUtilsCliTest {
+
+    @Test
+    void run_Test_OpenWithoutItsArguments() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        final int status = AwsUtilsCli.run(new String[]{"open", "web"}, new PrintStream(out, true,
+                StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        assertThat(status).isEqualTo(AwsUtilsCli.EXIT_USAGE);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEmpty();
+        assertThat(err.toString(StandardCharsets.UTF_8))
+                .contains("Missing the tag name and the rule description")
+                .contains("open <tag-name> <rule-description>");
+    }
+
+    @Test
+    void run_Test_UnknownCommand() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        final int status = AwsUtilsCli.run(new String[]{"close", "web"}, System.out,
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        assertThat(status).isEqualTo(AwsUtilsCli.EXIT_USAGE);
+        assertThat(err.toString(StandardCharsets.UTF_8)).contains("Usage:");
+    }
+}
@@ -0,0 +1,115 @@
+package me.adriandeleon.cli;
+
+import me.adriandeleon.Ec2ClientProvider;
+import me.adriandeleon.FanOutConfig;
+import me.adriandeleon.SecurityGroupRule;
+import me.adriandeleon.StubClients;
+import me.adriandeleon.TargetResult;
+import me.adriandeleon.fixtures.Ec2StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@Tag("UnitTest")
+class RulePlanRunnerTest {
+
+    private static final RulePlan PLAN = RulePlan.parse("""
+            rules:
+              - description: developer
+                instances: [web, missing]
+                groups: [sg-2]
+                ports: 22
+              - description: developer-https
+                instances: [web]
+                ports: 443
+            """);
+
+    private Ec2StubServer stubServer;
+    private Ec2ClientProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new Ec2StubServer()
+                .on("DescribeInstances", parameters -> Ec2StubServer.describeInstancesResponse(null,
+                        Ec2StubServer.instance("i-1", "web-1", "10.0.0.1", "sg-1"),
+                        Ec2StubServer.instance("i-2", "web-2", "10.0.0.2", "sg-1"),
+                        Ec2StubServer.instance("i-3", "database", "10.0.0.3", "sg-3")))
+                .on("DescribeSecurityGroups", parameters -> Ec2StubServer.describeSecurityGroupsResponse(
+                        Ec2StubServer.securityGroup("sg-1",
+                                Ec2StubServer.ipPermission("tcp", 22, 22, "198.51.100.7/32", "developer")),
+                        Ec2StubServer.securityGroup("sg-2")))
+                .on("AuthorizeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress", parameters ->
+                        Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+        provider = StubClients.provider(stubServer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        provider.close();
+        stubServer.close();
+    }
+
+    @Test
+    void run_Test_OneInventoryReadForAllTheRules() {
+        final List<TargetResult<RulePlanRunner.RegionResult>> progress = new CopyOnWriteArrayList<>();
+
+        final List<TargetResult<RulePlanRunner.RegionResult>> results = new RulePlanRunner(provider,
+                FanOutConfig.defaults()).run(PLAN, "203.0.113.10", false, progress::add);
+
+        assertThat(results).hasSize(1);
+        assertThat(progress).containsExactlyElementsOf(results);
+        final RulePlanRunner.RegionResult region = results.getFirst().value();
+        assertThat(region.instances()).isEqualTo(3);
+        assertThat(region.unmatchedInstances()).containsExactly("missing");
+        assertThat(stubServer.requests("DescribeInstances")).hasSize(1);
+        assertThat(stubServer.requests("DescribeSecurityGroups")).hasSize(1);
+
+        //The groups of the web instances and the explicit group, the old IP of developer is rotated.
+        assertThat(region.report().failures()).isEmpty();
+        assertThat(region.report().authorized())
+                .extracting(SecurityGroupRule::groupId, SecurityGroupRule::fromPort, SecurityGroupRule::cidr)
+                .containsExactlyInAnyOrder(
+                        tuple("sg-1", 22, "203.0.113.10/32"),
+                        tuple("sg-1", 443, "203.0.113.10/32"),
+                        tuple("sg-2", 22, "203.0.113.10/32"));
+        assertThat(region.report().revoked()).extracting(SecurityGroupRule::cidr).containsExactly("198.51.100.7/32");
+    }
+
+    @Test
+    void run_Test_DryRunDoesNotModify() {
+        final List<TargetResult<RulePlanRunner.RegionResult>> results = new RulePlanRunner(provider,
+                FanOutConfig.defaults()).run(PLAN, "203.0.113.10", true, result -> {
+        });
+
+        assertThat(results.getFirst().value().report().authorized()).hasSize(3);
+        assertThat(stubServer.requests("AuthorizeSecurityGroupIngress")).isEmpty();
+        assertThat(stubServer.requests("RevokeSecurityGroupIngress")).isEmpty();
+    }
+
+    @Test
+    void format_Test_ChangesAndSummary() {
+        final List<TargetResult<RulePlanRunner.RegionResult>> results = new RulePlanRunner(provider,
+                FanOutConfig.defaults()).run(PLAN, "203.0.113.10", true, result -> {
+        });
+
+        assertThat(AwsUtilsCli.format(results.getFirst()))
+                .startsWith("us-east-1: 3 instances, 2 groups, resolved in ")
+                .contains("  + sg-1 tcp 22 203.0.113.10/32 developer")
+                .contains("  + sg-1 tcp 443 203.0.113.10/32 developer-https")
+                .contains("  - sg-1 tcp 22 198.51.100.7/32 developer")
+                .contains("  ? no instance name contains \"missing\"");
+        assertThat(AwsUtilsCli.summary(results, Duration.ofMillis(42), true))
+                .isEqualTo("1 regions, 2 groups: 3 authorized, 1 revoked, 0 descriptions updated, 0 failed in 42 ms"
+                        + " (dry run, nothing was changed)");
+    }
+}
@@ -0,0 +1,72 @@
+package me.adriandeleon.cli;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Tag("UnitTest")
+class RulePlanTest {
+
+    @Test
+    void parse_Test_Yaml() {
+        final RulePlan plan = RulePlan.parse("""
+                ip: 203.0.113.10
+                regions: [us-east-1, eu-west-1]
+                rules:
+                  - description: developer
+                    instances: [web, bastion]
+                    groups: sg-1
+                    ports: 8000-8100
+                  - description: developer-dns
+                    groups: [sg-2]
+                    protocol: udp
+                    ports: 53
+                """);
+
+        assertThat(plan.ip()).isEqualTo("203.0.113.10");
+        assertThat(plan.regions()).containsExactly(Region.US_EAST_1, Region.EU_WEST_1);
+        assertThat(plan.rules()).containsExactly(
+                new RulePlan.Rule("developer", List.of("web", "bastion"), List.of("sg-1"), "tcp",
+                        8000, 8100),
+                new RulePlan.Rule("developer-dns", List.of(), List.of("sg-2"), "udp", 53, 53));
+    }
+
+    @Test
+    void parse_Test_JsonWithDefaults() {
+        final RulePlan plan = RulePlan.parse("""
+                {"rules": [
+                  {"description": "developer", "groups": ["sg-1"]},
+                  {"description": "developer-ping", "groups": ["sg-1"], "protocol": "icmp"}
+                ]}
+                """);
+
+        assertThat(plan.ip()).isNull();
+        assertThat(plan.regions()).isEmpty();
+        assertThat(plan.rules().getFirst()).extracting(RulePlan.Rule::protocol, RulePlan.Rule::fromPort,
+                RulePlan.Rule::toPort).containsExactly("tcp", 0, 65_535);
+        assertThat(plan.rules().getLast()).extracting(RulePlan.Rule::fromPort, RulePlan.Rule::toPort)
+                .containsExactly(-1, -1);
+    }
+
+    @Test
+    void parse_Test_InvalidPlans() {
+        assertThatThrownBy(() -> RulePlan.parse("rules: []"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(RulePlan.MESSAGE_INVALID_PLAN + ": rules must be a non-empty list.");
+        assertThatThrownBy(() -> RulePlan.parse("rules: [{description: developer}]"))
+                .hasMessage(RulePlan.MESSAGE_INVALID_PLAN + ": rules[0] needs instances or groups.");
+        assertThatThrownBy(() -> RulePlan.parse("rules: [{groups: [sg-1]}]"))
+                .hasMessage(RulePlan.MESSAGE_INVALID_PLAN + ": rules[0].description is required.");
+        assertThatThrownBy(() -> RulePlan.parse("rules: [{description: developer, groups: [sg-1], ports: 90-80}]"))
+                .hasMessage(RulePlan.MESSAGE_INVALID_PLAN + ": rules[0].ports is not a valid range: 90-80.");
+        assertThatThrownBy(() -> RulePlan.parse("rules: [{description: developer, groups: [sg-1], ports: ssh}]"))
+                .hasMessageStartingWith(RulePlan.MESSAGE_INVALID_PLAN + ": rules[0].ports must be a port");
+        assertThatThrownBy(() -> RulePlan.parse("rules: [unclosed"))
+                .hasMessageStartingWith(RulePlan.MESSAGE_INVALID_PLAN + ": ");
+    }
+}
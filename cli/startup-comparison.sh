@@ -0,0 +1,66 @@
+#!/usr/bin/env bash
+#
+# Compares the startup time and the peak memory (RSS) of the command line, as a jar and as a native executable.
+# Build both first, from the root of the project:
+#
+#   mvn -Pnative package -DskipTests
+#
+# Usage: cli/startup-comparison.sh [runs] [-- arguments of the command line]
+#
+# With no arguments, every run prints the usage and exits, which measures the startup alone. To measure a whole
+# invocation, pass its arguments, for example: cli/startup-comparison.sh 10 -- open my-server developer-adrian
+set -euo pipefail
+
+cd "$(dirname "$0")"
+runs=20
+if [[ $# -gt 0 && $1 != "--" ]]; then
+  runs=$1
+  shift
+fi
+[[ $# -gt 0 && $1 == "--" ]] && shift
+args=("$@")
+
+jar=target/aws-utils-cli.jar
+native=target/aws-utils-cli
+for file in "$jar" "$native"; do
+  if [[ ! -e $file ]]; then
+    echo "Missing $file, build it with: mvn -Pnative package -DskipTests" >&2
+    exit 2
+  fi
+done
+if [[ ! -x /usr/bin/time ]]; then
+  echo "Missing /usr/bin/time (GNU time), it measures the peak memory." >&2
+  exit 2
+fi
+
+# Runs a command $runs times, and prints the median and the maximum of its wall time and peak RSS.
+measure() {
+  local name=$1
+  shift
+  local times=()
+  local rss=()
+  local report
+  report=$(mktemp)
+  local start
+  for ((run = 0; run < runs; run++)); do
+    start=$(date +%s%N)
+    /usr/bin/time -f "%M" -o "$report" "$@" > /dev/null 2>&1 || true
+    times+=($((($(date +%s%N) - start) / 1000000)))
+    rss+=($(($(tail -1 "$report") / 1024)))
+  done
+  rm -f "$report"
+  printf '%-8s wall median %5d ms, max %5d ms   RSS median %4d MB, max %4d MB\n' "$name" \
+    "$(median "${times[@]}")" "$(max "${times[@]}")" "$(median "${rss[@]}")" "$(max "${rss[@]}")"
+}
+
+median() {
+  printf '%s\n' "$@" | sort -n | awk '{values[NR] = $1} END {print values[int((NR + 1) / 2)]}'
+}
+
+max() {
+  printf '%s\n' "$@" | sort -n | tail -1
+}
+
+echo "$runs runs of: aws-utils-cli ${args[*]}"
+measure "jvm" java -jar "$jar" "${args[@]}"
+measure "native" "./$native" "${args[@]}"
@@ -1,9 +0,0 @@
-module aws.utils {
-    requires org.apache.commons.lang3;
-    requires org.apache.logging.log4j;
-    requires software.amazon.awssdk.awscore;
-    requires software.amazon.awssdk.regions;
-    requires software.amazon.awssdk.services.ec2;
-    requires unirest.java;
-    requires lombok;
-}
\ No newline at end of file
@@ -0,0 +1,488 @@
+package me.adriandeleon.fixtures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A local HTTP stub of the EC2 Query API. Every action answers with a canned XML body, or with the
+ * {@link SyntheticInventory} registered on it.
+ * <p>
+ * Every response can be delayed ({@link #latency(Duration)}) and some of them can be throttled
+ * ({@link #throttleEvery(int)}), to measure the clients under slow and throttled EC2 endpoints. It also answers
+ * {@link #checkIpEndpoint()} with our public IP in plain text, like checkip.amazonaws.com.
+ */
+public class Ec2StubServer implements AutoCloseable {
+
+    public static final String EC2_NAMESPACE = "http://ec2.amazonaws.com/doc/2016-11-15/";
+
+    /**
+     * The IP answered by {@link #checkIpEndpoint()} by default, from the documentation range.
+     */
+    public static final String DEFAULT_PUBLIC_IP = "203.0.113.7";
+
+    /**
+     * The error code of EC2 throttling, answered with the status 503.
+     */
+    public static final String ERROR_CODE_THROTTLED = "RequestLimitExceeded";
+
+    private static final String CHECK_IP_PATH = "/checkip";
+
+    static {
+        //Without TCP_NODELAY every keep-alive response waits for the client delayed ACK (~40ms).
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    //One virtual thread per request, so an injected latency does not limit the concurrent requests.
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Function<Map<String, String>, String>> handlers = new ConcurrentHashMap<>();
+    private final Set<InetSocketAddress> remoteAddresses = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final Map<String, List<Map<String, String>>> requestsByAction = new ConcurrentHashMap<>();
+    private volatile boolean recordRequests = true;
+    private volatile Duration latency = Duration.ZERO;
+    private volatile int throttleEvery;
+    private final AtomicInteger throttleCount = new AtomicInteger();
+    private volatile String publicIp = DEFAULT_PUBLIC_IP;
+
+    public Ec2StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.createContext(CHECK_IP_PATH, this::handleCheckIp);
+        server.start();
+    }
+
+    /**
+     * Registers the XML body returned for an action. The handler receives the decoded form parameters.
+     */
+    public Ec2StubServer on(final String action, final Function<Map<String, String>, String> handler) {
+        handlers.put(action, handler);
+        return this;
+    }
+
+    /**
+     * Turns the recording of the received requests on or off. Long benchmark runs turn it off.
+     */
+    public Ec2StubServer recordRequests(final boolean enabled) {
+        recordRequests = enabled;
+        return this;
+    }
+
+    /**
+     * Delays every response, like a remote EC2 endpoint. Zero by default.
+     */
+    public Ec2StubServer latency(final Duration delay) {
+        latency = delay;
+        return this;
+    }
+
+    /**
+     * Answers every nth EC2 request with a {@link #ERROR_CODE_THROTTLED} error, 0 to never throttle (the default).
+     */
+    public Ec2StubServer throttleEvery(final int requests) {
+        throttleEvery = requests;
+        throttleCount.set(0);
+        return this;
+    }
+
+    /**
+     * Changes the IP answered by {@link #checkIpEndpoint()}.
+     */
+    public Ec2StubServer publicIp(final String ip) {
+        publicIp = ip;
+        return this;
+    }
+
+    /**
+     * Forgets the handlers, the received requests and their response bytes, the client sockets, the latency, the
+     * throttling and the public IP.
+     */
+    public void reset() {
+        handlers.clear();
+        requestsByAction.clear();
+        remoteAddresses.clear();
+        requestCount.set(0);
+        responseBytes.set(0);
+        latency = Duration.ZERO;
+        throttleEvery(0);
+        publicIp = DEFAULT_PUBLIC_IP;
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * A stand-in of checkip.amazonaws.com: answers with our public IP, see {@link #publicIp(String)}.
+     */
+    public URI checkIpEndpoint() {
+        return URI.create(endpoint() + CHECK_IP_PATH);
+    }
+
+    /**
+     * The number of EC2 requests received, the checkip requests are not counted.
+     */
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * The number of bytes of the EC2 responses sent while the requests are recorded, see
+     * {@link #recordRequests(boolean)}.
+     */
+    public long responseBytes() {
+        return responseBytes.get();
+    }
+
+    /**
+     * The decoded form parameters of every request received for an action.
+     */
+    public List<Map<String, String>> requests(final String action) {
+        return requestsByAction.getOrDefault(action, List.of());
+    }
+
+    /**
+     * The number of distinct client sockets (host:port) that sent requests.
+     */
+    public int connectionCount() {
+        return remoteAddresses.size();
+    }
+
+    /**
+     * An instance item of a DescribeInstances response.
+     */
+    public static String instance(final String instanceId, final String name, final String ip, final String groupId) {
+        return "<item><instanceId>" + instanceId + "</instanceId>"
+                + "<ipAddress>" + ip + "</ipAddress>"
+                + "<tagSet><item><key>Name</key><value>" + name + "</value></item></tagSet>"
+                + "<groupSet><item><groupId>" + groupId + "</groupId><groupName>default</groupName></item></groupSet>"
+                + "</item>";
+    }
+
+    /**
+     * An instance item of a DescribeInstances response, with a state.
+     */
+    public static String instance(final String instanceId, final String name, final String ip, final String groupId,
+                                  final String state) {
+        return instance(instanceId, name, ip, groupId)
+                .replace("</instanceId>", "</instanceId><instanceState><code>0</code><name>" + state
+                        + "</name></instanceState>");
+    }
+
+    /**
+     * An instance item of a DescribeInstances response with everything EC2 returns for a typical instance: image,
+     * placement, block device mappings, a network interface with its own security groups and public IP, and several
+     * tags besides the "Name" one.
+     */
+    public static String detailedInstance(final String instanceId, final String name, final String ip,
+                                          final String groupId, final String state) {
+        final String privateIp = "10.0." + (instanceId.hashCode() & 0xff) + "." + (instanceId.hashCode() >>> 8 & 0xff);
+        return "<item><instanceId>" + instanceId + "</instanceId><imageId>ami-0abcdef1234567890</imageId>"
+                + "<instanceState><code>16</code><name>" + state + "</name></instanceState>"
+                + "<privateDnsName>ip-" + privateIp.replace('.', '-') + ".ec2.internal</privateDnsName>"
+                + "<dnsName>ec2-" + ip.replace('.', '-') + ".compute-1.amazonaws.com</dnsName><reason/>"
+                + "<keyName>deploy</keyName><amiLaunchIndex>0</amiLaunchIndex><productCodes/>"
+                + "<instanceType>m5.large</instanceType><launchTime>2023-10-01T12:00:00.000Z</launchTime>"
+                + "<placement><availabilityZone>us-east-1a</availabilityZone><groupName/><tenancy>default</tenancy>"
+                + "</placement><monitoring><state>disabled</state></monitoring>"
+                + "<subnetId>subnet-0123456789abcdef0</subnetId><vpcId>vpc-0123456789abcdef0</vpcId>"
+                + "<privateIpAddress>" + privateIp + "</privateIpAddress><ipAddress>" + ip + "</ipAddress>"
+                + "<sourceDestCheck>true</sourceDestCheck>"
+                + "<groupSet><item><groupId>" + groupId + "</groupId><groupName>default</groupName></item></groupSet>"
+                + "<architecture>x86_64</architecture><rootDeviceType>ebs</rootDeviceType>"
+                + "<rootDeviceName>/dev/xvda</rootDeviceName><blockDeviceMapping>"
+                + blockDevice("/dev/xvda", "vol-0" + instanceId.substring(2))
+                + blockDevice("/dev/sdf", "vol-1" + instanceId.substring(2))
+                + "</blockDeviceMapping><virtualizationType>hvm</virtualizationType>"
+                + "<clientToken/><tagSet>"
+                + "<item><key>Environment</key><value>production</value></item>"
+                + "<item><key>Name</key><value>" + name + "</value></item>"
+                + "<item><key>Team</key><value>platform</value></item>"
+                + "<item><key>CostCenter</key><value>cc-1234</value></item>"
+                + "<item><key>aws:cloudformation:stack-name</key><value>stack-" + name + "</value></item>"
+                + "</tagSet><hypervisor>xen</hypervisor>"
+                + "<networkInterfaceSet><item><networkInterfaceId>eni-" + instanceId.substring(2)
+                + "</networkInterfaceId><subnetId>subnet-0123456789abcdef0</subnetId>"
+                + "<vpcId>vpc-0123456789abcdef0</vpcId><description/><ownerId>123456789012</ownerId>"
+                + "<status>in-use</status><macAddress>0a:00:00:00:00:01</macAddress>"
+                + "<privateIpAddress>" + privateIp + "</privateIpAddress><sourceDestCheck>true</sourceDestCheck>"
+                + "<groupSet><item><groupId>" + groupId + "</groupId><groupName>default</groupName></item></groupSet>"
+                + "<attachment><attachmentId>eni-attach-" + instanceId.substring(2) + "</attachmentId>"
+                + "<deviceIndex>0</deviceIndex><status>attached</status>"
+                + "<attachTime>2023-10-01T12:00:00.000Z</attachTime><deleteOnTermination>true</deleteOnTermination>"
+                + "</attachment><association><publicIp>" + ip + "</publicIp><ipOwnerId>amazon</ipOwnerId>"
+                + "</association><privateIpAddressesSet><item><privateIpAddress>" + privateIp
+                + "</privateIpAddress><primary>true</primary><association><publicIp>" + ip + "</publicIp>"
+                + "<ipOwnerId>amazon</ipOwnerId></association></item></privateIpAddressesSet>"
+                + "<ipv6AddressesSet/><interfaceType>interface</interfaceType></item></networkInterfaceSet>"
+                + "<iamInstanceProfile><arn>arn:aws:iam::123456789012:instance-profile/app</arn>"
+                + "<id>AIPA0123456789EXAMPLE</id></iamInstanceProfile><ebsOptimized>true</ebsOptimized>"
+                + "<enaSupport>true</enaSupport><cpuOptions><coreCount>1</coreCount><threadsPerCore>2</threadsPerCore>"
+                + "</cpuOptions><metadataOptions><state>applied</state><httpTokens>required</httpTokens>"
+                + "<httpPutResponseHopLimit>2</httpPutResponseHopLimit><httpEndpoint>enabled</httpEndpoint>"
+                + "</metadataOptions></item>";
+    }
+
+    private static String blockDevice(final String deviceName, final String volumeId) {
+        return "<item><deviceName>" + deviceName + "</deviceName><ebs><volumeId>" + volumeId + "</volumeId>"
+                + "<status>attached</status><attachTime>2023-10-01T12:00:00.000Z</attachTime>"
+                + "<deleteOnTermination>true</deleteOnTermination></ebs></item>";
+    }
+
+    /**
+     * A DescribeInstances response page with one reservation. The nextToken is omitted when null.
+     */
+    public static String describeInstancesResponse(final String nextToken, final String... instances) {
+        return "<DescribeInstancesResponse xmlns=\"" + EC2_NAMESPACE + "\">"
+                + "<requestId>stub</requestId><reservationSet><item><reservationId>r-1</reservationId>"
+                + "<instancesSet>" + String.join("", instances) + "</instancesSet></item></reservationSet>"
+                + (nextToken == null ? "" : "<nextToken>" + nextToken + "</nextToken>")
+                + "</DescribeInstancesResponse>";
+    }
+
+    /**
+     * An instance status item of a DescribeInstanceStatus response.
+     */
+    public static String instanceStatus(final String instanceId, final String state) {
+        return "<item><instanceId>" + instanceId + "</instanceId>"
+                + "<instanceState><code>0</code><name>" + state + "</name></instanceState></item>";
+    }
+
+    /**
+     * A DescribeInstanceStatus response page. The nextToken is omitted when null.
+     */
+    public static String describeInstanceStatusResponse(final String nextToken, final String... instanceStatuses) {
+        return "<DescribeInstanceStatusResponse xmlns=\"" + EC2_NAMESPACE + "\"><requestId>stub</requestId>"
+                + "<instanceStatusSet>" + String.join("", instanceStatuses) + "</instanceStatusSet>"
+                + (nextToken == null ? "" : "<nextToken>" + nextToken + "</nextToken>")
+                + "</DescribeInstanceStatusResponse>";
+    }
+
+    /**
+     * A tag item of a DescribeTags response, of an instance.
+     */
+    public static String tag(final String instanceId, final String key, final String value) {
+        return "<item><resourceId>" + instanceId + "</resourceId><resourceType>instance</resourceType>"
+                + "<key>" + key + "</key><value>" + value + "</value></item>";
+    }
+
+    /**
+     * A DescribeTags response page. The nextToken is omitted when null.
+     */
+    public static String describeTagsResponse(final String nextToken, final String... tags) {
+        return "<DescribeTagsResponse xmlns=\"" + EC2_NAMESPACE + "\"><requestId>stub</requestId>"
+                + "<tagSet>" + String.join("", tags) + "</tagSet>"
+                + (nextToken == null ? "" : "<nextToken>" + nextToken + "</nextToken>")
+                + "</DescribeTagsResponse>";
+    }
+
+    /**
+     * A network interface item of a DescribeNetworkInterfaces response, attached to an instance. The association is
+     * omitted when the publicIp is null.
+     */
+    public static String networkInterface(final String instanceId, final int deviceIndex, final String publicIp,
+                                          final String... groupIds) {
+        final StringBuilder groups = new StringBuilder();
+        for (String groupId : groupIds) {
+            groups.append("<item><groupId>").append(groupId).append("</groupId><groupName>default</groupName></item>");
+        }
+        return "<item><networkInterfaceId>eni-" + instanceId.substring(2) + "-" + deviceIndex + "</networkInterfaceId>"
+                + "<groupSet>" + groups + "</groupSet>"
+                + "<attachment><instanceId>" + instanceId + "</instanceId><deviceIndex>" + deviceIndex
+                + "</deviceIndex><status>attached</status></attachment>"
+                + (publicIp == null ? "" : "<association><publicIp>" + publicIp + "</publicIp></association>")
+                + "</item>";
+    }
+
+    /**
+     * A network interface item of a DescribeNetworkInterfaces response created by an AWS service, like a load balancer:
+     * attached, but not to one of our instances.
+     */
+    public static String serviceNetworkInterface(final String networkInterfaceId, final String groupId) {
+        return "<item><networkInterfaceId>" + networkInterfaceId + "</networkInterfaceId>"
+                + "<description>ELB app/web/0123456789abcdef</description><requesterManaged>true</requesterManaged>"
+                + "<groupSet><item><groupId>" + groupId + "</groupId><groupName>default</groupName></item></groupSet>"
+                + "<attachment><instanceOwnerId>amazon-elb</instanceOwnerId><deviceIndex>1</deviceIndex>"
+                + "<status>attached</status></attachment>"
+                + "</item>";
+    }
+
+    /**
+     * A DescribeNetworkInterfaces response page. The nextToken is omitted when null.
+     */
+    public static String describeNetworkInterfacesResponse(final String nextToken, final String... networkInterfaces) {
+        return "<DescribeNetworkInterfacesResponse xmlns=\"" + EC2_NAMESPACE + "\"><requestId>stub</requestId>"
+                + "<networkInterfaceSet>" + String.join("", networkInterfaces) + "</networkInterfaceSet>"
+                + (nextToken == null ? "" : "<nextToken>" + nextToken + "</nextToken>")
+                + "</DescribeNetworkInterfacesResponse>";
+    }
+
+    /**
+     * An ip permission item of a security group, with one IP range.
+     */
+    public static String ipPermission(final String protocol, final int fromPort, final int toPort, final String cidrIp,
+                               final String description) {
+        return ipPermissionWithRanges(protocol, fromPort, toPort, ipRange(cidrIp, description));
+    }
+
+    /**
+     * An ip permission item of a security group, with many IP ranges.
+     */
+    public static String ipPermissionWithRanges(final String protocol, final int fromPort, final int toPort,
+                                         final String... ipRanges) {
+        return "<item><ipProtocol>" + protocol + "</ipProtocol>"
+                + "<fromPort>" + fromPort + "</fromPort><toPort>" + toPort + "</toPort><groups/>"
+                + "<ipRanges>" + String.join("", ipRanges) + "</ipRanges><ipv6Ranges/><prefixListIds/></item>";
+    }
+
+    /**
+     * An IP range item of an ip permission.
+     */
+    public static String ipRange(final String cidrIp, final String description) {
+        return "<item><cidrIp>" + cidrIp + "</cidrIp><description>" + description + "</description></item>";
+    }
+
+    /**
+     * A security group item of a DescribeSecurityGroups response.
+     */
+    public static String securityGroup(final String groupId, final String... ipPermissions) {
+        return "<item><ownerId>123456789012</ownerId><groupId>" + groupId + "</groupId>"
+                + "<groupName>" + groupId + "</groupName><groupDescription>stub</groupDescription>"
+                + "<ipPermissions>" + String.join("", ipPermissions) + "</ipPermissions><ipPermissionsEgress/></item>";
+    }
+
+    /**
+     * A DescribeSecurityGroups response.
+     */
+    public static String describeSecurityGroupsResponse(final String... securityGroups) {
+        return "<DescribeSecurityGroupsResponse xmlns=\"" + EC2_NAMESPACE + "\"><requestId>stub</requestId>"
+                + "<securityGroupInfo>" + String.join("", securityGroups) + "</securityGroupInfo>"
+                + "</DescribeSecurityGroupsResponse>";
+    }
+
+    /**
+     * The successful response of a mutating action, like AuthorizeSecurityGroupIngress.
+     */
+    public static String returnTrueResponse(final String action) {
+        return "<" + action + "Response xmlns=\"" + EC2_NAMESPACE + "\"><requestId>stub</requestId>"
+                + "<return>true</return></" + action + "Response>";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        remoteAddresses.add(exchange.getRemoteAddress());
+
+        final Map<String, String> parameters = parseForm(new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8));
+        if (recordRequests) {
+            requestsByAction.computeIfAbsent(parameters.getOrDefault("Action", ""), key -> new CopyOnWriteArrayList<>())
+                    .add(parameters);
+        }
+        final Function<Map<String, String>, String> handler = handlers.get(parameters.get("Action"));
+
+        int status = 200;
+        String body;
+        try {
+            delay();
+            final int every = throttleEvery;
+            if (every > 0 && throttleCount.incrementAndGet() % every == 0) {
+                throw new StubError(503, ERROR_CODE_THROTTLED, "Request limit exceeded.");
+            }
+            if (handler == null) {
+                throw new StubError(400, "InvalidAction", "Unknown action");
+            }
+            body = handler.apply(parameters);
+        } catch (StubError e) {
+            status = e.status;
+            body = "<Response><Errors><Error><Code>" + e.code + "</Code><Message>" + e.getMessage()
+                    + "</Message></Error></Errors><RequestID>stub</RequestID></Response>";
+        }
+
+        if (recordRequests) {
+            responseBytes.addAndGet(body.getBytes(StandardCharsets.UTF_8).length);
+        }
+        respond(exchange, status, "text/xml;charset=UTF-8", body);
+    }
+
+    private void handleCheckIp(final HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        delay();
+        respond(exchange, 200, "text/plain;charset=UTF-8", publicIp + "\n");
+    }
+
+    private void delay() {
+        final Duration delay = latency;
+        if (delay.isPositive()) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String contentType,
+                                final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Thrown by a handler to answer with an EC2 error response.
+     */
+    public static final class StubError extends RuntimeException {
+        private final int status;
+        private final String code;
+
+        public StubError(final int status, final String code, final String message) {
+            super(message);
+            this.status = status;
+            this.code = code;
+        }
+    }
+
+    private static Map<String, String> parseForm(final String form) {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int index = pair.indexOf('=');
+            final String key = index < 0 ? pair : pair.substring(0, index);
+            final String value = index < 0 ? "" : pair.substring(index + 1);
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,328 @@
+package me.adriandeleon.fixtures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * SyntheticInventory: a generated EC2 account of any size, served by the local EC2 stub.
+ * <p>
+ * DescribeInstances pages with MaxResults and NextToken, and filters by instance ids or "Name" tags (with wildcards),
+ * like EC2. Every instance has a unique "Name" tag, the same public IP and one of a few security groups. Every security
+ * group has many developer rules, plus one rule on a port that accepts connections ({@link #RULE_OPEN}) and one on a
+ * port that refuses them ({@link #RULE_CLOSED}).
+ * <p>
+ * The account can also have network interfaces of AWS services ({@link #serviceNetworkInterfaces(int)}), listed by
+ * DescribeNetworkInterfaces unless it filters on "requester-managed".
+ * <p>
+ * A detailed inventory describes its instances with everything EC2 returns, see
+ * {@link Ec2StubServer#detailedInstance}, for the benchmarks of the parsing of the responses.
+ */
+public final class SyntheticInventory {
+
+    /**
+     * The constant RULE_OPEN.
+     */
+    public static final String RULE_OPEN = "benchmark-open";
+
+    /**
+     * The constant RULE_CLOSED.
+     */
+    public static final String RULE_CLOSED = "benchmark-closed";
+
+    /**
+     * The constant RULE_DEVELOPER_PREFIX.
+     */
+    public static final String RULE_DEVELOPER_PREFIX = "developer-";
+
+    /**
+     * The constant STATE_RUNNING.
+     */
+    public static final String STATE_RUNNING = "running";
+
+    /**
+     * The constant SECURITY_GROUPS.
+     */
+    public static final int SECURITY_GROUPS = 64;
+
+    /**
+     * The constant DEVELOPER_RULES_PER_GROUP.
+     */
+    public static final int DEVELOPER_RULES_PER_GROUP = 50;
+
+    private final int size;
+    private final String ip;
+    private final String[] instanceItems;
+    private final Map<String, Integer> indexById = new HashMap<>();
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    private final Map<String, String> securityGroupItems = new HashMap<>();
+    private int serviceInterfaces;
+
+    /**
+     * Generates an inventory whose instances point to a documentation IP, with the SSH port open and the Telnet one
+     * closed.
+     *
+     * @param size the number of instances.
+     */
+    public SyntheticInventory(final int size) {
+        this(size, "192.0.2.1", 22, 23);
+    }
+
+    /**
+     * Generates an inventory whose instances point to a documentation IP, with the SSH port open and the Telnet one
+     * closed.
+     *
+     * @param size     the number of instances.
+     * @param detailed true to describe the instances with everything EC2 returns.
+     */
+    public SyntheticInventory(final int size, final boolean detailed) {
+        this(size, "192.0.2.1", 22, 23, detailed);
+    }
+
+    /**
+     * Generates an inventory.
+     *
+     * @param size       the number of instances.
+     * @param ip         the public IP of every instance.
+     * @param openPort   the port of the {@link #RULE_OPEN} rule.
+     * @param closedPort the port of the {@link #RULE_CLOSED} rule.
+     */
+    public SyntheticInventory(final int size, final String ip, final int openPort, final int closedPort) {
+        this(size, ip, openPort, closedPort, false);
+    }
+
+    /**
+     * Generates an inventory.
+     *
+     * @param size       the number of instances.
+     * @param ip         the public IP of every instance.
+     * @param openPort   the port of the {@link #RULE_OPEN} rule.
+     * @param closedPort the port of the {@link #RULE_CLOSED} rule.
+     * @param detailed   true to describe the instances with everything EC2 returns.
+     */
+    public SyntheticInventory(final int size, final String ip, final int openPort, final int closedPort,
+                              final boolean detailed) {
+        this.size = size;
+        this.ip = ip;
+        this.instanceItems = new String[size];
+        for (int index = 0; index < size; index++) {
+            instanceItems[index] = detailed
+                    ? Ec2StubServer.detailedInstance(instanceId(index), name(index), ip, groupId(index), STATE_RUNNING)
+                    : Ec2StubServer.instance(instanceId(index), name(index), ip, groupId(index), STATE_RUNNING);
+            indexById.put(instanceId(index), index);
+            indexByName.put(name(index), index);
+        }
+
+        for (int group = 0; group < Math.min(size, SECURITY_GROUPS); group++) {
+            final List<String> ipPermissions = new ArrayList<>();
+            for (int rule = 0; rule < DEVELOPER_RULES_PER_GROUP; rule++) {
+                ipPermissions.add(Ec2StubServer.ipPermission("tcp", 22, 22, "198.51.100." + rule + "/32",
+                        RULE_DEVELOPER_PREFIX + rule));
+            }
+            ipPermissions.add(Ec2StubServer.ipPermission("tcp", openPort, openPort, "198.51.100.250/32", RULE_OPEN));
+            ipPermissions.add(Ec2StubServer.ipPermission("tcp", closedPort, closedPort, "198.51.100.251/32",
+                    RULE_CLOSED));
+            securityGroupItems.put(groupId(group),
+                    Ec2StubServer.securityGroup(groupId(group), ipPermissions.toArray(String[]::new)));
+        }
+    }
+
+    /**
+     * Adds network interfaces of AWS services (load balancers, Lambda functions...) to the account, after the ones of
+     * the instances.
+     *
+     * @param count the number of interfaces.
+     * @return this inventory.
+     */
+    public SyntheticInventory serviceNetworkInterfaces(final int count) {
+        serviceInterfaces = count;
+        return this;
+    }
+
+    /**
+     * Gets the instance id of an instance.
+     *
+     * @param index the index of the instance.
+     * @return the instance id.
+     */
+    public static String instanceId(final int index) {
+        return "i-%017x".formatted(index);
+    }
+
+    /**
+     * Gets the "Name" tag of an instance. The names have a fixed width, so a name is not contained in another one.
+     *
+     * @param index the index of the instance.
+     * @return the name.
+     */
+    public static String name(final int index) {
+        return "node-%06d".formatted(index);
+    }
+
+    /**
+     * Gets the security group of an instance.
+     *
+     * @param index the index of the instance.
+     * @return the security group id.
+     */
+    public static String groupId(final int index) {
+        return "sg-%08x".formatted(index % SECURITY_GROUPS);
+    }
+
+    /**
+     * Gets the number of instances.
+     *
+     * @return the number of instances.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the index of a random instance.
+     *
+     * @return the index.
+     */
+    public int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+
+    /**
+     * Registers the EC2 actions used by the helpers on a stub.
+     *
+     * @param stubServer the stub.
+     */
+    public void register(final Ec2StubServer stubServer) {
+        stubServer.recordRequests(false)
+                .on("DescribeInstances", this::describeInstances)
+                .on("DescribeInstanceStatus", this::describeInstanceStatus)
+                .on("DescribeTags", this::describeTags)
+                .on("DescribeNetworkInterfaces", this::describeNetworkInterfaces)
+                .on("DescribeSecurityGroups", this::describeSecurityGroups)
+                .on("AuthorizeSecurityGroupIngress",
+                        parameters -> Ec2StubServer.returnTrueResponse("AuthorizeSecurityGroupIngress"))
+                .on("RevokeSecurityGroupIngress",
+                        parameters -> Ec2StubServer.returnTrueResponse("RevokeSecurityGroupIngress"));
+    }
+
+    private String describeInstances(final Map<String, String> parameters) {
+        final int[] matches = matches(parameters);
+
+        //Without MaxResults EC2 answers with every instance, with it the NextToken is the offset of the next page.
+        final int offset = Integer.parseInt(parameters.getOrDefault("NextToken", "0"));
+        final int pageSize = parameters.containsKey("MaxResults")
+                ? Integer.parseInt(parameters.get("MaxResults"))
+                : matches.length;
+        final int end = Math.min(matches.length, offset + pageSize);
+
+        final String[] page = new String[end - offset];
+        for (int index = offset; index < end; index++) {
+            page[index - offset] = instanceItems[matches[index]];
+        }
+        return Ec2StubServer.describeInstancesResponse(end < matches.length ? String.valueOf(end) : null, page);
+    }
+
+    private String describeInstanceStatus(final Map<String, String> parameters) {
+        final int offset = Integer.parseInt(parameters.getOrDefault("NextToken", "0"));
+        final int end = pageEnd(parameters, offset);
+        final String[] page = new String[end - offset];
+        for (int index = offset; index < end; index++) {
+            page[index - offset] = Ec2StubServer.instanceStatus(instanceId(index), STATE_RUNNING);
+        }
+        return Ec2StubServer.describeInstanceStatusResponse(end < size ? String.valueOf(end) : null, page);
+    }
+
+    private String describeTags(final Map<String, String> parameters) {
+        final int offset = Integer.parseInt(parameters.getOrDefault("NextToken", "0"));
+        final int end = pageEnd(parameters, offset);
+        final String[] page = new String[end - offset];
+        for (int index = offset; index < end; index++) {
+            page[index - offset] = Ec2StubServer.tag(instanceId(index), "Name", name(index));
+        }
+        return Ec2StubServer.describeTagsResponse(end < size ? String.valueOf(end) : null, page);
+    }
+
+    private String describeNetworkInterfaces(final Map<String, String> parameters) {
+        //The interfaces of the AWS services are requester-managed.
+        final int total = "false".equals(filterValue(parameters, "requester-managed"))
+                ? size
+                : size + serviceInterfaces;
+        final int offset = Integer.parseInt(parameters.getOrDefault("NextToken", "0"));
+        final int end = parameters.containsKey("MaxResults")
+                ? Math.min(total, offset + Integer.parseInt(parameters.get("MaxResults")))
+                : total;
+        final String[] page = new String[end - offset];
+        for (int index = offset; index < end; index++) {
+            page[index - offset] = index < size
+                    ? Ec2StubServer.networkInterface(instanceId(index), 0, ip, groupId(index))
+                    : Ec2StubServer.serviceNetworkInterface("eni-service-" + index, groupId(index));
+        }
+        return Ec2StubServer.describeNetworkInterfacesResponse(end < total ? String.valueOf(end) : null, page);
+    }
+
+    private static String filterValue(final Map<String, String> parameters, final String name) {
+        for (int filter = 1; parameters.containsKey("Filter." + filter + ".Name"); filter++) {
+            if (name.equals(parameters.get("Filter." + filter + ".Name"))) {
+                return parameters.get("Filter." + filter + ".Value.1");
+            }
+        }
+        return null;
+    }
+
+    private int pageEnd(final Map<String, String> parameters, final int offset) {
+        return parameters.containsKey("MaxResults")
+                ? Math.min(size, offset + Integer.parseInt(parameters.get("MaxResults")))
+                : size;
+    }
+
+    private int[] matches(final Map<String, String> parameters) {
+        final String filterName = parameters.get("Filter.1.Name");
+        if (filterName == null) {
+            return IntStream.range(0, size).toArray();
+        }
+        if ("instance-id".equals(filterName)) {
+            //One or many instance ids, the unknown ones are skipped.
+            return IntStream.iterate(1, value -> parameters.containsKey("Filter.1.Value." + value), value -> value + 1)
+                    .mapToObj(value -> indexById.get(parameters.get("Filter.1.Value." + value)))
+                    .filter(Objects::nonNull)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        if ("tag:Name".equals(filterName)) {
+            //The helpers ask for "*name*", one or many. A whole name is found at once, anything else scans every name.
+            final List<String> contained = IntStream.iterate(1, value -> parameters.containsKey("Filter.1.Value." + value),
+                            value -> value + 1)
+                    .mapToObj(value -> parameters.get("Filter.1.Value." + value).replace("*", ""))
+                    .toList();
+            if (contained.size() == 1 && indexByName.containsKey(contained.getFirst())) {
+                return new int[]{indexByName.get(contained.getFirst())};
+            }
+            return IntStream.range(0, size)
+                    .filter(candidate -> contained.stream().anyMatch(name(candidate)::contains))
+                    .toArray();
+        }
+        throw new Ec2StubServer.StubError(400, "InvalidParameterValue", "Unknown filter " + filterName);
+    }
+
+    private String describeSecurityGroups(final Map<String, String> parameters) {
+        //Without group ids EC2 answers with every group.
+        if (!parameters.containsKey("GroupId.1")) {
+            return Ec2StubServer.describeSecurityGroupsResponse(securityGroupItems.values().toArray(String[]::new));
+        }
+        final List<String> groups = new ArrayList<>();
+        for (int index = 1; parameters.containsKey("GroupId." + index); index++) {
+            final String groupId = parameters.get("GroupId." + index);
+            final String group = securityGroupItems.get(groupId);
+            if (group == null) {
+                throw new Ec2StubServer.StubError(400, "InvalidGroup.NotFound",
+                        "The security group '" + groupId + "' does not exist");
+            }
+            groups.add(group);
+        }
+        return Ec2StubServer.describeSecurityGroupsResponse(groups.toArray(String[]::new));
+    }
+}
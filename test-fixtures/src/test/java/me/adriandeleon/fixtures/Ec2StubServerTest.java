@@ -0,0 +1,91 @@
+package me.adriandeleon.fixtures;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("UnitTest")
+class Ec2StubServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private Ec2StubServer stubServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stubServer = new Ec2StubServer();
+        new SyntheticInventory(25).register(stubServer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubServer.close();
+    }
+
+    @Test
+    void describeInstances_Test_PagesAndFilters() throws Exception {
+        final String firstPage = post("Action=DescribeInstances&MaxResults=10").body();
+        assertThat(firstPage).contains("<nextToken>10</nextToken>");
+        assertThat(firstPage.split("<instanceId>", -1)).hasSize(11);
+
+        final String lastPage = post("Action=DescribeInstances&MaxResults=10&NextToken=20").body();
+        assertThat(lastPage).doesNotContain("<nextToken>");
+        assertThat(lastPage.split("<instanceId>", -1)).hasSize(6);
+
+        final String byNames = post("Action=DescribeInstances&Filter.1.Name=tag%3AName"
+                + "&Filter.1.Value.1=*node-000003*&Filter.1.Value.2=*node-000007*").body();
+        assertThat(byNames).contains(SyntheticInventory.instanceId(3), SyntheticInventory.instanceId(7));
+        assertThat(byNames.split("<instanceId>", -1)).hasSize(3);
+    }
+
+    @Test
+    void throttleEvery_Test_AnswersRequestLimitExceeded() throws Exception {
+        stubServer.throttleEvery(2);
+
+        assertThat(post("Action=DescribeSecurityGroups&GroupId.1=sg-00000000").statusCode()).isEqualTo(200);
+        final HttpResponse<String> throttled = post("Action=DescribeSecurityGroups&GroupId.1=sg-00000000");
+        assertThat(throttled.statusCode()).isEqualTo(503);
+        assertThat(throttled.body()).contains("<Code>" + Ec2StubServer.ERROR_CODE_THROTTLED + "</Code>");
+        assertThat(post("Action=DescribeSecurityGroups&GroupId.1=sg-00000000").statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void latency_Test_DelaysEveryResponse() throws Exception {
+        stubServer.latency(Duration.ofMillis(200));
+
+        final long start = System.nanoTime();
+        post("Action=DescribeInstances&MaxResults=5");
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    void checkIpEndpoint_Test_AnswersThePublicIp() throws Exception {
+        assertThat(get().body()).isEqualTo(Ec2StubServer.DEFAULT_PUBLIC_IP + "\n");
+
+        stubServer.publicIp("198.51.100.20");
+        assertThat(get().body()).isEqualTo("198.51.100.20\n");
+        assertThat(stubServer.requestCount()).isZero();
+    }
+
+    private HttpResponse<String> post(final String form) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(stubServer.endpoint())
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get() throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(stubServer.checkIpEndpoint()).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}